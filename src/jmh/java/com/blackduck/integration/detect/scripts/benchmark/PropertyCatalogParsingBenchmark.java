@@ -0,0 +1,54 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.benchmark;
+
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackduck.integration.detect.scripts.catalog.DetectPropertyCatalogParser;
+import com.blackduck.integration.detect.scripts.catalog.DetectVersionProperty;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyCatalogParsingBenchmark {
+    // From a minimal response up to the size of the property payloads returned by large mirrors.
+    @Param({ "512", "65536", "1048576", "16777216", "33554432" })
+    private int responseBytes;
+
+    private final DetectPropertyCatalogParser parser = new DetectPropertyCatalogParser();
+    private String response;
+
+    @Setup
+    public void setUp() {
+        response = SyntheticCatalogResponses.generate(responseBytes);
+    }
+
+    @Benchmark
+    public List<DetectVersionProperty> parse() throws IOException {
+        return parser.parse(new StringReader(response));
+    }
+}
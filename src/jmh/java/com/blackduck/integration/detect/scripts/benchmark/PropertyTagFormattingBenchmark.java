@@ -0,0 +1,50 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.benchmark;
+
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackduck.integration.detect.scripts.scripts.DetectPropertyTagFormatter;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyTagFormattingBenchmark {
+    @Param({ "5", "50", "500" })
+    private int tagCount;
+
+    private final DetectPropertyTagFormatter formatter = new DetectPropertyTagFormatter();
+    private List<String> propertyTags;
+
+    @Setup
+    public void setUp() {
+        propertyTags = SyntheticCatalogResponses.generatePropertyTags(tagCount);
+    }
+
+    @Benchmark
+    public String format() {
+        return formatter.format(propertyTags);
+    }
+}
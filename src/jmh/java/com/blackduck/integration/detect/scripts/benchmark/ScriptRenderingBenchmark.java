@@ -0,0 +1,76 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.benchmark;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackduck.integration.detect.scripts.scripts.DetectPropertyTagFormatter;
+import com.blackduck.integration.detect.scripts.scripts.ScriptTemplate;
+import com.blackduck.integration.exception.IntegrationException;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptRenderingBenchmark {
+    @Param({ "detect-sh.sh", "detect-ps.ps1", "detect-posix.sh" })
+    private String templateFileName;
+
+    private String templateContents;
+    private ScriptTemplate scriptTemplate;
+    private final Map<String, String> tokenValues = new HashMap<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        try (final InputStream inputStream = ScriptRenderingBenchmark.class.getResourceAsStream("/templates/" + templateFileName)) {
+            templateContents = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+        scriptTemplate = ScriptTemplate.compile(templateContents);
+
+        tokenValues.put("SCRIPT_VERSION", "3.3.0");
+        tokenValues.put("BUILD_DATE", "2024-01-01");
+        tokenValues.put("DETECT_MAJOR_VERSIONS", new DetectPropertyTagFormatter().format(SyntheticCatalogResponses.generatePropertyTags(12)));
+        tokenValues.put("DEFAULT_DETECT_VERSION_KEY", "DETECT_LATEST_10");
+        tokenValues.put("EMBEDDED_RESOLUTION", "");
+        tokenValues.put("EMBEDDED_RESOLUTION_TIME", "2024-01-01T00:00:00Z");
+    }
+
+    @Benchmark
+    public ScriptTemplate compileTemplate() {
+        return ScriptTemplate.compile(templateContents);
+    }
+
+    @Benchmark
+    public int renderScript() throws IOException, IntegrationException {
+        final StringWriter writer = new StringWriter(templateContents.length() + 1024);
+        scriptTemplate.render(tokenValues, writer);
+        return writer.getBuffer().length();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.benchmark;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds Artifactory "?properties" responses of a requested size, padded with unrelated properties the way large internal mirrors are.
+public final class SyntheticCatalogResponses {
+    private static final int DETECT_MAJOR_VERSION_COUNT = 10;
+
+    private SyntheticCatalogResponses() {
+    }
+
+    public static String generate(final int approximateBytes) {
+        final StringBuilder response = new StringBuilder(approximateBytes + 256);
+        response.append("{\n  \"properties\" : {\n");
+        for (int majorVersion = 1; majorVersion <= DETECT_MAJOR_VERSION_COUNT; majorVersion++) {
+            response.append(String.format("    \"DETECT_LATEST_%d\" : [ \"https://repo.blackduck.com/bds-integrations-release/com/blackduck/integration/detect/%d.0.0/detect-%d.0.0.jar\" ],%n", majorVersion, majorVersion, majorVersion));
+        }
+
+        int fillerIndex = 0;
+        while (response.length() < approximateBytes) {
+            response.append(String.format("    \"build.property.%d\" : [ \"value-%d mentions DETECT_LATEST in passing\" ],%n", fillerIndex, fillerIndex));
+            fillerIndex++;
+        }
+
+        response.append("    \"DETECT_LATEST\" : [ \"https://repo.blackduck.com/bds-integrations-release/com/blackduck/integration/detect/10.0.0/detect-10.0.0.jar\" ]\n");
+        response.append("  },\n  \"uri\" : \"https://repo.blackduck.com/api/storage/bds-integrations-release/com/blackduck/integration/detect\"\n}\n");
+        return response.toString();
+    }
+
+    public static List<String> generatePropertyTags(final int count) {
+        final List<String> propertyTags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            propertyTags.add("DETECT_LATEST_" + i);
+        }
+        return propertyTags;
+    }
+}
@@ -10,27 +10,79 @@ package com.blackduck.integration.detect.scripts;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.LoggerFactory;
+
+import com.blackduck.integration.detect.scripts.delta.JarDeltaWriter;
+import com.blackduck.integration.detect.scripts.evict.DetectJarCacheEvictor;
+import com.blackduck.integration.detect.scripts.metrics.ScriptMetricsReader;
+import com.blackduck.integration.detect.scripts.metrics.ScriptMetricsSummary;
+import com.blackduck.integration.detect.scripts.prefetch.DetectJarPrefetcher;
+import com.blackduck.integration.detect.scripts.prefetch.DetectVersionSpec;
+import com.blackduck.integration.detect.scripts.prefetch.PrefetchBundleWriter;
 import com.blackduck.integration.detect.scripts.scripts.ScriptBuilder;
+import com.blackduck.integration.detect.scripts.serve.DetectMirrorServer;
 import com.blackduck.integration.exception.IntegrationException;
-
-import freemarker.template.TemplateException;
+import com.blackduck.integration.log.Slf4jIntLogger;
+import com.google.gson.GsonBuilder;
 
 public class Application {
-    public static void main(final String[] args) throws IOException, IntegrationException, TemplateException, URISyntaxException {
-        if (args.length != 2) {
-            throw new IllegalArgumentException("Please provide two arguments, the operation and the output directory of the scripts.");
+    public static void main(final String[] args) throws IOException, IntegrationException, URISyntaxException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Please provide at least two arguments, the operation and the output directory.");
         }
         final String operation = args[0];
         final String outputDirectoryPath = args[1];
         final File outputDirectory = new File(outputDirectoryPath);
-        outputDirectory.mkdirs();
 
          if (operation.equals("scripts")) {
+            outputDirectory.mkdirs();
             ScriptBuilder scriptBuilder = new ScriptBuilder();
             scriptBuilder.generateScripts(outputDirectory);
+        } else if (operation.equals("prefetch")) {
+            // prefetch <download directory> <versions> [bundle zip]
+            if (args.length < 3) {
+                throw new IllegalArgumentException("Please provide the Detect versions to prefetch, e.g. DETECT_LATEST_9,DETECT_LATEST_10,10.2.*");
+            }
+            DetectJarPrefetcher detectJarPrefetcher = new DetectJarPrefetcher();
+            detectJarPrefetcher.prefetch(DetectVersionSpec.parseList(args[2]), outputDirectory);
+            if (args.length > 3) {
+                PrefetchBundleWriter prefetchBundleWriter = new PrefetchBundleWriter();
+                prefetchBundleWriter.write(outputDirectory, new File(args[3]));
+            }
+        } else if (operation.equals("serve")) {
+            // serve <cache directory> [port]
+            final int port = NumberUtils.toInt(args.length > 2 ? args[2] : System.getenv(DetectMirrorServer.PORT_ENV), DetectMirrorServer.DEFAULT_PORT);
+            DetectMirrorServer detectMirrorServer = new DetectMirrorServer(outputDirectory);
+            detectMirrorServer.start(port);
+            Runtime.getRuntime().addShutdownHook(new Thread(detectMirrorServer::stop));
+        } else if (operation.equals("metrics")) {
+            // metrics <metrics file or folder> [summary json]
+            ScriptMetricsReader scriptMetricsReader = new ScriptMetricsReader(new Slf4jIntLogger(LoggerFactory.getLogger(Application.class)));
+            ScriptMetricsSummary scriptMetricsSummary = ScriptMetricsSummary.of(scriptMetricsReader.read(Collections.singletonList(outputDirectory)));
+            System.out.print(scriptMetricsSummary.toReport());
+            if (args.length > 2) {
+                FileUtils.writeStringToFile(new File(args[2]), new GsonBuilder().setPrettyPrinting().create().toJson(scriptMetricsSummary), StandardCharsets.UTF_8);
+            }
+        } else if (operation.equals("evict")) {
+            // evict <download directory> [max size MB] [max age days]
+            DetectJarCacheEvictor detectJarCacheEvictor = args.length > 2
+                ? new DetectJarCacheEvictor(NumberUtils.toLong(args[2], 0L), NumberUtils.toLong(args.length > 3 ? args[3] : null, 0L))
+                : new DetectJarCacheEvictor();
+            detectJarCacheEvictor.evict(outputDirectory);
+        } else if (operation.equals("delta")) {
+            // delta <output directory> <previous jar> <new jar>
+            if (args.length < 4) {
+                throw new IllegalArgumentException("Please provide the previous and the new Detect jar to compute the delta between.");
+            }
+            JarDeltaWriter jarDeltaWriter = new JarDeltaWriter();
+            jarDeltaWriter.write(new File(args[2]), new File(args[3]), outputDirectory);
         } else {
-            throw new IllegalArgumentException("Unknown operation. Must be 'scripts': " + operation);
+            throw new IllegalArgumentException("Unknown operation. Must be 'scripts', 'prefetch', 'serve', 'metrics', 'evict' or 'delta': " + operation);
         }
 
     }
@@ -0,0 +1,33 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.catalog;
+
+// The size and SHA-256 of a released Detect jar, named by its path in the repository.
+public class DetectJarChecksum {
+    private final String jarPath;
+    private final long size;
+    private final String sha256;
+
+    public DetectJarChecksum(final String jarPath, final long size, final String sha256) {
+        this.jarPath = jarPath;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    public String getJarPath() {
+        return jarPath;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.catalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import com.blackduck.integration.detect.scripts.mirror.HedgedRequestExecutor;
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.detect.scripts.util.FileUtil;
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.IntLogger;
+import com.blackduck.integration.rest.HttpMethod;
+import com.blackduck.integration.rest.HttpUrl;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.blackduck.integration.rest.request.Request;
+import com.blackduck.integration.rest.response.Response;
+import com.google.gson.Gson;
+
+/**
+ * Finds the size and SHA-256 of the jars the version keys of a property catalog point at, for the resolution table embedded in the scripts.
+ * A released jar never changes, so each one is asked for once, with a HEAD request hedged across the mirrors, and remembered in the cache
+ * directory. Jars the repository sends no X-Checksum-Sha256 for, or that are not in the cache when offline, are left out.
+ */
+public class DetectJarChecksumResolver {
+    public static final String REPOSITORY_PATH = "/bds-integrations-release/";
+
+    private static final String CHECKSUMS_FILE_NAME = "detect-jar-checksums.properties";
+    private static final Pattern SHA256 = Pattern.compile("[0-9a-f]{64}");
+
+    private final IntLogger logger;
+    private final RepositoryMirrors repositoryMirrors;
+    private final File cacheDirectory;
+    private final boolean offline;
+
+    public DetectJarChecksumResolver(final IntLogger logger, final RepositoryMirrors repositoryMirrors, final File cacheDirectory, final boolean offline) {
+        this.logger = logger;
+        this.repositoryMirrors = repositoryMirrors;
+        this.cacheDirectory = cacheDirectory;
+        this.offline = offline;
+    }
+
+    // Uses the same environment variables, and so the same cache directory, as DetectPropertyCatalogResolver.fromEnvironment.
+    public static DetectJarChecksumResolver fromEnvironment(final IntLogger logger) {
+        return new DetectJarChecksumResolver(logger, RepositoryMirrors.fromEnvironment(), DetectPropertyCatalogResolver.cacheDirectoryFromEnvironment(), FileUtil.isEnabled(System.getenv(DetectPropertyCatalogResolver.OFFLINE_ENV)));
+    }
+
+    // The path of a jar url within the repository, e.g. /bds-integrations-release/com/.../detect-10.0.0.jar, or null when it is elsewhere.
+    @Nullable
+    public static String toJarPath(@Nullable final String url) {
+        final int repositoryIndex = StringUtils.indexOf(url, REPOSITORY_PATH);
+        if (repositoryIndex < 0 || !url.endsWith(".jar")) {
+            return null;
+        }
+        return url.substring(repositoryIndex);
+    }
+
+    // Keyed by version key, in catalog order.
+    public Map<String, DetectJarChecksum> resolve(final DetectPropertyCatalog propertyCatalog) throws IOException {
+        final Properties cachedChecksums = readCachedChecksums();
+        final Map<String, DetectJarChecksum> checksums = new LinkedHashMap<>();
+        boolean cacheChanged = false;
+        for (final DetectVersionProperty versionProperty : propertyCatalog.getVersionProperties()) {
+            final String jarPath = toJarPath(versionProperty.getUrl());
+            if (jarPath == null) {
+                continue;
+            }
+            DetectJarChecksum checksum = parseChecksum(jarPath, cachedChecksums.getProperty(jarPath));
+            if (checksum == null && !offline) {
+                checksum = fetchChecksum(jarPath);
+                if (checksum != null) {
+                    cachedChecksums.setProperty(jarPath, checksum.getSize() + " " + checksum.getSha256());
+                    cacheChanged = true;
+                }
+            }
+            if (checksum != null) {
+                checksums.put(versionProperty.getName(), checksum);
+            } else {
+                logger.warn(String.format("The checksum of %s is not known, %s is left out of the embedded resolution.", jarPath, versionProperty.getName()));
+            }
+        }
+        if (cacheChanged) {
+            writeCachedChecksums(cachedChecksums);
+        }
+        return checksums;
+    }
+
+    @Nullable
+    private DetectJarChecksum fetchChecksum(final String jarPath) {
+        final HedgedRequestExecutor hedgedRequestExecutor = new HedgedRequestExecutor(logger, repositoryMirrors);
+        try {
+            return hedgedRequestExecutor.execute(repositoryUrl -> fetchFromMirror(repositoryUrl, jarPath), checksum -> {});
+        } catch (final IntegrationException e) {
+            logger.warn(String.format("Unable to get the checksum of %s: %s", jarPath, e.getMessage()));
+            return null;
+        }
+    }
+
+    private DetectJarChecksum fetchFromMirror(final String repositoryUrl, final String jarPath) throws IOException, IntegrationException {
+        final String jarUrl = repositoryUrl + jarPath;
+        final IntHttpClient intHttpClient = new IntHttpClient(logger, new Gson(), repositoryMirrors.getBudgetSeconds(), true, ProxyInfo.NO_PROXY_INFO);
+        try (final Response response = intHttpClient.execute(new Request.Builder(new HttpUrl(jarUrl)).method(HttpMethod.HEAD).build())) {
+            response.throwExceptionForError();
+            // Failing the mirror rather than answering without a checksum lets another mirror that has one win.
+            final DetectJarChecksum checksum = parseChecksum(jarPath, response.getHeaderValue("Content-Length") + " " + response.getHeaderValue("X-Checksum-Sha256"));
+            if (checksum == null) {
+                throw new IntegrationException(String.format("%s did not send the size and SHA-256 of the jar.", jarUrl));
+            }
+            return checksum;
+        }
+    }
+
+    // From "<size> <sha256>", null when either is missing.
+    @Nullable
+    private DetectJarChecksum parseChecksum(final String jarPath, @Nullable final String value) {
+        final String[] fields = StringUtils.split(StringUtils.defaultString(value).toLowerCase(), ' ');
+        if (fields.length != 2 || !NumberUtils.isDigits(fields[0]) || !SHA256.matcher(fields[1]).matches()) {
+            return null;
+        }
+        final long size = NumberUtils.toLong(fields[0], 0L);
+        return size > 0 ? new DetectJarChecksum(jarPath, size, fields[1]) : null;
+    }
+
+    private Properties readCachedChecksums() throws IOException {
+        final Properties checksums = new Properties();
+        final File checksumsFile = getChecksumsFile();
+        if (checksumsFile.isFile()) {
+            try (final Reader reader = Files.newBufferedReader(checksumsFile.toPath(), StandardCharsets.UTF_8)) {
+                checksums.load(reader);
+            }
+        }
+        return checksums;
+    }
+
+    private void writeCachedChecksums(final Properties checksums) throws IOException {
+        Files.createDirectories(cacheDirectory.toPath());
+        final Path temporaryFile = Files.createTempFile(cacheDirectory.toPath(), CHECKSUMS_FILE_NAME, ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            checksums.store(writer, "Sizes and checksums of released Detect jars");
+        }
+        FileUtil.moveIntoPlace(temporaryFile, getChecksumsFile().toPath());
+    }
+
+    private File getChecksumsFile() {
+        return new File(cacheDirectory, CHECKSUMS_FILE_NAME);
+    }
+}
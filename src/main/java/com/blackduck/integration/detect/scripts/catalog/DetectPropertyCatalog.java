@@ -0,0 +1,38 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class DetectPropertyCatalog {
+    private final List<DetectVersionProperty> versionProperties;
+    private final String digest;
+
+    public DetectPropertyCatalog(final List<DetectVersionProperty> versionProperties, final String digest) {
+        this.versionProperties = Collections.unmodifiableList(new ArrayList<>(versionProperties));
+        this.digest = digest;
+    }
+
+    public List<DetectVersionProperty> getVersionProperties() {
+        return versionProperties;
+    }
+
+    public List<String> getPropertyTags() {
+        return versionProperties.stream()
+                   .map(DetectVersionProperty::getName)
+                   .collect(Collectors.toList());
+    }
+
+    // A SHA-256 of the raw catalog response, used to tell whether two catalogs differ.
+    public String getDigest() {
+        return digest;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.catalog;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads an Artifactory "?properties" response token by token. Only the names of the properties object are inspected and only DETECT_LATEST*
+ * values are materialized, everything else is skipped without being buffered, so memory use does not grow with the size of the response.
+ */
+public class DetectPropertyCatalogParser {
+    private static final String PROPERTIES_FIELD = "properties";
+    private static final String DETECT_PROPERTY_PREFIX = "DETECT_LATEST";
+
+    public List<DetectVersionProperty> parse(final Reader reader) throws IOException {
+        final List<DetectVersionProperty> detectVersionProperties = new ArrayList<>();
+        final JsonReader jsonReader = new JsonReader(reader);
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            final String name = jsonReader.nextName();
+            if (PROPERTIES_FIELD.equals(name) && jsonReader.peek() == JsonToken.BEGIN_OBJECT) {
+                readProperties(jsonReader, detectVersionProperties);
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        return detectVersionProperties;
+    }
+
+    private void readProperties(final JsonReader jsonReader, final List<DetectVersionProperty> detectVersionProperties) throws IOException {
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            final String propertyName = jsonReader.nextName();
+            if (propertyName.startsWith(DETECT_PROPERTY_PREFIX)) {
+                detectVersionProperties.add(new DetectVersionProperty(propertyName, readFirstValue(jsonReader)));
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    // Artifactory returns every property value as an array, the first entry is the url.
+    @Nullable
+    private String readFirstValue(final JsonReader jsonReader) throws IOException {
+        final JsonToken token = jsonReader.peek();
+        if (token == JsonToken.STRING) {
+            return jsonReader.nextString();
+        } else if (token != JsonToken.BEGIN_ARRAY) {
+            jsonReader.skipValue();
+            return null;
+        }
+
+        String value = null;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            if (value == null && jsonReader.peek() == JsonToken.STRING) {
+                value = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endArray();
+        return value;
+    }
+}
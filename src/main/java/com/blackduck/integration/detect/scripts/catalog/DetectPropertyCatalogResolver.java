@@ -0,0 +1,263 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.catalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import com.blackduck.integration.detect.scripts.mirror.HedgedRequestExecutor;
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.blackduck.integration.detect.scripts.util.FileUtil;
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.IntLogger;
+import com.blackduck.integration.rest.HttpUrl;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.blackduck.integration.rest.request.Request;
+import com.blackduck.integration.rest.response.Response;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Resolves the Artifactory property catalog for Detect, keeping a copy on disk so that it is fetched at most once per run and can be revalidated
+ * with a conditional request (or used as-is when offline) on the next run.
+ */
+public class DetectPropertyCatalogResolver {
+    public static final String CATALOG_PATH = "/bds-integrations-release/com/blackduck/integration/detect?properties";
+
+    public static final String CACHE_DIRECTORY_ENV = "DETECT_SCRIPTS_CACHE_DIR";
+    public static final String CATALOG_TTL_ENV = "DETECT_SCRIPTS_CATALOG_TTL";
+    public static final String OFFLINE_ENV = "DETECT_SCRIPTS_OFFLINE";
+
+    private static final String CATALOG_FILE_NAME = "detect-property-catalog.json";
+    private static final String METADATA_FILE_NAME = "detect-property-catalog.properties";
+    private static final String METADATA_PATH = "path";
+    private static final String METADATA_URL = "url";
+    private static final String METADATA_ETAG = "etag";
+    private static final String METADATA_LAST_MODIFIED = "lastModified";
+    private static final String METADATA_FETCHED_AT = "fetchedAt";
+    private static final String METADATA_DIGEST = "digest";
+
+    private final IntLogger logger;
+    private final RepositoryMirrors repositoryMirrors;
+    private final File cacheDirectory;
+    private final long timeToLiveMillis;
+    private final boolean offline;
+    private final DetectPropertyCatalogParser parser = new DetectPropertyCatalogParser();
+
+    public DetectPropertyCatalogResolver(final IntLogger logger, final RepositoryMirrors repositoryMirrors, final File cacheDirectory, final long timeToLiveMillis, final boolean offline) {
+        this.logger = logger;
+        this.repositoryMirrors = repositoryMirrors;
+        this.cacheDirectory = cacheDirectory;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.offline = offline;
+    }
+
+    /**
+     * DETECT_SCRIPTS_CACHE_DIR overrides the cache location (default ~/.detect-scripts/cache), DETECT_SCRIPTS_CATALOG_TTL is the number of
+     * seconds a cached catalog is trusted without revalidation (default 0, always revalidate) and DETECT_SCRIPTS_OFFLINE=true uses the cached
+     * catalog without any network access. The mirrors to ask are described by {@link RepositoryMirrors#fromEnvironment()}.
+     */
+    public static DetectPropertyCatalogResolver fromEnvironment(final IntLogger logger) {
+        final long timeToLiveSeconds = NumberUtils.toLong(System.getenv(CATALOG_TTL_ENV), 0L);
+        final boolean offline = FileUtil.isEnabled(System.getenv(OFFLINE_ENV));
+
+        return new DetectPropertyCatalogResolver(logger, RepositoryMirrors.fromEnvironment(), cacheDirectoryFromEnvironment(), TimeUnit.SECONDS.toMillis(timeToLiveSeconds), offline);
+    }
+
+    public static File cacheDirectoryFromEnvironment() {
+        final String cacheDirectoryPath = System.getenv(CACHE_DIRECTORY_ENV);
+        if (StringUtils.isNotBlank(cacheDirectoryPath)) {
+            return new File(cacheDirectoryPath);
+        }
+        return new File(new File(System.getProperty("user.home"), ".detect-scripts"), "cache");
+    }
+
+    public DetectPropertyCatalog resolve() throws IOException, IntegrationException {
+        Files.createDirectories(cacheDirectory.toPath());
+        final Properties cachedMetadata = readCachedMetadata();
+
+        if (offline) {
+            if (cachedMetadata == null) {
+                throw new IntegrationException(String.format("Offline mode was requested but there is no cached property catalog in %s.", cacheDirectory.getAbsolutePath()));
+            }
+            logger.info(String.format("Offline mode: using the cached property catalog fetched at %s.", cachedMetadata.getProperty(METADATA_FETCHED_AT)));
+            return readCachedCatalog(cachedMetadata);
+        }
+
+        if (cachedMetadata != null && isFresh(cachedMetadata)) {
+            logger.info("Using the cached property catalog, it is within its time to live.");
+            return readCachedCatalog(cachedMetadata);
+        }
+
+        try {
+            return fetchCatalog(cachedMetadata);
+        } catch (final IOException | IntegrationException e) {
+            if (cachedMetadata == null) {
+                throw e;
+            }
+            logger.warn(String.format("Unable to refresh the property catalog, the cached catalog fetched at %s will be used: %s", cachedMetadata.getProperty(METADATA_FETCHED_AT), e.getMessage()));
+            return readCachedCatalog(cachedMetadata);
+        }
+    }
+
+    private boolean isFresh(final Properties metadata) {
+        final long fetchedAt = NumberUtils.toLong(metadata.getProperty(METADATA_FETCHED_AT), 0L);
+        return System.currentTimeMillis() - fetchedAt < timeToLiveMillis;
+    }
+
+    private DetectPropertyCatalog fetchCatalog(final Properties cachedMetadata) throws IOException, IntegrationException {
+        final HedgedRequestExecutor hedgedRequestExecutor = new HedgedRequestExecutor(logger, repositoryMirrors);
+        final CatalogFetch catalogFetch = hedgedRequestExecutor.execute(repositoryUrl -> fetchFromMirror(repositoryUrl, cachedMetadata), this::discardFetch);
+
+        if (catalogFetch.contentFile == null) {
+            logger.info(String.format("The cached property catalog is still current according to %s.", catalogFetch.catalogUrl));
+            cachedMetadata.setProperty(METADATA_FETCHED_AT, Long.toString(System.currentTimeMillis()));
+            writeMetadata(cachedMetadata);
+            return readCachedCatalog(cachedMetadata);
+        }
+
+        FileUtil.moveIntoPlace(catalogFetch.contentFile, getCatalogFile().toPath());
+        final Properties metadata = new Properties();
+        metadata.setProperty(METADATA_PATH, CATALOG_PATH);
+        metadata.setProperty(METADATA_URL, catalogFetch.catalogUrl);
+        metadata.setProperty(METADATA_FETCHED_AT, Long.toString(System.currentTimeMillis()));
+        metadata.setProperty(METADATA_DIGEST, catalogFetch.digest);
+        setIfNotBlank(metadata, METADATA_ETAG, catalogFetch.etag);
+        setIfNotBlank(metadata, METADATA_LAST_MODIFIED, catalogFetch.lastModified);
+        writeMetadata(metadata);
+        logger.info(String.format("Fetched the property catalog from %s.", catalogFetch.catalogUrl));
+
+        return readCachedCatalog(metadata);
+    }
+
+    private CatalogFetch fetchFromMirror(final String repositoryUrl, final Properties cachedMetadata) throws IOException, IntegrationException {
+        final String catalogUrl = repositoryUrl + CATALOG_PATH;
+        final IntHttpClient intHttpClient = new IntHttpClient(logger, new Gson(), repositoryMirrors.getBudgetSeconds(), true, ProxyInfo.NO_PROXY_INFO);
+        final Request.Builder requestBuilder = new Request.Builder(new HttpUrl(catalogUrl));
+        if (cachedMetadata != null) {
+            final String etag = cachedMetadata.getProperty(METADATA_ETAG);
+            final String lastModified = cachedMetadata.getProperty(METADATA_LAST_MODIFIED);
+            if (StringUtils.isNotBlank(etag)) {
+                requestBuilder.addHeader("If-None-Match", etag);
+            }
+            if (StringUtils.isNotBlank(lastModified)) {
+                requestBuilder.addHeader("If-Modified-Since", lastModified);
+            }
+        }
+
+        try (final Response response = intHttpClient.execute(requestBuilder.build())) {
+            if (response.getStatusCode() == 304 && cachedMetadata != null) {
+                return new CatalogFetch(catalogUrl, null, null, null, null);
+            }
+            response.throwExceptionForError();
+
+            final Path contentFile = Files.createTempFile(cacheDirectory.toPath(), CATALOG_FILE_NAME, ".tmp");
+            try {
+                final String digest = DigestUtil.copyWithSha256(response.getContent(), contentFile);
+                // Parse it here so that a mirror answering with something other than a catalog loses the race instead of winning it.
+                try (final Reader reader = Files.newBufferedReader(contentFile, StandardCharsets.UTF_8)) {
+                    parser.parse(reader);
+                } catch (final JsonParseException e) {
+                    throw new IntegrationException(String.format("The response from %s is not a property catalog: %s", catalogUrl, e.getMessage()), e);
+                }
+                return new CatalogFetch(catalogUrl, contentFile, digest, response.getHeaderValue("ETag"), response.getHeaderValue("Last-Modified"));
+            } catch (final IOException | IntegrationException | RuntimeException e) {
+                Files.deleteIfExists(contentFile);
+                throw e;
+            }
+        }
+    }
+
+    private void discardFetch(final CatalogFetch catalogFetch) {
+        if (catalogFetch.contentFile != null) {
+            FileUtils.deleteQuietly(catalogFetch.contentFile.toFile());
+        }
+    }
+
+    private void setIfNotBlank(final Properties properties, final String key, final String value) {
+        if (StringUtils.isNotBlank(value)) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private Properties readCachedMetadata() throws IOException {
+        final File metadataFile = getMetadataFile();
+        if (!metadataFile.isFile() || !getCatalogFile().isFile()) {
+            return null;
+        }
+
+        final Properties metadata = new Properties();
+        try (final Reader reader = Files.newBufferedReader(metadataFile.toPath(), StandardCharsets.UTF_8)) {
+            metadata.load(reader);
+        }
+        if (!CATALOG_PATH.equals(metadata.getProperty(METADATA_PATH))) {
+            return null;
+        }
+        return metadata;
+    }
+
+    private void writeMetadata(final Properties metadata) throws IOException {
+        Files.createDirectories(cacheDirectory.toPath());
+        final Path temporaryFile = Files.createTempFile(cacheDirectory.toPath(), METADATA_FILE_NAME, ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            metadata.store(writer, "Detect property catalog cache metadata");
+        }
+        FileUtil.moveIntoPlace(temporaryFile, getMetadataFile().toPath());
+    }
+
+    private DetectPropertyCatalog readCachedCatalog(final Properties metadata) throws IOException {
+        String digest = metadata.getProperty(METADATA_DIGEST);
+        if (StringUtils.isBlank(digest)) {
+            digest = DigestUtil.sha256Hex(getCatalogFile().toPath());
+        }
+
+        try (final Reader reader = Files.newBufferedReader(getCatalogFile().toPath(), StandardCharsets.UTF_8)) {
+            return new DetectPropertyCatalog(parser.parse(reader), digest);
+        } catch (final JsonParseException e) {
+            throw new IOException("The property catalog is not valid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private File getCatalogFile() {
+        return new File(cacheDirectory, CATALOG_FILE_NAME);
+    }
+
+    private File getMetadataFile() {
+        return new File(cacheDirectory, METADATA_FILE_NAME);
+    }
+
+    private static class CatalogFetch {
+        private final String catalogUrl;
+        // Null when the mirror confirmed the cached catalog is current.
+        private final Path contentFile;
+        private final String digest;
+        private final String etag;
+        private final String lastModified;
+
+        private CatalogFetch(final String catalogUrl, final Path contentFile, final String digest, final String etag, final String lastModified) {
+            this.catalogUrl = catalogUrl;
+            this.contentFile = contentFile;
+            this.digest = digest;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+}
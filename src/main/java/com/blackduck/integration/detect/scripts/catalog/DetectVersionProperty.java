@@ -0,0 +1,31 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.catalog;
+
+import javax.annotation.Nullable;
+
+// A DETECT_LATEST* Artifactory property and the jar url it currently resolves to.
+public class DetectVersionProperty {
+    private final String name;
+    @Nullable
+    private final String url;
+
+    public DetectVersionProperty(final String name, @Nullable final String url) {
+        this.name = name;
+        this.url = url;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public String getUrl() {
+        return url;
+    }
+}
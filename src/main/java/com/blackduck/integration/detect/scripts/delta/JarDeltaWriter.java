@@ -0,0 +1,218 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.delta;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.LoggerFactory;
+
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.blackduck.integration.detect.scripts.util.FileUtil;
+import com.blackduck.integration.log.IntLogger;
+import com.blackduck.integration.log.Slf4jIntLogger;
+
+/**
+ * Writes the delta the scripts rebuild a Detect jar from when DETECT_DELTA_UPDATES is set, given the jar they already have. Consecutive Detect
+ * releases share most of their nested library jars, and those entries are stored byte for byte the same, so the delta copies them from the
+ * previous jar and carries only the rest. Published next to the new jar, under deltaFileName, the scripts find it from the new jar's url.
+ * <p>
+ * The format is a text header followed by the bytes it refers to. The first line is {@code DETECT-JAR-DELTA 1 <header length>}, the length
+ * as ten digits. Then {@code source <name> <size> <sha256>} and {@code target <name> <size> <sha256>}, and the instructions that write the
+ * target in order: {@code copy <offset> <length>} from the source jar and {@code data <length>} from the bytes after the header, taken in
+ * turn. The header ends with {@code end}.
+ */
+public class JarDeltaWriter {
+    public static final String FORMAT = "DETECT-JAR-DELTA";
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+    private final IntLogger logger = new Slf4jIntLogger(LoggerFactory.getLogger(this.getClass()));
+
+    public static String deltaFileName(final String targetJarName, final String sourceJarName) {
+        return String.format("%s.from-%s.delta", targetJarName, StringUtils.removeEnd(sourceJarName, ".jar"));
+    }
+
+    // Returns the delta file, written to the output directory.
+    public File write(final File sourceJar, final File targetJar, final File outputDirectory) throws IOException {
+        final File deltaFile = new File(outputDirectory, deltaFileName(targetJar.getName(), sourceJar.getName()));
+        Files.createDirectories(outputDirectory.toPath());
+        final Path temporaryFile = Files.createTempFile(outputDirectory.toPath(), deltaFile.getName(), ".tmp");
+        try (final FileChannel source = FileChannel.open(sourceJar.toPath(), StandardOpenOption.READ); final FileChannel target = FileChannel.open(targetJar.toPath(), StandardOpenOption.READ)) {
+            final List<Instruction> instructions = diff(source, JarLayout.read(source), target, JarLayout.read(target));
+
+            final StringBuilder header = new StringBuilder();
+            header.append(String.format("source %s %d %s\n", sourceJar.getName(), source.size(), DigestUtil.sha256Hex(sourceJar.toPath())));
+            header.append(String.format("target %s %d %s\n", targetJar.getName(), target.size(), DigestUtil.sha256Hex(targetJar.toPath())));
+            long copiedBytes = 0L;
+            for (final Instruction instruction : instructions) {
+                if (instruction.isCopy()) {
+                    header.append(String.format("copy %d %d\n", instruction.getOffset(), instruction.getLength()));
+                    copiedBytes += instruction.getLength();
+                } else {
+                    header.append(String.format("data %d\n", instruction.getLength()));
+                }
+            }
+            header.append("end\n");
+            // The first line has the same length whatever the header length is.
+            final int headerLength = String.format("%s %d %010d\n", FORMAT, FORMAT_VERSION, 0).length() + header.length();
+            final byte[] headerBytes = (String.format("%s %d %010d\n", FORMAT, FORMAT_VERSION, headerLength) + header).getBytes(StandardCharsets.US_ASCII);
+
+            try (final OutputStream outputStream = Files.newOutputStream(temporaryFile); final WritableByteChannel output = Channels.newChannel(outputStream)) {
+                outputStream.write(headerBytes);
+                for (final Instruction instruction : instructions) {
+                    if (!instruction.isCopy()) {
+                        transfer(target, instruction.getOffset(), instruction.getLength(), output);
+                    }
+                }
+            }
+            logger.info(String.format("%s rebuilds %s from %s, %d of its %d bytes are copied.", deltaFile.getName(), targetJar.getName(), sourceJar.getName(), copiedBytes, target.size()));
+            FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+            FileUtil.moveIntoPlace(temporaryFile, deltaFile.toPath());
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+        return deltaFile;
+    }
+
+    // Data instructions hold the offset in the target they are taken from, the delta itself only stores their length.
+    private List<Instruction> diff(final FileChannel source, final JarLayout sourceLayout, final FileChannel target, final JarLayout targetLayout) throws IOException {
+        final Map<String, JarLayout.Entry> sourceEntriesByName = new HashMap<>();
+        final Map<String, JarLayout.Entry> sourceEntriesByContent = new HashMap<>();
+        for (final JarLayout.Entry sourceEntry : sourceLayout.getEntries()) {
+            sourceEntriesByName.put(sourceEntry.getName(), sourceEntry);
+            sourceEntriesByContent.putIfAbsent(sourceEntry.getContentKey(), sourceEntry);
+        }
+
+        final List<Instruction> instructions = new ArrayList<>();
+        long position = 0L;
+        for (final JarLayout.Entry targetEntry : targetLayout.getEntries()) {
+            if (targetEntry.getCompressedSize() == 0 || targetEntry.getHeaderOffset() < position) {
+                continue;
+            }
+            // A renamed library, e.g. one whose version is in its name, is found by its content.
+            JarLayout.Entry sourceEntry = sourceEntriesByName.get(targetEntry.getName());
+            if (sourceEntry == null || !sourceEntry.getContentKey().equals(targetEntry.getContentKey())) {
+                sourceEntry = sourceEntriesByContent.get(targetEntry.getContentKey());
+            }
+            if (sourceEntry == null || !isEqual(source, sourceEntry.getDataOffset(), target, targetEntry.getDataOffset(), targetEntry.getCompressedSize())) {
+                continue;
+            }
+            // When the local header is the same too it is copied with the data, so a run of unchanged entries becomes a single copy.
+            final long headerLength = targetEntry.getDataOffset() - targetEntry.getHeaderOffset();
+            if (headerLength == sourceEntry.getDataOffset() - sourceEntry.getHeaderOffset() && isEqual(source, sourceEntry.getHeaderOffset(), target, targetEntry.getHeaderOffset(), headerLength)) {
+                addData(instructions, position, targetEntry.getHeaderOffset() - position);
+                addCopy(instructions, sourceEntry.getHeaderOffset(), headerLength + targetEntry.getCompressedSize());
+            } else {
+                addData(instructions, position, targetEntry.getDataOffset() - position);
+                addCopy(instructions, sourceEntry.getDataOffset(), targetEntry.getCompressedSize());
+            }
+            position = targetEntry.getDataEnd();
+        }
+        addData(instructions, position, target.size() - position);
+        return instructions;
+    }
+
+    private void addCopy(final List<Instruction> instructions, final long offset, final long length) {
+        final Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+        if (last != null && last.isCopy() && last.getOffset() + last.getLength() == offset) {
+            instructions.set(instructions.size() - 1, new Instruction(true, last.getOffset(), last.getLength() + length));
+        } else {
+            instructions.add(new Instruction(true, offset, length));
+        }
+    }
+
+    private void addData(final List<Instruction> instructions, final long offset, final long length) {
+        if (length <= 0) {
+            return;
+        }
+        final Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+        if (last != null && !last.isCopy()) {
+            instructions.set(instructions.size() - 1, new Instruction(false, last.getOffset(), last.getLength() + length));
+        } else {
+            instructions.add(new Instruction(false, offset, length));
+        }
+    }
+
+    private boolean isEqual(final FileChannel first, final long firstOffset, final FileChannel second, final long secondOffset, final long length) throws IOException {
+        final ByteBuffer firstBuffer = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+        final ByteBuffer secondBuffer = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+        long compared = 0L;
+        while (compared < length) {
+            final int chunk = (int) Math.min(COMPARE_BUFFER_SIZE, length - compared);
+            if (!readFully(first, firstOffset + compared, firstBuffer, chunk) || !readFully(second, secondOffset + compared, secondBuffer, chunk) || !firstBuffer.equals(secondBuffer)) {
+                return false;
+            }
+            compared += chunk;
+        }
+        return true;
+    }
+
+    // Leaves the buffer flipped for reading, false when the file ends first.
+    private boolean readFully(final FileChannel channel, final long offset, final ByteBuffer buffer, final int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private void transfer(final FileChannel target, final long offset, final long length, final WritableByteChannel output) throws IOException {
+        long transferred = 0L;
+        while (transferred < length) {
+            final long count = target.transferTo(offset + transferred, length - transferred, output);
+            if (count <= 0) {
+                throw new IOException("The jar ended while the delta was written.");
+            }
+            transferred += count;
+        }
+    }
+
+    private static class Instruction {
+        private final boolean copy;
+        private final long offset;
+        private final long length;
+
+        private Instruction(final boolean copy, final long offset, final long length) {
+            this.copy = copy;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public boolean isCopy() {
+            return copy;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
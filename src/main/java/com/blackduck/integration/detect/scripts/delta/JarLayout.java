@@ -0,0 +1,168 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.delta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Where the entries of a jar are stored, read from its central directory. A jar is a zip, and each entry is a local header followed by the
+ * entry's compressed data; JarDeltaWriter copies those byte ranges rather than recompressing anything. Zip64 jars are not supported, Detect's
+ * jars are well below its limits.
+ */
+public class JarLayout {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+    private final List<Entry> entries;
+
+    private JarLayout(final List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static JarLayout read(final FileChannel jar) throws IOException {
+        final long endOfCentralDirectory = findEndOfCentralDirectory(jar);
+        final ByteBuffer end = readBuffer(jar, endOfCentralDirectory, END_OF_CENTRAL_DIRECTORY_SIZE);
+        final int entryCount = end.getShort(10) & 0xFFFF;
+        final long centralDirectorySize = end.getInt(12) & ZIP64_MARKER;
+        final long centralDirectoryOffset = end.getInt(16) & ZIP64_MARKER;
+        if (entryCount == 0xFFFF || centralDirectorySize == ZIP64_MARKER || centralDirectoryOffset == ZIP64_MARKER) {
+            throw new IOException("Zip64 jars are not supported.");
+        }
+        // Anything prepended to the jar, such as a launch script, shifts every offset by its length.
+        final long prefixLength = endOfCentralDirectory - centralDirectorySize - centralDirectoryOffset;
+        if (prefixLength < 0) {
+            throw new IOException("The central directory does not fit in the jar.");
+        }
+
+        final ByteBuffer centralDirectory = readBuffer(jar, centralDirectoryOffset + prefixLength, (int) centralDirectorySize);
+        final List<Entry> entries = new ArrayList<>(entryCount);
+        int position = 0;
+        for (int index = 0; index < entryCount; index++) {
+            if (position + CENTRAL_DIRECTORY_ENTRY_SIZE > centralDirectory.limit() || centralDirectory.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new IOException("The central directory is damaged at entry " + index + ".");
+            }
+            final int method = centralDirectory.getShort(position + 10) & 0xFFFF;
+            final long crc = centralDirectory.getInt(position + 16) & ZIP64_MARKER;
+            final long compressedSize = centralDirectory.getInt(position + 20) & ZIP64_MARKER;
+            final int nameLength = centralDirectory.getShort(position + 28) & 0xFFFF;
+            final int extraLength = centralDirectory.getShort(position + 30) & 0xFFFF;
+            final int commentLength = centralDirectory.getShort(position + 32) & 0xFFFF;
+            final long headerOffset = (centralDirectory.getInt(position + 42) & ZIP64_MARKER) + prefixLength;
+            if (compressedSize == ZIP64_MARKER || headerOffset - prefixLength == ZIP64_MARKER) {
+                throw new IOException("Zip64 jars are not supported.");
+            }
+            final byte[] name = new byte[nameLength];
+            centralDirectory.position(position + CENTRAL_DIRECTORY_ENTRY_SIZE);
+            centralDirectory.get(name);
+
+            // The local header repeats the name but may carry a different extra field, so the data starts where it says.
+            final ByteBuffer localHeader = readBuffer(jar, headerOffset, LOCAL_HEADER_SIZE);
+            if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("The local header of entry " + index + " is damaged.");
+            }
+            final long dataOffset = headerOffset + LOCAL_HEADER_SIZE + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+            entries.add(new Entry(new String(name, StandardCharsets.UTF_8), method, crc, compressedSize, headerOffset, dataOffset));
+            position += CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength + extraLength + commentLength;
+        }
+        entries.sort(Comparator.comparingLong(Entry::getHeaderOffset));
+        return new JarLayout(Collections.unmodifiableList(entries));
+    }
+
+    // In the order they are stored.
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    private static long findEndOfCentralDirectory(final FileChannel jar) throws IOException {
+        final long size = jar.size();
+        final int searchLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        final ByteBuffer tail = readBuffer(jar, size - searchLength, searchLength);
+        for (int position = searchLength - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return size - searchLength + position;
+            }
+        }
+        throw new IOException("Not a jar, the end of its central directory was not found.");
+    }
+
+    private static ByteBuffer readBuffer(final FileChannel jar, final long offset, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (jar.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("The jar ends before offset " + (offset + length) + ".");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long headerOffset;
+        private final long dataOffset;
+
+        public Entry(final String name, final int method, final long crc, final long compressedSize, final long headerOffset, final long dataOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.headerOffset = headerOffset;
+            this.dataOffset = dataOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getHeaderOffset() {
+            return headerOffset;
+        }
+
+        public long getDataOffset() {
+            return dataOffset;
+        }
+
+        public long getDataEnd() {
+            return dataOffset + compressedSize;
+        }
+
+        // Entries with the same key are very likely stored identically, which is then checked byte by byte.
+        public String getContentKey() {
+            return String.format("%d:%d:%d", method, crc, compressedSize);
+        }
+    }
+}
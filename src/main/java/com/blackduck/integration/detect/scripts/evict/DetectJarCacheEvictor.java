@@ -0,0 +1,212 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.evict;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.LoggerFactory;
+
+import com.blackduck.integration.detect.scripts.prefetch.DetectJarPrefetcher;
+import com.blackduck.integration.log.IntLogger;
+import com.blackduck.integration.log.Slf4jIntLogger;
+
+/**
+ * Bounds a DETECT_JAR_DOWNLOAD_DIR the way the scripts do when DETECT_JAR_CACHE_MAX_AGE_DAYS or DETECT_JAR_CACHE_MAX_SIZE_MB is set: jars not
+ * used within the maximum age are removed, then the least recently used ones until the rest fit in the maximum size. A jar goes together with its
+ * class data sharing archives, extracted directory, unfinished downloads and use markers. The jar named in detect-last-downloaded-jar.txt (or in
+ * synopsys-detect-last-downloaded-jar.txt, left by the earlier scripts for Detect 8 and 9), and jars that are being downloaded or have an in-use
+ * file, are kept. Unlike the scripts this can not tell whether the process behind an in-use file is still running, so an in-use file only stops
+ * counting once it is older than the maximum age.
+ */
+public class DetectJarCacheEvictor {
+    public static final String MAX_AGE_DAYS_ENV = "DETECT_JAR_CACHE_MAX_AGE_DAYS";
+    public static final String MAX_SIZE_MB_ENV = "DETECT_JAR_CACHE_MAX_SIZE_MB";
+
+    // A class data sharing archive is named for its jar and the Java that created it, e.g. detect-10.0.0-1234abcd.jsa.
+    private static final Pattern ARCHIVE_NAME = Pattern.compile("(.+)-[0-9a-f]+\\.jsa.*");
+    private static final String IN_USE_MARKER = ".jar.in-use-";
+    private static final String LOCK_SUFFIX = ".jar.lock";
+    // A jar extracted for DETECT_EXPLODED_JAR, e.g. detect-10.0.0-exploded, with a .<pid> suffix while it is being extracted.
+    private static final Pattern EXPLODED_NAME = Pattern.compile("(.+)-exploded(\\.[0-9]+)?");
+    private static final String EXPLODED_MARKER_FILE_NAME = "detect-exploded.txt";
+    // Written by the scripts for Detect 8 and 9 before they were generated from the current templates.
+    private static final String LEGACY_LAST_DOWNLOADED_FILE_NAME = "synopsys-detect-last-downloaded-jar.txt";
+
+    private final IntLogger logger = new Slf4jIntLogger(LoggerFactory.getLogger(this.getClass()));
+    private final long maxSizeBytes;
+    private final long maxAgeMillis;
+
+    public DetectJarCacheEvictor() {
+        this(NumberUtils.toLong(System.getenv(MAX_SIZE_MB_ENV), 0L), NumberUtils.toLong(System.getenv(MAX_AGE_DAYS_ENV), 0L));
+    }
+
+    // A limit of 0 or less is not enforced.
+    public DetectJarCacheEvictor(final long maxSizeMegabytes, final long maxAgeDays) {
+        this.maxSizeBytes = Math.max(0L, maxSizeMegabytes) * 1024L * 1024L;
+        this.maxAgeMillis = TimeUnit.DAYS.toMillis(Math.max(0L, maxAgeDays));
+    }
+
+    public List<String> evict(final File downloadDirectory) throws IOException {
+        return evict(downloadDirectory, System.currentTimeMillis());
+    }
+
+    // Returns the names of the evicted jars, least recently used first.
+    public List<String> evict(final File downloadDirectory, final long now) throws IOException {
+        final File[] files = downloadDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list " + downloadDirectory.getAbsolutePath());
+        }
+        final String lastDownloadedJar = readLastDownloadedJar(downloadDirectory);
+
+        final Map<String, CacheEntry> cacheEntries = new LinkedHashMap<>();
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.startsWith("detect-resolution-") || name.startsWith("detect-java-")) {
+                // Quick to recreate, so only their age matters.
+                if (isOlderThanMaxAge(file, now)) {
+                    Files.deleteIfExists(file.toPath());
+                }
+                continue;
+            }
+            final String jarName = findJarName(name);
+            if (jarName == null) {
+                continue;
+            }
+            final CacheEntry cacheEntry = cacheEntries.computeIfAbsent(jarName, CacheEntry::new);
+            if (name.endsWith(LOCK_SUFFIX)) {
+                cacheEntry.kept = true;
+                continue;
+            }
+            if (name.contains(IN_USE_MARKER)) {
+                if (isOlderThanMaxAge(file, now)) {
+                    Files.deleteIfExists(file.toPath());
+                    continue;
+                }
+                cacheEntry.kept = true;
+            }
+            cacheEntry.files.add(file);
+            cacheEntry.sizeBytes += file.isDirectory() ? readExplodedSize(file) : file.length();
+            cacheEntry.lastUsed = Math.max(cacheEntry.lastUsed, file.lastModified());
+        }
+
+        long totalBytes = cacheEntries.values().stream().mapToLong(cacheEntry -> cacheEntry.sizeBytes).sum();
+        final List<CacheEntry> candidates = new ArrayList<>();
+        for (final CacheEntry cacheEntry : cacheEntries.values()) {
+            if (!cacheEntry.kept && !cacheEntry.jarName.equals(lastDownloadedJar)) {
+                candidates.add(cacheEntry);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(cacheEntry -> cacheEntry.lastUsed));
+
+        final List<String> evictedJars = new ArrayList<>();
+        for (final CacheEntry cacheEntry : candidates) {
+            final long unusedMillis = now - cacheEntry.lastUsed;
+            if (maxAgeMillis > 0 && unusedMillis > maxAgeMillis) {
+                logger.info(String.format("Removing %s, it was last used %d days ago.", cacheEntry.jarName, TimeUnit.MILLISECONDS.toDays(unusedMillis)));
+            } else if (maxSizeBytes > 0 && totalBytes > maxSizeBytes) {
+                logger.info(String.format("Removing %s, the least recently used jar, to fit in %d MB.", cacheEntry.jarName, maxSizeBytes / 1024L / 1024L));
+            } else {
+                continue;
+            }
+            for (final File file : cacheEntry.files) {
+                if (file.isDirectory()) {
+                    FileUtils.deleteDirectory(file);
+                } else {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+            totalBytes -= cacheEntry.sizeBytes;
+            evictedJars.add(cacheEntry.jarName);
+        }
+        if (maxSizeBytes > 0 && totalBytes > maxSizeBytes) {
+            logger.warn(String.format("The jars that have to be kept take %d MB, more than the %d MB allowed.", totalBytes / 1024L / 1024L, maxSizeBytes / 1024L / 1024L));
+        }
+        return evictedJars;
+    }
+
+    // The name of the jar a file is kept for, or null when it is not a Detect jar or kept for one.
+    @Nullable
+    private String findJarName(final String fileName) {
+        if (!fileName.startsWith("detect-") && !fileName.startsWith("synopsys-detect-")) {
+            return null;
+        }
+        final int jarIndex = fileName.indexOf(".jar");
+        if (jarIndex > 0) {
+            return fileName.substring(0, jarIndex) + ".jar";
+        }
+        final Matcher archiveMatcher = ARCHIVE_NAME.matcher(fileName);
+        if (archiveMatcher.matches()) {
+            return archiveMatcher.group(1) + ".jar";
+        }
+        final Matcher explodedMatcher = EXPLODED_NAME.matcher(fileName);
+        if (explodedMatcher.matches()) {
+            return explodedMatcher.group(1) + ".jar";
+        }
+        return null;
+    }
+
+    // The scripts record the size of an extracted jar, in KB, in its marker, which saves walking the directory. Without a marker it counts as 0.
+    private long readExplodedSize(final File explodedDirectory) throws IOException {
+        final File markerFile = new File(explodedDirectory, EXPLODED_MARKER_FILE_NAME);
+        if (!markerFile.isFile()) {
+            return 0L;
+        }
+        final String[] fields = StringUtils.split(new String(Files.readAllBytes(markerFile.toPath()), StandardCharsets.UTF_8));
+        return fields.length > 2 ? NumberUtils.toLong(fields[2], 0L) * 1024L : 0L;
+    }
+
+    private boolean isOlderThanMaxAge(final File file, final long now) {
+        return maxAgeMillis > 0 && now - file.lastModified() > maxAgeMillis;
+    }
+
+    // The shell script records the file name, the PowerShell script the full path.
+    @Nullable
+    private String readLastDownloadedJar(final File downloadDirectory) throws IOException {
+        File lastDownloadedFile = new File(downloadDirectory, DetectJarPrefetcher.LAST_DOWNLOADED_FILE_NAME);
+        if (!lastDownloadedFile.isFile()) {
+            lastDownloadedFile = new File(downloadDirectory, LEGACY_LAST_DOWNLOADED_FILE_NAME);
+        }
+        if (!lastDownloadedFile.isFile()) {
+            return null;
+        }
+        final List<String> lines = Files.readAllLines(lastDownloadedFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return null;
+        }
+        final String lastDownloaded = StringUtils.removeStart(lines.get(0).trim(), "\uFEFF");
+        return lastDownloaded.substring(Math.max(lastDownloaded.lastIndexOf('/'), lastDownloaded.lastIndexOf('\\')) + 1);
+    }
+
+    private static class CacheEntry {
+        private final String jarName;
+        private final List<File> files = new ArrayList<>();
+        private long sizeBytes = 0L;
+        private long lastUsed = 0L;
+        private boolean kept = false;
+
+        private CacheEntry(final String jarName) {
+            this.jarName = jarName;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.metrics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackduck.integration.log.IntLogger;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Reads the records of metrics files, or of every file in a metrics folder (collected from many agents, say). A line that is not a record, such as
+ * one cut short when a disk filled up, is skipped rather than failing the whole summary.
+ */
+public class ScriptMetricsReader {
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+    private final IntLogger logger;
+    private final Gson gson = new Gson();
+
+    public ScriptMetricsReader(final IntLogger logger) {
+        this.logger = logger;
+    }
+
+    public List<ScriptRunRecord> read(final List<File> files) throws IOException {
+        final List<ScriptRunRecord> scriptRunRecords = new ArrayList<>();
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                final File[] children = file.listFiles(File::isFile);
+                if (children == null) {
+                    throw new IOException("Unable to list " + file.getAbsolutePath());
+                }
+                Arrays.sort(children);
+                scriptRunRecords.addAll(read(Arrays.asList(children)));
+            } else {
+                readFile(file, scriptRunRecords);
+            }
+        }
+        return scriptRunRecords;
+    }
+
+    private void readFile(final File file, final List<ScriptRunRecord> scriptRunRecords) throws IOException {
+        int skipped = 0;
+        try (final BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = StringUtils.removeStart(line, BYTE_ORDER_MARK).trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    final ScriptRunRecord scriptRunRecord = gson.fromJson(line, ScriptRunRecord.class);
+                    if (scriptRunRecord != null) {
+                        scriptRunRecords.add(scriptRunRecord);
+                    }
+                } catch (final JsonParseException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            logger.warn(String.format("Skipped %d lines of %s that are not run records.", skipped, file.getAbsolutePath()));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Percentiles of the phase durations of many runs, plus how often the resolution and the jar came from the cache. Percentiles use the nearest
+ * rank, so they are always a duration some run actually had.
+ */
+public class ScriptMetricsSummary {
+    public static final String TOTAL = "total";
+
+    // The phases in the order a run goes through them, others sort after these.
+    private static final List<String> PHASE_ORDER = Arrays.asList("resolve", "download", "evict", "java", "detect");
+
+    private final int runs;
+    private final Map<String, DurationSummary> durations;
+    private final Map<String, Integer> scripts;
+    private final Map<String, Integer> resolutions;
+    private final Map<String, Integer> jarCaches;
+    private final Map<Integer, Integer> exitCodes;
+    private final long bytesDownloaded;
+
+    private ScriptMetricsSummary(final int runs, final Map<String, DurationSummary> durations, final Map<String, Integer> scripts, final Map<String, Integer> resolutions,
+        final Map<String, Integer> jarCaches, final Map<Integer, Integer> exitCodes, final long bytesDownloaded) {
+        this.runs = runs;
+        this.durations = durations;
+        this.scripts = scripts;
+        this.resolutions = resolutions;
+        this.jarCaches = jarCaches;
+        this.exitCodes = exitCodes;
+        this.bytesDownloaded = bytesDownloaded;
+    }
+
+    public static ScriptMetricsSummary of(final List<ScriptRunRecord> scriptRunRecords) {
+        final Map<String, List<Long>> millisByPhase = new TreeMap<>(ScriptMetricsSummary::comparePhases);
+        final Map<String, Integer> scripts = new TreeMap<>();
+        final Map<String, Integer> resolutions = new TreeMap<>();
+        final Map<String, Integer> jarCaches = new TreeMap<>();
+        final Map<Integer, Integer> exitCodes = new TreeMap<>();
+        long bytesDownloaded = 0L;
+        for (final ScriptRunRecord scriptRunRecord : scriptRunRecords) {
+            for (final Map.Entry<String, Long> phase : scriptRunRecord.getPhases().entrySet()) {
+                if (phase.getValue() != null) {
+                    millisByPhase.computeIfAbsent(phase.getKey(), ignored -> new ArrayList<>()).add(phase.getValue());
+                }
+            }
+            millisByPhase.computeIfAbsent(TOTAL, ignored -> new ArrayList<>()).add(scriptRunRecord.getTotalMillis());
+            count(scripts, String.valueOf(scriptRunRecord.getScript()));
+            count(resolutions, String.valueOf(scriptRunRecord.getResolution()));
+            count(jarCaches, String.valueOf(scriptRunRecord.getJarCache()));
+            count(exitCodes, scriptRunRecord.getExitCode());
+            bytesDownloaded += scriptRunRecord.getBytesDownloaded();
+        }
+
+        final Map<String, DurationSummary> durations = new LinkedHashMap<>();
+        for (final Map.Entry<String, List<Long>> phase : millisByPhase.entrySet()) {
+            durations.put(phase.getKey(), DurationSummary.of(phase.getValue()));
+        }
+        return new ScriptMetricsSummary(scriptRunRecords.size(), durations, scripts, resolutions, jarCaches, exitCodes, bytesDownloaded);
+    }
+
+    public String toReport() {
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format("%d runs, %d bytes downloaded%n", runs, bytesDownloaded));
+        report.append(String.format("%-10s %7s %9s %9s %9s %9s%n", "phase", "runs", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (final Map.Entry<String, DurationSummary> duration : durations.entrySet()) {
+            final DurationSummary summary = duration.getValue();
+            report.append(String.format("%-10s %7d %9d %9d %9d %9d%n", duration.getKey(), summary.getCount(), summary.getP50(), summary.getP95(), summary.getP99(), summary.getMax()));
+        }
+        report.append(String.format("scripts: %s%n", scripts));
+        report.append(String.format("resolution: %s%n", resolutions));
+        report.append(String.format("jar cache: %s%n", jarCaches));
+        report.append(String.format("exit codes: %s%n", exitCodes));
+        return report.toString();
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public Map<String, DurationSummary> getDurations() {
+        return Collections.unmodifiableMap(durations);
+    }
+
+    public Map<String, Integer> getScripts() {
+        return Collections.unmodifiableMap(scripts);
+    }
+
+    public Map<String, Integer> getResolutions() {
+        return Collections.unmodifiableMap(resolutions);
+    }
+
+    public Map<String, Integer> getJarCaches() {
+        return Collections.unmodifiableMap(jarCaches);
+    }
+
+    public Map<Integer, Integer> getExitCodes() {
+        return Collections.unmodifiableMap(exitCodes);
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    private static <K> void count(final Map<K, Integer> counts, final K key) {
+        counts.merge(key, 1, Integer::sum);
+    }
+
+    private static int comparePhases(final String left, final String right) {
+        final int leftOrder = TOTAL.equals(left) ? Integer.MAX_VALUE : orderOf(left);
+        final int rightOrder = TOTAL.equals(right) ? Integer.MAX_VALUE : orderOf(right);
+        if (leftOrder != rightOrder) {
+            return Integer.compare(leftOrder, rightOrder);
+        }
+        return left.compareTo(right);
+    }
+
+    private static int orderOf(final String phase) {
+        final int index = PHASE_ORDER.indexOf(phase);
+        return index < 0 ? PHASE_ORDER.size() : index;
+    }
+
+    public static class DurationSummary {
+        private final int count;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+        private final long max;
+
+        public DurationSummary(final int count, final long p50, final long p95, final long p99, final long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public static DurationSummary of(final List<Long> millis) {
+            final long[] sorted = millis.stream().mapToLong(Long::longValue).sorted().toArray();
+            return new DurationSummary(sorted.length, percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), sorted[sorted.length - 1]);
+        }
+
+        // The smallest value that at least the given percentage of the values do not exceed.
+        private static long percentile(final long[] sorted, final int percentage) {
+            final int rank = (int) Math.ceil(percentage / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
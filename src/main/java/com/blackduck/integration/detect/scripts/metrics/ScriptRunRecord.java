@@ -0,0 +1,73 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One line of a DETECT_SCRIPT_METRICS_FILE, written by a generated script at the end of a run. Phases map a phase (resolve, download, java,
+ * detect) to its milliseconds, phases a run did not go through are absent.
+ */
+public class ScriptRunRecord {
+    private String script;
+    private String scriptVersion;
+    private long startedAt;
+    private String versionKey;
+    private String jar;
+    private String resolution;
+    private String jarCache;
+    private long bytesDownloaded;
+    private Map<String, Long> phases;
+    private long totalMillis;
+    private int exitCode;
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getScriptVersion() {
+        return scriptVersion;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public String getVersionKey() {
+        return versionKey;
+    }
+
+    public String getJar() {
+        return jar;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public String getJarCache() {
+        return jarCache;
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    public Map<String, Long> getPhases() {
+        return phases == null ? Collections.emptyMap() : phases;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+}
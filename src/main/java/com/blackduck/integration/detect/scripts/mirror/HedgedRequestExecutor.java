@@ -0,0 +1,154 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.mirror;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.IntLogger;
+
+/**
+ * Sends a request to the first mirror and, if no answer has arrived within the hedge delay (or the mirror fails), also sends it to the next
+ * mirror. The first successful answer wins and any answer arriving after that is handed to the discard callback so it can release what it
+ * holds. If no mirror answers within the budget an IntegrationException is thrown, leaving any fallback to the caller.
+ */
+public class HedgedRequestExecutor {
+    private final IntLogger logger;
+    private final RepositoryMirrors repositoryMirrors;
+
+    public HedgedRequestExecutor(final IntLogger logger, final RepositoryMirrors repositoryMirrors) {
+        this.logger = logger;
+        this.repositoryMirrors = repositoryMirrors;
+    }
+
+    public <T> T execute(final MirrorRequest<T> mirrorRequest, final Consumer<T> discard) throws IntegrationException {
+        final List<String> repositoryUrls = repositoryMirrors.getRepositoryUrls();
+        final long deadline = System.currentTimeMillis() + repositoryMirrors.getBudgetMillis();
+        final Object settledLock = new Object();
+        final boolean[] settled = { false };
+        final BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+        final List<String> failures = new ArrayList<>();
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(repositoryUrls.size(), runnable -> {
+            final Thread thread = new Thread(runnable, "detect-mirror-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            int launched = 0;
+            int inFlight = 0;
+            long nextLaunch = 0L;
+            while (true) {
+                final long now = System.currentTimeMillis();
+                if (launched < repositoryUrls.size() && (inFlight == 0 || now >= nextLaunch)) {
+                    final String repositoryUrl = repositoryUrls.get(launched++);
+                    inFlight++;
+                    nextLaunch = now + repositoryMirrors.getHedgeDelayMillis();
+                    if (launched > 1) {
+                        logger.debug(String.format("Also asking %s.", repositoryUrl));
+                    }
+                    executorService.submit(() -> runRequest(repositoryUrl, mirrorRequest, discard, settledLock, settled, outcomes));
+                    continue;
+                }
+
+                if (now >= deadline) {
+                    throw new IntegrationException(String.format("No mirror answered within %d ms (tried %s). %s", repositoryMirrors.getBudgetMillis(), repositoryUrls.subList(0, launched), String.join(" ", failures)));
+                }
+
+                long waitUntil = deadline;
+                if (launched < repositoryUrls.size()) {
+                    waitUntil = Math.min(waitUntil, nextLaunch);
+                }
+                final Outcome<T> outcome = outcomes.poll(Math.max(1L, waitUntil - now), TimeUnit.MILLISECONDS);
+                if (outcome == null) {
+                    continue;
+                }
+
+                inFlight--;
+                if (outcome.failure == null) {
+                    synchronized (settledLock) {
+                        settled[0] = true;
+                        discardRemaining(outcomes, discard);
+                    }
+                    logger.debug(String.format("Using the answer from %s.", outcome.repositoryUrl));
+                    return outcome.result;
+                }
+
+                failures.add(String.format("%s failed: %s.", outcome.repositoryUrl, outcome.failure.getMessage()));
+                logger.warn(String.format("The request to %s failed: %s", outcome.repositoryUrl, outcome.failure.getMessage()));
+                // Don't wait out the hedge delay when a mirror has already given up.
+                nextLaunch = 0L;
+                if (inFlight == 0 && launched == repositoryUrls.size()) {
+                    throw new IntegrationException(String.format("Every mirror failed. %s", String.join(" ", failures)));
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException("Interrupted while waiting on the mirrors.", e);
+        } finally {
+            synchronized (settledLock) {
+                settled[0] = true;
+                discardRemaining(outcomes, discard);
+            }
+            executorService.shutdownNow();
+        }
+    }
+
+    private <T> void runRequest(final String repositoryUrl, final MirrorRequest<T> mirrorRequest, final Consumer<T> discard, final Object settledLock, final boolean[] settled, final BlockingQueue<Outcome<T>> outcomes) {
+        Outcome<T> outcome;
+        try {
+            outcome = new Outcome<>(repositoryUrl, mirrorRequest.execute(repositoryUrl), null);
+        } catch (final Exception e) {
+            outcome = new Outcome<>(repositoryUrl, null, e);
+        }
+
+        synchronized (settledLock) {
+            if (settled[0]) {
+                if (outcome.failure == null) {
+                    discard.accept(outcome.result);
+                }
+            } else {
+                outcomes.add(outcome);
+            }
+        }
+    }
+
+    private <T> void discardRemaining(final BlockingQueue<Outcome<T>> outcomes, final Consumer<T> discard) {
+        Outcome<T> outcome;
+        while ((outcome = outcomes.poll()) != null) {
+            if (outcome.failure == null) {
+                discard.accept(outcome.result);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface MirrorRequest<T> {
+        T execute(String repositoryUrl) throws Exception;
+    }
+
+    private static class Outcome<T> {
+        private final String repositoryUrl;
+        private final T result;
+        private final Exception failure;
+
+        private Outcome(final String repositoryUrl, final T result, final Exception failure) {
+            this.repositoryUrl = repositoryUrl;
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+}
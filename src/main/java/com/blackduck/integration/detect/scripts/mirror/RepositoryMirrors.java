@@ -0,0 +1,88 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.mirror;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+// The ordered list of repositories serving Detect artifacts and how long to wait on them.
+public class RepositoryMirrors {
+    public static final String DEFAULT_REPOSITORY_URL = "https://repo.blackduck.com";
+
+    public static final String MIRRORS_ENV = "DETECT_SCRIPTS_MIRRORS";
+    public static final String HEDGE_DELAY_ENV = "DETECT_SCRIPTS_HEDGE_DELAY";
+    public static final String LOOKUP_BUDGET_ENV = "DETECT_SCRIPTS_LOOKUP_BUDGET";
+
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 2000L;
+    private static final long DEFAULT_LOOKUP_BUDGET_SECONDS = 60L;
+
+    private final List<String> repositoryUrls;
+    private final long hedgeDelayMillis;
+    private final long budgetMillis;
+
+    public RepositoryMirrors(final List<String> repositoryUrls, final long hedgeDelayMillis, final long budgetMillis) {
+        if (repositoryUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one repository url is required.");
+        }
+        this.repositoryUrls = Collections.unmodifiableList(new ArrayList<>(repositoryUrls));
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.budgetMillis = budgetMillis;
+    }
+
+    public static RepositoryMirrors single(final String repositoryUrl) {
+        return new RepositoryMirrors(Collections.singletonList(repositoryUrl), DEFAULT_HEDGE_DELAY_MILLIS, TimeUnit.SECONDS.toMillis(DEFAULT_LOOKUP_BUDGET_SECONDS));
+    }
+
+    /**
+     * DETECT_SCRIPTS_MIRRORS is a comma or space separated list of repository base urls in order of preference (default
+     * https://repo.blackduck.com), DETECT_SCRIPTS_HEDGE_DELAY is how many milliseconds to wait on a mirror before also asking the next one
+     * (default 2000) and DETECT_SCRIPTS_LOOKUP_BUDGET is the number of seconds allowed for the whole lookup (default 60, as in the scripts).
+     */
+    public static RepositoryMirrors fromEnvironment() {
+        final List<String> repositoryUrls = parseRepositoryUrls(System.getenv(MIRRORS_ENV));
+        if (repositoryUrls.isEmpty()) {
+            repositoryUrls.add(DEFAULT_REPOSITORY_URL);
+        }
+        final long hedgeDelayMillis = NumberUtils.toLong(System.getenv(HEDGE_DELAY_ENV), DEFAULT_HEDGE_DELAY_MILLIS);
+        final long budgetSeconds = NumberUtils.toLong(System.getenv(LOOKUP_BUDGET_ENV), DEFAULT_LOOKUP_BUDGET_SECONDS);
+        return new RepositoryMirrors(repositoryUrls, hedgeDelayMillis, TimeUnit.SECONDS.toMillis(budgetSeconds));
+    }
+
+    public static List<String> parseRepositoryUrls(final String value) {
+        final List<String> repositoryUrls = new ArrayList<>();
+        for (final String repositoryUrl : StringUtils.split(StringUtils.defaultString(value), ", ")) {
+            repositoryUrls.add(StringUtils.removeEnd(repositoryUrl.trim(), "/"));
+        }
+        return repositoryUrls;
+    }
+
+    public List<String> getRepositoryUrls() {
+        return repositoryUrls;
+    }
+
+    public String getPrimaryRepositoryUrl() {
+        return repositoryUrls.get(0);
+    }
+
+    public long getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    public int getBudgetSeconds() {
+        return (int) Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(budgetMillis + 999L));
+    }
+}
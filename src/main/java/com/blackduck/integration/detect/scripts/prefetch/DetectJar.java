@@ -0,0 +1,33 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.prefetch;
+
+import org.apache.commons.lang3.StringUtils;
+
+// Where a version spec resolved to.
+public class DetectJar {
+    private final DetectVersionSpec versionSpec;
+    private final String url;
+
+    public DetectJar(final DetectVersionSpec versionSpec, final String url) {
+        this.versionSpec = versionSpec;
+        this.url = url;
+    }
+
+    public DetectVersionSpec getVersionSpec() {
+        return versionSpec;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getFileName() {
+        return StringUtils.substringAfterLast(url, "/");
+    }
+}
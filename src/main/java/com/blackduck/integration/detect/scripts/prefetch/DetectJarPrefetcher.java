@@ -0,0 +1,182 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.prefetch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.LoggerFactory;
+
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.blackduck.integration.detect.scripts.util.FileUtil;
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.IntLogger;
+import com.blackduck.integration.log.Slf4jIntLogger;
+import com.blackduck.integration.rest.HttpUrl;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.blackduck.integration.rest.request.Request;
+import com.blackduck.integration.rest.response.Response;
+import com.google.gson.Gson;
+
+/**
+ * Resolves and downloads a list of Detect versions into a directory laid out like the scripts' DETECT_JAR_DOWNLOAD_DIR: the jars, a
+ * detect-resolution-KEY.txt record for every version key and detect-last-downloaded-jar.txt pointing at the first version in the list. Pointing
+ * DETECT_JAR_DOWNLOAD_DIR at the directory lets the scripts run without downloading anything.
+ */
+public class DetectJarPrefetcher {
+    public static final String PARALLELISM_ENV = "DETECT_SCRIPTS_PREFETCH_PARALLELISM";
+    public static final String LAST_DOWNLOADED_FILE_NAME = "detect-last-downloaded-jar.txt";
+
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final String RESOLUTION_FILE_FORMAT = "detect-resolution-%s.txt";
+
+    private final IntLogger logger = new Slf4jIntLogger(LoggerFactory.getLogger(this.getClass()));
+    private final RepositoryMirrors repositoryMirrors;
+    private final DetectJarResolver detectJarResolver;
+    private final int parallelism;
+
+    /**
+     * DETECT_SCRIPTS_PREFETCH_PARALLELISM bounds how many lookups and downloads run at once (default 4). The mirrors to use are described by
+     * {@link RepositoryMirrors#fromEnvironment()}.
+     */
+    public DetectJarPrefetcher() {
+        this(RepositoryMirrors.fromEnvironment(), NumberUtils.toInt(System.getenv(PARALLELISM_ENV), DEFAULT_PARALLELISM));
+    }
+
+    public DetectJarPrefetcher(final RepositoryMirrors repositoryMirrors, final int parallelism) {
+        this.repositoryMirrors = repositoryMirrors;
+        this.detectJarResolver = new DetectJarResolver(logger, repositoryMirrors);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public List<DetectJar> prefetch(final List<DetectVersionSpec> versionSpecs, final File downloadDirectory) throws IOException, IntegrationException {
+        Files.createDirectories(downloadDirectory.toPath());
+        final ExecutorService executorService = Executors.newFixedThreadPool(Math.min(parallelism, versionSpecs.size()));
+        try {
+            final List<Future<DetectJar>> resolutions = new ArrayList<>();
+            for (final DetectVersionSpec versionSpec : versionSpecs) {
+                resolutions.add(executorService.submit(() -> detectJarResolver.resolve(versionSpec)));
+            }
+            final List<DetectJar> detectJars = new ArrayList<>();
+            for (final Future<DetectJar> resolution : resolutions) {
+                detectJars.add(waitFor(resolution));
+            }
+
+            // Several specs can resolve to the same jar, e.g. DETECT_LATEST_10 and 10.*, it is downloaded once.
+            final Map<String, Future<String>> downloads = new LinkedHashMap<>();
+            for (final DetectJar detectJar : detectJars) {
+                downloads.computeIfAbsent(detectJar.getFileName(), fileName -> executorService.submit(() -> download(detectJar, downloadDirectory)));
+            }
+            final Map<String, String> sha256ByFileName = new LinkedHashMap<>();
+            for (final Map.Entry<String, Future<String>> download : downloads.entrySet()) {
+                sha256ByFileName.put(download.getKey(), waitFor(download.getValue()));
+            }
+
+            final long resolvedAt = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            for (final DetectJar detectJar : detectJars) {
+                if (detectJar.getVersionSpec().getKind() == DetectVersionSpec.Kind.VERSION_KEY) {
+                    writeResolution(detectJar, sha256ByFileName.get(detectJar.getFileName()), resolvedAt, downloadDirectory);
+                }
+            }
+            writeFile(new File(downloadDirectory, LAST_DOWNLOADED_FILE_NAME), detectJars.get(0).getFileName() + "\n");
+            return detectJars;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    // Returns the SHA-256 of the jar, which is only downloaded when it is not in the directory yet.
+    private String download(final DetectJar detectJar, final File downloadDirectory) throws IOException, IntegrationException {
+        final File jarFile = new File(downloadDirectory, detectJar.getFileName());
+        if (jarFile.isFile()) {
+            logger.info(String.format("%s is already present.", jarFile.getAbsolutePath()));
+            return DigestUtil.sha256Hex(jarFile.toPath());
+        }
+
+        logger.info(String.format("Downloading %s", detectJar.getUrl()));
+        final IntHttpClient intHttpClient = new IntHttpClient(logger, new Gson(), repositoryMirrors.getBudgetSeconds(), true, ProxyInfo.NO_PROXY_INFO);
+        try (final Response response = intHttpClient.execute(new Request.Builder(new HttpUrl(detectJar.getUrl())).build())) {
+            response.throwExceptionForError();
+
+            final Path temporaryFile = Files.createTempFile(downloadDirectory.toPath(), detectJar.getFileName(), ".tmp");
+            try {
+                final String sha256 = DigestUtil.copyWithSha256(response.getContent(), temporaryFile);
+                final String expectedSha256 = response.getHeaderValue("X-Checksum-Sha256");
+                if (StringUtils.isNotBlank(expectedSha256) && !expectedSha256.equalsIgnoreCase(sha256)) {
+                    throw new IntegrationException(String.format("%s does not match the repository checksum %s.", detectJar.getUrl(), expectedSha256));
+                }
+                FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+                FileUtil.moveIntoPlace(temporaryFile, jarFile.toPath());
+                logger.info(String.format("Saved %s", jarFile.getAbsolutePath()));
+                return sha256;
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+
+    // The record the scripts write after resolving a version key, see read_cached_resolution in detect-sh.sh.
+    private void writeResolution(final DetectJar detectJar, final String sha256, final long resolvedAt, final File downloadDirectory) throws IOException {
+        final String versionKey = detectJar.getVersionSpec().getValue();
+        final File jarFile = new File(downloadDirectory, detectJar.getFileName());
+        final String marker = String.format("%d %d", jarFile.length(), TimeUnit.MILLISECONDS.toSeconds(jarFile.lastModified()));
+        final String resolution = String.join("\n",
+            "key=" + versionKey,
+            "source=" + detectJar.getUrl(),
+            "filename=" + detectJar.getFileName(),
+            "sha256=" + sha256,
+            "resolvedAt=" + resolvedAt,
+            "marker=" + marker
+        ) + "\n";
+        writeFile(new File(downloadDirectory, String.format(RESOLUTION_FILE_FORMAT, versionKey)), resolution);
+    }
+
+    private void writeFile(final File file, final String content) throws IOException {
+        final Path temporaryFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(temporaryFile, content.getBytes(StandardCharsets.UTF_8));
+            FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+            FileUtil.moveIntoPlace(temporaryFile, file.toPath());
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private <T> T waitFor(final Future<T> future) throws IOException, IntegrationException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException("Interrupted while prefetching Detect.", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof IntegrationException) {
+                throw (IntegrationException) cause;
+            }
+            throw new IntegrationException("Failed to prefetch Detect: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.prefetch;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackduck.integration.detect.scripts.catalog.DetectPropertyCatalogParser;
+import com.blackduck.integration.detect.scripts.catalog.DetectVersionProperty;
+import com.blackduck.integration.detect.scripts.mirror.HedgedRequestExecutor;
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.IntLogger;
+import com.blackduck.integration.rest.HttpUrl;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.blackduck.integration.rest.request.Request;
+import com.blackduck.integration.rest.response.Response;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Finds the download url of a version spec the same way the generated scripts do: version keys are looked up as Artifactory properties,
+ * explicit versions map directly onto the repository layout and version patterns pick the newest matching folder. Lookups are hedged across
+ * the mirrors, and the url is rewritten so the jar is downloaded from the mirror that answered.
+ */
+public class DetectJarResolver {
+    private static final String REPOSITORY_PATH = "/bds-integrations-release/";
+    private static final String STORAGE_API_PATH = "/api/storage/bds-integrations-release/";
+
+    private final IntLogger logger;
+    private final RepositoryMirrors repositoryMirrors;
+    private final Gson gson = new Gson();
+    private final DetectPropertyCatalogParser parser = new DetectPropertyCatalogParser();
+
+    public DetectJarResolver(final IntLogger logger, final RepositoryMirrors repositoryMirrors) {
+        this.logger = logger;
+        this.repositoryMirrors = repositoryMirrors;
+    }
+
+    public DetectJar resolve(final DetectVersionSpec versionSpec) throws IntegrationException {
+        final HedgedRequestExecutor hedgedRequestExecutor = new HedgedRequestExecutor(logger, repositoryMirrors);
+        switch (versionSpec.getKind()) {
+            case VERSION_KEY:
+                return hedgedRequestExecutor.execute(repositoryUrl -> lookUpVersionKey(repositoryUrl, versionSpec), detectJar -> {});
+            case VERSION_PATTERN:
+                return hedgedRequestExecutor.execute(repositoryUrl -> findNewestMatch(repositoryUrl, versionSpec), detectJar -> {});
+            default:
+                return new DetectJar(versionSpec, createJarUrl(repositoryMirrors.getPrimaryRepositoryUrl(), versionSpec, versionSpec.getValue()));
+        }
+    }
+
+    private DetectJar lookUpVersionKey(final String repositoryUrl, final DetectVersionSpec versionSpec) throws IOException, IntegrationException {
+        final String lookupUrl = repositoryUrl + STORAGE_API_PATH + versionSpec.getArtifactPath() + "?properties=" + versionSpec.getValue();
+        try (final Response response = execute(lookupUrl); final Reader reader = new InputStreamReader(response.getContent(), StandardCharsets.UTF_8)) {
+            for (final DetectVersionProperty property : parser.parse(reader)) {
+                if (versionSpec.getValue().equals(property.getName()) && StringUtils.isNotBlank(property.getUrl())) {
+                    return new DetectJar(versionSpec, toRepository(repositoryUrl, property.getUrl()));
+                }
+            }
+        } catch (final JsonParseException e) {
+            throw new IntegrationException(String.format("The response from %s is not a property lookup: %s", lookupUrl, e.getMessage()), e);
+        }
+        throw new IntegrationException(String.format("%s does not define %s.", lookupUrl, versionSpec.getValue()));
+    }
+
+    private DetectJar findNewestMatch(final String repositoryUrl, final DetectVersionSpec versionSpec) throws IOException, IntegrationException {
+        final String folderUrl = repositoryUrl + STORAGE_API_PATH + versionSpec.getArtifactPath();
+        final StorageFolder storageFolder;
+        try (final Response response = execute(folderUrl); final Reader reader = new InputStreamReader(response.getContent(), StandardCharsets.UTF_8)) {
+            storageFolder = gson.fromJson(reader, StorageFolder.class);
+        } catch (final JsonParseException e) {
+            throw new IntegrationException(String.format("The response from %s is not a folder listing: %s", folderUrl, e.getMessage()), e);
+        }
+
+        final List<String> versions = new ArrayList<>();
+        if (storageFolder != null && storageFolder.children != null) {
+            for (final StorageChild child : storageFolder.children) {
+                final String version = StringUtils.removeStart(StringUtils.defaultString(child.uri), "/");
+                if (child.folder && versionSpec.matches(version)) {
+                    versions.add(version);
+                }
+            }
+        }
+        final String newestVersion = versions.stream()
+                                          .max(Comparator.comparing(DetectJarResolver::toVersionParts, DetectJarResolver::compareVersionParts))
+                                          .orElseThrow(() -> new IntegrationException(String.format("No release in %s matches %s.", folderUrl, versionSpec.getValue())));
+        logger.info(String.format("%s resolved to %s.", versionSpec.getValue(), newestVersion));
+        return new DetectJar(versionSpec, createJarUrl(repositoryUrl, versionSpec, newestVersion));
+    }
+
+    private Response execute(final String url) throws IntegrationException {
+        final IntHttpClient intHttpClient = new IntHttpClient(logger, gson, repositoryMirrors.getBudgetSeconds(), true, ProxyInfo.NO_PROXY_INFO);
+        final Response response = intHttpClient.execute(new Request.Builder(new HttpUrl(url)).addHeader("X-Result-Detail", "info").build());
+        try {
+            response.throwExceptionForError();
+        } catch (final IntegrationException e) {
+            closeQuietly(response);
+            throw e;
+        }
+        return response;
+    }
+
+    private void closeQuietly(final Response response) {
+        try {
+            response.close();
+        } catch (final IOException e) {
+            logger.debug("Unable to close a response: " + e.getMessage());
+        }
+    }
+
+    private String createJarUrl(final String repositoryUrl, final DetectVersionSpec versionSpec, final String version) {
+        return String.format("%s%s%s/%s/%s-%s.jar", repositoryUrl, REPOSITORY_PATH, versionSpec.getArtifactPath(), version, versionSpec.getArtifactName(), version);
+    }
+
+    // Property values name the primary repository, the jar is taken from the mirror that answered instead.
+    private String toRepository(final String repositoryUrl, final String url) {
+        final List<String> knownRepositoryUrls = new ArrayList<>(repositoryMirrors.getRepositoryUrls());
+        knownRepositoryUrls.add(RepositoryMirrors.DEFAULT_REPOSITORY_URL);
+        for (final String knownRepositoryUrl : knownRepositoryUrls) {
+            if (url.startsWith(knownRepositoryUrl + "/")) {
+                return repositoryUrl + url.substring(knownRepositoryUrl.length());
+            }
+        }
+        return url;
+    }
+
+    private static int[] toVersionParts(final String version) {
+        final String[] parts = version.split("\\.");
+        final int[] versionParts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            versionParts[i] = Integer.parseInt(parts[i]);
+        }
+        return versionParts;
+    }
+
+    private static int compareVersionParts(final int[] left, final int[] right) {
+        for (int i = 0; i < Math.max(left.length, right.length); i++) {
+            final int leftPart = i < left.length ? left[i] : 0;
+            final int rightPart = i < right.length ? right[i] : 0;
+            if (leftPart != rightPart) {
+                return Integer.compare(leftPart, rightPart);
+            }
+        }
+        return 0;
+    }
+
+    // The parts of an Artifactory storage API folder listing that are used.
+    private static class StorageFolder {
+        private List<StorageChild> children;
+    }
+
+    private static class StorageChild {
+        private String uri;
+        private boolean folder;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.prefetch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * One entry of a prefetch list: a version key such as DETECT_LATEST_10 (a bare major version such as 10 is short for it), an explicit version
+ * such as 10.2.1, or a version pattern such as 10.2.* that stands for the newest release it matches.
+ */
+public class DetectVersionSpec {
+    public enum Kind {
+        VERSION_KEY,
+        VERSION,
+        VERSION_PATTERN
+    }
+
+    private static final String VERSION_KEY_PREFIX = "DETECT_LATEST_";
+    private static final Pattern VERSION_KEY = Pattern.compile(VERSION_KEY_PREFIX + "(\\d+)");
+    private static final Pattern MAJOR_VERSION = Pattern.compile("(\\d+)");
+    private static final Pattern VERSION = Pattern.compile("(\\d+)(\\.\\d+)+(-[A-Za-z0-9.]+)?");
+    private static final Pattern VERSION_PATTERN = Pattern.compile("(\\d+)(\\.\\d+)*\\.\\*");
+    private static final Pattern RELEASE_VERSION = Pattern.compile("\\d+(\\.\\d+)*");
+
+    private final Kind kind;
+    private final String value;
+    private final int majorVersion;
+
+    private DetectVersionSpec(final Kind kind, final String value, final int majorVersion) {
+        this.kind = kind;
+        this.value = value;
+        this.majorVersion = majorVersion;
+    }
+
+    // Entries are separated by commas or whitespace, e.g. "DETECT_LATEST_8,9,10 10.2.*".
+    public static List<DetectVersionSpec> parseList(final String specs) {
+        final List<DetectVersionSpec> versionSpecs = new ArrayList<>();
+        for (final String spec : StringUtils.split(StringUtils.defaultString(specs), ", \t")) {
+            versionSpecs.add(parse(spec));
+        }
+        if (versionSpecs.isEmpty()) {
+            throw new IllegalArgumentException("At least one Detect version is required.");
+        }
+        return versionSpecs;
+    }
+
+    public static DetectVersionSpec parse(final String spec) {
+        final String trimmedSpec = spec.trim();
+        Matcher matcher = VERSION_KEY.matcher(trimmedSpec);
+        if (matcher.matches()) {
+            return new DetectVersionSpec(Kind.VERSION_KEY, trimmedSpec, Integer.parseInt(matcher.group(1)));
+        }
+        matcher = MAJOR_VERSION.matcher(trimmedSpec);
+        if (matcher.matches()) {
+            return new DetectVersionSpec(Kind.VERSION_KEY, VERSION_KEY_PREFIX + trimmedSpec, Integer.parseInt(matcher.group(1)));
+        }
+        matcher = VERSION.matcher(trimmedSpec);
+        if (matcher.matches()) {
+            return new DetectVersionSpec(Kind.VERSION, trimmedSpec, Integer.parseInt(matcher.group(1)));
+        }
+        matcher = VERSION_PATTERN.matcher(trimmedSpec);
+        if (matcher.matches()) {
+            return new DetectVersionSpec(Kind.VERSION_PATTERN, trimmedSpec, Integer.parseInt(matcher.group(1)));
+        }
+        throw new IllegalArgumentException(String.format("'%s' is not a Detect version key (DETECT_LATEST_10 or 10), version (10.2.1) or version pattern (10.2.*).", spec));
+    }
+
+    // Only plain release versions match, so a pattern never picks a qualified build such as 10.2.0-SIGQA1.
+    public boolean matches(final String version) {
+        if (kind != Kind.VERSION_PATTERN) {
+            return value.equals(version);
+        }
+        final String prefix = StringUtils.removeEnd(value, "*");
+        return version.startsWith(prefix) && RELEASE_VERSION.matcher(version).matches();
+    }
+
+    // Detect 9 and earlier were published as synopsys-detect.
+    public String getArtifactPath() {
+        if (majorVersion <= 9) {
+            return "com/synopsys/integration/synopsys-detect";
+        }
+        return "com/blackduck/integration/detect";
+    }
+
+    public String getArtifactName() {
+        return StringUtils.substringAfterLast(getArtifactPath(), "/");
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
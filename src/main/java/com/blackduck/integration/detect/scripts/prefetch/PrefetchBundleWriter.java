@@ -0,0 +1,54 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.prefetch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.blackduck.integration.detect.scripts.util.FileUtil;
+
+/**
+ * Packs a prefetched download directory into a zip that can be extracted as DETECT_JAR_DOWNLOAD_DIR on a machine without access to the
+ * repository. Jars are already compressed, so they are stored without compressing them again.
+ */
+public class PrefetchBundleWriter {
+    public void write(final File downloadDirectory, final File bundleFile) throws IOException {
+        final File[] files = downloadDirectory.listFiles(file -> file.isFile() && !file.equals(bundleFile) && !file.getName().endsWith(".tmp"));
+        if (files == null) {
+            throw new IOException("Unable to list " + downloadDirectory.getAbsolutePath());
+        }
+        Arrays.sort(files);
+
+        final File bundleDirectory = bundleFile.getAbsoluteFile().getParentFile();
+        Files.createDirectories(bundleDirectory.toPath());
+        final Path temporaryFile = Files.createTempFile(bundleDirectory.toPath(), bundleFile.getName(), ".tmp");
+        try {
+            try (final ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                for (final File file : files) {
+                    zipOutputStream.setLevel(file.getName().endsWith(".jar") ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                    final ZipEntry zipEntry = new ZipEntry(file.getName());
+                    zipEntry.setTime(file.lastModified());
+                    zipOutputStream.putNextEntry(zipEntry);
+                    Files.copy(file.toPath(), zipOutputStream);
+                    zipOutputStream.closeEntry();
+                }
+            }
+            FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+            FileUtil.moveIntoPlace(temporaryFile, bundleFile.toPath());
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+}
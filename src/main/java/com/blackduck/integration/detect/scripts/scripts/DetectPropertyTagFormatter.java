@@ -0,0 +1,45 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+// Wraps the available DETECT_VERSION_KEY values into the comment block written into every script.
+public class DetectPropertyTagFormatter {
+    public String format(final List<String> detectPropertyTags) {
+        final int MAX_COMMENT_CHARACTERS = 55;
+        final StringBuilder result = new StringBuilder();
+
+        StringBuilder line = new StringBuilder("#");
+        for (int i = 0; i < detectPropertyTags.size(); i++) {
+            final String tag = detectPropertyTags.get(i);
+            String newText = " " + tag;
+
+            final boolean nextTagExists = i + 1 < detectPropertyTags.size();
+            if (nextTagExists) {
+                newText += ",";
+            }
+
+            if (line.length() + newText.length() < MAX_COMMENT_CHARACTERS) {
+                line.append(newText);
+            } else {
+                result.append(line);
+                result.append(System.lineSeparator());
+                line = new StringBuilder("#" + newText);
+            }
+        }
+
+        if (StringUtils.isNotBlank(line.toString())) {
+            result.append(line);
+        }
+
+        return result.toString();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackduck.integration.detect.scripts.catalog.DetectJarChecksum;
+
+// Writes the resolution table embedded in every script, a "<version key> <version> <jar path> <size> <sha256>" line per version key.
+public class EmbeddedResolutionFormatter {
+    // The table is written into a quoted string of both scripts, so anything that could end it or be expanded is left out.
+    private static final Pattern SAFE_VALUE = Pattern.compile("[A-Za-z0-9._/+-]+");
+
+    public String format(final Map<String, DetectJarChecksum> checksums) {
+        final List<String> lines = new ArrayList<>();
+        for (final Map.Entry<String, DetectJarChecksum> entry : checksums.entrySet()) {
+            final DetectJarChecksum checksum = entry.getValue();
+            // Jars are laid out as .../<version>/<name>-<version>.jar.
+            final String versionFolder = StringUtils.substringBeforeLast(checksum.getJarPath(), "/");
+            final String version = StringUtils.substringAfterLast(versionFolder, "/");
+            final String line = String.join(" ", entry.getKey(), version, checksum.getJarPath(), Long.toString(checksum.getSize()), checksum.getSha256());
+            if (StringUtils.isNotBlank(version) && SAFE_VALUE.matcher(line.replace(' ', '-')).matches()) {
+                lines.add(line);
+            }
+        }
+        return String.join("\n", lines);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.io.File;
+
+// A single script to be written: one target rendered for one Detect major version into one output file.
+public class ScriptArtifact {
+    private final ScriptTarget scriptTarget;
+    private final int detectMajorVersion;
+    private final File outputFile;
+
+    public ScriptArtifact(final ScriptTarget scriptTarget, final int detectMajorVersion, final File outputFile) {
+        this.scriptTarget = scriptTarget;
+        this.detectMajorVersion = detectMajorVersion;
+        this.outputFile = outputFile;
+    }
+
+    public ScriptTarget getScriptTarget() {
+        return scriptTarget;
+    }
+
+    public int getDetectMajorVersion() {
+        return detectMajorVersion;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+}
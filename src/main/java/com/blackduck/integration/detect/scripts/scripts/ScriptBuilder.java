@@ -7,175 +7,240 @@
  */
 package com.blackduck.integration.detect.scripts.scripts;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
+import com.blackduck.integration.detect.scripts.catalog.DetectJarChecksumResolver;
+import com.blackduck.integration.detect.scripts.catalog.DetectPropertyCatalog;
+import com.blackduck.integration.detect.scripts.catalog.DetectPropertyCatalogResolver;
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.blackduck.integration.detect.scripts.util.FileUtil;
 import com.blackduck.integration.exception.IntegrationException;
 import com.blackduck.integration.log.IntLogger;
 import com.blackduck.integration.log.Slf4jIntLogger;
-import com.blackduck.integration.rest.HttpUrl;
-import com.blackduck.integration.rest.client.IntHttpClient;
-import com.blackduck.integration.rest.proxy.ProxyInfo;
-import com.blackduck.integration.rest.request.Request;
-import com.blackduck.integration.rest.response.Response;
 import com.blackduck.integration.util.ResourceUtil;
 
 public class ScriptBuilder {
-    // When moving to a new Detect major version:
-    // 1. Add the pair of scripts (.sh and .ps1) for the CURRENT major to src/main/resources/earlierversions
-    // 2. Update DETECT_MAJOR_VERSION to the NEW major version.
-    private static final int DETECT_MAJOR_VERSION = 10;
+    private static final String VERSION_TOKEN = "SCRIPT_VERSION";
+    private static final String BUILD_DATE_TOKEN = "BUILD_DATE";
+    private static final String MAJOR_VERSIONS_TOKEN = "DETECT_MAJOR_VERSIONS";
+    private static final String DEFAULT_VERSION_KEY_TOKEN = "DEFAULT_DETECT_VERSION_KEY";
+    private static final String EMBEDDED_RESOLUTION_TOKEN = "EMBEDDED_RESOLUTION";
+    private static final String EMBEDDED_RESOLUTION_TIME_TOKEN = "EMBEDDED_RESOLUTION_TIME";
+
+    // When true, scripts whose inputs match the manifest from the previous run are left untouched.
+    public static final String INCREMENTAL_ENV = "DETECT_SCRIPTS_INCREMENTAL";
+
+    // When moving to a new Detect major version, append it to SUPPORTED_DETECT_MAJOR_VERSIONS. Scripts for every listed major version are
+    // rendered from the same templates, so nothing needs to be copied by hand.
+    private static final List<Integer> SUPPORTED_DETECT_MAJOR_VERSIONS = Arrays.asList(8, 9, 10);
 
     private final IntLogger logger = new Slf4jIntLogger(LoggerFactory.getLogger(this.getClass()));
+    private final DetectPropertyCatalogResolver propertyCatalogResolver;
+    private final DetectJarChecksumResolver jarChecksumResolver;
+    private final ScriptTargetRegistry scriptTargetRegistry;
+    private final ScriptTemplateCache scriptTemplateCache = new ScriptTemplateCache();
+    private final DetectPropertyTagFormatter propertyTagFormatter = new DetectPropertyTagFormatter();
+    private final EmbeddedResolutionFormatter embeddedResolutionFormatter = new EmbeddedResolutionFormatter();
+    private final ScriptDistributionWriter scriptDistributionWriter = new ScriptDistributionWriter();
+    private final boolean incremental;
+
+    private DetectPropertyCatalog propertyCatalog;
+    private String embeddedResolution;
+    private String embeddedResolutionTime;
+
+    public ScriptBuilder() {
+        this.propertyCatalogResolver = DetectPropertyCatalogResolver.fromEnvironment(logger);
+        this.jarChecksumResolver = DetectJarChecksumResolver.fromEnvironment(logger);
+        this.scriptTargetRegistry = ScriptTargetRegistry.defaults();
+        this.incremental = FileUtil.isEnabled(System.getenv(INCREMENTAL_ENV));
+    }
+
+    public ScriptBuilder(final DetectPropertyCatalogResolver propertyCatalogResolver, final DetectJarChecksumResolver jarChecksumResolver, final ScriptTargetRegistry scriptTargetRegistry, final boolean incremental) {
+        this.propertyCatalogResolver = propertyCatalogResolver;
+        this.jarChecksumResolver = jarChecksumResolver;
+        this.scriptTargetRegistry = scriptTargetRegistry;
+        this.incremental = incremental;
+    }
 
     public void generateScripts(final File outputDirectory) throws IOException, IntegrationException {
         final String scriptVersion = ResourceUtil.getResourceAsString(this.getClass(), "/version.txt", StandardCharsets.UTF_8);
-        final List<File> scriptFiles = new ArrayList<>();
-        generateScript(scriptFiles, outputDirectory, "detect-sh.sh", "sh", scriptVersion, DETECT_MAJOR_VERSION);
-        generateScript(scriptFiles, outputDirectory, "detect-ps.ps1", "ps1", scriptVersion, DETECT_MAJOR_VERSION);
+        // Resolve the catalog and the jar checksums once up front, every script generated below shares them.
+        getEmbeddedResolution();
 
-        File dir = new File("src/main/resources/earlierversions");
-        for (File nextFile : dir.listFiles()) {
-            FileUtils.copyFileToDirectory(nextFile, outputDirectory);
+        final List<ScriptArtifact> scriptArtifacts = new ArrayList<>();
+        for (final int detectMajorVersion : SUPPORTED_DETECT_MAJOR_VERSIONS) {
+            for (final ScriptTarget scriptTarget : scriptTargetRegistry.getTargets()) {
+                collectScriptArtifacts(scriptArtifacts, outputDirectory, scriptTarget, scriptVersion, detectMajorVersion);
+            }
         }
+
+        final ScriptManifest scriptManifest = ScriptManifest.load(outputDirectory);
+        final List<File> scriptFiles = buildScriptsConcurrently(scriptArtifacts, scriptVersion, scriptManifest);
+        scriptManifest.save(outputDirectory);
+        final List<File> distributionFiles = scriptDistributionWriter.write(outputDirectory, scriptArtifacts, scriptVersion);
+
         scriptFiles.forEach(this::logFileLocation);
+        distributionFiles.forEach(file -> logger.info(String.format("Generated distribution file at: %s", file.getAbsolutePath())));
+        final int unchangedCount = scriptArtifacts.size() - scriptFiles.size();
+        if (unchangedCount > 0) {
+            logger.info(String.format("Left %d unchanged script(s) in place.", unchangedCount));
+        }
     }
 
     private void logFileLocation(final File file) {
         logger.info(String.format("Generated script at: %s", file.getAbsolutePath()));
     }
 
-    public void generateScript(List<File> scriptFiles, final File outputDirectory, final String templateFileName, final String scriptExtension, final String scriptVersion, int detectMajorVersion) throws IOException, IntegrationException {
-        final File shellScriptVersionlessFile = new File(outputDirectory, generateVersionlessScriptFilename(scriptExtension, detectMajorVersion));
-        final File shellScriptVersionedFile = new File(outputDirectory, generateVersionedScriptFilename(scriptVersion, scriptExtension, detectMajorVersion));
+    public void generateScript(List<File> scriptFiles, final File outputDirectory, final ScriptTarget scriptTarget, final String scriptVersion, int detectMajorVersion) throws IOException, IntegrationException {
+        final List<ScriptArtifact> scriptArtifacts = new ArrayList<>();
+        collectScriptArtifacts(scriptArtifacts, outputDirectory, scriptTarget, scriptVersion, detectMajorVersion);
+        final ScriptManifest scriptManifest = new ScriptManifest();
+        for (final ScriptArtifact scriptArtifact : scriptArtifacts) {
+            final File createdFile = buildScript(scriptArtifact, scriptVersion, scriptManifest);
+            if (createdFile != null) {
+                scriptFiles.add(createdFile);
+            }
+        }
+    }
 
-        String detectVersionPropertyName = generateDetectVersionPropertyName(detectMajorVersion);
+    private void collectScriptArtifacts(final List<ScriptArtifact> scriptArtifacts, final File outputDirectory, final ScriptTarget scriptTarget, final String scriptVersion, final int detectMajorVersion) {
         if (!scriptVersion.contains("-SNAPSHOT")) {
-            final File createdFile = buildScript(templateFileName, shellScriptVersionlessFile, scriptVersion, detectVersionPropertyName);
-            scriptFiles.add(createdFile);
+            final File versionlessFile = new File(outputDirectory, scriptTarget.getFileName(detectMajorVersion, null));
+            scriptArtifacts.add(new ScriptArtifact(scriptTarget, detectMajorVersion, versionlessFile));
         }
 
-        final File createdFile = buildScript(templateFileName, shellScriptVersionedFile, scriptVersion, detectVersionPropertyName);
-        scriptFiles.add(createdFile);
-    }
-
-    private String generateDetectVersionPropertyName(final int detectMajorVersion) {
-        return String.format("DETECT_LATEST_%s", detectMajorVersion);
+        final File versionedFile = new File(outputDirectory, scriptTarget.getFileName(detectMajorVersion, scriptVersion));
+        scriptArtifacts.add(new ScriptArtifact(scriptTarget, detectMajorVersion, versionedFile));
     }
 
-    private String generateVersionlessScriptFilename(final String scriptExtension, int detectMajorVersion) {
-        return generateScriptFilename(detectMajorVersion, scriptExtension, null);
-    }
+    private List<File> buildScriptsConcurrently(final List<ScriptArtifact> scriptArtifacts, final String scriptVersion, final ScriptManifest scriptManifest) throws IOException, IntegrationException {
+        final int threadCount = Math.max(1, Math.min(scriptArtifacts.size(), Runtime.getRuntime().availableProcessors()));
+        final ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Future<File>> futures = new ArrayList<>();
+            for (final ScriptArtifact scriptArtifact : scriptArtifacts) {
+                futures.add(executorService.submit(() -> buildScript(scriptArtifact, scriptVersion, scriptManifest)));
+            }
 
-    private String generateVersionedScriptFilename(String scriptVersion, String scriptExtension, int detectMajorVersion) {
-        return generateScriptFilename(detectMajorVersion, scriptExtension, scriptVersion);
+            final List<File> scriptFiles = new ArrayList<>();
+            for (final Future<File> future : futures) {
+                final File createdFile = waitForScript(future);
+                if (createdFile != null) {
+                    scriptFiles.add(createdFile);
+                }
+            }
+            return scriptFiles;
+        } finally {
+            executorService.shutdownNow();
+        }
     }
 
-    private String generateScriptFilename(int detectMajorVersion, String scriptExtension, @Nullable String scriptVersion) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("detect");
-        sb.append(detectMajorVersion);
-        if (scriptVersion != null) {
-            sb.append("-");
-            sb.append(scriptVersion);
+    private File waitForScript(final Future<File> future) throws IOException, IntegrationException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException("Interrupted while generating scripts.", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof IntegrationException) {
+                throw (IntegrationException) cause;
+            }
+            throw new IntegrationException("Failed to generate a script: " + cause.getMessage(), cause);
         }
-        sb.append(".");
-        sb.append(scriptExtension);
-        return sb.toString();
     }
 
-    private File buildScript(final String scriptTemplateFileName, final File outputFile, final String scriptVersion, final String detectVersionPropertyName) throws IOException, IntegrationException {
-        final String VERSION_TOKEN = "//SCRIPT_VERSION//";
-        final String BUILD_DATE_TOKEN = "//BUILD_DATE//";
-        final String MAJOR_VERSIONS_TOKEN = "//DETECT_MAJOR_VERSIONS//";
-        final String DEFAULT_VERSION_KEY_TOKEN = "//DEFAULT_DETECT_VERSION_KEY//";
-
-        String scriptContents = ResourceUtil.getResourceAsString(this.getClass(), "/templates/" + scriptTemplateFileName, StandardCharsets.UTF_8);
-        scriptContents = scriptContents.replaceAll(VERSION_TOKEN, scriptVersion);
-
-        final Date date = Date.from(Instant.now());
-        final DateFormat dateFormat = new SimpleDateFormat("YYYY-MM-dd");
-        final String formattedDate = dateFormat.format(date);
-        scriptContents = scriptContents.replaceAll(BUILD_DATE_TOKEN, formattedDate);
-
-        final String artifactoryUrl = "https://repo.blackduck.com/bds-integrations-release/com/blackduck/integration/detect?properties";
-        final List<String> detectPropertyTags = fetchDetectPropertyTags(artifactoryUrl);
-
-        final String majorVersionsCommentBlock = formatDetectPropertyTags(detectPropertyTags);
-        scriptContents = scriptContents.replace(MAJOR_VERSIONS_TOKEN, majorVersionsCommentBlock);
+    private String generateDetectVersionPropertyName(final int detectMajorVersion) {
+        return String.format("DETECT_LATEST_%s", detectMajorVersion);
+    }
 
+    // Returns null when incremental generation found the existing script up to date.
+    @Nullable
+    private File buildScript(final ScriptArtifact scriptArtifact, final String scriptVersion, final ScriptManifest scriptManifest) throws IOException, IntegrationException {
+        final ScriptTarget scriptTarget = scriptArtifact.getScriptTarget();
+        final File outputFile = scriptArtifact.getOutputFile();
+        final String detectVersionPropertyName = generateDetectVersionPropertyName(scriptArtifact.getDetectMajorVersion());
+
+        final Map<String, String> tokenValues = new HashMap<>();
+        tokenValues.put(VERSION_TOKEN, scriptVersion);
+        tokenValues.put(BUILD_DATE_TOKEN, LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE));
+        tokenValues.put(MAJOR_VERSIONS_TOKEN, propertyTagFormatter.format(getPropertyCatalog().getPropertyTags()));
         // Lock this script's default artifactory property name to the given Detect major version
-        scriptContents = scriptContents.replace(DEFAULT_VERSION_KEY_TOKEN, detectVersionPropertyName);
+        tokenValues.put(DEFAULT_VERSION_KEY_TOKEN, detectVersionPropertyName);
+        final String scriptEmbeddedResolution = getEmbeddedResolution();
+        tokenValues.put(EMBEDDED_RESOLUTION_TOKEN, scriptEmbeddedResolution);
+        tokenValues.put(EMBEDDED_RESOLUTION_TIME_TOKEN, embeddedResolutionTime);
+
+        final ScriptTemplate scriptTemplate = scriptTemplateCache.getTemplate(scriptTarget.getTemplateFileName());
+        final DetectPropertyCatalog detectPropertyCatalog = getPropertyCatalog();
+        // The build date and resolution time are deliberately not inputs, a script that differs only by its date stamps is not regenerated.
+        final String inputHash = DigestUtil.sha256Hex(String.join("\n", scriptTemplate.getDigest(), scriptVersion, detectPropertyCatalog.getDigest(), scriptEmbeddedResolution, scriptTarget.getName(), Integer.toString(scriptArtifact.getDetectMajorVersion()), outputFile.getName()));
+        if (incremental && scriptManifest.isUpToDate(outputFile, inputHash)) {
+            logger.debug(String.format("Script is up to date: %s", outputFile.getAbsolutePath()));
+            return null;
+        }
 
-        outputFile.delete();
-        FileUtils.write(outputFile, scriptContents, StandardCharsets.UTF_8);
-        outputFile.setExecutable(true);
+        final String outputHash = writeScriptAtomically(scriptTarget, scriptTemplate, tokenValues, outputFile);
+        scriptManifest.record(outputFile, inputHash, outputHash);
 
         return outputFile;
     }
 
-    private String formatDetectPropertyTags(final List<String> detectPropertyTags) {
-        final int MAX_COMMENT_CHARACTERS = 55;
-        final StringBuilder result = new StringBuilder();
-
-        StringBuilder line = new StringBuilder("#");
-        for (int i = 0; i < detectPropertyTags.size(); i++) {
-            final String tag = detectPropertyTags.get(i);
-            String newText = " " + tag;
-
-            final boolean nextTagExists = i + 1 < detectPropertyTags.size();
-            if (nextTagExists) {
-                newText += ",";
-            }
-
-            if (line.length() + newText.length() < MAX_COMMENT_CHARACTERS) {
-                line.append(newText);
-            } else {
-                result.append(line);
-                result.append(System.lineSeparator());
-                line = new StringBuilder("#" + newText);
+    private String writeScriptAtomically(final ScriptTarget scriptTarget, final ScriptTemplate scriptTemplate, final Map<String, String> tokenValues, final File outputFile) throws IOException, IntegrationException {
+        final Path temporaryFile = Files.createTempFile(outputFile.getParentFile().toPath(), outputFile.getName(), ".tmp");
+        final MessageDigest messageDigest = DigestUtil.createSha256();
+        try {
+            try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(Files.newOutputStream(temporaryFile), messageDigest), StandardCharsets.UTF_8))) {
+                scriptTarget.render(scriptTemplate, tokenValues, writer);
             }
+            FileUtil.setPermissions(temporaryFile, "rwxr-xr-x");
+            FileUtil.moveIntoPlace(temporaryFile, outputFile.toPath());
+        } finally {
+            Files.deleteIfExists(temporaryFile);
         }
+        return DigestUtil.toHex(messageDigest.digest());
+    }
 
-        if (StringUtils.isNotBlank(line.toString())) {
-            result.append(line);
+    private synchronized DetectPropertyCatalog getPropertyCatalog() throws IOException, IntegrationException {
+        if (propertyCatalog == null) {
+            propertyCatalog = propertyCatalogResolver.resolve();
         }
-
-        return result.toString();
+        return propertyCatalog;
     }
 
-    private List<String> fetchDetectPropertyTags(final String artifactoryUrl) throws IOException, IntegrationException {
-        final IntHttpClient intHttpClient = new IntHttpClient(logger, new Gson(), 200, true, ProxyInfo.NO_PROXY_INFO);
-        final Request request = new Request.Builder(new HttpUrl(artifactoryUrl)).build();
-
-        final List<String> propertyTags = new ArrayList<>();
-        try (final Response response = intHttpClient.execute(request)) {
-            final String responseContent = response.getContentString(StandardCharsets.UTF_8);
-            final Pattern pattern = Pattern.compile("\"DETECT_LATEST.*?\"");
-            final Matcher matcher = pattern.matcher(responseContent);
-
-            while (matcher.find()) {
-                final String tag = matcher.group();
-                propertyTags.add(tag.replace("\"", ""));
-            }
+    private synchronized String getEmbeddedResolution() throws IOException, IntegrationException {
+        if (embeddedResolution == null) {
+            embeddedResolutionTime = DateTimeFormatter.ISO_INSTANT.format(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+            embeddedResolution = embeddedResolutionFormatter.format(jarChecksumResolver.resolve(getPropertyCatalog()));
         }
-
-        return propertyTags;
+        return embeddedResolution;
     }
 }
@@ -0,0 +1,140 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.blackduck.integration.detect.scripts.util.FileUtil;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Writes what a web server or CDN needs to serve the generated scripts cheaply: a gzip variant next to every script, and scripts.json, which
+ * lists each script's version, size and SHA-256 with those of its variants. The SHA-256 doubles as a strong ETag, so a client that sends it
+ * back in If-None-Match can be answered with a 304. The gzip variants carry no timestamp, so the same script always compresses to the same
+ * bytes, and files whose content did not change are left in place.
+ */
+public class ScriptDistributionWriter {
+    public static final String MANIFEST_FILE_NAME = "scripts.json";
+    public static final String GZIP_EXTENSION = ".gz";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    // Returns the files that were written, unchanged variants and an unchanged manifest are not.
+    public List<File> write(final File outputDirectory, final List<ScriptArtifact> scriptArtifacts, final String scriptVersion) throws IOException {
+        final List<File> writtenFiles = new ArrayList<>();
+        final ManifestData manifestData = new ManifestData();
+        manifestData.version = scriptVersion;
+        manifestData.scripts = new ArrayList<>();
+
+        final List<ScriptArtifact> sortedArtifacts = new ArrayList<>(scriptArtifacts);
+        sortedArtifacts.sort(Comparator.comparing(scriptArtifact -> scriptArtifact.getOutputFile().getName()));
+        for (final ScriptArtifact scriptArtifact : sortedArtifacts) {
+            final File scriptFile = scriptArtifact.getOutputFile();
+            final byte[] script = Files.readAllBytes(scriptFile.toPath());
+
+            final ScriptData scriptData = new ScriptData();
+            scriptData.name = scriptFile.getName();
+            scriptData.target = scriptArtifact.getScriptTarget().getName();
+            scriptData.detectMajorVersion = scriptArtifact.getDetectMajorVersion();
+            scriptData.size = script.length;
+            scriptData.sha256 = DigestUtil.sha256Hex(script);
+            scriptData.etag = toEntityTag(scriptData.sha256);
+            scriptData.variants = new ArrayList<>();
+
+            final File gzipFile = new File(outputDirectory, scriptFile.getName() + GZIP_EXTENSION);
+            final byte[] gzip = gzip(script);
+            if (writeIfChanged(gzip, gzipFile)) {
+                writtenFiles.add(gzipFile);
+            }
+            final VariantData gzipVariant = new VariantData();
+            gzipVariant.name = gzipFile.getName();
+            gzipVariant.encoding = "gzip";
+            gzipVariant.size = gzip.length;
+            gzipVariant.sha256 = DigestUtil.sha256Hex(gzip);
+            gzipVariant.etag = toEntityTag(gzipVariant.sha256);
+            scriptData.variants.add(gzipVariant);
+
+            manifestData.scripts.add(scriptData);
+        }
+
+        final File manifestFile = new File(outputDirectory, MANIFEST_FILE_NAME);
+        if (writeIfChanged(GSON.toJson(manifestData).getBytes(StandardCharsets.UTF_8), manifestFile)) {
+            writtenFiles.add(manifestFile);
+        }
+        return writtenFiles;
+    }
+
+    private String toEntityTag(final String sha256) {
+        return "\"" + sha256 + "\"";
+    }
+
+    private byte[] gzip(final byte[] content) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 3);
+        // GZIPOutputStream writes a zero modification time, only the compression level needs raising.
+        try (final OutputStream gzipOutputStream = new GZIPOutputStream(compressed) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzipOutputStream.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    private boolean writeIfChanged(final byte[] content, final File file) throws IOException {
+        if (file.isFile() && file.length() == content.length && Arrays.equals(content, Files.readAllBytes(file.toPath()))) {
+            return false;
+        }
+        final Path temporaryFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(temporaryFile, content);
+            FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+            FileUtil.moveIntoPlace(temporaryFile, file.toPath());
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+        return true;
+    }
+
+    private static class ManifestData {
+        private String version;
+        private List<ScriptData> scripts;
+    }
+
+    private static class ScriptData {
+        private String name;
+        private String target;
+        private int detectMajorVersion;
+        private long size;
+        private String sha256;
+        private String etag;
+        private List<VariantData> variants;
+    }
+
+    private static class VariantData {
+        private String name;
+        private String encoding;
+        private long size;
+        private String sha256;
+        private String etag;
+    }
+}
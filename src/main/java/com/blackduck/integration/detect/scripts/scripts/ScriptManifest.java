@@ -0,0 +1,92 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.blackduck.integration.detect.scripts.util.FileUtil;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Records, for every generated script, a hash of the inputs it was rendered from and a hash of the file that was written. A script whose inputs
+ * hash the same and whose file is still intact does not need to be rendered again.
+ */
+public class ScriptManifest {
+    public static final String MANIFEST_FILE_NAME = ".detect-scripts-manifest.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public static ScriptManifest load(final File outputDirectory) throws IOException {
+        final ScriptManifest scriptManifest = new ScriptManifest();
+        final File manifestFile = new File(outputDirectory, MANIFEST_FILE_NAME);
+        if (!manifestFile.isFile()) {
+            return scriptManifest;
+        }
+
+        try (final Reader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            final ManifestData manifestData = GSON.fromJson(reader, ManifestData.class);
+            if (manifestData != null && manifestData.artifacts != null) {
+                scriptManifest.entries.putAll(manifestData.artifacts);
+            }
+        } catch (final JsonParseException e) {
+            // A damaged manifest only costs a full regeneration.
+            scriptManifest.entries.clear();
+        }
+        return scriptManifest;
+    }
+
+    public void save(final File outputDirectory) throws IOException {
+        final ManifestData manifestData = new ManifestData();
+        manifestData.artifacts = new TreeMap<>(entries);
+
+        final Path temporaryFile = Files.createTempFile(outputDirectory.toPath(), MANIFEST_FILE_NAME, ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            GSON.toJson(manifestData, writer);
+        }
+        FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+        FileUtil.moveIntoPlace(temporaryFile, new File(outputDirectory, MANIFEST_FILE_NAME).toPath());
+    }
+
+    public boolean isUpToDate(final File outputFile, final String inputHash) throws IOException {
+        final Entry entry = entries.get(outputFile.getName());
+        if (entry == null || !inputHash.equals(entry.inputHash) || !outputFile.isFile()) {
+            return false;
+        }
+        return DigestUtil.sha256Hex(outputFile.toPath()).equals(entry.outputHash);
+    }
+
+    public void record(final File outputFile, final String inputHash, final String outputHash) {
+        final Entry entry = new Entry();
+        entry.inputHash = inputHash;
+        entry.outputHash = outputHash;
+        entries.put(outputFile.getName(), entry);
+    }
+
+    private static class ManifestData {
+        private Map<String, Entry> artifacts;
+    }
+
+    private static class Entry {
+        private String inputHash;
+        private String outputHash;
+    }
+}
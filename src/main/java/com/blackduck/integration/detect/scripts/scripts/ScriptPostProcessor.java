@@ -0,0 +1,25 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.util.regex.Pattern;
+
+// Changes a rendered script before it is written, see ScriptTarget.
+@FunctionalInterface
+public interface ScriptPostProcessor {
+    String process(String script);
+
+    /**
+     * Drops the comments inside functions, which are indented, and keeps the unindented ones that document the variables a user can set. A script
+     * that is downloaded on every run is then smaller to fetch and to parse.
+     */
+    static ScriptPostProcessor stripIndentedComments() {
+        final Pattern indentedComment = Pattern.compile("(?m)^[ \\t]+#.*\\n");
+        return script -> indentedComment.matcher(script).replaceAll("");
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.blackduck.integration.exception.IntegrationException;
+
+/**
+ * A dialect the scripts are generated in: the template it is rendered from, how its files are named and what is done to a rendered script before
+ * it is written. Files are named detect&lt;major version&gt;&lt;qualifier&gt;[-&lt;script version&gt;].&lt;extension&gt;, e.g. detect10.sh or
+ * detect10-posix-3.3.0.sh. Targets are registered with a ScriptTargetRegistry, and ScriptBuilder generates every registered target.
+ */
+public class ScriptTarget {
+    public static final ScriptTarget BASH = new ScriptTarget("sh", "detect-sh.sh", "", "sh", null);
+    public static final ScriptTarget POWERSHELL = new ScriptTarget("ps1", "detect-ps.ps1", "", "ps1", null);
+    // For images without bash, such as Alpine or a distroless image with busybox.
+    public static final ScriptTarget POSIX = new ScriptTarget("posix", "detect-posix.sh", "-posix", "sh", ScriptPostProcessor.stripIndentedComments());
+
+    private final String name;
+    private final String templateFileName;
+    private final String fileNameQualifier;
+    private final String extension;
+    @Nullable
+    private final ScriptPostProcessor postProcessor;
+
+    public ScriptTarget(final String name, final String templateFileName, final String fileNameQualifier, final String extension, @Nullable final ScriptPostProcessor postProcessor) {
+        this.name = name;
+        this.templateFileName = templateFileName;
+        this.fileNameQualifier = fileNameQualifier;
+        this.extension = extension;
+        this.postProcessor = postProcessor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTemplateFileName() {
+        return templateFileName;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    // Without a script version, the file is the one that always holds the latest script.
+    public String getFileName(final int detectMajorVersion, @Nullable final String scriptVersion) {
+        final StringBuilder fileName = new StringBuilder();
+        fileName.append("detect");
+        fileName.append(detectMajorVersion);
+        fileName.append(fileNameQualifier);
+        if (scriptVersion != null) {
+            fileName.append("-");
+            fileName.append(scriptVersion);
+        }
+        fileName.append(".");
+        fileName.append(extension);
+        return fileName.toString();
+    }
+
+    // Without a post processor the template is rendered straight to the writer.
+    public void render(final ScriptTemplate scriptTemplate, final Map<String, String> tokenValues, final Writer writer) throws IOException, IntegrationException {
+        if (postProcessor == null) {
+            scriptTemplate.render(tokenValues, writer);
+            return;
+        }
+        final StringWriter renderedScript = new StringWriter();
+        scriptTemplate.render(tokenValues, renderedScript);
+        writer.write(postProcessor.process(renderedScript.toString()));
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+// The script targets ScriptBuilder generates, by name in the order they were registered. A new dialect is a template and a register call.
+public class ScriptTargetRegistry {
+    private final Map<String, ScriptTarget> targets = new LinkedHashMap<>();
+
+    public static ScriptTargetRegistry defaults() {
+        final ScriptTargetRegistry scriptTargetRegistry = new ScriptTargetRegistry();
+        scriptTargetRegistry.register(ScriptTarget.BASH);
+        scriptTargetRegistry.register(ScriptTarget.POWERSHELL);
+        scriptTargetRegistry.register(ScriptTarget.POSIX);
+        return scriptTargetRegistry;
+    }
+
+    public void register(final ScriptTarget scriptTarget) {
+        if (targets.containsKey(scriptTarget.getName())) {
+            throw new IllegalArgumentException("A script target named " + scriptTarget.getName() + " is already registered.");
+        }
+        targets.put(scriptTarget.getName(), scriptTarget);
+    }
+
+    @Nullable
+    public ScriptTarget getTarget(final String name) {
+        return targets.get(name);
+    }
+
+    public List<ScriptTarget> getTargets() {
+        return Collections.unmodifiableList(new ArrayList<>(targets.values()));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.blackduck.integration.exception.IntegrationException;
+
+/**
+ * A script template parsed once into literal text and //TOKEN// placeholders. Rendering writes each segment straight to the writer, so values
+ * are never interpreted (a '$' or '\' in a value is written as-is) and no intermediate copies of the script are made.
+ */
+public class ScriptTemplate {
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("//([A-Z][A-Z0-9_]*)//");
+
+    private final List<String> literals;
+    private final List<String> tokenNames;
+    private final String digest;
+
+    private ScriptTemplate(final List<String> literals, final List<String> tokenNames, final String digest) {
+        this.literals = literals;
+        this.tokenNames = tokenNames;
+        this.digest = digest;
+    }
+
+    public static ScriptTemplate compile(final String templateContents) {
+        final List<String> literals = new ArrayList<>();
+        final List<String> tokenNames = new ArrayList<>();
+
+        final Matcher matcher = TOKEN_PATTERN.matcher(templateContents);
+        int literalStart = 0;
+        while (matcher.find()) {
+            literals.add(templateContents.substring(literalStart, matcher.start()));
+            tokenNames.add(matcher.group(1));
+            literalStart = matcher.end();
+        }
+        literals.add(templateContents.substring(literalStart));
+
+        return new ScriptTemplate(Collections.unmodifiableList(literals), Collections.unmodifiableList(tokenNames), DigestUtil.sha256Hex(templateContents));
+    }
+
+    public List<String> getTokenNames() {
+        return tokenNames;
+    }
+
+    // A SHA-256 of the template source.
+    public String getDigest() {
+        return digest;
+    }
+
+    // Every token needs a value; nothing is written when one is missing, so a script can never ship with a //TOKEN// left in it.
+    public void render(final Map<String, String> tokenValues, final Writer writer) throws IOException, IntegrationException {
+        final Set<String> unresolvedTokenNames = new TreeSet<>();
+        for (final String tokenName : tokenNames) {
+            if (tokenValues.get(tokenName) == null) {
+                unresolvedTokenNames.add(tokenName);
+            }
+        }
+        if (!unresolvedTokenNames.isEmpty()) {
+            throw new IntegrationException("The script template has tokens without a value: " + String.join(", ", unresolvedTokenNames));
+        }
+
+        for (int i = 0; i < tokenNames.size(); i++) {
+            writer.write(literals.get(i));
+            writer.write(tokenValues.get(tokenNames.get(i)));
+        }
+        writer.write(literals.get(literals.size() - 1));
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.scripts;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.blackduck.integration.util.ResourceUtil;
+
+// Loads and compiles each classpath template a single time, no matter how many scripts are rendered from it.
+public class ScriptTemplateCache {
+    private static final String TEMPLATE_RESOURCE_DIRECTORY = "/templates/";
+
+    private final Map<String, ScriptTemplate> templates = new ConcurrentHashMap<>();
+
+    public ScriptTemplate getTemplate(final String templateFileName) throws IOException {
+        try {
+            return templates.computeIfAbsent(templateFileName, this::loadTemplate);
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private ScriptTemplate loadTemplate(final String templateFileName) {
+        try {
+            final String templateContents = ResourceUtil.getResourceAsString(this.getClass(), TEMPLATE_RESOURCE_DIRECTORY + templateFileName, StandardCharsets.UTF_8);
+            if (templateContents == null) {
+                throw new IOException("Unable to find the script template: " + templateFileName);
+            }
+            return ScriptTemplate.compile(templateContents);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
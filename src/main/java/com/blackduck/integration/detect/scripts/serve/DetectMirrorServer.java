@@ -0,0 +1,209 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.serve;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.LoggerFactory;
+
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.IntLogger;
+import com.blackduck.integration.log.Slf4jIntLogger;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A caching mirror of the part of the repository the scripts use: the storage API (DETECT_LATEST version key lookups and listings of the
+ * Detect folder, nothing else) and the jar downloads, including HEAD and single byte range requests. Urls in storage answers are rewritten to point back at this server, so a script
+ * given it as its repository (DETECT_BINARY_REPO_URLS) downloads the jar from it as well.
+ */
+public class DetectMirrorServer {
+    public static final String PORT_ENV = "DETECT_SCRIPTS_SERVE_PORT";
+    public static final String LOOKUP_TTL_ENV = "DETECT_SCRIPTS_SERVE_LOOKUP_TTL";
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final long DEFAULT_LOOKUP_TTL_SECONDS = 300L;
+    private static final String STORAGE_API_PATH = "/api/storage/bds-integrations-release/";
+    private static final String REPOSITORY_PATH = "/bds-integrations-release/";
+    private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    // The storage requests the scripts and the prefetcher make, a version key lookup or a listing of the Detect folder. Every other request
+    // would stay in the cache for good, so it is not served.
+    private static final Pattern STORAGE_REQUEST = Pattern.compile(
+        "/api/storage/bds-integrations-release/com/(synopsys/integration/synopsys-detect|blackduck/integration/detect)(\\?properties=DETECT_LATEST(_[0-9]{1,3})?)?");
+
+    private final IntLogger logger = new Slf4jIntLogger(LoggerFactory.getLogger(this.getClass()));
+    private final RepositoryMirrors repositoryMirrors;
+    private final RepositoryCache repositoryCache;
+    private HttpServer httpServer;
+    private ExecutorService executorService;
+
+    /**
+     * The upstream repositories are described by {@link RepositoryMirrors#fromEnvironment()} and DETECT_SCRIPTS_SERVE_LOOKUP_TTL is the number
+     * of seconds a storage answer is served before it is refreshed (default 300).
+     */
+    public DetectMirrorServer(final File cacheDirectory) {
+        this(RepositoryMirrors.fromEnvironment(), cacheDirectory, TimeUnit.SECONDS.toMillis(NumberUtils.toLong(System.getenv(LOOKUP_TTL_ENV), DEFAULT_LOOKUP_TTL_SECONDS)));
+    }
+
+    public DetectMirrorServer(final RepositoryMirrors repositoryMirrors, final File cacheDirectory, final long lookupTtlMillis) {
+        this.repositoryMirrors = repositoryMirrors;
+        this.repositoryCache = new RepositoryCache(logger, repositoryMirrors, cacheDirectory, lookupTtlMillis);
+    }
+
+    // Port 0 picks a free port, see getPort().
+    public synchronized void start(final int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        executorService = Executors.newCachedThreadPool();
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/", this::handle);
+        httpServer.start();
+        logger.info(String.format("Serving %s on port %d", String.join(", ", repositoryMirrors.getRepositoryUrls()), getPort()));
+    }
+
+    public synchronized int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            executorService.shutdownNow();
+            httpServer = null;
+        }
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final boolean head = "HEAD".equals(exchange.getRequestMethod());
+            final String path = exchange.getRequestURI().getPath();
+            if (!head && !"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "Only GET and HEAD are supported.", false);
+            } else if (path.startsWith(STORAGE_API_PATH)) {
+                serveStorage(exchange, head);
+            } else if (path.startsWith(REPOSITORY_PATH) && path.endsWith(".jar")) {
+                serveArtifact(exchange, head);
+            } else {
+                send(exchange, 404, "text/plain", "Not found: " + path, head);
+            }
+        } catch (final IntegrationException e) {
+            logger.warn(String.format("Unable to serve %s: %s", exchange.getRequestURI(), e.getMessage()));
+            send(exchange, 502, "text/plain", e.getMessage(), false);
+        } catch (final IOException e) {
+            // Usually the client went away.
+            logger.debug(String.format("Serving %s stopped: %s", exchange.getRequestURI(), e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void serveStorage(final HttpExchange exchange, final boolean head) throws IOException, IntegrationException {
+        final String rawQuery = exchange.getRequestURI().getRawQuery();
+        final String pathAndQuery = exchange.getRequestURI().getRawPath() + (rawQuery == null ? "" : "?" + rawQuery);
+        if (!STORAGE_REQUEST.matcher(pathAndQuery).matches()) {
+            send(exchange, 404, "text/plain", "Not a lookup the scripts make: " + pathAndQuery, head);
+            return;
+        }
+        final RepositoryCache.StorageLookup storageLookup = repositoryCache.getStorage(pathAndQuery);
+        send(exchange, 200, "application/json", rewriteRepositoryUrls(storageLookup, getBaseUrl(exchange)), head);
+    }
+
+    private void serveArtifact(final HttpExchange exchange, final boolean head) throws IOException, IntegrationException {
+        final RepositoryCache.CachedArtifact cachedArtifact = repositoryCache.getArtifact(exchange.getRequestURI().getPath());
+        final long length = Files.size(cachedArtifact.getFile());
+        final Headers responseHeaders = exchange.getResponseHeaders();
+        responseHeaders.set("Content-Type", "application/java-archive");
+        responseHeaders.set("Accept-Ranges", "bytes");
+        responseHeaders.set("X-Checksum-Sha256", cachedArtifact.getSha256());
+
+        long start = 0L;
+        long end = length - 1;
+        int statusCode = 200;
+        final Matcher rangeMatcher = BYTE_RANGE.matcher(StringUtils.defaultString(exchange.getRequestHeaders().getFirst("Range")).trim());
+        // Multiple ranges are not supported, a client asking for them gets the whole file which the spec allows.
+        if (rangeMatcher.matches() && (!rangeMatcher.group(1).isEmpty() || !rangeMatcher.group(2).isEmpty())) {
+            if (rangeMatcher.group(1).isEmpty()) {
+                start = Math.max(0L, length - NumberUtils.toLong(rangeMatcher.group(2)));
+            } else {
+                start = NumberUtils.toLong(rangeMatcher.group(1));
+                if (!rangeMatcher.group(2).isEmpty()) {
+                    end = Math.min(end, NumberUtils.toLong(rangeMatcher.group(2)));
+                }
+            }
+            if (start >= length || start > end) {
+                responseHeaders.set("Content-Range", "bytes */" + length);
+                send(exchange, 416, "text/plain", "", head);
+                return;
+            }
+            responseHeaders.set("Content-Range", String.format("bytes %d-%d/%d", start, end, length));
+            statusCode = 206;
+        }
+
+        final long count = end - start + 1;
+        if (head) {
+            responseHeaders.set("Content-Length", Long.toString(count));
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, count);
+        try (final InputStream inputStream = Files.newInputStream(cachedArtifact.getFile()); final OutputStream outputStream = exchange.getResponseBody()) {
+            IOUtils.copyLarge(inputStream, outputStream, start, count);
+        }
+    }
+
+    // Storage answers name the mirror that answered, or the primary repository, the scripts should come back here instead.
+    private String rewriteRepositoryUrls(final RepositoryCache.StorageLookup storageLookup, final String baseUrl) {
+        final List<String> repositoryUrls = new ArrayList<>(repositoryMirrors.getRepositoryUrls());
+        repositoryUrls.add(RepositoryMirrors.DEFAULT_REPOSITORY_URL);
+        repositoryUrls.add(storageLookup.getRepositoryUrl());
+        String content = storageLookup.getContent();
+        for (final String repositoryUrl : repositoryUrls) {
+            content = content.replace(repositoryUrl + "/", baseUrl + "/");
+        }
+        return content;
+    }
+
+    private String getBaseUrl(final HttpExchange exchange) {
+        final String host = exchange.getRequestHeaders().getFirst("Host");
+        if (StringUtils.isNotBlank(host)) {
+            return "http://" + host;
+        }
+        return String.format("http://%s:%d", exchange.getLocalAddress().getHostString(), exchange.getLocalAddress().getPort());
+    }
+
+    private void send(final HttpExchange exchange, final int statusCode, final String contentType, final String content, final boolean head) throws IOException {
+        final byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (head || body.length == 0) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
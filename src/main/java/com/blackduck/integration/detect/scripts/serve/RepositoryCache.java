@@ -0,0 +1,296 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.serve;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackduck.integration.detect.scripts.mirror.HedgedRequestExecutor;
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.blackduck.integration.detect.scripts.util.FileUtil;
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.IntLogger;
+import com.blackduck.integration.rest.HttpUrl;
+import com.blackduck.integration.rest.client.IntHttpClient;
+import com.blackduck.integration.rest.proxy.ProxyInfo;
+import com.blackduck.integration.rest.request.Request;
+import com.blackduck.integration.rest.response.Response;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * The local side of the serve operation. Storage API answers (property lookups and folder listings) are kept for the lookup ttl and jars, which
+ * never change once released, are kept for good. Concurrent requests for something that is not cached yet share a single upstream request,
+ * and a storage answer that can no longer be refreshed is still served once it has expired.
+ */
+public class RepositoryCache {
+    private static final String STORAGE_DIRECTORY = "storage";
+    private static final String SHA256_EXTENSION = ".sha256";
+
+    private final IntLogger logger;
+    private final RepositoryMirrors repositoryMirrors;
+    private final File cacheDirectory;
+    private final long lookupTtlMillis;
+    private final Gson gson = new Gson();
+
+    private final Map<String, StorageLookup> storageLookups = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<StorageLookup>> storageFills = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CachedArtifact>> artifactFills = new ConcurrentHashMap<>();
+
+    public RepositoryCache(final IntLogger logger, final RepositoryMirrors repositoryMirrors, final File cacheDirectory, final long lookupTtlMillis) {
+        this.logger = logger;
+        this.repositoryMirrors = repositoryMirrors;
+        this.cacheDirectory = cacheDirectory.getAbsoluteFile();
+        this.lookupTtlMillis = lookupTtlMillis;
+    }
+
+    // The path and query of a storage API request, e.g. /api/storage/bds-integrations-release/com/blackduck/integration/detect?properties=DETECT_LATEST
+    public StorageLookup getStorage(final String pathAndQuery) throws IOException, IntegrationException {
+        final StorageLookup cachedLookup = storageLookups.computeIfAbsent(pathAndQuery, this::readStorageLookup);
+        if (cachedLookup != null && System.currentTimeMillis() - cachedLookup.getFetchedAt() < lookupTtlMillis) {
+            return cachedLookup;
+        }
+        try {
+            return coalesce(storageFills, pathAndQuery, () -> fetchStorage(pathAndQuery));
+        } catch (final IntegrationException e) {
+            if (cachedLookup == null) {
+                throw e;
+            }
+            logger.warn(String.format("Serving an expired answer for %s: %s", pathAndQuery, e.getMessage()));
+            return cachedLookup;
+        }
+    }
+
+    // The repository path of a jar, e.g. /bds-integrations-release/com/blackduck/integration/detect/10.0.0/detect-10.0.0.jar
+    public CachedArtifact getArtifact(final String path) throws IOException, IntegrationException {
+        final Path artifactFile = toCacheFile(path);
+        final CachedArtifact cachedArtifact = readArtifact(artifactFile);
+        if (cachedArtifact != null) {
+            return cachedArtifact;
+        }
+        return coalesce(artifactFills, path, () -> fetchArtifact(path, artifactFile));
+    }
+
+    private StorageLookup fetchStorage(final String pathAndQuery) throws IOException, IntegrationException {
+        final HedgedRequestExecutor hedgedRequestExecutor = new HedgedRequestExecutor(logger, repositoryMirrors);
+        final StorageLookup storageLookup = hedgedRequestExecutor.execute(repositoryUrl -> {
+            final IntHttpClient intHttpClient = new IntHttpClient(logger, gson, repositoryMirrors.getBudgetSeconds(), true, ProxyInfo.NO_PROXY_INFO);
+            final Request request = new Request.Builder(new HttpUrl(repositoryUrl + pathAndQuery)).addHeader("X-Result-Detail", "info").build();
+            try (final Response response = intHttpClient.execute(request)) {
+                response.throwExceptionForError();
+                return new StorageLookup(pathAndQuery, repositoryUrl, System.currentTimeMillis(), response.getContentString(StandardCharsets.UTF_8));
+            }
+        }, ignored -> {});
+
+        storageLookups.put(pathAndQuery, storageLookup);
+        writeStorageLookup(storageLookup);
+        return storageLookup;
+    }
+
+    // Mirrors are tried one after the other rather than hedged, a slow jar download is still better than two of them.
+    private CachedArtifact fetchArtifact(final String path, final Path artifactFile) throws IOException, IntegrationException {
+        final CachedArtifact cachedArtifact = readArtifact(artifactFile);
+        if (cachedArtifact != null) {
+            return cachedArtifact;
+        }
+
+        Files.createDirectories(artifactFile.getParent());
+        final List<String> failures = new ArrayList<>();
+        for (final String repositoryUrl : repositoryMirrors.getRepositoryUrls()) {
+            logger.info(String.format("Fetching %s from %s", path, repositoryUrl));
+            final IntHttpClient intHttpClient = new IntHttpClient(logger, gson, repositoryMirrors.getBudgetSeconds(), true, ProxyInfo.NO_PROXY_INFO);
+            final Path temporaryFile = Files.createTempFile(artifactFile.getParent(), artifactFile.getFileName().toString(), ".tmp");
+            try (final Response response = intHttpClient.execute(new Request.Builder(new HttpUrl(repositoryUrl + path)).build())) {
+                response.throwExceptionForError();
+                final String sha256 = DigestUtil.copyWithSha256(response.getContent(), temporaryFile);
+                final String expectedSha256 = response.getHeaderValue("X-Checksum-Sha256");
+                if (StringUtils.isNotBlank(expectedSha256) && !expectedSha256.equalsIgnoreCase(sha256)) {
+                    throw new IntegrationException(String.format("the content does not match the repository checksum %s", expectedSha256));
+                }
+                FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+                writeFile(artifactFile.resolveSibling(artifactFile.getFileName() + SHA256_EXTENSION), sha256);
+                FileUtil.moveIntoPlace(temporaryFile, artifactFile);
+                return new CachedArtifact(artifactFile, sha256);
+            } catch (final IOException | IntegrationException e) {
+                failures.add(String.format("%s failed: %s.", repositoryUrl, e.getMessage()));
+                logger.warn(String.format("Fetching %s from %s failed: %s", path, repositoryUrl, e.getMessage()));
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+        throw new IntegrationException(String.format("Every mirror failed for %s. %s", path, String.join(" ", failures)));
+    }
+
+    // The checksum is written before the jar is moved into place, so a jar in the cache always has one.
+    private CachedArtifact readArtifact(final Path artifactFile) throws IOException {
+        final Path sha256File = artifactFile.resolveSibling(artifactFile.getFileName() + SHA256_EXTENSION);
+        if (!Files.isRegularFile(artifactFile) || !Files.isRegularFile(sha256File)) {
+            return null;
+        }
+        return new CachedArtifact(artifactFile, new String(Files.readAllBytes(sha256File), StandardCharsets.UTF_8).trim());
+    }
+
+    private Path toCacheFile(final String path) throws IntegrationException {
+        final Path cacheRoot = cacheDirectory.toPath().normalize();
+        final Path cacheFile = cacheRoot.resolve(StringUtils.removeStart(path, "/")).normalize();
+        if (!cacheFile.startsWith(cacheRoot) || cacheFile.equals(cacheRoot)) {
+            throw new IntegrationException("Not a repository path: " + path);
+        }
+        return cacheFile;
+    }
+
+    private StorageLookup readStorageLookup(final String pathAndQuery) {
+        final Path storageFile = getStorageFile(pathAndQuery);
+        if (!Files.isRegularFile(storageFile)) {
+            return null;
+        }
+        try (final Reader reader = Files.newBufferedReader(storageFile, StandardCharsets.UTF_8)) {
+            final StorageLookup storageLookup = gson.fromJson(reader, StorageLookup.class);
+            if (storageLookup != null && pathAndQuery.equals(storageLookup.getPathAndQuery())) {
+                return storageLookup;
+            }
+        } catch (final IOException | JsonParseException e) {
+            logger.debug(String.format("Ignoring the unreadable cache file %s: %s", storageFile, e.getMessage()));
+        }
+        return null;
+    }
+
+    private void writeStorageLookup(final StorageLookup storageLookup) throws IOException {
+        final Path storageFile = getStorageFile(storageLookup.getPathAndQuery());
+        Files.createDirectories(storageFile.getParent());
+        final Path temporaryFile = Files.createTempFile(storageFile.getParent(), storageFile.getFileName().toString(), ".tmp");
+        try {
+            try (final Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                gson.toJson(storageLookup, writer);
+            }
+            FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+            FileUtil.moveIntoPlace(temporaryFile, storageFile);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private Path getStorageFile(final String pathAndQuery) {
+        return new File(new File(cacheDirectory, STORAGE_DIRECTORY), DigestUtil.sha256Hex(pathAndQuery) + ".json").toPath();
+    }
+
+    private void writeFile(final Path file, final String content) throws IOException {
+        final Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporaryFile, content.getBytes(StandardCharsets.UTF_8));
+            FileUtil.setPermissions(temporaryFile, "rw-r--r--");
+            FileUtil.moveIntoPlace(temporaryFile, file);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    // The first caller for a key does the fill, everyone asking for the same key meanwhile waits for its result.
+    private <T> T coalesce(final Map<String, CompletableFuture<T>> fills, final String key, final Fill<T> fill) throws IOException, IntegrationException {
+        final CompletableFuture<T> ownFill = new CompletableFuture<>();
+        final CompletableFuture<T> runningFill = fills.putIfAbsent(key, ownFill);
+        if (runningFill != null) {
+            return waitFor(runningFill);
+        }
+        try {
+            final T result = fill.fill();
+            ownFill.complete(result);
+            return result;
+        } catch (final IOException | IntegrationException | RuntimeException e) {
+            ownFill.completeExceptionally(e);
+            throw e;
+        } finally {
+            fills.remove(key, ownFill);
+        }
+    }
+
+    private <T> T waitFor(final CompletableFuture<T> future) throws IOException, IntegrationException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException("Interrupted while waiting on the repository.", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof IntegrationException) {
+                throw (IntegrationException) cause;
+            }
+            throw new IntegrationException("Failed to fill the cache: " + cause.getMessage(), cause);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Fill<T> {
+        T fill() throws IOException, IntegrationException;
+    }
+
+    public static class StorageLookup {
+        private final String pathAndQuery;
+        private final String repositoryUrl;
+        private final long fetchedAt;
+        private final String content;
+
+        public StorageLookup(final String pathAndQuery, final String repositoryUrl, final long fetchedAt, final String content) {
+            this.pathAndQuery = pathAndQuery;
+            this.repositoryUrl = repositoryUrl;
+            this.fetchedAt = fetchedAt;
+            this.content = content;
+        }
+
+        public String getPathAndQuery() {
+            return pathAndQuery;
+        }
+
+        // The mirror that answered, urls in the content refer to it.
+        public String getRepositoryUrl() {
+            return repositoryUrl;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+
+    public static class CachedArtifact {
+        private final Path file;
+        private final String sha256;
+
+        public CachedArtifact(final Path file, final String sha256) {
+            this.file = file;
+            this.sha256 = sha256;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+    }
+}
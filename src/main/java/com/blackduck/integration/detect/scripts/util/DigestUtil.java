@@ -0,0 +1,77 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class DigestUtil {
+    private static final char[] HEX_CHARACTERS = "0123456789abcdef".toCharArray();
+
+    private DigestUtil() {
+    }
+
+    public static MessageDigest createSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    public static String sha256Hex(final String content) {
+        return toHex(createSha256().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static String sha256Hex(final byte[] content) {
+        return toHex(createSha256().digest(content));
+    }
+
+    public static String sha256Hex(final Path file) throws IOException {
+        final MessageDigest messageDigest = createSha256();
+        final byte[] buffer = new byte[64 * 1024];
+        try (final InputStream inputStream = Files.newInputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    // Writes the stream to the file and returns the SHA-256 of what was written, so large downloads are only read once.
+    public static String copyWithSha256(final InputStream content, final Path file) throws IOException {
+        final MessageDigest messageDigest = createSha256();
+        try (final InputStream digestInputStream = new DigestInputStream(content, messageDigest); final OutputStream outputStream = Files.newOutputStream(file)) {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = digestInputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    public static String toHex(final byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int value = bytes[i] & 0xFF;
+            hex[i * 2] = HEX_CHARACTERS[value >>> 4];
+            hex[i * 2 + 1] = HEX_CHARACTERS[value & 0x0F];
+        }
+        return new String(hex);
+    }
+}
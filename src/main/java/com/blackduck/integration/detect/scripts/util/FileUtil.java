@@ -0,0 +1,42 @@
+/*
+ * detect-scripts
+ *
+ * Copyright (c) 2024 Black Duck Software, Inc.
+ *
+ * Use subject to the terms and conditions of the Black Duck Software End User Software License and Maintenance Agreement. All rights reserved worldwide.
+ */
+package com.blackduck.integration.detect.scripts.util;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public final class FileUtil {
+    private FileUtil() {
+    }
+
+    // Readers of the target see either the old file or the complete new one, never a partial write.
+    public static void moveIntoPlace(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Temporary files are created owner-only, this restores the usual permissions before the file is moved into place.
+    public static void setPermissions(final Path file, final String posixPermissions) throws IOException {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString(posixPermissions));
+        } catch (final UnsupportedOperationException e) {
+            // Not a POSIX file system, the defaults are fine.
+        }
+    }
+
+    public static boolean isEnabled(final String value) {
+        return "true".equalsIgnoreCase(value) || "1".equals(value);
+    }
+}
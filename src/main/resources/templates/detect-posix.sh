@@ -0,0 +1,440 @@
+#!/bin/sh
+
+# This is the Detect script for systems without bash, such as
+# Alpine or busybox based images. It only needs a POSIX sh,
+# curl or wget, and sha256sum to verify the download. It takes
+# the same environment variables as the bash script, except
+# that the jar is downloaded in a single stream, and delta
+# updates, the resolution cache, download locks, jar cache
+# eviction, class data sharing, the container-aware JVM options,
+# the extracted jar of DETECT_EXPLODED_JAR and run metrics are
+# left to the bash script.
+
+# DETECT_LATEST_RELEASE_VERSION should be set in your
+# environment if you wish to use a version different
+# from LATEST.
+DETECT_RELEASE_VERSION=${DETECT_LATEST_RELEASE_VERSION}
+
+# To override the default version key, specify a
+# different DETECT_VERSION_KEY in your environment and
+# *that* key will be used to get the download url from
+# artifactory. These DETECT_VERSION_KEY values are
+# properties in Artifactory that resolve to download
+# urls for the detect jar file. As of //BUILD_DATE//, the
+# available DETECT_VERSION_KEY values are:
+//DETECT_MAJOR_VERSIONS//
+# Every new major version of detect will have its own
+# DETECT_LATEST_X key.
+DETECT_VERSION_KEY=${DETECT_VERSION_KEY:-//DEFAULT_DETECT_VERSION_KEY//}
+
+# Succeeds when $1 is a major version of 9 or older, which were
+# published as synopsys-detect.
+is_synopsys_major_version() {
+  case "$1" in
+    '' | *[!0-9]*) return 1 ;;
+  esac
+  [ "$1" -le 9 ]
+}
+
+# Sets DETECT_ORG_NAME and DETECT_NAME_PREFIX from the major
+# version after the last underscore of DETECT_VERSION_KEY, or
+# before the first period of DETECT_RELEASE_VERSION.
+set_detect_names() {
+  if is_synopsys_major_version "${DETECT_VERSION_KEY##*_}" || is_synopsys_major_version "${DETECT_RELEASE_VERSION%%.*}"; then
+    DETECT_ORG_NAME="synopsys"
+    DETECT_NAME_PREFIX="synopsys-detect"
+  else
+    DETECT_ORG_NAME="blackduck"
+    DETECT_NAME_PREFIX="detect"
+  fi
+}
+set_detect_names
+
+# You can specify your own download url from
+# artifactory which can bypass using the property keys
+# (this is mainly for QA purposes only)
+DETECT_SOURCE=${DETECT_SOURCE:-}
+
+# To override the default location of $HOME/detect, specify
+# your own DETECT_JAR_DOWNLOAD_DIR in your environment and
+# *that* location will be used.
+DEFAULT_DETECT_JAR_DOWNLOAD_DIR="${HOME}/${DETECT_NAME_PREFIX}/download"
+if [ -z "${DETECT_JAR_DOWNLOAD_DIR}" ]; then
+  # If new name not set: Try old name for backward compatibility
+  DETECT_JAR_DOWNLOAD_DIR=${DETECT_JAR_PATH:-${DEFAULT_DETECT_JAR_DOWNLOAD_DIR}}
+fi
+
+# To control which java detect will use to run, specify
+# the path in in DETECT_JAVA_PATH or JAVA_HOME in your
+# environment, or ensure that java is first on the path.
+# DETECT_JAVA_PATH will take precedence over JAVA_HOME.
+# JAVA_HOME will take precedence over the path.
+# Note: DETECT_JAVA_PATH should point directly to the
+# java executable. For JAVA_HOME the java executable is
+# expected to be in JAVA_HOME/bin/java
+DETECT_JAVA_PATH=${DETECT_JAVA_PATH:-}
+
+# If you want to pass any java options to the
+# invocation, specify DETECT_JAVA_OPTS in your
+# environment. For example, to specify a 6 gigabyte
+# heap size, you would set DETECT_JAVA_OPTS=-Xmx6G.
+DETECT_JAVA_OPTS=${DETECT_JAVA_OPTS:-}
+
+# If you want to pass any additional options to
+# curl, specify DETECT_CURL_OPTS in your environment.
+# For example, to specify a proxy, you would set
+# DETECT_CURL_OPTS=--proxy http://myproxy:3128
+# They are not passed to wget, which is only used when
+# curl is not available.
+DETECT_CURL_OPTS=${DETECT_CURL_OPTS:-}
+
+# If you only want to download the appropriate jar file set
+# this to 1 in your environment. This can be useful if you
+# want to invoke the jar yourself but do not want to also
+# get and update the jar file when a new version releases.
+DETECT_DOWNLOAD_ONLY=${DETECT_DOWNLOAD_ONLY:-0}
+
+# This provides a way to get the script version (via, say, grep/sed). Do not change.
+SCRIPT_VERSION=//SCRIPT_VERSION//
+
+echo "Detect POSIX Shell Script ${SCRIPT_VERSION}"
+
+# To get Detect from a mirror of the Black Duck repository,
+# set DETECT_BINARY_REPO_URLS to one or more repository urls,
+# separated by spaces or commas, in order of preference. Each
+# one is asked in turn until one answers the version lookup,
+# for at most DETECT_LOOKUP_BUDGET seconds (default 60).
+DETECT_BINARY_REPO_URLS=${DETECT_BINARY_REPO_URLS:-${DETECT_BINARY_REPO_URL:-https://repo.blackduck.com}}
+DETECT_LOOKUP_BUDGET=${DETECT_LOOKUP_BUDGET:-60}
+
+# This script carries what every DETECT_VERSION_KEY resolved to
+# when it was generated, at //EMBEDDED_RESOLUTION_TIME//: the
+# version, the jar's path in the repository, its size and its
+# SHA-256. Set DETECT_USE_EMBEDDED_RESOLUTION=1 to use that
+# instead of looking the version up, so a run only asks the
+# repository for the jar itself, and the jar is checked against
+# the embedded SHA-256. Keys that are not embedded are looked up.
+DETECT_USE_EMBEDDED_RESOLUTION=${DETECT_USE_EMBEDDED_RESOLUTION:-0}
+EMBEDDED_RESOLUTION_TIME=//EMBEDDED_RESOLUTION_TIME//
+EMBEDDED_RESOLUTION="
+//EMBEDDED_RESOLUTION//
+"
+
+LOGGABLE_SCRIPT_ARGS=""
+for i in "$@"; do
+  case "$i" in
+    --blackduck.hub.password=*) LOGGABLE_SCRIPT_ARGS="$LOGGABLE_SCRIPT_ARGS --blackduck.hub.password=<redacted>" ;;
+    --blackduck.hub.proxy.password=*) LOGGABLE_SCRIPT_ARGS="$LOGGABLE_SCRIPT_ARGS --blackduck.hub.proxy.password=<redacted>" ;;
+    --blackduck.hub.api.token=*) LOGGABLE_SCRIPT_ARGS="$LOGGABLE_SCRIPT_ARGS --blackduck.hub.api.token=<redacted>" ;;
+    --blackduck.password=*) LOGGABLE_SCRIPT_ARGS="$LOGGABLE_SCRIPT_ARGS --blackduck.password=<redacted>" ;;
+    --blackduck.proxy.password=*) LOGGABLE_SCRIPT_ARGS="$LOGGABLE_SCRIPT_ARGS --blackduck.proxy.password=<redacted>" ;;
+    --blackduck.api.token=*) LOGGABLE_SCRIPT_ARGS="$LOGGABLE_SCRIPT_ARGS --blackduck.api.token=<redacted>" ;;
+    --polaris.access.token=*) LOGGABLE_SCRIPT_ARGS="$LOGGABLE_SCRIPT_ARGS --polaris.access.token=<redacted>" ;;
+    *) LOGGABLE_SCRIPT_ARGS="$LOGGABLE_SCRIPT_ARGS $i" ;;
+  esac
+done
+
+run() {
+  if [ "${DETECT_DOWNLOAD_ONLY}" -eq 0 ]; then
+    # A run without Java fails before Detect is looked up.
+    set_detect_java_path
+    if ! command -v "${DETECT_JAVA_PATH}" >/dev/null 2>&1; then
+      echo "Java is not available at ${DETECT_JAVA_PATH}, exiting."
+      exit 127
+    fi
+  fi
+  get_detect
+  if [ "${DETECT_DOWNLOAD_ONLY}" -eq 0 ]; then
+    run_detect "$@"
+  fi
+}
+
+get_detect() {
+  USE_LOCAL=0
+  LOCAL_FILE="${DETECT_JAR_DOWNLOAD_DIR}/detect-last-downloaded-jar.txt"
+  if [ "${DETECT_NAME_PREFIX}" = synopsys-detect ]; then
+    copy_legacy_local_file
+  fi
+  EMBEDDED_SHA256=""
+  mkdir -p "${DETECT_JAR_DOWNLOAD_DIR}"
+  if [ -z "${DETECT_SOURCE}" ]; then
+    if [ -z "${DETECT_RELEASE_VERSION}" ]; then
+      if [ "${DETECT_USE_EMBEDDED_RESOLUTION}" -eq 1 ] && read_embedded_resolution; then
+        echo "Using the location of ${DETECT_VERSION_KEY} embedded in this script at ${EMBEDDED_RESOLUTION_TIME}."
+      else
+        lookup_detect_source
+        if [ -z "${DETECT_SOURCE}" ]; then
+          echo "Unable to derive the location of ${DETECT_VERSION_KEY} from: ${DETECT_BINARY_REPO_URLS}"
+          USE_LOCAL=1
+        fi
+      fi
+    else
+      first_repo_url
+      DETECT_SOURCE="${REPO_URL}/bds-integrations-release/com/${DETECT_ORG_NAME}/integration/${DETECT_NAME_PREFIX}/${DETECT_RELEASE_VERSION}/${DETECT_NAME_PREFIX}-${DETECT_RELEASE_VERSION}.jar"
+    fi
+  fi
+
+  if [ ${USE_LOCAL} -eq 0 ]; then
+    echo "Will look for : ${DETECT_SOURCE}"
+    DETECT_FILENAME=${DETECT_FILENAME:-${DETECT_SOURCE##*/}}
+  elif [ -f "${LOCAL_FILE}" ]; then
+    echo "Will look for : ${LOCAL_FILE}"
+    echo "Found local file ${LOCAL_FILE}"
+    read -r DETECT_FILENAME < "${LOCAL_FILE}"
+    # The PowerShell script records the full path.
+    DETECT_FILENAME=${DETECT_FILENAME##*[/\\]}
+  else
+    echo "Will look for : ${LOCAL_FILE}"
+    echo "${LOCAL_FILE} is missing and unable to communicate with a Detect source."
+    exit 255
+  fi
+  DETECT_DESTINATION="${DETECT_JAR_DOWNLOAD_DIR}/${DETECT_FILENAME}"
+
+  if [ ${USE_LOCAL} -ne 1 ] && [ ! -f "${DETECT_DESTINATION}" ]; then
+    echo "You don't have the current file, so it will be downloaded."
+    echo "getting ${DETECT_SOURCE} from remote"
+    download_detect_jar
+    # Replaced in one step, a concurrent run never reads it half written.
+    echo "${DETECT_FILENAME}" > "${LOCAL_FILE}.$$" && mv -f "${LOCAL_FILE}.$$" "${LOCAL_FILE}"
+    echo "saved ${DETECT_SOURCE} to ${DETECT_DESTINATION}"
+  else
+    echo "You have already downloaded the latest file, so the local file will be used."
+  fi
+}
+
+# The scripts for Detect 8 and 9 recorded the last downloaded jar
+# in synopsys-detect-last-downloaded-jar.txt. It is copied to
+# LOCAL_FILE once, so an upgraded script can still fall back to
+# that jar when the repository can't be reached.
+copy_legacy_local_file() {
+  LEGACY_LOCAL_FILE="${DETECT_JAR_DOWNLOAD_DIR}/synopsys-detect-last-downloaded-jar.txt"
+  if [ ! -f "${LOCAL_FILE}" ] && [ -f "${LEGACY_LOCAL_FILE}" ]; then
+    { cp "${LEGACY_LOCAL_FILE}" "${LOCAL_FILE}.$$" && mv -f "${LOCAL_FILE}.$$" "${LOCAL_FILE}"; } 2>/dev/null
+  fi
+}
+
+# Sets REPO_URL to the first of DETECT_BINARY_REPO_URLS.
+first_repo_url() {
+  for_each_repo_url true
+}
+
+# Calls $1 with REPO_URL set to each of DETECT_BINARY_REPO_URLS,
+# without a trailing slash, until it succeeds.
+for_each_repo_url() {
+  set -f
+  OLD_IFS=$IFS
+  IFS=', '
+  for REPO_URL in ${DETECT_BINARY_REPO_URLS}; do
+    IFS=${OLD_IFS}
+    REPO_URL=${REPO_URL%/}
+    if "$1"; then
+      set +f
+      return 0
+    fi
+  done
+  IFS=${OLD_IFS}
+  set +f
+  return 1
+}
+
+# Runs curl with DETECT_CURL_OPTS, which may hold quoted values,
+# in front of the given arguments.
+curl_with_opts() {
+  eval "curl ${DETECT_CURL_OPTS} --silent --fail \"\$@\""
+}
+
+# Sets DETECT_SOURCE, EMBEDDED_SIZE and EMBEDDED_SHA256 from the
+# line of DETECT_VERSION_KEY in EMBEDDED_RESOLUTION.
+read_embedded_resolution() {
+  first_repo_url
+  while read -r KEY VERSION JAR_PATH SIZE SHA256; do
+    case "${JAR_PATH}" in
+      /*.jar) ;;
+      *) continue ;;
+    esac
+    case "${SIZE}" in
+      '' | *[!0-9]*) continue ;;
+    esac
+    if [ "${KEY}" = "${DETECT_VERSION_KEY}" ] && [ -n "${SHA256}" ]; then
+      DETECT_SOURCE="${REPO_URL}${JAR_PATH}"
+      EMBEDDED_SIZE=${SIZE}
+      EMBEDDED_SHA256=${SHA256}
+      return 0
+    fi
+  done <<EOF
+${EMBEDDED_RESOLUTION}
+EOF
+  return 1
+}
+
+# Asks the repositories in DETECT_BINARY_REPO_URLS in turn for
+# the url of DETECT_VERSION_KEY and sets DETECT_SOURCE from the
+# first valid answer. The download is then taken from the
+# repository that answered.
+lookup_detect_source() {
+  LOOKUP_FILE="${DETECT_JAR_DOWNLOAD_DIR}/detect-lookup.$$"
+  LOOKUP_START_TIME=$(date +%s)
+  for_each_repo_url lookup_in_repo
+  rm -f "${LOOKUP_FILE}"
+}
+
+# Looks DETECT_VERSION_KEY up in REPO_URL, while the lookup
+# budget lasts.
+lookup_in_repo() {
+  LOOKUP_TIME_LEFT=$((DETECT_LOOKUP_BUDGET - $(date +%s) + LOOKUP_START_TIME))
+  if [ ${LOOKUP_TIME_LEFT} -le 0 ]; then
+    echo "No repository answered within ${DETECT_LOOKUP_BUDGET} seconds."
+    return 0
+  fi
+  LOOKUP_URL="${REPO_URL}/api/storage/bds-integrations-release/com/${DETECT_ORG_NAME}/integration/${DETECT_NAME_PREFIX}?properties=${DETECT_VERSION_KEY}"
+  rm -f "${LOOKUP_FILE}"
+  if command -v curl >/dev/null 2>&1; then
+    curl_with_opts --max-time "${LOOKUP_TIME_LEFT}" --header "X-Result-Detail: info" -o "${LOOKUP_FILE}" "${LOOKUP_URL}"
+  else
+    wget -q -T "${LOOKUP_TIME_LEFT}" -O "${LOOKUP_FILE}" "${LOOKUP_URL}"
+  fi
+  if [ $? -eq 0 ] && extract_detect_source "${LOOKUP_FILE}"; then
+    replace_repository_of_source
+    return 0
+  fi
+  echo "No valid answer from ${REPO_URL}"
+  return 1
+}
+
+# Sets DETECT_SOURCE to the url in the line of
+# DETECT_VERSION_KEY, from the first quote after the bracket.
+extract_detect_source() {
+  [ -f "$1" ] || return 1
+  while IFS= read -r LINE || [ -n "${LINE}" ]; do
+    case "${LINE}" in
+      *"\"${DETECT_VERSION_KEY}\""*\[*\"*)
+        LINE=${LINE#*\[}
+        LINE=${LINE#*\"}
+        DETECT_SOURCE=${LINE%%\"*}
+        [ -n "${DETECT_SOURCE}" ] && return 0
+        ;;
+    esac
+  done < "$1"
+  return 1
+}
+
+# Points DETECT_SOURCE at REPO_URL when it names one of the
+# other repositories.
+replace_repository_of_source() {
+  ANSWERING_REPO_URL=${REPO_URL}
+  set -f
+  OLD_IFS=$IFS
+  IFS=', '
+  for OTHER_REPO_URL in ${DETECT_BINARY_REPO_URLS} https://repo.blackduck.com; do
+    OTHER_REPO_URL=${OTHER_REPO_URL%/}
+    case "${DETECT_SOURCE}" in
+      "${OTHER_REPO_URL}"/*)
+        DETECT_SOURCE="${ANSWERING_REPO_URL}${DETECT_SOURCE#"${OTHER_REPO_URL}"}"
+        break
+        ;;
+    esac
+  done
+  IFS=${OLD_IFS}
+  set +f
+  REPO_URL=${ANSWERING_REPO_URL}
+}
+
+# Downloads DETECT_SOURCE next to DETECT_DESTINATION, with the
+# headers of the same request, checks it against the embedded
+# SHA-256 or else the repository's X-Checksum-Sha256, and moves
+# it into place. There is no download lock, so concurrent runs
+# each download to their own temporary file.
+download_detect_jar() {
+  TEMP_DETECT_DESTINATION="${DETECT_DESTINATION}-temp.$$"
+  HEADERS_FILE="${DETECT_DESTINATION}-headers.$$"
+  rm -f "${TEMP_DETECT_DESTINATION}" "${HEADERS_FILE}"
+  if command -v curl >/dev/null 2>&1; then
+    curl_with_opts -L -D "${HEADERS_FILE}" -o "${TEMP_DETECT_DESTINATION}" "${DETECT_SOURCE}"
+  elif command -v wget >/dev/null 2>&1; then
+    wget -q -S -O "${TEMP_DETECT_DESTINATION}" "${DETECT_SOURCE}" 2> "${HEADERS_FILE}"
+  else
+    echo "Neither curl nor wget is available, so Detect can not be downloaded."
+    exit 255
+  fi
+  if [ $? -ne 0 ]; then
+    echo "The download of ${DETECT_SOURCE} was not successful - please check your configuration and environment."
+    rm -f "${TEMP_DETECT_DESTINATION}" "${HEADERS_FILE}"
+    exit 255
+  fi
+
+  REMOTE_SHA256=${EMBEDDED_SHA256}
+  if [ -z "${REMOTE_SHA256}" ]; then
+    read_checksum_header "${HEADERS_FILE}"
+  fi
+  rm -f "${HEADERS_FILE}"
+  if [ -n "${REMOTE_SHA256}" ]; then
+    file_sha256 "${TEMP_DETECT_DESTINATION}"
+    if [ -z "${FILE_SHA256}" ]; then
+      echo "Neither sha256sum nor shasum is available, so the download can not be verified."
+    elif [ "${FILE_SHA256}" != "${REMOTE_SHA256}" ]; then
+      echo "The download does not match the expected checksum ${REMOTE_SHA256}, it will be downloaded again on the next run."
+      rm -f "${TEMP_DETECT_DESTINATION}"
+      exit 255
+    fi
+  fi
+  mv -f "${TEMP_DETECT_DESTINATION}" "${DETECT_DESTINATION}"
+}
+
+# Sets REMOTE_SHA256 from the X-Checksum-Sha256 header of the
+# final response in a headers file, as written by curl -D or
+# wget -S.
+read_checksum_header() {
+  REMOTE_SHA256=""
+  while IFS= read -r LINE || [ -n "${LINE}" ]; do
+    # wget indents the headers.
+    LINE=${LINE#"${LINE%%[! ]*}"}
+    case "${LINE}" in
+      HTTP/*)
+        # A new response after a redirect.
+        REMOTE_SHA256=""
+        ;;
+      [Xx]-[Cc][Hh][Ee][Cc][Kk][Ss][Uu][Mm]-[Ss][Hh][Aa]256:*)
+        LINE=${LINE#*:}
+        LINE=${LINE#"${LINE%%[! ]*}"}
+        # Drops the carriage return.
+        REMOTE_SHA256=${LINE%%[!0-9a-fA-F]*}
+        ;;
+    esac
+  done < "$1"
+}
+
+# Sets FILE_SHA256 to the SHA-256 of a file, or to nothing when
+# neither sha256sum nor shasum is available.
+file_sha256() {
+  SUM=""
+  if command -v sha256sum >/dev/null 2>&1; then
+    SUM=$(sha256sum "$1" 2>/dev/null)
+  elif command -v shasum >/dev/null 2>&1; then
+    SUM=$(shasum -a 256 "$1" 2>/dev/null)
+  fi
+  FILE_SHA256=${SUM%% *}
+}
+
+set_detect_java_path() {
+  if [ -n "${DETECT_JAVA_PATH}" ]; then
+    echo "Java Source: DETECT_JAVA_PATH=${DETECT_JAVA_PATH}"
+  elif [ -n "${JAVA_HOME}" ]; then
+    DETECT_JAVA_PATH="${JAVA_HOME}/bin/java"
+    echo "Java Source: JAVA_HOME/bin/java=${DETECT_JAVA_PATH}"
+  else
+    echo "Java Source: PATH"
+    DETECT_JAVA_PATH="java"
+  fi
+}
+
+run_detect() {
+  JAVACMD="\"${DETECT_JAVA_PATH}\" ${DETECT_JAVA_OPTS} -jar \"${DETECT_DESTINATION}\""
+  echo "running Detect: ${JAVACMD} ${LOGGABLE_SCRIPT_ARGS}"
+
+  eval "${JAVACMD} \"\$@\""
+  RESULT=$?
+  echo "Result code of ${RESULT}, exiting"
+  exit ${RESULT}
+}
+
+run "$@"
@@ -78,14 +78,118 @@ $JavaHome = Get-EnvironmentVariable -Key "JAVA_HOME" -DefaultValue "";
 # get and update the jar file when a new version releases.
 $DownloadOnly = Get-EnvironmentVariable -Key "DETECT_DOWNLOAD_ONLY" -DefaultValue "";
 
-# TODO: Mirror the functionality of the shell script
-# and allow Java opts.
-
 # If you want to pass any java options to the
 # invocation, specify DETECT_JAVA_OPTS in your
 # environment. For example, to specify a 6 gigabyte
 # heap size, you would set DETECT_JAVA_OPTS=-Xmx6G.
-# $DetectJavaOpts = Get-EnvironmentVariable -Key "DETECT_JAVA_OPTS" -DefaultValue "";
+# Separate multiple options with spaces.
+$DetectJavaOpts = Get-EnvironmentVariable -Key "DETECT_JAVA_OPTS" -DefaultValue "";
+
+# Unless DETECT_JAVA_OPTS already sets them, Detect is started
+# with a maximum heap of DETECT_JAVA_RAM_PERCENTAGE percent
+# (default 75) of the memory limit of its container, as many
+# processors as the CPU limit of its container allows, and the
+# serial garbage collector when that limit is a single CPU or
+# the memory limit is below 2 GB. On Linux the limits are read
+# from the cgroup of the script; without a memory limit, as on
+# Windows, the JVM sizes the heap itself. Set
+# DETECT_JAVA_ERGONOMICS to 0 to leave all of it to the JVM.
+$EnvDetectJavaErgonomics = Get-EnvironmentVariable -Key "DETECT_JAVA_ERGONOMICS" -DefaultValue "1";
+$EnvDetectJavaRamPercentage = Get-EnvironmentVariable -Key "DETECT_JAVA_RAM_PERCENTAGE" -DefaultValue "75";
+
+# Set DETECT_CDS to 1 to keep a class data sharing archive next
+# to the jar for each Java (13 or newer) that runs it, which may
+# start Detect faster. The archive is created the first time a
+# jar runs, or when it is downloaded with DETECT_DOWNLOAD_ONLY,
+# and used from then on. It only holds the classes of the JDK
+# and of the launcher, not those of the libraries nested in the
+# jar, so measure before relying on it. It is skipped when
+# DETECT_JAVA_OPTS already configures class data sharing.
+$EnvDetectCds = Get-EnvironmentVariable -Key "DETECT_CDS" -DefaultValue "0";
+
+# Detect is a single jar that holds the jars it depends on, and
+# they are read out of it again every time it starts. Set
+# DETECT_EXPLODED_JAR to 1 to extract each jar once into a
+# folder next to it and start Detect from there. It takes the
+# place of class data sharing. Detect is started from the jar
+# whenever the folder can not be made.
+$EnvDetectExplodedJar = Get-EnvironmentVariable -Key "DETECT_EXPLODED_JAR" -DefaultValue "0";
+
+# To get Detect from a mirror of the Black Duck repository,
+# set DETECT_BINARY_REPO_URLS to one or more repository urls,
+# separated by spaces or commas, in order of preference.
+# If a repository has not answered the version lookup within
+# DETECT_LOOKUP_HEDGE_DELAY seconds (default 2) the next one
+# is asked as well, and the first valid answer is used. The
+# lookup gives up after DETECT_LOOKUP_BUDGET seconds (default
+# 60), and the last downloaded jar is used instead.
+$EnvDetectBinaryRepoUrls = Get-EnvironmentVariable -Key "DETECT_BINARY_REPO_URLS" -DefaultValue (Get-EnvironmentVariable -Key "DETECT_BINARY_REPO_URL" -DefaultValue "https://repo.blackduck.com");
+$DetectBinaryRepoUrls = @($EnvDetectBinaryRepoUrls -split "[,\s]+" | Where-Object { $_ -ne "" } | ForEach-Object { $_.TrimEnd("/") })
+$EnvDetectLookupHedgeDelay = Get-EnvironmentVariable -Key "DETECT_LOOKUP_HEDGE_DELAY" -DefaultValue "2";
+$EnvDetectLookupBudget = Get-EnvironmentVariable -Key "DETECT_LOOKUP_BUDGET" -DefaultValue "60";
+
+# To skip the version lookup on repeated runs, set
+# DETECT_RESOLUTION_TTL to the number of seconds a resolved
+# DETECT_VERSION_KEY may be reused (default 0, which looks
+# the version up on every run). Within that time no network
+# calls are made, as long as the jar it resolved to is still
+# unchanged in DETECT_JAR_DOWNLOAD_DIR.
+$EnvDetectResolutionTtl = Get-EnvironmentVariable -Key "DETECT_RESOLUTION_TTL" -DefaultValue "0";
+
+# This script carries what every DETECT_VERSION_KEY resolved to
+# when it was generated, at //EMBEDDED_RESOLUTION_TIME//: the
+# version, the jar's path in the repository, its size and its
+# SHA-256. Set DETECT_USE_EMBEDDED_RESOLUTION=1 to use that
+# instead of looking the version up, so a run only asks the
+# repository for the jar itself, and the jar is checked against
+# the embedded SHA-256. Keys that are not embedded are looked up.
+$EnvDetectUseEmbeddedResolution = Get-EnvironmentVariable -Key "DETECT_USE_EMBEDDED_RESOLUTION" -DefaultValue "0";
+$EmbeddedResolutionTime = "//EMBEDDED_RESOLUTION_TIME//"
+$EmbeddedResolution = @"
+//EMBEDDED_RESOLUTION//
+"@
+
+# The jar is downloaded to a temporary file that is kept when
+# the download fails, and the next run resumes it. When the
+# repository supports ranged requests, the jar is fetched in up
+# to DETECT_DOWNLOAD_PARTS concurrent parts (default 4, set it
+# to 1 for a single stream) of at least DETECT_DOWNLOAD_PART_SIZE
+# bytes each (default 8388608). The download is checked against
+# the repository's SHA-256 before it is used.
+$EnvDetectDownloadParts = Get-EnvironmentVariable -Key "DETECT_DOWNLOAD_PARTS" -DefaultValue "4";
+$EnvDetectDownloadPartSize = Get-EnvironmentVariable -Key "DETECT_DOWNLOAD_PART_SIZE" -DefaultValue "8388608";
+
+# When several runs share DETECT_JAR_DOWNLOAD_DIR, only one of
+# them downloads a jar while the others wait for it. A lock left
+# by a process that is gone, or that has not made progress for
+# DETECT_DOWNLOAD_LOCK_TIMEOUT seconds (default 600), is taken
+# over.
+$EnvDetectDownloadLockTimeout = Get-EnvironmentVariable -Key "DETECT_DOWNLOAD_LOCK_TIMEOUT" -DefaultValue "600";
+
+# To see where the time of a run goes, set DETECT_SCRIPT_METRICS_FILE to a
+# file that a JSON record is appended to at the end of every run. It holds the
+# milliseconds spent resolving the version, downloading, finding Java and
+# running Detect, whether the resolution and the jar came from the cache, the
+# bytes downloaded and the exit code.
+$EnvDetectScriptMetricsFile = Get-EnvironmentVariable -Key "DETECT_SCRIPT_METRICS_FILE" -DefaultValue "";
+
+# DETECT_JAR_DOWNLOAD_DIR keeps every jar that was downloaded. To bound it,
+# set DETECT_JAR_CACHE_MAX_AGE_DAYS to remove jars that have not been used for
+# that many days, and/or DETECT_JAR_CACHE_MAX_SIZE_MB to remove the least
+# recently used jars until the rest fit. A jar's class data sharing archives,
+# extracted folder and unfinished downloads go with it. The jar of the run, the
+# last downloaded jar and jars that are in use or being downloaded are always
+# kept. Both default to 0, off.
+$EnvDetectJarCacheMaxAgeDays = Get-EnvironmentVariable -Key "DETECT_JAR_CACHE_MAX_AGE_DAYS" -DefaultValue "0";
+$EnvDetectJarCacheMaxSizeMb = Get-EnvironmentVariable -Key "DETECT_JAR_CACHE_MAX_SIZE_MB" -DefaultValue "0";
+
+# Set DETECT_DELTA_UPDATES=1 when the repository publishes deltas between
+# Detect jars next to them, as written by the delta operation of the
+# detect-scripts project. A new jar is then rebuilt from the last downloaded
+# one and a delta of a few MB, and verified against the checksum the
+# repository names for the jar. When there is no delta, or the repository
+# names no checksum, the whole jar is downloaded.
+$EnvDetectDeltaUpdates = Get-EnvironmentVariable -Key "DETECT_DELTA_UPDATES" -DefaultValue "0";
 
 $Version = "//SCRIPT_VERSION//"
 
@@ -93,42 +197,139 @@ $Version = "//SCRIPT_VERSION//"
 
 function Detect {
     Write-Host "Detect Powershell Script $Version"
+    $Metrics = New-RunMetrics
+    $JarInUseFile = $null
+    # A session that runs Detect twice probes its Java again, it may have changed.
+    $Script:JavaProbe = $null
+    try {
+        Write-Host "Initializing Detect folder."
+        $DetectFolder = Initialize-DetectFolder -DetectFolder $EnvDetectFolder -TempFolder $EnvTempFolder -HomeTempFolder $EnvHomeTempFolder
+
+        if ($DownloadOnly -eq "1") {
+            # Only the jar is needed, Java may not even be installed where it is downloaded.
+            Write-Host "Skipping java test, Detect will only be downloaded."
+        }
+        elseif ($EnvDetectSkipJavaTest -ne "1") {
+            Start-MetricsPhase -Metrics $Metrics -Name "java"
+            if (Test-JavaNotAvailable -DetectFolder $DetectFolder) {
+                #If java is not available, we abort early.
+                $JavaExitCode = 127 #Command not found http://tldp.org/LDP/abs/html/exitcodes.html 
+                $Metrics.ExitCode = $JavaExitCode
+                if ($EnvDetectExitCodePassthru -eq "1") {
+                    return $JavaExitCode
+                }
+                else {
+                    exit $JavaExitCode
+                }
+            }
+            Stop-MetricsPhase -Metrics $Metrics
+        }
+        else {
+            Write-Host "Skipping java test."
+        }
+
+        Write-Host "Checking for proxy."
+        $ProxyInfo = Get-ProxyInfo
+
+        Write-Host "Getting Detect."
+        $DetectJarFile = Get-DetectJar -DetectFolder $DetectFolder -DetectSource $EnvDetectSource -DetectVersionKey $EnvDetectVersionKey -DetectVersion $EnvDetectDesiredVersion -ProxyInfo $ProxyInfo -Metrics $Metrics
+        $JarInUseFile = Set-JarInUse -DetectJarFile $DetectJarFile
+        if ([int]$EnvDetectJarCacheMaxAgeDays -gt 0 -or [int]$EnvDetectJarCacheMaxSizeMb -gt 0) {
+            Start-MetricsPhase -Metrics $Metrics -Name "evict"
+            Invoke-JarCacheEviction -DetectFolder $DetectFolder -DetectJarFile $DetectJarFile
+            Stop-MetricsPhase -Metrics $Metrics
+        }
+
+        if ($DownloadOnly -ne "1") {
+            Write-Host "Executing Detect."
+            $DetectArgs = $args;
+            $DetectExitCode = Invoke-Detect -DetectJar $DetectJarFile -DetectArgs $DetectArgs -Metrics $Metrics
+            $Metrics.ExitCode = $DetectExitCode
 
-    if ($EnvDetectSkipJavaTest -ne "1") {
-        if (Test-JavaNotAvailable) {
-            #If java is not available, we abort early.
-            $JavaExitCode = 127 #Command not found http://tldp.org/LDP/abs/html/exitcodes.html 
             if ($EnvDetectExitCodePassthru -eq "1") {
-                return $JavaExitCode
+                return $DetectExitCode
+            } else {
+                exit $DetectExitCode
             }
-            else {
-                exit $JavaExitCode
+        }
+        else {
+            New-CdsArchive -DetectJarFile $DetectJarFile -Metrics $Metrics
+            Write-Host "Downloaded Detect to $DetectJarFile, it will not be run."
+            $Metrics.ExitCode = 0
+
+            if ($EnvDetectExitCodePassthru -eq "1") {
+                return 0
+            } else {
+                exit 0
             }
         }
     }
-    else {
-        Write-Host "Skipping java test."
+    finally {
+        if ($JarInUseFile) {
+            Remove-Item -Path $JarInUseFile -Force -ErrorAction SilentlyContinue
+        }
+        # Also runs when the script exits early, which leaves ExitCode at -1.
+        Write-RunMetrics -Metrics $Metrics
     }
+}
 
-    Write-Host "Initializing Detect folder."
-    $DetectFolder = Initialize-DetectFolder -DetectFolder $EnvDetectFolder -TempFolder $EnvTempFolder -HomeTempFolder $EnvHomeTempFolder
-
-    Write-Host "Checking for proxy."
-    $ProxyInfo = Get-ProxyInfo
-
-    Write-Host "Getting Detect."
-    $DetectJarFile = Get-DetectJar -DetectFolder $DetectFolder -DetectSource $EnvDetectSource -DetectVersionKey $EnvDetectVersionKey -DetectVersion $EnvDetectDesiredVersion -ProxyInfo $ProxyInfo
+# What DETECT_SCRIPT_METRICS_FILE records about a run, filled in as it goes.
+function New-RunMetrics () {
+    return New-Object -TypeName PSObject -Prop @{
+        'StartedAt'       = [long][Math]::Floor(([DateTime]::UtcNow - (New-Object DateTime 1970, 1, 1, 0, 0, 0, ([DateTimeKind]::Utc))).TotalMilliseconds)
+        'Clock'           = [System.Diagnostics.Stopwatch]::StartNew()
+        'Jar'             = ""
+        'Resolution'      = "explicit"
+        'JarCache'        = "none"
+        'BytesDownloaded' = 0L
+        'Phases'          = [ordered]@{}
+        'Phase'           = $null
+        'PhaseStart'      = 0L
+        'ExitCode'        = -1
+    }
+}
 
-    if ($DownloadOnly -ne "1") {
-        Write-Host "Executing Detect."
-        $DetectArgs = $args;
-        $DetectExitCode = Invoke-Detect -DetectJar $DetectJarFile -DetectArgs $DetectArgs
+function Start-MetricsPhase ($Metrics, $Name) {
+    $Metrics.Phase = $Name
+    $Metrics.PhaseStart = $Metrics.Clock.ElapsedMilliseconds
+}
 
-        if ($EnvDetectExitCodePassthru -eq "1") {
-            return $DetectExitCode
-        } else {
-            exit $DetectExitCode
+# Adds the milliseconds since Start-MetricsPhase to the current phase.
+function Stop-MetricsPhase ($Metrics) {
+    if ($Metrics.Phase) {
+        $Elapsed = $Metrics.Clock.ElapsedMilliseconds - $Metrics.PhaseStart
+        if ($Metrics.Phases.Contains($Metrics.Phase)) {
+            $Elapsed += $Metrics.Phases[$Metrics.Phase]
         }
+        $Metrics.Phases[$Metrics.Phase] = $Elapsed
+        $Metrics.Phase = $null
+    }
+}
+
+function Write-RunMetrics ($Metrics) {
+    if ($EnvDetectScriptMetricsFile -eq "") {
+        return
+    }
+    Stop-MetricsPhase -Metrics $Metrics
+    $Record = [ordered]@{
+        'script'          = "ps1"
+        'scriptVersion'   = $Version
+        'startedAt'       = $Metrics.StartedAt
+        'versionKey'      = $EnvDetectVersionKey
+        'jar'             = $Metrics.Jar
+        'resolution'      = $Metrics.Resolution
+        'jarCache'        = $Metrics.JarCache
+        'bytesDownloaded' = $Metrics.BytesDownloaded
+        'phases'          = $Metrics.Phases
+        'totalMillis'     = $Metrics.Clock.ElapsedMilliseconds
+        'exitCode'        = $Metrics.ExitCode
+    }
+    try {
+        # One append per run, without a byte order mark, keeps the file one record per line.
+        [System.IO.File]::AppendAllText((Resolve-FullPath -Path $EnvDetectScriptMetricsFile), ($Record | ConvertTo-Json -Compress -Depth 3) + "`n")
+    }
+    catch {
+        Write-Host "Unable to write the run metrics: $($_.Exception.Message)"
     }
 }
 
@@ -202,47 +403,46 @@ function Get-ProxyInfo () {
     return $ProxyInfo;
 }
 
-function Invoke-WebRequestWrapper($Url, $ProxyInfo, $DownloadLocation = $null) {
-    $parameters = @{}
-    try {
-        if ($DownloadLocation -ne $null) {
-            $parameters.Add("OutFile", $DownloadLocation);
-        }
-        if ($ProxyInfo -ne $null) {
-            if ($ProxyInfo.Uri -ne $null) {
-                $parameters.Add("Proxy", $ProxyInfo.Uri);
-            }
-            if ($ProxyInfo.Credentials -ne $null) {
-                $parameters.Add("ProxyCredential", $ProxyInfo.Credentials);
-            }
-        }
-    }
-    catch [Exception] {
-        Write-Host ("An exception occurred setting additional properties on web request.")
-        Write-Host ("  Reason: {0}" -f $_.Exception.GetType().FullName);
-        Write-Host ("  Reason: {0}" -f $_.Exception.Message);
-        Write-Host ("  Reason: {0}" -f $_.Exception.StackTrace);
-    }
-
-    return Invoke-WebRequest $Url -UseBasicParsing @parameters -UserAgent "PowerShell" # Workaround for https://www.jfrog.com/jira/si/jira.issueviews:issue-html/RTFACT-26216/RTFACT-26216.html
-}
-
-function Get-DetectJar ($DetectFolder, $DetectSource, $DetectVersionKey, $DetectVersion, $ProxyInfo) {
+function Get-DetectJar ($DetectFolder, $DetectSource, $DetectVersionKey, $DetectVersion, $ProxyInfo, $Metrics) {
+    Start-MetricsPhase -Metrics $Metrics -Name "resolve"
     $LastDownloadFile = "$DetectFolder/detect-last-downloaded-jar.txt"
+    Copy-LegacyLastDownload -DetectFolder $DetectFolder -LastDownloadFile $LastDownloadFile -DetectVersionKey $DetectVersionKey -DetectVersion $DetectVersion
+    $ResolutionFile = "$DetectFolder/detect-resolution-$DetectVersionKey.txt"
+    $CachedResolution = $null
+    $SaveResolution = $false
+    $Embedded = $null
 
     if ($DetectSource -eq "") {
         if ($DetectVersion -eq "") {
-            $detectVersionKeySplit = $DetectVersionKey.split("_") # Split the key provided, as an example key would be of form: DETECT_LATEST_9
-            $detectVersionChar = $detectVersionKeySplit[-1]
-            $detectVersionNumber = [int]$detectVersionChar
-
-            # If major version is 9 or less, than download from com/synopsys/integration location or else com/blackduck/integration
-            if($detectVersionNumber -le 9) {
-                $DetectVersionUrl = "https://repo.blackduck.com/api/storage/bds-integrations-release/com/synopsys/integration/synopsys-detect?properties=" + $DetectVersionKey
+            if ($EnvDetectUseEmbeddedResolution -eq "1") {
+                $Embedded = Get-EmbeddedResolution -DetectVersionKey $DetectVersionKey
+            }
+            if (!$Embedded) {
+                $CachedResolution = Read-CachedResolution -ResolutionFile $ResolutionFile -DetectFolder $DetectFolder -DetectVersionKey $DetectVersionKey
+            }
+            if ($Embedded) {
+                Write-Host "Using the location of $DetectVersionKey embedded in this script at $EmbeddedResolutionTime."
+                $DetectSource = $DetectBinaryRepoUrls[0] + $Embedded.JarPath
+                $Metrics.Resolution = "embedded"
+            } elseif ($CachedResolution -and $CachedResolution.Valid) {
+                Write-Host "Using the location of $DetectVersionKey resolved $($CachedResolution.Age) seconds ago."
+                $DetectSource = $CachedResolution.Source
+                $Metrics.Resolution = "cached"
             } else {
-                $DetectVersionUrl = "https://repo.blackduck.com/api/storage/bds-integrations-release/com/blackduck/integration/detect?properties=" + $DetectVersionKey
+                $detectVersionKeySplit = $DetectVersionKey.split("_") # Split the key provided, as an example key would be of form: DETECT_LATEST_9
+                $detectVersionChar = $detectVersionKeySplit[-1]
+                $detectVersionNumber = [int]$detectVersionChar
+
+                # If major version is 9 or less, than download from com/synopsys/integration location or else com/blackduck/integration
+                if($detectVersionNumber -le 9) {
+                    $DetectVersionPath = "/api/storage/bds-integrations-release/com/synopsys/integration/synopsys-detect?properties=" + $DetectVersionKey
+                } else {
+                    $DetectVersionPath = "/api/storage/bds-integrations-release/com/blackduck/integration/detect?properties=" + $DetectVersionKey
+                }
+                $DetectSource = Receive-DetectSource -ProxyInfo $ProxyInfo -DetectVersionPath $DetectVersionPath -DetectVersionKey $DetectVersionKey
+                $Metrics.Resolution = if ($DetectSource) { "lookup" } else { "fallback" }
+                $SaveResolution = $DetectSource -and [int]$EnvDetectResolutionTtl -gt 0
             }
-            $DetectSource = Receive-DetectSource -ProxyInfo $ProxyInfo -DetectVersionUrl $DetectVersionUrl -DetectVersionKey $DetectVersionKey
         }
         else {
             $detectVersionSplit= $DetectVersion.split(".") # Split the key provided, as an example version would be of form: 8.11.2
@@ -251,9 +451,9 @@ function Get-DetectJar ($DetectFolder, $DetectSource, $DetectVersionKey, $Detect
 
             # If major version is 9 or less, than download from com/synopsys/integration location or else com/blackduck/integration
             if($detectVersionNumber -le 9) {
-                $DetectSource = "https://repo.blackduck.com/bds-integrations-release/com/synopsys/integration/synopsys-detect/" + $DetectVersion + "/synopsys-detect-" + $DetectVersion + ".jar"
+                $DetectSource = $DetectBinaryRepoUrls[0] + "/bds-integrations-release/com/synopsys/integration/synopsys-detect/" + $DetectVersion + "/synopsys-detect-" + $DetectVersion + ".jar"
             } else {
-                $DetectSource = "https://repo.blackduck.com/bds-integrations-release/com/blackduck/integration/detect/" + $DetectVersion + "/detect-" + $DetectVersion + ".jar"
+                $DetectSource = $DetectBinaryRepoUrls[0] + "/bds-integrations-release/com/blackduck/integration/detect/" + $DetectVersion + "/detect-" + $DetectVersion + ".jar"
             }
 
         }
@@ -272,7 +472,11 @@ function Get-DetectJar ($DetectFolder, $DetectSource, $DetectVersionKey, $Detect
         Write-Host "Last download exists '$LastDownloadFileExists'"
 
         if ($LastDownloadFileExists) {
-            $DetectJarFile = Get-Content -Path $LastDownloadFile
+            $DetectJarFile = Get-Content -Path $LastDownloadFile -TotalCount 1
+            # The shell script records only the file name.
+            if (![System.IO.Path]::IsPathRooted($DetectJarFile)) {
+                $DetectJarFile = "$DetectFolder/$DetectJarFile"
+            }
             Write-Host "Using last downloaded detect '$DetectJarFile'"
         } else {
             Write-Host "Unable to determine detect version and no downloaded detect found."
@@ -281,39 +485,710 @@ function Get-DetectJar ($DetectFolder, $DetectSource, $DetectVersionKey, $Detect
     }
 
 
+    $Metrics.Jar = Split-Path -Path $DetectJarFile -Leaf
+    Stop-MetricsPhase -Metrics $Metrics
+
     $DetectJarExists = Test-Path $DetectJarFile
     Write-Host "Detect jar exists '$DetectJarExists'"
 
     if (!$DetectJarExists) {
-        Receive-DetectJar -DetectUrl $DetectSource -DetectJarFile $DetectJarFile -ProxyInfo $ProxyInfo -LastDownloadFile $LastDownloadFile
+        Start-MetricsPhase -Metrics $Metrics -Name "download"
+        $DownloadLock = Enter-DownloadLock -DetectJarFile $DetectJarFile
+        try {
+            if (Test-Path $DetectJarFile) {
+                Write-Host "Another process downloaded $DetectJarFile, so it will be used."
+                $Metrics.JarCache = "shared"
+            } else {
+                $Metrics.JarCache = "miss"
+                if ($EnvDetectDeltaUpdates -eq "1" -and (Update-FromDelta -DetectUrl $DetectSource -DetectJarFile $DetectJarFile -ProxyInfo $ProxyInfo -LastDownloadFile $LastDownloadFile -Embedded $Embedded -Metrics $Metrics)) {
+                    $Metrics.JarCache = "delta"
+                } else {
+                    Receive-DetectJar -DetectUrl $DetectSource -DetectJarFile $DetectJarFile -ProxyInfo $ProxyInfo -LastDownloadFile $LastDownloadFile -Embedded $Embedded -Metrics $Metrics
+                }
+            }
+        }
+        finally {
+            $DownloadLock.Dispose()
+        }
+        Stop-MetricsPhase -Metrics $Metrics
     }
     else {
         Write-Host "You have already downloaded the latest file, so the local file will be used."
+        $Metrics.JarCache = "hit"
+    }
+
+    if ($SaveResolution) {
+        Save-Resolution -ResolutionFile $ResolutionFile -DetectVersionKey $DetectVersionKey -DetectSource $DetectSource -DetectJarFile $DetectJarFile -CachedResolution $CachedResolution
     }
 
     return $DetectJarFile
 }
 
+# Finds the version key in the resolution embedded in this script, or returns
+# $null. The jar is taken from the first of DETECT_BINARY_REPO_URLS.
+function Get-EmbeddedResolution ($DetectVersionKey) {
+    foreach ($Line in ($EmbeddedResolution -split "\r?\n")) {
+        $Fields = $Line.Trim() -split " "
+        if ($Fields.Length -eq 5 -and $Fields[0] -eq $DetectVersionKey -and $Fields[2] -like "/*.jar" -and $Fields[3] -match "^[0-9]+$") {
+            return New-Object -TypeName PSObject -Prop @{
+                'Version' = $Fields[1]
+                'JarPath' = $Fields[2]
+                'Size'    = [long]$Fields[3]
+                'Sha256'  = $Fields[4]
+            }
+        }
+    }
+    return $null
+}
+
+# Reads the resolution file. It is Valid when it resolved the version key
+# less than DETECT_RESOLUTION_TTL seconds ago to a jar that is still in place.
+function Read-CachedResolution ($ResolutionFile, $DetectFolder, $DetectVersionKey) {
+    if ([int]$EnvDetectResolutionTtl -le 0 -or !(Test-Path $ResolutionFile)) {
+        return $null
+    }
+
+    $Fields = @{}
+    foreach ($Line in (Get-Content -Path $ResolutionFile)) {
+        $Parts = $Line.Split("=", 2)
+        if ($Parts.Length -eq 2) {
+            $Fields[$Parts[0]] = $Parts[1]
+        }
+    }
+    $Resolution = New-Object -TypeName PSObject -Prop @{
+        'Source'     = $Fields["source"]
+        'FileName'   = $Fields["filename"]
+        'Sha256'     = $Fields["sha256"]
+        'ResolvedAt' = $Fields["resolvedAt"]
+        'Marker'     = $Fields["marker"]
+        'Age'        = $null
+        'Valid'      = $false
+    }
+
+    $ResolvedAt = 0L
+    if ($Fields["key"] -ne $DetectVersionKey -or !$Resolution.Source -or !$Resolution.FileName -or $Resolution.FileName -match "[/\\]" -or ![long]::TryParse($Resolution.ResolvedAt, [ref]$ResolvedAt)) {
+        return $Resolution
+    }
+    $Resolution.Age = (Get-UnixTime -DateTimeUtc ([DateTime]::UtcNow)) - $ResolvedAt
+    if ($Resolution.Age -lt 0 -or $Resolution.Age -ge [int]$EnvDetectResolutionTtl) {
+        return $Resolution
+    }
+
+    # The size and modification time vouch for the jar, it is only hashed again when they have changed.
+    $CachedJarFile = "$DetectFolder/$($Resolution.FileName)"
+    $Marker = Get-FileMarker -Path $CachedJarFile
+    if (!$Marker) {
+        return $Resolution
+    }
+    if ($Marker -ne $Resolution.Marker) {
+        if (!$Resolution.Sha256 -or (Get-FileSha256 -Path $CachedJarFile) -ne $Resolution.Sha256) {
+            return $Resolution
+        }
+        $Resolution.Marker = $Marker
+        Write-Resolution -ResolutionFile $ResolutionFile -DetectVersionKey $DetectVersionKey -Resolution $Resolution
+    }
+
+    $Resolution.Valid = $true
+    return $Resolution
+}
+
+# Records the lookup that resolved the version key to the jar, so later runs
+# within DETECT_RESOLUTION_TTL seconds can skip it.
+function Save-Resolution ($ResolutionFile, $DetectVersionKey, $DetectSource, $DetectJarFile, $CachedResolution) {
+    $Marker = Get-FileMarker -Path $DetectJarFile
+    if (!$Marker) {
+        return
+    }
+    $DetectFileName = Parse-Detect-File-Name -DetectSource $DetectSource
+    if ($CachedResolution -and $CachedResolution.FileName -eq $DetectFileName -and $CachedResolution.Sha256 -and $CachedResolution.Marker -eq $Marker) {
+        $Sha256 = $CachedResolution.Sha256
+    } else {
+        $Sha256 = Get-FileSha256 -Path $DetectJarFile
+    }
+    $Resolution = New-Object -TypeName PSObject -Prop @{
+        'Source'     = $DetectSource
+        'FileName'   = $DetectFileName
+        'Sha256'     = $Sha256
+        'ResolvedAt' = Get-UnixTime -DateTimeUtc ([DateTime]::UtcNow)
+        'Marker'     = $Marker
+    }
+    Write-Resolution -ResolutionFile $ResolutionFile -DetectVersionKey $DetectVersionKey -Resolution $Resolution
+}
+
+function Write-Resolution ($ResolutionFile, $DetectVersionKey, $Resolution) {
+    $Lines = @(
+        "key=$DetectVersionKey",
+        "source=$($Resolution.Source)",
+        "filename=$($Resolution.FileName)",
+        "sha256=$($Resolution.Sha256)",
+        "resolvedAt=$($Resolution.ResolvedAt)",
+        "marker=$($Resolution.Marker)"
+    )
+    $TempResolutionFile = "$ResolutionFile.$PID.tmp"
+    try {
+        Set-Content -Path $TempResolutionFile -Value $Lines -Encoding Ascii -ErrorAction Stop
+        Move-FileIntoPlace -Source $TempResolutionFile -Destination $ResolutionFile
+    }
+    catch {
+        Write-Host "Unable to save the resolution of $($DetectVersionKey): $($_.Exception.Message)"
+        Remove-Item -Path $TempResolutionFile -Force -ErrorAction SilentlyContinue
+    }
+}
+
+# Replaces the destination in one step so a concurrent run never reads half of it.
+function Move-FileIntoPlace ($Source, $Destination) {
+    $SourcePath = Resolve-FullPath -Path $Source
+    $DestinationPath = Resolve-FullPath -Path $Destination
+    if ([System.IO.File]::Exists($DestinationPath)) {
+        [System.IO.File]::Replace($SourcePath, $DestinationPath, [NullString]::Value)
+    } else {
+        [System.IO.File]::Move($SourcePath, $DestinationPath)
+    }
+}
+
+# The size and modification time of a file, or $null when it does not exist.
+function Get-FileMarker ($Path) {
+    if (!(Test-Path -Path $Path -PathType Leaf)) {
+        return $null
+    }
+    $Item = Get-Item -Path $Path
+    return "$($Item.Length) $(Get-UnixTime -DateTimeUtc $Item.LastWriteTimeUtc)"
+}
+
+function Get-FileSha256 ($Path) {
+    return (Get-FileHash -Path $Path -Algorithm SHA256).Hash.ToLowerInvariant()
+}
+
+function Get-UnixTime ($DateTimeUtc) {
+    $Epoch = New-Object DateTime 1970, 1, 1, 0, 0, 0, ([DateTimeKind]::Utc)
+    return [long][Math]::Floor(($DateTimeUtc - $Epoch).TotalSeconds)
+}
+
 function Parse-Detect-File-Name($DetectSource) {
     $SlashParts = $DetectSource.Split("/")
     $LastPart = $SlashParts[$SlashParts.Length - 1]
     return $LastPart
 }
 
-function Invoke-Detect ($DetectJarFile, $DetectArgs) {
+# Marks the jar as used. The time of its .used file orders jars for eviction,
+# and its in-use file, which names the process and host, keeps it from being
+# evicted during the run. Returns the in-use file, or $null when the folder
+# could not be written to.
+function Set-JarInUse ($DetectJarFile) {
+    try {
+        $UsedFile = "$DetectJarFile.used"
+        if (Test-Path -Path $UsedFile) {
+            (Get-Item -Path $UsedFile).LastWriteTimeUtc = [DateTime]::UtcNow
+        } else {
+            New-Item -ItemType File -Path $UsedFile -ErrorAction Stop | Out-Null
+        }
+        $InUseFile = "$DetectJarFile.in-use-$PID"
+        Set-Content -Path $InUseFile -Value "$PID $([Environment]::MachineName) $(Get-UnixTime -DateTimeUtc ([DateTime]::UtcNow))" -Encoding ASCII -ErrorAction Stop
+        return $InUseFile
+    }
+    catch {
+        return $null
+    }
+}
+
+# Removes the jars in DETECT_JAR_DOWNLOAD_DIR that have not been used for
+# DETECT_JAR_CACHE_MAX_AGE_DAYS, then the least recently used ones until the
+# jars and what is kept for them fit in DETECT_JAR_CACHE_MAX_SIZE_MB. Only
+# files named for Detect are looked at, the folder may be TMP.
+function Invoke-JarCacheEviction ($DetectFolder, $DetectJarFile) {
+    $MaxAge = [long]$EnvDetectJarCacheMaxAgeDays * 86400
+    $MaxSize = [long]$EnvDetectJarCacheMaxSizeMb * 1048576
+    $Now = Get-UnixTime -DateTimeUtc ([DateTime]::UtcNow)
+    $KeptJars = @(Split-Path -Path $DetectJarFile -Leaf)
+    $LastDownloadFile = "$DetectFolder/detect-last-downloaded-jar.txt"
+    if (Test-Path -Path $LastDownloadFile) {
+        # The shell script records only the file name.
+        $KeptJars += ((Get-Content -Path $LastDownloadFile -TotalCount 1) -split "[/\\]")[-1]
+    }
+
+    $Entries = @{}
+    foreach ($Item in @(Get-ChildItem -Path $DetectFolder -Filter "*detect-*" -Force -ErrorAction SilentlyContinue)) {
+        $Time = Get-UnixTime -DateTimeUtc $Item.LastWriteTimeUtc
+        if ($Item.Name -like "detect-resolution-*.txt" -or $Item.Name -like "detect-java-*.txt") {
+            # Quick to recreate, so only their age matters.
+            if ($MaxAge -gt 0 -and $Now - $Time -gt $MaxAge) {
+                Remove-Item -Path $Item.FullName -Force -ErrorAction SilentlyContinue
+            }
+            continue
+        }
+        $Jar = Get-CacheFileJar -Name $Item.Name
+        if (!$Jar) {
+            continue
+        }
+        if (!$Entries.ContainsKey($Jar)) {
+            $Entries[$Jar] = New-Object -TypeName PSObject -Prop @{
+                'Jar'      = $Jar
+                'Files'    = @()
+                'Size'     = 0L
+                'LastUsed' = 0L
+                'Kept'     = $KeptJars -contains $Jar
+            }
+        }
+        $Entry = $Entries[$Jar]
+        if ($Item.Name -like "*.jar.lock") {
+            # Being downloaded.
+            $Entry.Kept = $true
+        }
+        elseif ($Item.Name -like "*.jar.in-use-*") {
+            if (Test-InUseFileStale -InUseFile $Item.FullName -Time $Time -Now $Now) {
+                Remove-Item -Path $Item.FullName -Force -ErrorAction SilentlyContinue
+                continue
+            }
+            $Entry.Kept = $true
+            $Entry.Files += $Item.FullName
+            $Entry.Size += $Item.Length
+        }
+        elseif ($Item.PSIsContainer) {
+            # An extracted jar counts with the size its marker recorded.
+            $Fields = @((Read-FirstLine -Path (Join-Path $Item.FullName "detect-exploded.txt")) -split " ")
+            $ExplodedKb = 0L
+            if ($Fields.Length -ge 3 -and [long]::TryParse($Fields[2], [ref]$ExplodedKb)) {
+                $Entry.Size += $ExplodedKb * 1024
+            }
+            $Entry.Files += $Item.FullName
+        }
+        else {
+            $Entry.Files += $Item.FullName
+            $Entry.Size += $Item.Length
+        }
+        $Entry.LastUsed = [Math]::Max($Entry.LastUsed, $Time)
+    }
+
+    $Total = ($Entries.Values | Measure-Object -Property Size -Sum).Sum
+    foreach ($Entry in @($Entries.Values | Where-Object { !$_.Kept } | Sort-Object -Property LastUsed)) {
+        if ($MaxAge -gt 0 -and $Now - $Entry.LastUsed -gt $MaxAge) {
+            Write-Host "Removing $($Entry.Jar), it was last used $([Math]::Floor(($Now - $Entry.LastUsed) / 86400)) days ago."
+        }
+        elseif ($MaxSize -gt 0 -and $Total -gt $MaxSize) {
+            Write-Host "Removing $($Entry.Jar), the least recently used jar, to fit in $EnvDetectJarCacheMaxSizeMb MB."
+        }
+        else {
+            continue
+        }
+        Remove-Item -Path $Entry.Files -Recurse -Force -ErrorAction SilentlyContinue
+        $Total -= $Entry.Size
+    }
+}
+
+# The name of the jar that a file in DETECT_JAR_DOWNLOAD_DIR belongs to: the
+# jar itself, its unfinished download, lock, use markers, class data sharing
+# archives and extracted folder. $null for any other file.
+function Get-CacheFileJar ($Name) {
+    if (!($Name -like "detect-*" -or $Name -like "synopsys-detect-*")) {
+        return $null
+    }
+    $JarIndex = $Name.IndexOf(".jar")
+    if ($JarIndex -gt 0) {
+        return $Name.Substring(0, $JarIndex) + ".jar"
+    }
+    # Named for the jar and the Java that created it.
+    if ($Name -match "^(.+)-[0-9a-f]+\.jsa") {
+        return $Matches[1] + ".jar"
+    }
+    # Extracted for DETECT_EXPLODED_JAR, or being extracted.
+    if ($Name -match "^(.+)-exploded(\.[0-9]+)?$") {
+        return $Matches[1] + ".jar"
+    }
+    return $null
+}
+
+# An in-use file is stale when its process is gone from this host. The
+# process behind a file from another host can not be checked, so that file is
+# stale once it is older than DETECT_JAR_CACHE_MAX_AGE_DAYS.
+function Test-InUseFileStale ($InUseFile, $Time, $Now) {
+    $Fields = @((Get-Content -Path $InUseFile -TotalCount 1 -ErrorAction SilentlyContinue) -split "\s+")
+    $OwnerPid = 0
+    if ($Fields.Length -ge 2 -and $Fields[1] -eq [Environment]::MachineName -and [int]::TryParse($Fields[0], [ref]$OwnerPid)) {
+        return !(Get-Process -Id $OwnerPid -ErrorAction SilentlyContinue)
+    }
+    return [int]$EnvDetectJarCacheMaxAgeDays -gt 0 -and $Now - $Time -gt [long]$EnvDetectJarCacheMaxAgeDays * 86400
+}
+
+function Invoke-Detect ($DetectJarFile, $DetectArgs, $Metrics) {
     ${Env:detect.phone.home.passthrough.powershell.version} = $Version
-    $JavaArgs = @("-jar", $DetectJarFile)
+    Start-MetricsPhase -Metrics $Metrics -Name "java"
+    $JavaCommand = Determine-Java($JavaHome, $DetectJavaPath)
+    $Ergonomics = @(Get-JavaErgonomicsOptions -JavaCommand $JavaCommand -DetectFolder (Split-Path -Path $DetectJarFile -Parent))
+    $Launch = Get-LaunchOptions -DetectJarFile $DetectJarFile
+    $Cds = Get-CdsOptions -JavaCommand $JavaCommand -DetectJarFile $DetectJarFile -Exploded $Launch.Exploded
+    Stop-MetricsPhase -Metrics $Metrics
+    $JavaArgs = $Ergonomics + @(Get-DetectJavaOpts) + $Cds.Options + $Launch.Options
     $AllArgs = $JavaArgs + $DetectArgs
     Set-ToEscaped($AllArgs)
     Write-Host "Running Detect: $AllArgs"
-    $JavaCommand = Determine-Java($JavaHome, $DetectJavaPath)
+    Start-MetricsPhase -Metrics $Metrics -Name "detect"
     $DetectProcess = Start-Process $JavaCommand -ArgumentList $AllArgs -NoNewWindow -PassThru
     Wait-Process -InputObject $DetectProcess -ErrorAction SilentlyContinue
     $DetectExitCode = $DetectProcess.ExitCode;
+    Complete-CdsArchive -Cds $Cds
+    Stop-MetricsPhase -Metrics $Metrics
     Write-Host "Result code of $DetectExitCode, exiting"
     return $DetectExitCode
 }
 
+function Get-DetectJavaOpts () {
+    return @($DetectJavaOpts -split "\s+" | Where-Object { $_ -ne "" })
+}
+
+# In download only mode, a short run of a new jar that only prints its help
+# creates the archive ahead of the first scan, or the jar is extracted when
+# DETECT_EXPLODED_JAR asks for it.
+function New-CdsArchive ($DetectJarFile, $Metrics) {
+    Start-MetricsPhase -Metrics $Metrics -Name "java"
+    $JavaCommand = Determine-Java($JavaHome, $DetectJavaPath)
+    $Ergonomics = @(Get-JavaErgonomicsOptions -JavaCommand $JavaCommand -DetectFolder (Split-Path -Path $DetectJarFile -Parent))
+    $Launch = Get-LaunchOptions -DetectJarFile $DetectJarFile
+    $Cds = Get-CdsOptions -JavaCommand $JavaCommand -DetectJarFile $DetectJarFile -Exploded $Launch.Exploded
+    Stop-MetricsPhase -Metrics $Metrics
+    if ($Cds.Mode -eq "create") {
+        Write-Host "Creating a class data sharing archive at $($Cds.Archive)"
+        Start-MetricsPhase -Metrics $Metrics -Name "detect"
+        # The archive is only used by a JVM started with the same options.
+        $AllArgs = $Ergonomics + @(Get-DetectJavaOpts) + $Cds.Options + $Launch.Options + @("--help")
+        Set-ToEscaped($AllArgs)
+        $OutputFile = [System.IO.Path]::GetTempFileName()
+        $ErrorFile = [System.IO.Path]::GetTempFileName()
+        try {
+            $Process = Start-Process $JavaCommand -ArgumentList $AllArgs -NoNewWindow -PassThru -RedirectStandardOutput $OutputFile -RedirectStandardError $ErrorFile
+            Wait-Process -InputObject $Process -ErrorAction SilentlyContinue
+        }
+        catch {
+            Write-Host "Unable to create the class data sharing archive: $($_.Exception.Message)"
+        }
+        finally {
+            Remove-Item -Path $OutputFile, $ErrorFile -Force -ErrorAction SilentlyContinue
+        }
+        Complete-CdsArchive -Cds $Cds
+        Stop-MetricsPhase -Metrics $Metrics
+    }
+}
+
+# The options to run the jar with the archive kept for it and this Java (Mode
+# use), or to create that archive when the JVM exits (Mode create). There are
+# none when the JVM can not share classes this way, which includes Detect
+# starting from a folder rather than a jar.
+function Get-CdsOptions ($JavaCommand, $DetectJarFile, $Exploded) {
+    $Cds = New-Object -TypeName PSObject -Prop @{
+        'Mode'    = ""
+        'Options' = @()
+        'Archive' = $null
+    }
+    if ($EnvDetectCds -ne "1" -or $Exploded -or $DetectJavaOpts -match "-Xshare|SharedArchiveFile|ArchiveClassesAtExit") {
+        return $Cds
+    }
+    $Java = Get-JavaProbe -JavaCommand $JavaCommand -DetectFolder (Split-Path -Path $DetectJarFile -Parent)
+    if (!$Java -or $Java.MajorVersion -lt 13) {
+        return $Cds
+    }
+
+    $Cds.Archive = (Resolve-FullPath -Path ($DetectJarFile -replace "\.jar$", "")) + "-$($Java.Id).jsa"
+    $Archive = Get-Item -Path $Cds.Archive -ErrorAction SilentlyContinue
+    $Jar = Get-Item -Path $DetectJarFile
+    # The JVM ignores an archive that does not match, but one older than the
+    # jar is replaced rather than ignored on every run.
+    if ($Archive -and $Archive.Length -gt 0 -and $Archive.LastWriteTimeUtc -ge $Jar.LastWriteTimeUtc) {
+        $Cds.Mode = "use"
+        $Cds.Options = @("-XX:SharedArchiveFile=$($Cds.Archive)", "-Xshare:auto", "-Xlog:cds=off", "-Xlog:cds+dynamic=off")
+    } else {
+        $Cds.Mode = "create"
+        $Cds.Options = @("-XX:ArchiveClassesAtExit=$($Cds.Archive).$PID", "-Xlog:cds=off", "-Xlog:cds+dynamic=off")
+    }
+    return $Cds
+}
+
+# Moves an archive created by this run into place, so concurrent runs never
+# load one that is still being written.
+function Complete-CdsArchive ($Cds) {
+    if ($Cds.Mode -ne "create") {
+        return
+    }
+    $CreatedArchive = "$($Cds.Archive).$PID"
+    try {
+        if ((Get-FileLength -Path $CreatedArchive) -gt 0) {
+            Move-FileIntoPlace -Source $CreatedArchive -Destination $Cds.Archive
+        }
+    }
+    catch {
+        Write-Host "Unable to keep the class data sharing archive: $($_.Exception.Message)"
+    }
+    Remove-Item -Path $CreatedArchive -Force -ErrorAction SilentlyContinue
+}
+
+# The arguments that start the jar: from the folder it is extracted to when
+# DETECT_EXPLODED_JAR is 1 (Exploded), or with -jar when that is not asked for
+# or the folder can not be made.
+function Get-LaunchOptions ($DetectJarFile) {
+    $Launch = New-Object -TypeName PSObject -Prop @{
+        'Exploded' = $false
+        'Options'  = @("-jar", $DetectJarFile)
+    }
+    if ($EnvDetectExplodedJar -ne "1") {
+        return $Launch
+    }
+    $ExplodedFolder = (Resolve-FullPath -Path ($DetectJarFile -replace "\.jar$", "")) + "-exploded"
+    $MainClass = Read-ExplodedMarker -ExplodedFolder $ExplodedFolder -DetectJarFile $DetectJarFile
+    if (!$MainClass) {
+        Expand-DetectJar -ExplodedFolder $ExplodedFolder -DetectJarFile $DetectJarFile
+        $MainClass = Read-ExplodedMarker -ExplodedFolder $ExplodedFolder -DetectJarFile $DetectJarFile
+    }
+    if ($MainClass) {
+        $Launch.Exploded = $true
+        $Launch.Options = @("-cp", $ExplodedFolder, $MainClass)
+    }
+    return $Launch
+}
+
+# The class to start Detect with when the folder holds a complete extraction of
+# the jar as it is now, otherwise $null. Its marker names the size and time of
+# the jar it came from, the size of the folder in KB and the class to start.
+function Read-ExplodedMarker ($ExplodedFolder, $DetectJarFile) {
+    $Fields = @((Read-FirstLine -Path (Join-Path $ExplodedFolder "detect-exploded.txt")) -split " ")
+    if ($Fields.Length -lt 4 -or "$($Fields[0]) $($Fields[1])" -ne (Get-FileMarker -Path $DetectJarFile)) {
+        return $null
+    }
+    return $Fields[3]
+}
+
+# Extracts the jar into a folder of this process, which is marked and moved
+# into place once it is complete, so concurrent runs never start Detect from
+# half of it. A stale folder, of a jar since replaced, is removed first.
+function Expand-DetectJar ($ExplodedFolder, $DetectJarFile) {
+    $TempFolder = "$ExplodedFolder.$PID"
+    Write-Host "Extracting $DetectJarFile to $ExplodedFolder"
+    try {
+        Add-Type -AssemblyName System.IO.Compression.FileSystem
+        Remove-Item -Path $TempFolder -Recurse -Force -ErrorAction SilentlyContinue
+        [System.IO.Compression.ZipFile]::ExtractToDirectory((Resolve-FullPath -Path $DetectJarFile), $TempFolder)
+        $MainClass = Get-ManifestMainClass -ManifestFile (Join-Path $TempFolder "META-INF/MANIFEST.MF")
+        if (!$MainClass) {
+            throw "The jar names no Main-Class."
+        }
+        $Size = (Get-ChildItem -Path $TempFolder -Recurse -Force | Where-Object { !$_.PSIsContainer } | Measure-Object -Property Length -Sum).Sum
+        Set-Content -Path (Join-Path $TempFolder "detect-exploded.txt") -Value "$(Get-FileMarker -Path $DetectJarFile) $([long][Math]::Ceiling($Size / 1024)) $MainClass" -Encoding ASCII
+        Remove-Item -Path $ExplodedFolder -Recurse -Force -ErrorAction SilentlyContinue
+        # Throws when a concurrent run moved its folder into place first.
+        [System.IO.Directory]::Move($TempFolder, $ExplodedFolder)
+    }
+    catch {
+        Write-Host "Unable to extract the jar, running Detect from the jar: $($_.Exception.Message)"
+    }
+    finally {
+        Remove-Item -Path $TempFolder -Recurse -Force -ErrorAction SilentlyContinue
+    }
+}
+
+# The Main-Class of a jar manifest, which wraps long values onto lines that
+# start with a space.
+function Get-ManifestMainClass ($ManifestFile) {
+    $MainClass = $null
+    foreach ($Line in @(Get-Content -Path $ManifestFile -ErrorAction SilentlyContinue)) {
+        if ($Line.StartsWith("Main-Class:")) {
+            $MainClass = $Line.Substring(11).Trim()
+        }
+        elseif ($MainClass -and $Line.StartsWith(" ")) {
+            $MainClass += $Line.Substring(1).TrimEnd()
+        }
+        elseif ($MainClass) {
+            break
+        }
+    }
+    return $MainClass
+}
+
+# Identifies the Java executable by its location, size and modification time,
+# and finds its feature version and whether it reads the cgroup limits and takes
+# MaxRAMPercentage (8u191 and 10 or newer). Both are remembered per Id in the
+# Detect folder, so each Java is only asked once. A Java that starts but whose
+# version can not be read has MajorVersion 0.
+function Get-JavaProbe ($JavaCommand, $DetectFolder) {
+    $Java = Start-JavaProbe -JavaCommand $JavaCommand -DetectFolder $DetectFolder
+    if ($Java -and $Java.Process) {
+        Complete-JavaProbe -Java $Java
+    }
+    return $Java
+}
+
+# Starts asking the Java for its version without waiting for the answer, so
+# Detect is looked up and downloaded meanwhile, and Get-JavaProbe waits for it.
+# $null when there is no such Java or it can not be started. The probe is kept
+# for the run, so this and Get-JavaProbe can be called again.
+function Start-JavaProbe ($JavaCommand, $DetectFolder) {
+    if ($Script:JavaProbe -and $Script:JavaProbe.Command -eq $JavaCommand) {
+        return $Script:JavaProbe
+    }
+    $Command = Get-Command -Name $JavaCommand -CommandType Application -ErrorAction SilentlyContinue | Select-Object -First 1
+    if (!$Command) {
+        return $null
+    }
+    $JavaExecutable = $Command.Path
+    $Marker = Get-FileMarker -Path $JavaExecutable
+    if (!$Marker) {
+        return $null
+    }
+    $IdBytes = [System.Security.Cryptography.SHA256]::Create().ComputeHash([System.Text.Encoding]::UTF8.GetBytes("$JavaExecutable $Marker"))
+    $Java = New-Object -TypeName PSObject -Prop @{
+        'Id'               = ([BitConverter]::ToString($IdBytes, 0, 4) -replace "-", "").ToLowerInvariant()
+        'Command'          = $JavaCommand
+        'Executable'       = $JavaExecutable
+        'MajorVersion'     = 0
+        'ContainerSupport' = $false
+        'ProbeFile'        = $null
+        'Process'          = $null
+        'StdOutputTask'    = $null
+        'StdErrorTask'     = $null
+    }
+
+    $Java.ProbeFile = "$DetectFolder/detect-java-$($Java.Id).txt"
+    if (Test-Path -Path $Java.ProbeFile) {
+        $CachedVersion = $null
+        $CachedContainerSupport = $null
+        foreach ($Line in (Get-Content -Path $Java.ProbeFile)) {
+            if ($Line -match "^version=(\d+)$") {
+                $CachedVersion = [int]$Matches[1]
+            } elseif ($Line -match "^container_support=([01])$") {
+                $CachedContainerSupport = $Matches[1] -eq "1"
+            }
+        }
+        if ($CachedVersion -ne $null -and $CachedContainerSupport -ne $null) {
+            $Java.MajorVersion = $CachedVersion
+            $Java.ContainerSupport = $CachedContainerSupport
+            $Script:JavaProbe = $Java
+            return $Java
+        }
+    }
+
+    try {
+        $ProcessStartInfo = New-object System.Diagnostics.ProcessStartInfo
+        $ProcessStartInfo.CreateNoWindow = $true
+        $ProcessStartInfo.UseShellExecute = $false
+        $ProcessStartInfo.RedirectStandardOutput = $true
+        $ProcessStartInfo.RedirectStandardError = $true
+        $ProcessStartInfo.FileName = $JavaExecutable
+        $ProcessStartInfo.Arguments = "-version"
+        $Process = New-Object System.Diagnostics.Process
+        $Process.StartInfo = $ProcessStartInfo
+        [void]$Process.Start()
+        # Both streams are read as they come, so neither fills up and blocks Java.
+        $Java.StdOutputTask = $Process.StandardOutput.ReadToEndAsync()
+        $Java.StdErrorTask = $Process.StandardError.ReadToEndAsync()
+        $Java.Process = $Process
+    }
+    catch {
+        return $null
+    }
+    $Script:JavaProbe = $Java
+    return $Java
+}
+
+# Waits for the version Start-JavaProbe asked for and remembers it.
+function Complete-JavaProbe ($Java) {
+    $StdError = $Java.StdErrorTask.Result
+    [void]$Java.StdOutputTask.Result
+    $Java.Process.WaitForExit()
+    $Java.Process = $null
+    # The version is the first quoted value, e.g. "17.0.9" or "1.8.0_392".
+    if ($StdError -notmatch 'version "(1\.)?(\d+)[^"_]*(_(\d+))?') {
+        Write-Host "Unable to read the Java version from: $StdError"
+        return
+    }
+    $Java.MajorVersion = [int]$Matches[2]
+    $Update = 0
+    if ($Matches[4]) {
+        $Update = [int]$Matches[4]
+    }
+    $Java.ContainerSupport = $Java.MajorVersion -ge 10 -or ($Java.MajorVersion -eq 8 -and $Update -ge 191)
+    $TempJavaProbeFile = "$($Java.ProbeFile).$PID.tmp"
+    try {
+        Set-Content -Path $TempJavaProbeFile -Value @("version=$($Java.MajorVersion)", "container_support=$([int]$Java.ContainerSupport)") -Encoding Ascii -ErrorAction Stop
+        Move-FileIntoPlace -Source $TempJavaProbeFile -Destination $Java.ProbeFile
+    }
+    catch {
+        Remove-Item -Path $TempJavaProbeFile -Force -ErrorAction SilentlyContinue
+    }
+}
+
+# The heap, processor count and garbage collector options DETECT_JAVA_ERGONOMICS
+# asks for, leaving out what DETECT_JAVA_OPTS already sets.
+function Get-JavaErgonomicsOptions ($JavaCommand, $DetectFolder) {
+    $Options = @()
+    if ($EnvDetectJavaErgonomics -ne "1") {
+        return $Options
+    }
+    $Java = Get-JavaProbe -JavaCommand $JavaCommand -DetectFolder $DetectFolder
+    if (!$Java) {
+        return $Options
+    }
+    $Limits = Get-CgroupLimits
+
+    # Without a memory limit, e.g. on a build agent running several scans at once, the heap is left to the JVM default.
+    if ($Limits.MemoryMb -gt 0 -and $DetectJavaOpts -notmatch "-Xmx|MaxHeapSize|RAMPercentage|MaxRAM=") {
+        if ($Java.ContainerSupport) {
+            $Options += "-XX:MaxRAMPercentage=$EnvDetectJavaRamPercentage"
+        } else {
+            # An older Java sizes its heap from the memory of the machine.
+            $Options += "-Xmx$([long][Math]::Floor($Limits.MemoryMb * [double]$EnvDetectJavaRamPercentage / 100))m"
+        }
+    }
+    if ($Java.ContainerSupport -and $Limits.Cpus -gt 0 -and $DetectJavaOpts -notmatch "ActiveProcessorCount") {
+        $Options += "-XX:ActiveProcessorCount=$($Limits.Cpus)"
+    }
+    # Only a collector of its own, e.g. -XX:+UseG1GC, overrides this; GC logging and tuning options don't.
+    if ($DetectJavaOpts -cnotmatch "-XX:[+-]Use[A-Za-z0-9]*GC") {
+        if ($Limits.Cpus -eq 1 -or ($Limits.MemoryMb -gt 0 -and $Limits.MemoryMb -lt 2048)) {
+            $Options += "-XX:+UseSerialGC"
+        }
+    }
+    return $Options
+}
+
+# The memory limit in MB and the CPU limit, rounded up, of the cgroup v2 or v1
+# the script runs in, or 0 when there is none, as on Windows.
+function Get-CgroupLimits () {
+    $Limits = New-Object -TypeName PSObject -Prop @{
+        'MemoryMb' = 0L
+        'Cpus'     = 0
+    }
+    $MemoryLimit = Read-FirstLine -Path "/sys/fs/cgroup/memory.max"
+    if (!$MemoryLimit) {
+        $MemoryLimit = Read-FirstLine -Path "/sys/fs/cgroup/memory/memory.limit_in_bytes"
+    }
+    # cgroup v1 reports no limit as a number close to 2^63.
+    if ($MemoryLimit -match "^\d{1,18}$" -and [long]$MemoryLimit -lt 4611686018427387904) {
+        $Limits.MemoryMb = [long][Math]::Floor([long]$MemoryLimit / 1MB)
+    }
+
+    $Quota = $null
+    $Period = $null
+    $CpuMax = Read-FirstLine -Path "/sys/fs/cgroup/cpu.max"
+    if ($CpuMax) {
+        $Quota, $Period = $CpuMax -split "\s+"
+    } else {
+        $Quota = Read-FirstLine -Path "/sys/fs/cgroup/cpu/cpu.cfs_quota_us"
+        $Period = Read-FirstLine -Path "/sys/fs/cgroup/cpu/cpu.cfs_period_us"
+    }
+    if ($Quota -match "^\d+$" -and $Period -match "^\d+$" -and [long]$Quota -gt 0 -and [long]$Period -gt 0) {
+        $Limits.Cpus = [int][Math]::Ceiling([long]$Quota / [double][long]$Period)
+    }
+    return $Limits
+}
+
+function Read-FirstLine ($Path) {
+    if (![System.IO.File]::Exists($Path)) {
+        return $null
+    }
+    try {
+        return Get-Content -Path $Path -TotalCount 1 -ErrorAction Stop
+    }
+    catch {
+        return $null
+    }
+}
+
 function Determine-Java ($EnvJavaHome, $EnvDetectJavaPath) {
     $JavaCommand = "java"
     if ($DetectJavaPath -ne "") {
@@ -351,30 +1226,618 @@ function Initialize-Folder ($Folder) {
     return $Folder
 }
 
-function Receive-DetectSource ($ProxyInfo, $DetectVersionUrl, $DetectVersionKey) {
+function Receive-DetectSource ($ProxyInfo, $DetectVersionPath, $DetectVersionKey) {
     Write-Host "Finding latest Detect version."
-    $DetectVersionData = Invoke-WebRequestWrapper -Url $DetectVersionUrl -ProxyInfo $ProxyInfo
-    if (!$DetectVersionData){
+    $Lookup = Invoke-HedgedLookup -RepoUrls $DetectBinaryRepoUrls -DetectVersionPath $DetectVersionPath -DetectVersionKey $DetectVersionKey -ProxyInfo $ProxyInfo
+    if (!$Lookup) {
         Write-Host "Failed to get detect version"
         return $null
     }
 
-    $DetectVersionJson = ConvertFrom-Json -InputObject $DetectVersionData
-
-    $Properties = $DetectVersionJson | select -ExpandProperty "properties"
-    $DetectVersionUrl = $Properties | select -ExpandProperty $DetectVersionKey
+    # The jar is downloaded from the repository that answered.
+    $DetectVersionUrl = $Lookup.DetectUrl
+    foreach ($RepoUrl in ($DetectBinaryRepoUrls + "https://repo.blackduck.com")) {
+        if ($DetectVersionUrl.StartsWith("$RepoUrl/")) {
+            $DetectVersionUrl = $Lookup.RepoUrl + $DetectVersionUrl.Substring($RepoUrl.Length)
+            break
+        }
+    }
     return $DetectVersionUrl
 }
 
-function Receive-DetectJar ($DetectUrl, $DetectJarFile, $LastDownloadFile, $ProxyInfo) {
+# Asks each repository for the url of the version key, also asking
+# the next repository whenever the previous ones have not answered
+# within the hedge delay, and returns the first valid answer.
+function Invoke-HedgedLookup ($RepoUrls, $DetectVersionPath, $DetectVersionKey, $ProxyInfo) {
+    $HedgeDelay = [TimeSpan]::FromSeconds([double]$EnvDetectLookupHedgeDelay)
+    $Deadline = [DateTime]::UtcNow.AddSeconds([double]$EnvDetectLookupBudget)
+    $Client = New-DetectHttpClient -ProxyInfo $ProxyInfo -TimeoutSeconds $EnvDetectLookupBudget
+    $Tasks = New-Object System.Collections.Generic.List[System.Threading.Tasks.Task]
+    $TaskRepoUrls = @{}
+    $Launched = 0
+    $NextLaunch = [DateTime]::UtcNow
+
+    try {
+        while ($true) {
+            $Now = [DateTime]::UtcNow
+            if ($Launched -lt $RepoUrls.Count -and ($Tasks.Count -eq 0 -or $Now -ge $NextLaunch)) {
+                $RepoUrl = $RepoUrls[$Launched]
+                $Launched++
+                if ($Launched -gt 1) {
+                    Write-Host "Also asking $RepoUrl"
+                }
+                $Task = $Client.GetStringAsync($RepoUrl + $DetectVersionPath)
+                $Tasks.Add($Task)
+                $TaskRepoUrls[$Task.Id] = $RepoUrl
+                $NextLaunch = $Now.Add($HedgeDelay)
+                continue
+            }
+
+            if ($Tasks.Count -eq 0) {
+                return $null
+            }
+            if ($Now -ge $Deadline) {
+                Write-Host "No repository answered within $EnvDetectLookupBudget seconds."
+                return $null
+            }
+
+            $WaitUntil = $Deadline
+            if ($Launched -lt $RepoUrls.Count -and $NextLaunch -lt $WaitUntil) {
+                $WaitUntil = $NextLaunch
+            }
+            $WaitMilliseconds = [int][Math]::Max(1, ($WaitUntil - $Now).TotalMilliseconds)
+            $Index = [System.Threading.Tasks.Task]::WaitAny($Tasks.ToArray(), $WaitMilliseconds)
+            if ($Index -lt 0) {
+                continue
+            }
+
+            $Task = $Tasks[$Index]
+            $Tasks.RemoveAt($Index)
+            $RepoUrl = $TaskRepoUrls[$Task.Id]
+            if ($Task.Status -eq [System.Threading.Tasks.TaskStatus]::RanToCompletion) {
+                $DetectUrl = Get-DetectUrlFromProperties -PropertiesJson $Task.Result -DetectVersionKey $DetectVersionKey
+                if ($DetectUrl) {
+                    return New-Object -TypeName PSObject -Prop @{ 'RepoUrl' = $RepoUrl; 'DetectUrl' = $DetectUrl }
+                }
+            }
+            Write-Host "No valid answer from $RepoUrl"
+            # Don't wait out the hedge delay once a repository has failed.
+            $NextLaunch = [DateTime]::UtcNow
+        }
+    }
+    finally {
+        # Disposing the client cancels the requests that lost the race.
+        $Client.Dispose()
+    }
+}
+
+function Get-DetectUrlFromProperties ($PropertiesJson, $DetectVersionKey) {
+    try {
+        $DetectVersionJson = ConvertFrom-Json -InputObject $PropertiesJson
+        $Properties = $DetectVersionJson | select -ExpandProperty "properties"
+        return @($Properties | select -ExpandProperty $DetectVersionKey)[0]
+    }
+    catch {
+        return $null
+    }
+}
+
+function New-DetectHttpClient ($ProxyInfo, $TimeoutSeconds) {
+    Add-Type -AssemblyName System.Net.Http
+    $Handler = New-Object System.Net.Http.HttpClientHandler
+    if ($ProxyInfo -ne $null -and $ProxyInfo.Uri -ne $null) {
+        $Proxy = New-Object System.Net.WebProxy -ArgumentList $ProxyInfo.Uri
+        if ($ProxyInfo.Credentials -ne $null) {
+            $Proxy.Credentials = $ProxyInfo.Credentials.GetNetworkCredential()
+        }
+        $Handler.Proxy = $Proxy
+        $Handler.UseProxy = $true
+    }
+    $Client = New-Object System.Net.Http.HttpClient -ArgumentList $Handler
+    $Client.Timeout = [TimeSpan]::FromSeconds([double]$TimeoutSeconds)
+    $Client.DefaultRequestHeaders.UserAgent.ParseAdd("PowerShell") # Workaround for https://www.jfrog.com/jira/si/jira.issueviews:issue-html/RTFACT-26216/RTFACT-26216.html
+    return $Client
+}
+
+# Downloads the jar through a temporary file, resuming what an earlier run left
+# behind and fetching concurrent ranges when the repository allows it. The
+# result is verified against the repository checksum, or the embedded one when
+# the version came from the embedded resolution, before it is moved into place.
+function Receive-DetectJar ($DetectUrl, $DetectJarFile, $LastDownloadFile, $ProxyInfo, $Embedded, $Metrics) {
     Write-Host "You don't have Detect. Downloading now."
     Write-Host "Using url $DetectUrl"
-    $DetectJarTempFile = "$DetectJarFile.tmp"
-    $Request = Invoke-WebRequestWrapper -Url $DetectUrl -DownloadLocation $DetectJarTempFile -ProxyInfo $ProxyInfo
-    Rename-Item -Path $DetectJarTempFile -NewName $DetectJarFile
+    $DetectJarTempFile = Resolve-FullPath -Path "$DetectJarFile.tmp"
+    $ProgressBefore = Get-DownloadProgress -TempFile $DetectJarTempFile
+    $Clock = [System.Diagnostics.Stopwatch]::StartNew()
+    # The timeout only bounds the wait for each response's headers, not the transfer.
+    $Client = New-DetectHttpClient -ProxyInfo $ProxyInfo -TimeoutSeconds 300
+    try {
+        if ($Embedded) {
+            # The embedded resolution already says what the headers would,
+            # except whether ranges are supported, so one stream is used.
+            $Remote = New-Object -TypeName PSObject -Prop @{
+                'Size'          = $Embedded.Size
+                'AcceptsRanges' = $false
+                'Sha256'        = $Embedded.Sha256
+            }
+        } else {
+            $Remote = Get-DownloadInfo -Client $Client -DetectUrl $DetectUrl
+        }
+        $PartCount = 1
+        if ($Remote.AcceptsRanges -and [int]$EnvDetectDownloadParts -gt 1) {
+            $PartCount = [int][Math]::Min([long]$EnvDetectDownloadParts, [Math]::Floor($Remote.Size / [long]$EnvDetectDownloadPartSize))
+        }
+        if ($PartCount -gt 1) {
+            Receive-DetectJarParts -Client $Client -DetectUrl $DetectUrl -TempFile $DetectJarTempFile -Size $Remote.Size -PartCount $PartCount
+        } else {
+            Receive-DetectJarStream -Client $Client -DetectUrl $DetectUrl -TempFile $DetectJarTempFile -Size $Remote.Size
+        }
+    }
+    catch {
+        Write-Host "The download of $DetectUrl was interrupted, the next run will resume it."
+        Write-Host ("  Reason: {0}" -f $_.Exception.Message);
+        exit -1
+    }
+    finally {
+        $Client.Dispose()
+        $Metrics.BytesDownloaded = [Math]::Max(0L, (Get-DownloadProgress -TempFile $DetectJarTempFile) - $ProgressBefore)
+    }
+    Write-DownloadThroughput -Bytes $Metrics.BytesDownloaded -Elapsed $Clock.Elapsed
+
+    if ($Remote.Sha256) {
+        if ((Get-FileSha256 -Path $DetectJarTempFile) -ne $Remote.Sha256.ToLowerInvariant()) {
+            Write-Host "The download does not match the expected checksum $($Remote.Sha256), it will be downloaded again on the next run."
+            Remove-Item -Path $DetectJarTempFile -Force
+            exit -1
+        }
+    }
+    Move-FileIntoPlace -Source $DetectJarTempFile -Destination $DetectJarFile
     $DetectJarExists = Test-Path $DetectJarFile
     Write-Host "Downloaded Detect jar successfully '$DetectJarExists'"
-    Set-Content -Value $DetectJarFile -Path $LastDownloadFile
+    Save-LastDownload -LastDownloadFile $LastDownloadFile -DetectJarFile $DetectJarFile
+}
+
+function Write-DownloadThroughput ($Bytes, $Elapsed) {
+    $Seconds = [Math]::Max($Elapsed.TotalSeconds, 0.001)
+    $Megabytes = $Bytes / 1MB
+    Write-Host ("Downloaded {0:N1} MB in {1:N1} s ({2:N1} MB/s)." -f $Megabytes, $Seconds, ($Megabytes / $Seconds))
+}
+
+function Save-LastDownload ($LastDownloadFile, $DetectJarFile) {
+    # Replaced in one step, a concurrent run never reads it half written.
+    $TempLastDownloadFile = "$LastDownloadFile.$PID.tmp"
+    Set-Content -Value $DetectJarFile -Path $TempLastDownloadFile
+    Move-FileIntoPlace -Source $TempLastDownloadFile -Destination $LastDownloadFile
+}
+
+# The scripts for Detect 8 and 9 recorded the last downloaded jar in
+# synopsys-detect-last-downloaded-jar.txt. It is copied to LastDownloadFile
+# once, so an upgraded script can still fall back to that jar when the
+# repository can't be reached.
+function Copy-LegacyLastDownload ($DetectFolder, $LastDownloadFile, $DetectVersionKey, $DetectVersion) {
+    $MajorVersion = if ($DetectVersion -ne "") { $DetectVersion.split(".")[0] } else { $DetectVersionKey.split("_")[-1] }
+    $LegacyLastDownloadFile = "$DetectFolder/synopsys-detect-last-downloaded-jar.txt"
+    if ($MajorVersion -notmatch "^[0-9]+$" -or [int]$MajorVersion -gt 9 -or (Test-Path -Path $LastDownloadFile) -or !(Test-Path -Path $LegacyLastDownloadFile)) {
+        return
+    }
+    try {
+        Save-LastDownload -LastDownloadFile $LastDownloadFile -DetectJarFile (Get-Content -Path $LegacyLastDownloadFile -TotalCount 1 -ErrorAction Stop)
+    }
+    catch {
+        Write-Host "Unable to copy $LegacyLastDownloadFile`: $_"
+    }
+}
+
+# Rebuilds the jar from the last downloaded one and the delta published next
+# to the jar for it. Returns $false, leaving nothing behind, when there is no
+# previous jar or no delta for it, or when the result does not match the
+# checksum of the jar the repository publishes (or the embedded resolution
+# names). The delta's own checksum only says it was applied as written.
+function Update-FromDelta ($DetectUrl, $DetectJarFile, $LastDownloadFile, $ProxyInfo, $Embedded, $Metrics) {
+    if (!(Test-Path -Path $LastDownloadFile)) {
+        return $false
+    }
+    # The shell script records only the file name.
+    $PreviousJarName = ((Get-Content -Path $LastDownloadFile -TotalCount 1) -split "[/\\]")[-1]
+    $PreviousJarFile = Join-Path -Path (Split-Path -Path $DetectJarFile -Parent) -ChildPath $PreviousJarName
+    if (!$PreviousJarName -or $PreviousJarName -eq (Split-Path -Path $DetectJarFile -Leaf) -or !(Test-Path -Path $PreviousJarFile -PathType Leaf)) {
+        return $false
+    }
+    $DeltaUrl = "$DetectUrl.from-$($PreviousJarName -replace "\.jar$", "").delta"
+    $DeltaFile = Resolve-FullPath -Path "$DetectJarFile.tmp.delta"
+    $RebuiltFile = Resolve-FullPath -Path "$DetectJarFile.tmp.rebuilt"
+    $Client = New-DetectHttpClient -ProxyInfo $ProxyInfo -TimeoutSeconds 300
+    try {
+        $ExpectedSha256 = $Embedded.Sha256
+        if (!$ExpectedSha256) {
+            $ExpectedSha256 = (Get-DownloadInfo -Client $Client -DetectUrl $DetectUrl).Sha256
+        }
+        if (!$ExpectedSha256) {
+            Write-Host "There is no checksum of $(Split-Path -Path $DetectJarFile -Leaf) to verify a delta against, the whole jar will be downloaded."
+            return $false
+        }
+        $Response = $Client.GetAsync($DeltaUrl, [System.Net.Http.HttpCompletionOption]::ResponseHeadersRead).GetAwaiter().GetResult()
+        try {
+            if (!$Response.IsSuccessStatusCode) {
+                Write-Host "There is no delta from $PreviousJarName, the whole jar will be downloaded."
+                return $false
+            }
+            $Output = [System.IO.File]::Create($DeltaFile)
+            try {
+                $Response.Content.CopyToAsync($Output).GetAwaiter().GetResult()
+            }
+            finally {
+                $Output.Dispose()
+            }
+        }
+        finally {
+            $Response.Dispose()
+        }
+        $Metrics.BytesDownloaded = Get-FileLength -Path $DeltaFile
+
+        Expand-JarDelta -DeltaFile $DeltaFile -SourceJarFile (Resolve-FullPath -Path $PreviousJarFile) -TargetFile $RebuiltFile -ExpectedSha256 $ExpectedSha256
+        Move-FileIntoPlace -Source $RebuiltFile -Destination $DetectJarFile
+        Write-Host "Rebuilt $(Split-Path -Path $DetectJarFile -Leaf) from $PreviousJarName and a delta of $($Metrics.BytesDownloaded) bytes."
+        Save-LastDownload -LastDownloadFile $LastDownloadFile -DetectJarFile $DetectJarFile
+        return $true
+    }
+    catch {
+        Write-Host "The delta from $PreviousJarName could not be applied, the whole jar will be downloaded."
+        Write-Host ("  Reason: {0}" -f $_.Exception.Message);
+        return $false
+    }
+    finally {
+        $Client.Dispose()
+        Remove-Item -Path $DeltaFile, $RebuiltFile -Force -ErrorAction SilentlyContinue
+    }
+}
+
+# Writes the target of a delta: its header says which ranges to copy from the
+# source jar and how much to take in turn from the data after the header. The
+# source and the result are checked against the sizes and checksums the header
+# names, a mismatch throws. So does a target other than ExpectedSha256, when given.
+function Expand-JarDelta ($DeltaFile, $SourceJarFile, $TargetFile, $ExpectedSha256) {
+    $TargetSize = -1L
+    $TargetSha256 = $null
+    $Delta = [System.IO.File]::OpenRead($DeltaFile)
+    $Source = [System.IO.File]::OpenRead($SourceJarFile)
+    $Target = [System.IO.File]::Create($TargetFile)
+    try {
+        $Reader = New-Object System.IO.BinaryReader -ArgumentList $Delta
+        # The first line has the same length whatever the header length is.
+        $Fields = [System.Text.Encoding]::ASCII.GetString($Reader.ReadBytes(30)).Trim() -split " "
+        if ($Fields.Length -ne 3 -or $Fields[0] -ne "DETECT-JAR-DELTA" -or $Fields[1] -ne "1") {
+            throw "$DeltaFile is not a delta this script can apply."
+        }
+        $HeaderLength = [long]$Fields[2]
+        $Lines = [System.Text.Encoding]::ASCII.GetString($Reader.ReadBytes([int]($HeaderLength - 30))) -split "\n"
+        $Delta.Position = $HeaderLength
+        foreach ($Line in $Lines) {
+            $Fields = $Line -split " "
+            switch ($Fields[0]) {
+                "source" {
+                    if ($Source.Length -ne [long]$Fields[2] -or (Get-FileSha256 -Path $SourceJarFile) -ne $Fields[3]) {
+                        throw "The delta is not for this $($Fields[1])."
+                    }
+                }
+                "target" {
+                    $TargetSize = [long]$Fields[2]
+                    $TargetSha256 = $Fields[3]
+                }
+                "copy" {
+                    [void]$Source.Seek([long]$Fields[1], [System.IO.SeekOrigin]::Begin)
+                    Copy-StreamBytes -From $Source -To $Target -Length ([long]$Fields[2])
+                }
+                "data" {
+                    Copy-StreamBytes -From $Delta -To $Target -Length ([long]$Fields[1])
+                }
+                "end" {
+                }
+                "" {
+                }
+                default {
+                    throw "Unknown delta instruction '$Line'."
+                }
+            }
+        }
+    }
+    finally {
+        $Target.Dispose()
+        $Source.Dispose()
+        $Delta.Dispose()
+    }
+    if ((Get-FileLength -Path $TargetFile) -ne $TargetSize -or (Get-FileSha256 -Path $TargetFile) -ne $TargetSha256) {
+        throw "The rebuilt jar does not match the checksum of the delta."
+    }
+    if ($ExpectedSha256 -and $TargetSha256 -ne $ExpectedSha256) {
+        throw "The delta is for a different jar than the repository publishes."
+    }
+}
+
+function Copy-StreamBytes ($From, $To, $Length) {
+    $Buffer = New-Object byte[] 81920
+    while ($Length -gt 0) {
+        $Read = $From.Read($Buffer, 0, [int][Math]::Min($Buffer.Length, $Length))
+        if ($Read -le 0) {
+            throw "The delta refers to bytes past the end of a file."
+        }
+        $To.Write($Buffer, 0, $Read)
+        $Length -= $Read
+    }
+}
+
+# Waits until this process is the only one downloading the jar. Creating the
+# lock file either succeeds or fails, so exactly one process gets it. The file
+# names its process, host and time for the stale lock check, and is deleted
+# when the returned stream is disposed.
+function Enter-DownloadLock ($DetectJarFile) {
+    $LockFile = Resolve-FullPath -Path "$DetectJarFile.lock"
+    $Waiting = $false
+    while ($true) {
+        try {
+            $Lock = New-Object System.IO.FileStream -ArgumentList $LockFile, ([System.IO.FileMode]::CreateNew), ([System.IO.FileAccess]::Write), ([System.IO.FileShare]::Read), 4096, ([System.IO.FileOptions]::DeleteOnClose)
+            $Owner = [System.Text.Encoding]::ASCII.GetBytes("$PID $([Environment]::MachineName) $(Get-UnixTime -DateTimeUtc ([DateTime]::UtcNow))")
+            $Lock.Write($Owner, 0, $Owner.Length)
+            $Lock.Flush()
+            return $Lock
+        }
+        catch {
+            if (!(Test-Path -Path $LockFile)) {
+                throw
+            }
+        }
+
+        $Owner = Get-DownloadLockOwner -LockFile $LockFile
+        if (Test-DownloadLockStale -LockFile $LockFile -DetectJarFile $DetectJarFile -Owner $Owner) {
+            # On Windows the removal fails while any owner, also one that took the
+            # lock over since it was judged stale, still holds it open. Elsewhere a
+            # file can always be removed, so the lock is only removed when it still
+            # names the owner that was judged stale.
+            if ([Environment]::OSVersion.Platform -eq [PlatformID]::Win32NT -or (Get-DownloadLockOwner -LockFile $LockFile).Line -eq $Owner.Line) {
+                Write-Host "Taking over the download lock of $($Owner.Description)."
+                Remove-Item -Path $LockFile -Recurse -Force -ErrorAction SilentlyContinue
+            }
+            continue
+        }
+        if (!$Waiting) {
+            Write-Host "Waiting for $($Owner.Description) to download $(Split-Path -Path $DetectJarFile -Leaf)."
+            $Waiting = $true
+        }
+        Start-Sleep -Seconds 1
+    }
+}
+
+function Get-DownloadLockOwner ($LockFile) {
+    $Owner = New-Object -TypeName PSObject -Prop @{
+        'Pid'         = $null
+        'Host'        = $null
+        'Line'        = $null
+        'Description' = "another process"
+    }
+    # The shell script locks with a directory that holds an owner file.
+    $OwnerFile = $LockFile
+    if (Test-Path -Path $LockFile -PathType Container) {
+        $OwnerFile = Join-Path -Path $LockFile -ChildPath "owner"
+    }
+    try {
+        $Stream = New-Object System.IO.FileStream -ArgumentList $OwnerFile, ([System.IO.FileMode]::Open), ([System.IO.FileAccess]::Read), ([System.IO.FileShare]'ReadWrite, Delete')
+        try {
+            $Owner.Line = (New-Object System.IO.StreamReader -ArgumentList $Stream).ReadLine()
+        }
+        finally {
+            $Stream.Dispose()
+        }
+        $Fields = @($Owner.Line -split "\s+")
+        if ($Fields.Length -ge 2) {
+            $Owner.Pid = $Fields[0]
+            $Owner.Host = $Fields[1]
+            $Owner.Description = "process $($Owner.Pid) on $($Owner.Host)"
+        }
+    }
+    catch {
+    }
+    return $Owner
+}
+
+# A lock is stale when its process is gone from this host, or when neither the
+# lock nor the download has changed for DETECT_DOWNLOAD_LOCK_TIMEOUT seconds.
+function Test-DownloadLockStale ($LockFile, $DetectJarFile, $Owner) {
+    $OwnerPid = 0
+    if ($Owner.Host -eq [Environment]::MachineName -and [int]::TryParse($Owner.Pid, [ref]$OwnerPid)) {
+        if (!(Get-Process -Id $OwnerPid -ErrorAction SilentlyContinue)) {
+            return $true
+        }
+    }
+
+    $LastChange = @(Get-Item -Path $LockFile, "$DetectJarFile.tmp*" -Force -ErrorAction SilentlyContinue | ForEach-Object { $_.LastWriteTimeUtc } | Sort-Object -Descending)
+    if ($LastChange.Count -eq 0) {
+        # The lock went away while it was looked at.
+        return $false
+    }
+    return ([DateTime]::UtcNow - $LastChange[0]).TotalSeconds -ge [int]$EnvDetectDownloadLockTimeout
+}
+
+# Asks for the headers of the jar. Size, AcceptsRanges and Sha256 stay empty
+# when the repository does not say.
+function Get-DownloadInfo ($Client, $DetectUrl) {
+    $Info = New-Object -TypeName PSObject -Prop @{
+        'Size'          = 0L
+        'AcceptsRanges' = $false
+        'Sha256'        = $null
+    }
+    try {
+        $Request = New-Object System.Net.Http.HttpRequestMessage -ArgumentList ([System.Net.Http.HttpMethod]::Head), $DetectUrl
+        $Response = $Client.SendAsync($Request).GetAwaiter().GetResult()
+        try {
+            if ($Response.IsSuccessStatusCode) {
+                if ($Response.Content.Headers.ContentLength) {
+                    $Info.Size = [long]$Response.Content.Headers.ContentLength
+                }
+                $Info.AcceptsRanges = $Info.Size -gt 0 -and $Response.Headers.AcceptRanges.Contains("bytes")
+                $Values = $null
+                if ($Response.Headers.TryGetValues("X-Checksum-Sha256", [ref]$Values)) {
+                    $Info.Sha256 = @($Values)[0]
+                }
+            }
+        }
+        finally {
+            $Response.Dispose()
+        }
+    }
+    catch {
+        Write-Host "Unable to get the headers of $DetectUrl, it will be downloaded in a single stream."
+    }
+    return $Info
+}
+
+# Downloads the jar in a single stream, continuing after the bytes already in the temporary file.
+function Receive-DetectJarStream ($Client, $DetectUrl, $TempFile, $Size) {
+    $Existing = Get-FileLength -Path $TempFile
+    if ($Size -gt 0 -and $Existing -gt $Size) {
+        Remove-Item -Path $TempFile -Force
+        $Existing = 0L
+    }
+    if ($Size -gt 0 -and $Existing -eq $Size) {
+        return
+    }
+
+    $Request = New-Object System.Net.Http.HttpRequestMessage -ArgumentList ([System.Net.Http.HttpMethod]::Get), $DetectUrl
+    if ($Existing -gt 0) {
+        Write-Host "Resuming the download after $Existing bytes."
+        $Request.Headers.Range = New-Object System.Net.Http.Headers.RangeHeaderValue -ArgumentList $Existing, $null
+    }
+    $Response = $Client.SendAsync($Request, [System.Net.Http.HttpCompletionOption]::ResponseHeadersRead).GetAwaiter().GetResult()
+    try {
+        if ($Response.StatusCode -eq [System.Net.HttpStatusCode]::RequestedRangeNotSatisfiable) {
+            # The repository can not continue this file, start over.
+            Remove-Item -Path $TempFile -Force
+            Receive-DetectJarStream -Client $Client -DetectUrl $DetectUrl -TempFile $TempFile -Size $Size
+            return
+        }
+        [void]$Response.EnsureSuccessStatusCode()
+        $Mode = [System.IO.FileMode]::Create
+        if ($Response.StatusCode -eq [System.Net.HttpStatusCode]::PartialContent) {
+            $Mode = [System.IO.FileMode]::Append
+        }
+        $Output = New-Object System.IO.FileStream -ArgumentList $TempFile, $Mode, ([System.IO.FileAccess]::Write), ([System.IO.FileShare]::None), 81920
+        try {
+            $Response.Content.CopyToAsync($Output).GetAwaiter().GetResult()
+        }
+        finally {
+            $Output.Dispose()
+        }
+    }
+    finally {
+        $Response.Dispose()
+    }
+}
+
+# Downloads the jar as concurrent ranges into part files next to the temporary
+# file, continuing each part where an earlier run left it, and joins them.
+function Receive-DetectJarParts ($Client, $DetectUrl, $TempFile, $Size, $PartCount) {
+    $LayoutFile = "$TempFile.parts"
+    $Layout = "$Size $PartCount"
+    if (!(Test-Path -Path $LayoutFile) -or (Get-Content -Path $LayoutFile -TotalCount 1) -ne $Layout) {
+        # The parts of a different file, or of a different split.
+        Remove-Item -Path "$TempFile.part*" -Force -ErrorAction SilentlyContinue
+        Set-Content -Path $LayoutFile -Value $Layout -Encoding Ascii
+    }
+    Remove-Item -Path $TempFile -Force -ErrorAction SilentlyContinue
+    Write-Host "Downloading $Size bytes in $PartCount parts."
+
+    $PartSize = [long][Math]::Ceiling($Size / $PartCount)
+    $Parts = @()
+    for ($Index = 0; $Index -lt $PartCount; $Index++) {
+        $Start = $Index * $PartSize
+        $End = [Math]::Min($Start + $PartSize, $Size) - 1
+        $Parts += New-Object -TypeName PSObject -Prop @{
+            'File'     = "$TempFile.part$Index"
+            'Start'    = [long]$Start
+            'Length'   = [long]($End - $Start + 1)
+            'Send'     = $null
+            'Response' = $null
+            'Output'   = $null
+            'Copy'     = $null
+        }
+    }
+
+    try {
+        foreach ($Part in $Parts) {
+            $Existing = Get-FileLength -Path $Part.File
+            if ($Existing -gt $Part.Length) {
+                Remove-Item -Path $Part.File -Force
+                $Existing = 0L
+            }
+            if ($Existing -lt $Part.Length) {
+                $Request = New-Object System.Net.Http.HttpRequestMessage -ArgumentList ([System.Net.Http.HttpMethod]::Get), $DetectUrl
+                $Request.Headers.Range = New-Object System.Net.Http.Headers.RangeHeaderValue -ArgumentList ($Part.Start + $Existing), ($Part.Start + $Part.Length - 1)
+                $Part.Send = $Client.SendAsync($Request, [System.Net.Http.HttpCompletionOption]::ResponseHeadersRead)
+            }
+        }
+        foreach ($Part in ($Parts | Where-Object { $_.Send })) {
+            $Part.Response = $Part.Send.GetAwaiter().GetResult()
+            if ($Part.Response.StatusCode -ne [System.Net.HttpStatusCode]::PartialContent) {
+                throw "The repository answered a range request with $([int]$Part.Response.StatusCode)."
+            }
+            $Part.Output = New-Object System.IO.FileStream -ArgumentList $Part.File, ([System.IO.FileMode]::Append), ([System.IO.FileAccess]::Write), ([System.IO.FileShare]::None), 81920
+            $Part.Copy = $Part.Response.Content.CopyToAsync($Part.Output)
+        }
+        foreach ($Part in ($Parts | Where-Object { $_.Copy })) {
+            $Part.Copy.GetAwaiter().GetResult()
+        }
+    }
+    finally {
+        foreach ($Part in $Parts) {
+            if ($Part.Output) {
+                $Part.Output.Dispose()
+            }
+            if ($Part.Response) {
+                $Part.Response.Dispose()
+            }
+        }
+    }
+
+    foreach ($Part in $Parts) {
+        if ((Get-FileLength -Path $Part.File) -ne $Part.Length) {
+            throw "Part $($Part.File) is incomplete."
+        }
+    }
+    $Output = New-Object System.IO.FileStream -ArgumentList $TempFile, ([System.IO.FileMode]::Create), ([System.IO.FileAccess]::Write), ([System.IO.FileShare]::None), 81920
+    try {
+        foreach ($Part in $Parts) {
+            $PartInput = [System.IO.File]::OpenRead($Part.File)
+            try {
+                $PartInput.CopyTo($Output, 81920)
+            }
+            finally {
+                $PartInput.Dispose()
+            }
+        }
+    }
+    finally {
+        $Output.Dispose()
+    }
+    Remove-Item -Path "$TempFile.part*" -Force
+}
+
+# The bytes held by the temporary file and the part files of a download.
+function Get-DownloadProgress ($TempFile) {
+    $Progress = Get-FileLength -Path $TempFile
+    foreach ($Part in @(Get-ChildItem -Path "$TempFile.part*" -Force -ErrorAction SilentlyContinue | Where-Object { $_.Name -match "\.part\d+$" })) {
+        $Progress += $Part.Length
+    }
+    return [long]$Progress
+}
+
+function Get-FileLength ($Path) {
+    if ([System.IO.File]::Exists($Path)) {
+        return (New-Object System.IO.FileInfo -ArgumentList $Path).Length
+    }
+    return 0L
+}
+
+function Resolve-FullPath ($Path) {
+    return $ExecutionContext.SessionState.Path.GetUnresolvedProviderPathFromPSPath($Path)
 }
 
 function Set-ToEscaped ($ArgArray) {
@@ -384,29 +1847,16 @@ function Set-ToEscaped ($ArgArray) {
     }
 }
 
-function Test-JavaNotAvailable() {
-    Write-Host "Checking if Java is installed by asking for version."
-    try {
-        $ProcessStartInfo = New-object System.Diagnostics.ProcessStartInfo
-        $ProcessStartInfo.CreateNoWindow = $true
-        $ProcessStartInfo.UseShellExecute = $false
-        $ProcessStartInfo.RedirectStandardOutput = $true
-        $ProcessStartInfo.RedirectStandardError = $true
-        $ProcessStartInfo.FileName = Determine-Java($JavaHome, $DetectJavaPath)
-        $ProcessStartInfo.Arguments = @("-version")
-        $Process = New-Object System.Diagnostics.Process
-        $Process.StartInfo = $ProcessStartInfo
-        [void]$Process.Start()
-        $StdOutput = $process.StandardOutput.ReadToEnd()
-        $StdError = $process.StandardError.ReadToEnd()
-        $Process.WaitForExit()
-        Write-Host "Java Standard Output: $StdOutput"
-        Write-Host "Java Error Output: $StdError"
-        Write-Host "Successfully able to start java and get version."
-        return $FALSE;
-    }
-    catch {
-        Write-Host "An error occurred checking the Java version. Please ensure Java is installed."
+# Runs before Detect is looked up, so a missing Java fails the run at once. A Java
+# that starts is asked for its version in the background, unless the cached probe
+# already knows it, and the answer is only waited for once Detect is downloaded.
+function Test-JavaNotAvailable ($DetectFolder) {
+    Write-Host "Checking if Java is installed."
+    $Java = Start-JavaProbe -JavaCommand (Determine-Java($JavaHome, $DetectJavaPath)) -DetectFolder $DetectFolder
+    if (!$Java) {
+        Write-Host "Unable to start Java. Please ensure Java is installed."
         return $TRUE;
     }
+    Write-Host "Found Java at $($Java.Executable)."
+    return $FALSE;
 }
@@ -1,11 +1,16 @@
 #!/bin/bash
 
-get_path_separator() {
-  # Performs a check to see if the system is Windows based.
-  if [[ `uname` == *"NT"* ]] || [[ `uname` == *"UWIN"* ]]; then
-    echo "\\"
+# Taken first, so the run recorded in DETECT_SCRIPT_METRICS_FILE
+# includes the time the script itself needs to start.
+SCRIPT_START_TIME=${EPOCHREALTIME:-}
+
+# Sets PATH_SEPARATOR, a backslash on Windows based systems. Bash
+# names the system in OSTYPE, which saves asking uname for it.
+set_path_separator() {
+  if [[ "${OSTYPE}" == msys* ]] || [[ "${OSTYPE}" == cygwin* ]] || [[ "${OSTYPE}" == win* ]] || [[ "${OSTYPE}" == uwin* ]]; then
+    PATH_SEPARATOR="\\"
   else
-    echo "/"
+    PATH_SEPARATOR="/"
   fi
 }
 
@@ -26,35 +31,24 @@ DETECT_RELEASE_VERSION=${DETECT_LATEST_RELEASE_VERSION}
 # DETECT_LATEST_X key.
 DETECT_VERSION_KEY=${DETECT_VERSION_KEY:-//DEFAULT_DETECT_VERSION_KEY//}
 
-get_org_name() {
-  # Extracts the number after last underscore i.e. DETECT_LATEST_10 -> 10
-  local VERSION_NUMBER_SUBSTRING=${DETECT_VERSION_KEY##*_}
-  # Extracts the number before the first period i.e. 10.2.8 -> 10
-  local DETECT_MAJOR_VERSION_SUBSTRING=${DETECT_RELEASE_VERSION%%.*}
-  local ORG_NAME
-  # Check if the substring is a valid number. If number is less than or equal to 9, assign appropriate result
-  if [[ "$VERSION_NUMBER_SUBSTRING" =~ ^[0-9]+$ && "$VERSION_NUMBER_SUBSTRING" -le 9 ]] || [[ "$DETECT_MAJOR_VERSION_SUBSTRING" =~ ^[0-9]+$ && "$DETECT_MAJOR_VERSION_SUBSTRING" -le 9 ]]; then
-    ORG_NAME="synopsys"
-  else
-    ORG_NAME="blackduck"
-  fi
-  echo "$ORG_NAME"
-}
-
-get_detect_name_prefix() {
+# Sets DETECT_ORG_NAME and DETECT_NAME_PREFIX, once, instead of
+# a subshell for every url they are part of.
+set_detect_names() {
   # Extracts the number after last underscore i.e. DETECT_LATEST_10 -> 10
   local VERSION_NUMBER_SUBSTRING=${DETECT_VERSION_KEY##*_}
   # Extracts the number before the first period i.e. 10.2.8 -> 10
   local DETECT_MAJOR_VERSION_SUBSTRING=${DETECT_RELEASE_VERSION%%.*}
-  local DETECT_NAME_PREFIX
   # Check if the substring is a valid number. If number is less than or equal to 9, assign appropriate result
   if [[ "$VERSION_NUMBER_SUBSTRING" =~ ^[0-9]+$ && "$VERSION_NUMBER_SUBSTRING" -le 9 ]] || [[ "$DETECT_MAJOR_VERSION_SUBSTRING" =~ ^[0-9]+$ && "$DETECT_MAJOR_VERSION_SUBSTRING" -le 9 ]]; then
+    DETECT_ORG_NAME="synopsys"
     DETECT_NAME_PREFIX="synopsys-detect"
   else
+    DETECT_ORG_NAME="blackduck"
     DETECT_NAME_PREFIX="detect"
   fi
-  echo "$DETECT_NAME_PREFIX"
 }
+set_path_separator
+set_detect_names
 
 # You can specify your own download url from
 # artifactory which can bypass using the property keys
@@ -66,7 +60,7 @@ DETECT_SOURCE=${DETECT_SOURCE:-}
 # *that* location will be used.
 # *NOTE* We currently do not support spaces in the
 # DETECT_JAR_DOWNLOAD_DIR.
-DEFAULT_DETECT_JAR_DOWNLOAD_DIR="${HOME}$(get_path_separator)$(get_detect_name_prefix)$(get_path_separator)download"
+DEFAULT_DETECT_JAR_DOWNLOAD_DIR="${HOME}${PATH_SEPARATOR}${DETECT_NAME_PREFIX}${PATH_SEPARATOR}download"
 if [[ -z "${DETECT_JAR_DOWNLOAD_DIR}" ]]; then
 	# If new name not set: Try old name for backward compatibility
     DETECT_JAR_DOWNLOAD_DIR=${DETECT_JAR_PATH:-${DEFAULT_DETECT_JAR_DOWNLOAD_DIR}}
@@ -89,6 +83,36 @@ DETECT_JAVA_PATH=${DETECT_JAVA_PATH:-}
 # heap size, you would set DETECT_JAVA_OPTS=-Xmx6G.
 DETECT_JAVA_OPTS=${DETECT_JAVA_OPTS:-}
 
+# Unless DETECT_JAVA_OPTS already sets them, Detect is started
+# with a maximum heap of DETECT_JAVA_RAM_PERCENTAGE percent
+# (default 75) of the memory limit of its container, as many
+# processors as the CPU limit of its container allows, and the
+# serial garbage collector when that limit is a single CPU or
+# the memory limit is below 2 GB. The limits are read from the
+# cgroup of the script; without a memory limit the JVM sizes
+# the heap itself. Set DETECT_JAVA_ERGONOMICS to 0 to leave all
+# of it to the JVM.
+DETECT_JAVA_ERGONOMICS=${DETECT_JAVA_ERGONOMICS:-1}
+DETECT_JAVA_RAM_PERCENTAGE=${DETECT_JAVA_RAM_PERCENTAGE:-75}
+
+# Set DETECT_CDS to 1 to keep a class data sharing archive next
+# to the jar for each Java (13 or newer) that runs it, which may
+# start Detect faster. The archive is created the first time a
+# jar runs, or when it is downloaded with DETECT_DOWNLOAD_ONLY,
+# and used from then on. It only holds the classes of the JDK
+# and of the launcher, not those of the libraries nested in the
+# jar, so measure before relying on it. It is skipped when
+# DETECT_JAVA_OPTS already configures class data sharing.
+DETECT_CDS=${DETECT_CDS:-0}
+
+# Detect is a single jar that holds the jars it depends on, and
+# they are read out of it again every time it starts. Set
+# DETECT_EXPLODED_JAR to 1 to extract each jar once, with unzip,
+# into a directory next to it and start Detect from there. It
+# takes the place of class data sharing. Detect is started from
+# the jar whenever the directory can not be made.
+DETECT_EXPLODED_JAR=${DETECT_EXPLODED_JAR:-0}
+
 # If you want to pass any additional options to
 # curl, specify DETECT_CURL_OPTS in your environment.
 # For example, to specify a proxy, you would set
@@ -114,7 +138,87 @@ SCRIPT_VERSION=//SCRIPT_VERSION//
 
 echo "Detect Shell Script ${SCRIPT_VERSION}"
 
-DETECT_BINARY_REPO_URL=https://repo.blackduck.com
+# To get Detect from a mirror of the Black Duck repository,
+# set DETECT_BINARY_REPO_URLS to one or more repository urls,
+# separated by spaces or commas, in order of preference.
+# If a repository has not answered the version lookup within
+# DETECT_LOOKUP_HEDGE_DELAY seconds (default 2) the next one
+# is asked as well, and the first valid answer is used. The
+# lookup gives up after DETECT_LOOKUP_BUDGET seconds (default
+# 60), and the last downloaded jar is used instead.
+DETECT_BINARY_REPO_URLS=${DETECT_BINARY_REPO_URLS:-${DETECT_BINARY_REPO_URL:-https://repo.blackduck.com}}
+read -r -a DETECT_REPO_URL_LIST <<< "${DETECT_BINARY_REPO_URLS//,/ }"
+DETECT_REPO_URL_LIST=("${DETECT_REPO_URL_LIST[@]%/}")
+DETECT_BINARY_REPO_URL=${DETECT_REPO_URL_LIST[0]}
+DETECT_LOOKUP_HEDGE_DELAY=${DETECT_LOOKUP_HEDGE_DELAY:-2}
+DETECT_LOOKUP_BUDGET=${DETECT_LOOKUP_BUDGET:-60}
+
+# To skip the version lookup on repeated runs, set
+# DETECT_RESOLUTION_TTL to the number of seconds a resolved
+# DETECT_VERSION_KEY may be reused (default 0, which looks
+# the version up on every run). Within that time no network
+# calls are made, as long as the jar it resolved to is still
+# unchanged in DETECT_JAR_DOWNLOAD_DIR.
+DETECT_RESOLUTION_TTL=${DETECT_RESOLUTION_TTL:-0}
+
+# This script carries what every DETECT_VERSION_KEY resolved to
+# when it was generated, at //EMBEDDED_RESOLUTION_TIME//: the
+# version, the jar's path in the repository, its size and its
+# SHA-256. Set DETECT_USE_EMBEDDED_RESOLUTION=1 to use that
+# instead of looking the version up, so a run only asks the
+# repository for the jar itself, and the jar is checked against
+# the embedded SHA-256. Keys that are not embedded are looked up.
+DETECT_USE_EMBEDDED_RESOLUTION=${DETECT_USE_EMBEDDED_RESOLUTION:-0}
+EMBEDDED_RESOLUTION_TIME=//EMBEDDED_RESOLUTION_TIME//
+EMBEDDED_RESOLUTION="
+//EMBEDDED_RESOLUTION//
+"
+
+# The jar is downloaded to a temporary file that is kept when
+# the download fails, and the next run resumes it. When the
+# repository supports ranged requests, the jar is fetched in up
+# to DETECT_DOWNLOAD_PARTS concurrent parts (default 4, set it
+# to 1 for a single stream) of at least DETECT_DOWNLOAD_PART_SIZE
+# bytes each (default 8388608). The download is checked against
+# the repository's SHA-256 before it is used.
+DETECT_DOWNLOAD_PARTS=${DETECT_DOWNLOAD_PARTS:-4}
+DETECT_DOWNLOAD_PART_SIZE=${DETECT_DOWNLOAD_PART_SIZE:-8388608}
+
+# When several runs share DETECT_JAR_DOWNLOAD_DIR, only one of
+# them downloads a jar while the others wait for it. A lock left
+# by a process that is gone, or that has not made progress for
+# DETECT_DOWNLOAD_LOCK_TIMEOUT seconds (default 600), is taken
+# over.
+DETECT_DOWNLOAD_LOCK_TIMEOUT=${DETECT_DOWNLOAD_LOCK_TIMEOUT:-600}
+
+# To see where the time of a run goes, set
+# DETECT_SCRIPT_METRICS_FILE to a file that a JSON record is
+# appended to at the end of every run. It holds the milliseconds
+# spent resolving the version, downloading, finding Java and
+# running Detect, whether the resolution and the jar came from
+# the cache, the bytes downloaded and the exit code.
+DETECT_SCRIPT_METRICS_FILE=${DETECT_SCRIPT_METRICS_FILE:-}
+
+# DETECT_JAR_DOWNLOAD_DIR keeps every jar that was downloaded.
+# To bound it, set DETECT_JAR_CACHE_MAX_AGE_DAYS to remove jars
+# that have not been used for that many days, and/or
+# DETECT_JAR_CACHE_MAX_SIZE_MB to remove the least recently
+# used jars until the rest fit. A jar's class data sharing
+# archives, extracted directory and unfinished downloads go
+# with it. The jar of the run, the last downloaded jar and
+# jars that are in use or being downloaded are always kept.
+# Both default to 0, off.
+DETECT_JAR_CACHE_MAX_AGE_DAYS=${DETECT_JAR_CACHE_MAX_AGE_DAYS:-0}
+DETECT_JAR_CACHE_MAX_SIZE_MB=${DETECT_JAR_CACHE_MAX_SIZE_MB:-0}
+
+# Set DETECT_DELTA_UPDATES=1 when the repository publishes deltas
+# between Detect jars next to them, as written by the delta
+# operation of the detect-scripts project. A new jar is then
+# rebuilt from the last downloaded one and a delta of a few MB,
+# and verified against the checksum the repository names for the
+# jar. When there is no delta, or the repository names no
+# checksum, the whole jar is downloaded.
+DETECT_DELTA_UPDATES=${DETECT_DELTA_UPDATES:-0}
 
 for i in $*; do
   if [[ $i == --blackduck.hub.password=* ]]; then
@@ -137,27 +241,70 @@ for i in $*; do
 done
 
 run() {
+  METRICS_RESOLUTION=explicit
+  METRICS_JAR_CACHE=none
+  METRICS_BYTES_DOWNLOADED=0
+  METRICS_PHASES=""
+  JAR_IN_USE=""
+  if [[ -n "${SCRIPT_START_TIME}" ]]; then
+    METRICS_START=${SCRIPT_START_TIME/[.,]/}
+    METRICS_START=$((METRICS_START / 1000))
+  else
+    metrics_clock
+    METRICS_START=${METRICS_CLOCK}
+  fi
+  trap script_exit EXIT
+  if [[ ${DETECT_DOWNLOAD_ONLY} -eq 0 ]]; then
+    start_phase java
+    start_java_probe
+    end_phase
+  fi
   get_detect
+  mark_jar_in_use
+  if [[ ${DETECT_JAR_CACHE_MAX_AGE_DAYS} -gt 0 ]] || [[ ${DETECT_JAR_CACHE_MAX_SIZE_MB} -gt 0 ]]; then
+    start_phase evict
+    evict_jar_cache
+    end_phase
+  fi
   if [[ ${DETECT_DOWNLOAD_ONLY} -eq 0 ]]; then
     run_detect
+  else
+    create_cds_archive
   fi
 }
 
 get_detect() {
-  PATH_SEPARATOR=$(get_path_separator)
+  start_phase resolve
   USE_LOCAL=0
   LOCAL_FILE="${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}detect-last-downloaded-jar.txt"
+  if [[ "${DETECT_NAME_PREFIX}" == synopsys-detect ]]; then
+    copy_legacy_local_file
+  fi
+  RESOLUTION_FILE="${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}detect-resolution-${DETECT_VERSION_KEY}.txt"
+  SAVE_RESOLUTION=0
+  EMBEDDED_SIZE=0
+  EMBEDDED_SHA256=""
   if [[ -z "${DETECT_SOURCE}" ]]; then
     if [[ -z "${DETECT_RELEASE_VERSION}" ]]; then
-      VERSION_CURL_CMD="curl ${DETECT_CURL_OPTS} --silent --header \"X-Result-Detail: info\" '${DETECT_BINARY_REPO_URL}/api/storage/bds-integrations-release/com/$(get_org_name)/integration/$(get_detect_name_prefix)?properties=${DETECT_VERSION_KEY}'"
-      VERSION_EXTRACT_CMD="${VERSION_CURL_CMD} | grep \"${DETECT_VERSION_KEY}\" | sed 's/[^[]*[^\"]*\"\([^\"]*\).*/\1/'"
-      DETECT_SOURCE=$(eval ${VERSION_EXTRACT_CMD})
-      if [[ -z "${DETECT_SOURCE}" ]]; then
-        echo "Unable to derive the location of ${DETECT_VERSION_KEY} from response to: ${VERSION_CURL_CMD}"
-        USE_LOCAL=1
+      if [[ ${DETECT_USE_EMBEDDED_RESOLUTION} -eq 1 ]] && read_embedded_resolution; then
+        echo "Using the location of ${DETECT_VERSION_KEY} embedded in this script at ${EMBEDDED_RESOLUTION_TIME}."
+        METRICS_RESOLUTION=embedded
+      elif read_cached_resolution; then
+        echo "Using the location of ${DETECT_VERSION_KEY} resolved ${RESOLUTION_AGE} seconds ago."
+        METRICS_RESOLUTION=cached
+      else
+        lookup_detect_source
+        METRICS_RESOLUTION=lookup
+        if [[ -z "${DETECT_SOURCE}" ]]; then
+          echo "Unable to derive the location of ${DETECT_VERSION_KEY} from: ${DETECT_REPO_URL_LIST[*]}"
+          USE_LOCAL=1
+          METRICS_RESOLUTION=fallback
+        elif [[ ${DETECT_RESOLUTION_TTL} -gt 0 ]]; then
+          SAVE_RESOLUTION=1
+        fi
       fi
     else
-      DETECT_SOURCE="${DETECT_BINARY_REPO_URL}/bds-integrations-release/com/$(get_org_name)/integration/$(get_detect_name_prefix)/${DETECT_RELEASE_VERSION}/$(get_detect_name_prefix)-${DETECT_RELEASE_VERSION}.jar"
+      DETECT_SOURCE="${DETECT_BINARY_REPO_URL}/bds-integrations-release/com/${DETECT_ORG_NAME}/integration/${DETECT_NAME_PREFIX}/${DETECT_RELEASE_VERSION}/${DETECT_NAME_PREFIX}-${DETECT_RELEASE_VERSION}.jar"
     fi
   fi
 
@@ -169,44 +316,906 @@ get_detect() {
 
   if [[ USE_LOCAL -eq 1 ]] && [[ -f "${LOCAL_FILE}" ]]; then
     echo "Found local file ${LOCAL_FILE}"
-    DETECT_FILENAME=`cat ${LOCAL_FILE}`
+    read -r DETECT_FILENAME < "${LOCAL_FILE}"
+    # The PowerShell script records the full path.
+    DETECT_FILENAME=${DETECT_FILENAME##*[/\\]}
   elif [[ USE_LOCAL -eq 1 ]]; then
     echo "${LOCAL_FILE} is missing and unable to communicate with a Detect source."
     exit -1
   else
-    DETECT_FILENAME=${DETECT_FILENAME:-$(awk -F "/" '{print $NF}' <<< $DETECT_SOURCE)}
+    DETECT_FILENAME=${DETECT_FILENAME:-${DETECT_SOURCE##*/}}
   fi
   DETECT_DESTINATION="${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}${DETECT_FILENAME}"
 
+  end_phase
+
   USE_REMOTE=1
   if [[ USE_LOCAL -ne 1 ]] && [[ ! -f "${DETECT_DESTINATION}" ]]; then
     echo "You don't have the current file, so it will be downloaded."
   else
     echo "You have already downloaded the latest file, so the local file will be used."
     USE_REMOTE=0
+    METRICS_JAR_CACHE=hit
   fi
 
   if [ ${USE_REMOTE} -eq 1 ]; then
-    echo "getting ${DETECT_SOURCE} from remote"
-    TEMP_DETECT_DESTINATION="${DETECT_DESTINATION}-temp"
-    curlReturn=$(curl ${DETECT_CURL_OPTS} --silent -w "%{http_code}" -L -o "${TEMP_DETECT_DESTINATION}" --create-dirs "${DETECT_SOURCE}")
-    if [[ 200 -eq ${curlReturn} ]]; then
-      mv "${TEMP_DETECT_DESTINATION}" "${DETECT_DESTINATION}"
-      if [[ -f ${LOCAL_FILE} ]]; then
-        rm "${LOCAL_FILE}"
+    start_phase download
+    acquire_download_lock
+    if [[ -f "${DETECT_DESTINATION}" ]]; then
+      echo "Another process downloaded ${DETECT_DESTINATION}, so it will be used."
+      METRICS_JAR_CACHE=shared
+    else
+      echo "getting ${DETECT_SOURCE} from remote"
+      METRICS_JAR_CACHE=miss
+      if [[ ${DETECT_DELTA_UPDATES} -eq 1 ]] && update_from_delta; then
+        METRICS_JAR_CACHE=delta
+      else
+        download_detect_jar
       fi
-      echo "${DETECT_FILENAME}" >> "${LOCAL_FILE}"
+      # Replaced in one step, a concurrent run never reads it half written.
+      echo "${DETECT_FILENAME}" > "${LOCAL_FILE}.$$" && mv -f "${LOCAL_FILE}.$$" "${LOCAL_FILE}"
       echo "saved ${DETECT_SOURCE} to ${DETECT_DESTINATION}"
-    else
-      echo "The curl response was ${curlReturn}, which is not successful - please check your configuration and environment."
+    fi
+    release_download_lock
+    end_phase
+  fi
+
+  if [[ ${SAVE_RESOLUTION} -eq 1 ]]; then
+    save_resolution
+  fi
+}
+
+# Waits until this process is the only one downloading
+# DETECT_DESTINATION. mkdir either creates the lock directory or
+# fails, so exactly one process gets it; its owner file names the
+# process, host and time for the stale lock check.
+acquire_download_lock() {
+  DOWNLOAD_LOCK="${DETECT_DESTINATION}.lock"
+  mkdir -p "${DETECT_JAR_DOWNLOAD_DIR}"
+  local WAITING=0
+  until mkdir "${DOWNLOAD_LOCK}" 2>/dev/null; do
+    if download_lock_is_stale; then
+      take_over_download_lock && continue
+    fi
+    if [[ ${WAITING} -eq 0 ]]; then
+      echo "Waiting for ${DOWNLOAD_LOCK_OWNER:-another process} to download ${DETECT_FILENAME}."
+      WAITING=1
+    fi
+    sleep 1
+  done
+  current_time
+  echo "$$ ${HOSTNAME} ${CURRENT_TIME}" > "${DOWNLOAD_LOCK}${PATH_SEPARATOR}owner"
+}
+
+# Removes the lock download_lock_is_stale judged stale. Another
+# waiter may have taken it over between that check and the rename
+# here, so the renamed lock is only removed when it still has the
+# owner that was judged stale; otherwise it is a live lock, and
+# it is put back.
+take_over_download_lock() {
+  local TAKEN="${DOWNLOAD_LOCK}.$$" OWNER=""
+  mv "${DOWNLOAD_LOCK}" "${TAKEN}" 2>/dev/null || return 1
+  read -r OWNER 2>/dev/null < "${TAKEN}${PATH_SEPARATOR}owner"
+  if [[ "${OWNER}" != "${DOWNLOAD_LOCK_OWNER_LINE}" ]]; then
+    # Should a third process have made a new lock meanwhile, mv
+    # would move this one inside it, so it is then left renamed.
+    [[ -e "${DOWNLOAD_LOCK}" ]] || mv "${TAKEN}" "${DOWNLOAD_LOCK}" 2>/dev/null
+    return 1
+  fi
+  echo "Taking over the download lock of ${DOWNLOAD_LOCK_OWNER:-an unknown process}."
+  rm -rf "${TAKEN}"
+}
+
+release_download_lock() {
+  rm -rf "${DOWNLOAD_LOCK}"
+  DOWNLOAD_LOCK=""
+}
+
+# Succeeds when the process holding DOWNLOAD_LOCK is known to be
+# gone from this host, or when neither the lock nor the download
+# has changed for DETECT_DOWNLOAD_LOCK_TIMEOUT seconds.
+download_lock_is_stale() {
+  local OWNER_PID="" OWNER_HOST="" OWNER_TIME=""
+  DOWNLOAD_LOCK_OWNER=""
+  DOWNLOAD_LOCK_OWNER_LINE=""
+  if [[ -f "${DOWNLOAD_LOCK}${PATH_SEPARATOR}owner" ]]; then
+    read -r DOWNLOAD_LOCK_OWNER_LINE < "${DOWNLOAD_LOCK}${PATH_SEPARATOR}owner"
+    read -r OWNER_PID OWNER_HOST OWNER_TIME <<< "${DOWNLOAD_LOCK_OWNER_LINE}"
+    DOWNLOAD_LOCK_OWNER="process ${OWNER_PID} on ${OWNER_HOST}"
+  fi
+  if [[ "${OWNER_HOST}" == "${HOSTNAME}" ]] && [[ "${OWNER_PID}" =~ ^[0-9]+$ ]] && process_is_gone "${OWNER_PID}"; then
+    return 0
+  fi
+
+  local LAST_CHANGE=0 FILE
+  for FILE in "${DOWNLOAD_LOCK}" "${DETECT_DESTINATION}-temp"*; do
+    file_marker "${FILE}"
+    if [[ -n "${FILE_MARKER}" ]] && [[ ${FILE_MARKER##* } -gt ${LAST_CHANGE} ]]; then
+      LAST_CHANGE=${FILE_MARKER##* }
+    fi
+  done
+  if [[ ${LAST_CHANGE} -eq 0 ]]; then
+    # The lock went away while it was looked at.
+    return 1
+  fi
+  current_time
+  [[ $((CURRENT_TIME - LAST_CHANGE)) -ge ${DETECT_DOWNLOAD_LOCK_TIMEOUT} ]]
+}
+
+# Succeeds only when there is no process with the given id on
+# this host. kill -0 also fails for a live process of another
+# user, so any other error means the process may still be there.
+process_is_gone() {
+  local KILL_ERROR
+  KILL_ERROR=$(LC_ALL=C; kill -0 "$1" 2>&1) && return 1
+  [[ "${KILL_ERROR}" == *"No such process"* ]]
+}
+
+# Downloads DETECT_SOURCE to DETECT_DESTINATION through a
+# temporary file, resuming what an earlier run left behind and
+# fetching concurrent ranges when the repository allows it. The
+# result is verified against the repository checksum before it
+# is moved into place.
+download_detect_jar() {
+  local TEMP_DETECT_DESTINATION="${DETECT_DESTINATION}-temp"
+  local CURL_OPTS_LIST
+  eval "CURL_OPTS_LIST=(${DETECT_CURL_OPTS})"
+  mkdir -p "${DETECT_JAR_DOWNLOAD_DIR}"
+
+  if [[ -n "${EMBEDDED_SHA256}" ]]; then
+    # The embedded resolution already says what the headers would,
+    # except whether ranges are supported, so one stream is used.
+    REMOTE_SIZE=${EMBEDDED_SIZE}
+    REMOTE_ACCEPTS_RANGES=0
+    REMOTE_SHA256=${EMBEDDED_SHA256}
+  else
+    read_download_headers
+  fi
+  local PART_COUNT=1
+  if [[ ${REMOTE_ACCEPTS_RANGES} -eq 1 ]] && [[ ${DETECT_DOWNLOAD_PARTS} -gt 1 ]]; then
+    PART_COUNT=$((REMOTE_SIZE / DETECT_DOWNLOAD_PART_SIZE))
+    if [[ ${PART_COUNT} -gt ${DETECT_DOWNLOAD_PARTS} ]]; then
+      PART_COUNT=${DETECT_DOWNLOAD_PARTS}
+    fi
+  fi
+
+  download_progress
+  local PROGRESS_BEFORE=${DOWNLOAD_PROGRESS} DOWNLOAD_RESULT=0
+  if [[ ${PART_COUNT} -gt 1 ]]; then
+    download_detect_parts || DOWNLOAD_RESULT=1
+  else
+    download_detect_stream || DOWNLOAD_RESULT=1
+  fi
+  download_progress
+  if [[ ${DOWNLOAD_PROGRESS} -gt ${PROGRESS_BEFORE} ]]; then
+    METRICS_BYTES_DOWNLOADED=$((DOWNLOAD_PROGRESS - PROGRESS_BEFORE))
+  fi
+  if [[ ${DOWNLOAD_RESULT} -ne 0 ]]; then
+    exit -1
+  fi
+
+  DOWNLOADED_SHA256=""
+  if [[ -n "${REMOTE_SHA256}" ]]; then
+    file_sha256 "${TEMP_DETECT_DESTINATION}"
+    if [[ -z "${FILE_SHA256}" ]]; then
+      echo "Neither sha256sum nor shasum is available, so the download can not be verified."
+    elif [[ "${FILE_SHA256}" != "${REMOTE_SHA256}" ]]; then
+      echo "The download does not match the expected checksum ${REMOTE_SHA256}, it will be downloaded again on the next run."
+      rm -f "${TEMP_DETECT_DESTINATION}"
       exit -1
+    else
+      DOWNLOADED_SHA256=${FILE_SHA256}
     fi
   fi
+  mv "${TEMP_DETECT_DESTINATION}" "${DETECT_DESTINATION}"
 }
 
-set_detect_java_path() {
-  PATH_SEPARATOR=$(get_path_separator)
+# Asks for the headers of DETECT_SOURCE and sets REMOTE_SIZE,
+# REMOTE_ACCEPTS_RANGES and REMOTE_SHA256 from the final
+# response. They stay empty when the repository does not say.
+read_download_headers() {
+  REMOTE_SIZE=0
+  REMOTE_ACCEPTS_RANGES=0
+  REMOTE_SHA256=""
+  local HEADERS NAME VALUE
+  HEADERS=$(curl "${CURL_OPTS_LIST[@]}" --silent --fail -L --head "${DETECT_SOURCE}") || return
+
+  shopt -s nocasematch
+  while IFS=':' read -r NAME VALUE; do
+    VALUE=${VALUE//$'\r'/}
+    VALUE=${VALUE# }
+    case "${NAME}" in
+      HTTP/*)
+        # A new response after a redirect.
+        REMOTE_SIZE=0
+        REMOTE_ACCEPTS_RANGES=0
+        REMOTE_SHA256=""
+        ;;
+      content-length) [[ "${VALUE}" =~ ^[0-9]+$ ]] && REMOTE_SIZE=${VALUE} ;;
+      accept-ranges) [[ "${VALUE}" == bytes ]] && REMOTE_ACCEPTS_RANGES=1 ;;
+      x-checksum-sha256) REMOTE_SHA256=${VALUE} ;;
+    esac
+  done <<< "${HEADERS}"
+  shopt -u nocasematch
+
+  if [[ ${REMOTE_SIZE} -eq 0 ]]; then
+    REMOTE_ACCEPTS_RANGES=0
+  fi
+}
+
+# Downloads DETECT_SOURCE to TEMP_DETECT_DESTINATION in a single
+# stream, continuing after the bytes already in it.
+download_detect_stream() {
+  file_size "${TEMP_DETECT_DESTINATION}"
+  if [[ ${REMOTE_SIZE} -gt 0 ]] && [[ ${FILE_SIZE} -gt ${REMOTE_SIZE} ]]; then
+    rm -f "${TEMP_DETECT_DESTINATION}"
+    FILE_SIZE=0
+  fi
+  if [[ ${REMOTE_SIZE} -gt 0 ]] && [[ ${FILE_SIZE} -eq ${REMOTE_SIZE} ]]; then
+    return 0
+  fi
+  if [[ ${FILE_SIZE} -gt 0 ]]; then
+    echo "Resuming the download after ${FILE_SIZE} bytes."
+  fi
+
+  # --fail keeps error pages out of the temporary file, so whatever
+  # it holds after a failure can be resumed.
+  local curlReturn
+  curlReturn=$(curl "${CURL_OPTS_LIST[@]}" --silent --fail -w "%{http_code}" -L -C - -o "${TEMP_DETECT_DESTINATION}" "${DETECT_SOURCE}")
+  local CURL_EXIT_CODE=$?
+  if [[ ${CURL_EXIT_CODE} -eq 33 ]] || [[ 416 -eq ${curlReturn} ]]; then
+    # The repository can not continue this file, start over.
+    rm -f "${TEMP_DETECT_DESTINATION}"
+    curlReturn=$(curl "${CURL_OPTS_LIST[@]}" --silent --fail -w "%{http_code}" -L -o "${TEMP_DETECT_DESTINATION}" "${DETECT_SOURCE}")
+    CURL_EXIT_CODE=$?
+  fi
+  if [[ ${CURL_EXIT_CODE} -ne 0 ]] || { [[ 200 -ne ${curlReturn} ]] && [[ 206 -ne ${curlReturn} ]]; }; then
+    echo "The curl response was ${curlReturn}, which is not successful - please check your configuration and environment."
+    return 1
+  fi
+}
+
+# Downloads REMOTE_SIZE bytes of DETECT_SOURCE as PART_COUNT
+# concurrent ranges into part files next to the temporary file,
+# continuing each part where an earlier run left it, and joins
+# them into TEMP_DETECT_DESTINATION.
+download_detect_parts() {
+  local LAYOUT_FILE="${TEMP_DETECT_DESTINATION}.parts"
+  local LAYOUT="${REMOTE_SIZE} ${PART_COUNT}"
+  local SAVED_LAYOUT=""
+  if [[ -f "${LAYOUT_FILE}" ]]; then
+    read -r SAVED_LAYOUT < "${LAYOUT_FILE}"
+  fi
+  if [[ "${SAVED_LAYOUT}" != "${LAYOUT}" ]]; then
+    # The parts of a different file, or of a different split.
+    rm -f "${TEMP_DETECT_DESTINATION}.part"*
+    echo "${LAYOUT}" > "${LAYOUT_FILE}"
+  fi
+  rm -f "${TEMP_DETECT_DESTINATION}"
+  echo "Downloading ${REMOTE_SIZE} bytes in ${PART_COUNT} parts."
+
+  local PART_SIZE=$(((REMOTE_SIZE + PART_COUNT - 1) / PART_COUNT))
+  local PART_FILES=() PIDS=() INDEX START END LENGTH FAILED=0
+  for ((INDEX = 0; INDEX < PART_COUNT; INDEX++)); do
+    START=$((INDEX * PART_SIZE))
+    END=$((START + PART_SIZE - 1))
+    if [[ ${END} -ge ${REMOTE_SIZE} ]]; then
+      END=$((REMOTE_SIZE - 1))
+    fi
+    LENGTH=$((END - START + 1))
+    PART_FILES[${INDEX}]="${TEMP_DETECT_DESTINATION}.part${INDEX}"
+    file_size "${PART_FILES[${INDEX}]}"
+    if [[ ${FILE_SIZE} -gt ${LENGTH} ]]; then
+      rm -f "${PART_FILES[${INDEX}]}"
+      FILE_SIZE=0
+    fi
+    if [[ ${FILE_SIZE} -lt ${LENGTH} ]]; then
+      curl "${CURL_OPTS_LIST[@]}" --silent --fail -L --range "$((START + FILE_SIZE))-${END}" "${DETECT_SOURCE}" >> "${PART_FILES[${INDEX}]}" &
+      PIDS+=($!)
+    fi
+  done
+  for INDEX in "${!PIDS[@]}"; do
+    wait "${PIDS[${INDEX}]}" || FAILED=1
+  done
+
+  for ((INDEX = 0; INDEX < PART_COUNT; INDEX++)); do
+    START=$((INDEX * PART_SIZE))
+    END=$((START + PART_SIZE - 1))
+    if [[ ${END} -ge ${REMOTE_SIZE} ]]; then
+      END=$((REMOTE_SIZE - 1))
+    fi
+    file_size "${PART_FILES[${INDEX}]}"
+    if [[ ${FILE_SIZE} -ne $((END - START + 1)) ]]; then
+      if [[ ${FILE_SIZE} -gt $((END - START + 1)) ]]; then
+        # The repository ignored the range.
+        rm -f "${PART_FILES[${INDEX}]}"
+      fi
+      FAILED=1
+    fi
+  done
+  if [[ ${FAILED} -ne 0 ]]; then
+    echo "The download of ${DETECT_SOURCE} was interrupted, the next run will resume it."
+    return 1
+  fi
+
+  cat "${PART_FILES[@]}" > "${TEMP_DETECT_DESTINATION}" && rm -f "${TEMP_DETECT_DESTINATION}.part"*
+}
+
+# Sets DOWNLOAD_PROGRESS to the bytes held by the temporary file
+# and the part files of the download.
+download_progress() {
+  DOWNLOAD_PROGRESS=0
+  local FILE
+  for FILE in "${TEMP_DETECT_DESTINATION}" "${TEMP_DETECT_DESTINATION}.part"[0-9]*; do
+    file_size "${FILE}"
+    DOWNLOAD_PROGRESS=$((DOWNLOAD_PROGRESS + FILE_SIZE))
+  done
+}
+
+# Rebuilds DETECT_DESTINATION from the last downloaded jar and the
+# delta published next to DETECT_SOURCE for it. Fails, leaving
+# nothing behind, when there is no previous jar or no delta for
+# it, or when the result does not match the checksum of the jar
+# the repository publishes (or the embedded resolution names).
+# The delta's own checksum only says it was applied as written.
+update_from_delta() {
+  local PREVIOUS_FILENAME=""
+  if [[ -f "${LOCAL_FILE}" ]]; then
+    read -r PREVIOUS_FILENAME < "${LOCAL_FILE}"
+    PREVIOUS_FILENAME=${PREVIOUS_FILENAME##*[/\\]}
+  fi
+  local PREVIOUS_JAR="${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}${PREVIOUS_FILENAME}"
+  if [[ -z "${PREVIOUS_FILENAME}" ]] || [[ "${PREVIOUS_FILENAME}" == "${DETECT_FILENAME}" ]] || [[ ! -f "${PREVIOUS_JAR}" ]]; then
+    return 1
+  fi
+  local DELTA_FILE="${DETECT_DESTINATION}-temp.delta"
+  local REBUILT_FILE="${DETECT_DESTINATION}-temp.rebuilt"
+  local CURL_OPTS_LIST
+  eval "CURL_OPTS_LIST=(${DETECT_CURL_OPTS})"
+  local EXPECTED_SHA256=${EMBEDDED_SHA256}
+  if [[ -z "${EXPECTED_SHA256}" ]]; then
+    read_download_headers
+    EXPECTED_SHA256=${REMOTE_SHA256}
+  fi
+  if [[ -z "${EXPECTED_SHA256}" ]]; then
+    echo "There is no checksum of ${DETECT_FILENAME} to verify a delta against, the whole jar will be downloaded."
+    return 1
+  fi
+  if ! curl "${CURL_OPTS_LIST[@]}" --silent --fail -L -o "${DELTA_FILE}" "${DETECT_SOURCE}.from-${PREVIOUS_FILENAME%.jar}.delta"; then
+    rm -f "${DELTA_FILE}"
+    echo "There is no delta from ${PREVIOUS_FILENAME}, the whole jar will be downloaded."
+    return 1
+  fi
+  file_size "${DELTA_FILE}"
+  METRICS_BYTES_DOWNLOADED=${FILE_SIZE}
+
+  if apply_jar_delta "${DELTA_FILE}" "${PREVIOUS_JAR}" "${REBUILT_FILE}" && [[ "${DELTA_TARGET_SHA256}" == "${EXPECTED_SHA256}" ]]; then
+    rm -f "${DELTA_FILE}"
+    mv "${REBUILT_FILE}" "${DETECT_DESTINATION}"
+    DOWNLOADED_SHA256=${DELTA_TARGET_SHA256}
+    echo "Rebuilt ${DETECT_FILENAME} from ${PREVIOUS_FILENAME} and a delta of ${METRICS_BYTES_DOWNLOADED} bytes."
+    return 0
+  fi
+  rm -f "${DELTA_FILE}" "${REBUILT_FILE}"
+  echo "The delta from ${PREVIOUS_FILENAME} could not be applied or does not rebuild the jar the repository publishes, the whole jar will be downloaded."
+  return 1
+}
+
+# Writes the target of a delta: its header says which ranges to
+# copy from the source jar and how much to take in turn from the
+# data after the header. The source and the result are checked
+# against the sizes and checksums the header names. Arguments:
+# delta, source jar, result. Sets DELTA_TARGET_SHA256.
+apply_jar_delta() {
+  local DELTA=$1 SOURCE=$2 TARGET=$3
+  local FORMAT VERSION HEADER_LENGTH OPERATION NAME LENGTH SHA256 TARGET_SIZE=""
+  DELTA_TARGET_SHA256=""
+  read -r FORMAT VERSION HEADER_LENGTH < "${DELTA}"
+  if [[ "${FORMAT}" != DETECT-JAR-DELTA ]] || [[ "${VERSION}" != 1 ]] || [[ ! "${HEADER_LENGTH}" =~ ^[0-9]+$ ]]; then
+    return 1
+  fi
+  local DATA_OFFSET=$((10#${HEADER_LENGTH}))
+
+  while read -r OPERATION NAME LENGTH SHA256; do
+    case "${OPERATION}" in
+      source)
+        file_size "${SOURCE}"
+        [[ ${FILE_SIZE} -eq ${LENGTH} ]] || return 1
+        file_sha256 "${SOURCE}"
+        [[ -n "${FILE_SHA256}" ]] && [[ "${FILE_SHA256}" == "${SHA256}" ]] || return 1
+        ;;
+      target)
+        TARGET_SIZE=${LENGTH}
+        DELTA_TARGET_SHA256=${SHA256}
+        ;;
+      copy)
+        # NAME holds the offset in the source jar.
+        tail -c +$((NAME + 1)) "${SOURCE}" | head -c "${LENGTH}" || return 1
+        ;;
+      data)
+        tail -c +$((DATA_OFFSET + 1)) "${DELTA}" | head -c "${NAME}" || return 1
+        DATA_OFFSET=$((DATA_OFFSET + NAME))
+        ;;
+      end) break ;;
+      *) return 1 ;;
+    esac
+  done < <(head -c "${DATA_OFFSET}" "${DELTA}" | tail -n +2) > "${TARGET}" || return 1
+
+  file_size "${TARGET}"
+  [[ -n "${TARGET_SIZE}" ]] && [[ ${FILE_SIZE} -eq ${TARGET_SIZE} ]] || return 1
+  file_sha256 "${TARGET}"
+  [[ "${FILE_SHA256}" == "${DELTA_TARGET_SHA256}" ]]
+}
+
+# Sets DETECT_SOURCE, EMBEDDED_SIZE and EMBEDDED_SHA256 from the
+# line of EMBEDDED_RESOLUTION for DETECT_VERSION_KEY. The jar is
+# taken from the first of DETECT_REPO_URL_LIST.
+read_embedded_resolution() {
+  local KEY VERSION JAR_PATH SIZE SHA256
+  while read -r KEY VERSION JAR_PATH SIZE SHA256; do
+    if [[ "${KEY}" == "${DETECT_VERSION_KEY}" ]] && [[ "${JAR_PATH}" == /*.jar ]] && [[ "${SIZE}" =~ ^[0-9]+$ ]] && [[ -n "${SHA256}" ]]; then
+      DETECT_SOURCE="${DETECT_BINARY_REPO_URL}${JAR_PATH}"
+      EMBEDDED_SIZE=${SIZE}
+      EMBEDDED_SHA256=${SHA256}
+      return 0
+    fi
+  done <<< "${EMBEDDED_RESOLUTION}"
+  return 1
+}
+
+# Reads RESOLUTION_FILE into the CACHED_ variables, and when it
+# resolved DETECT_VERSION_KEY less than DETECT_RESOLUTION_TTL
+# seconds ago to a jar that is still in place, sets
+# DETECT_SOURCE and DETECT_FILENAME from it.
+read_cached_resolution() {
+  CACHED_KEY=""
+  CACHED_SOURCE=""
+  CACHED_FILENAME=""
+  CACHED_SHA256=""
+  CACHED_RESOLVED_AT=""
+  CACHED_MARKER=""
+  if [[ ${DETECT_RESOLUTION_TTL} -le 0 ]] || [[ ! -f "${RESOLUTION_FILE}" ]]; then
+    return 1
+  fi
+
+  local NAME VALUE
+  while IFS='=' read -r NAME VALUE; do
+    case "${NAME}" in
+      key) CACHED_KEY=${VALUE} ;;
+      source) CACHED_SOURCE=${VALUE} ;;
+      filename) CACHED_FILENAME=${VALUE} ;;
+      sha256) CACHED_SHA256=${VALUE} ;;
+      resolvedAt) CACHED_RESOLVED_AT=${VALUE} ;;
+      marker) CACHED_MARKER=${VALUE} ;;
+    esac
+  done < "${RESOLUTION_FILE}"
+
+  if [[ "${CACHED_KEY}" != "${DETECT_VERSION_KEY}" ]] || [[ -z "${CACHED_SOURCE}" ]] || [[ -z "${CACHED_FILENAME}" ]] || [[ "${CACHED_FILENAME}" == *[/\\]* ]] || [[ ! "${CACHED_RESOLVED_AT}" =~ ^[0-9]+$ ]]; then
+    return 1
+  fi
+  current_time
+  RESOLUTION_AGE=$((CURRENT_TIME - CACHED_RESOLVED_AT))
+  if [[ ${RESOLUTION_AGE} -lt 0 ]] || [[ ${RESOLUTION_AGE} -ge ${DETECT_RESOLUTION_TTL} ]]; then
+    return 1
+  fi
+
+  # The size and modification time vouch for the jar; it is only
+  # hashed again when they have changed.
+  local CACHED_JAR="${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}${CACHED_FILENAME}"
+  file_marker "${CACHED_JAR}"
+  if [[ -z "${FILE_MARKER}" ]]; then
+    return 1
+  fi
+  if [[ "${FILE_MARKER}" != "${CACHED_MARKER}" ]]; then
+    file_sha256 "${CACHED_JAR}"
+    if [[ -z "${CACHED_SHA256}" ]] || [[ "${FILE_SHA256}" != "${CACHED_SHA256}" ]]; then
+      return 1
+    fi
+    CACHED_MARKER=${FILE_MARKER}
+    DETECT_SOURCE=${CACHED_SOURCE}
+    DETECT_FILENAME=${CACHED_FILENAME}
+    write_resolution "${CACHED_SHA256}" "${CACHED_RESOLVED_AT}" "${CACHED_MARKER}"
+  fi
+
+  DETECT_SOURCE=${CACHED_SOURCE}
+  DETECT_FILENAME=${CACHED_FILENAME}
+}
+
+# Records the lookup that resolved DETECT_VERSION_KEY to
+# DETECT_DESTINATION, so later runs within DETECT_RESOLUTION_TTL
+# seconds can skip it.
+save_resolution() {
+  file_marker "${DETECT_DESTINATION}"
+  if [[ -z "${FILE_MARKER}" ]]; then
+    return
+  fi
+  local SHA256
+  if [[ "${CACHED_FILENAME}" == "${DETECT_FILENAME}" ]] && [[ -n "${CACHED_SHA256}" ]] && [[ "${FILE_MARKER}" == "${CACHED_MARKER}" ]]; then
+    SHA256=${CACHED_SHA256}
+  elif [[ -n "${DOWNLOADED_SHA256}" ]]; then
+    SHA256=${DOWNLOADED_SHA256}
+  else
+    file_sha256 "${DETECT_DESTINATION}"
+    SHA256=${FILE_SHA256}
+  fi
+  current_time
+  write_resolution "${SHA256}" "${CURRENT_TIME}" "${FILE_MARKER}"
+}
+
+# Replaces RESOLUTION_FILE in one step so a concurrent run never
+# reads half of it. Arguments: sha256, resolution time, marker.
+write_resolution() {
+  local TEMP_RESOLUTION_FILE="${RESOLUTION_FILE}.$$"
+  if {
+    echo "key=${DETECT_VERSION_KEY}"
+    echo "source=${DETECT_SOURCE}"
+    echo "filename=${DETECT_FILENAME}"
+    echo "sha256=$1"
+    echo "resolvedAt=$2"
+    echo "marker=$3"
+  } > "${TEMP_RESOLUTION_FILE}" 2>/dev/null; then
+    mv -f "${TEMP_RESOLUTION_FILE}" "${RESOLUTION_FILE}"
+  else
+    rm -f "${TEMP_RESOLUTION_FILE}"
+  fi
+}
+
+# Marks DETECT_DESTINATION as used. The time of its .used file
+# orders jars for eviction, and its in-use file, which names the
+# process and host, keeps it from being evicted during the run.
+mark_jar_in_use() {
+  touch "${DETECT_DESTINATION}.used" 2>/dev/null
+  current_time
+  JAR_IN_USE="${DETECT_DESTINATION}.in-use-$$"
+  echo "$$ ${HOSTNAME} ${CURRENT_TIME}" > "${JAR_IN_USE}" 2>/dev/null || JAR_IN_USE=""
+}
+
+# Removes the jars in DETECT_JAR_DOWNLOAD_DIR that have not been
+# used for DETECT_JAR_CACHE_MAX_AGE_DAYS, then the least recently
+# used ones until the jars and what is kept for them fit in
+# DETECT_JAR_CACHE_MAX_SIZE_MB. Only files named for Detect are
+# looked at, the folder may be shared with other tools.
+evict_jar_cache() {
+  local MAX_AGE=$((DETECT_JAR_CACHE_MAX_AGE_DAYS * 86400))
+  local MAX_SIZE=$((DETECT_JAR_CACHE_MAX_SIZE_MB * 1048576))
+  local LAST_DOWNLOADED="" FILE NAME FILES="" KEEPS
+  if [[ -f "${LOCAL_FILE}" ]]; then
+    read -r LAST_DOWNLOADED < "${LOCAL_FILE}"
+    LAST_DOWNLOADED=${LAST_DOWNLOADED##*[/\\]}
+  fi
+  current_time
+
+  # A line per file: the jar it belongs to, its size and time, and
+  # 1 when it keeps the jar (a download lock or a live in-use file).
+  for FILE in "${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}"*detect-*; do
+    NAME=${FILE##*[/\\]}
+    file_marker "${FILE}"
+    if [[ -z "${FILE_MARKER}" ]]; then
+      continue
+    fi
+    if [[ "${NAME}" == detect-resolution-*.txt ]] || [[ "${NAME}" == detect-java-*.txt ]]; then
+      # Quick to recreate, so only their age matters.
+      if [[ ${MAX_AGE} -gt 0 ]] && [[ $((CURRENT_TIME - ${FILE_MARKER##* })) -gt ${MAX_AGE} ]]; then
+        rm -f "${FILE}"
+      fi
+      continue
+    fi
+    cache_file_jar "${NAME}" || continue
+    KEEPS=0
+    if [[ "${NAME}" == *.jar.lock ]]; then
+      KEEPS=1
+      FILE_MARKER="0 ${FILE_MARKER##* }"
+    elif [[ "${NAME}" == *.jar.in-use-* ]]; then
+      if in_use_file_is_stale "${FILE}" "${FILE_MARKER##* }"; then
+        rm -f "${FILE}"
+        continue
+      fi
+      KEEPS=1
+    elif [[ -d "${FILE}" ]]; then
+      # An extracted jar counts with the size its marker recorded.
+      local EXPLODED_KB=""
+      read -r _ _ EXPLODED_KB _ 2>/dev/null < "${FILE}${PATH_SEPARATOR}detect-exploded.txt"
+      [[ "${EXPLODED_KB}" =~ ^[0-9]+$ ]] || EXPLODED_KB=0
+      FILE_MARKER="$((EXPLODED_KB * 1024)) ${FILE_MARKER##* }"
+    fi
+    FILES+="${CACHE_JAR} ${FILE_MARKER} ${KEEPS}"$'\n'
+  done
+
+  # Sorted by jar, the lines are summed up to a line per jar that
+  # may be evicted: its last use, its size and its name.
+  local JAR SIZE TIME ENTRIES="" ENTRY_JAR="" ENTRY_SIZE=0 ENTRY_TIME=0 ENTRY_KEPT=1 TOTAL=0
+  while read -r JAR SIZE TIME KEEPS; do
+    if [[ -z "${JAR}" ]]; then
+      continue
+    elif [[ "${JAR}" != "${ENTRY_JAR}" ]]; then
+      if [[ ${ENTRY_KEPT} -eq 0 ]]; then
+        ENTRIES+="${ENTRY_TIME} ${ENTRY_SIZE} ${ENTRY_JAR}"$'\n'
+      fi
+      ENTRY_JAR=${JAR}
+      ENTRY_SIZE=0
+      ENTRY_TIME=0
+      ENTRY_KEPT=0
+      if [[ "${JAR}" == "${DETECT_FILENAME}" ]] || [[ "${JAR}" == "${LAST_DOWNLOADED}" ]]; then
+        ENTRY_KEPT=1
+      fi
+    fi
+    TOTAL=$((TOTAL + SIZE))
+    ENTRY_SIZE=$((ENTRY_SIZE + SIZE))
+    if [[ ${TIME} -gt ${ENTRY_TIME} ]]; then
+      ENTRY_TIME=${TIME}
+    fi
+    if [[ ${KEEPS} -eq 1 ]]; then
+      ENTRY_KEPT=1
+    fi
+  done <<< "$(LC_ALL=C sort <<< "${FILES}")
+/ 0 0 1"
+
+  local EVICTED=" "
+  while read -r TIME SIZE JAR; do
+    if [[ -z "${JAR}" ]]; then
+      continue
+    elif [[ ${MAX_AGE} -gt 0 ]] && [[ $((CURRENT_TIME - TIME)) -gt ${MAX_AGE} ]]; then
+      echo "Removing ${JAR}, it was last used $(((CURRENT_TIME - TIME) / 86400)) days ago."
+    elif [[ ${MAX_SIZE} -gt 0 ]] && [[ ${TOTAL} -gt ${MAX_SIZE} ]]; then
+      echo "Removing ${JAR}, the least recently used jar, to fit in ${DETECT_JAR_CACHE_MAX_SIZE_MB} MB."
+    else
+      continue
+    fi
+    EVICTED+="${JAR} "
+    TOTAL=$((TOTAL - SIZE))
+  done <<< "$(sort -n <<< "${ENTRIES}")"
+
+  if [[ "${EVICTED}" != " " ]]; then
+    for FILE in "${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}"*detect-*; do
+      if cache_file_jar "${FILE##*[/\\]}" && [[ "${EVICTED}" == *" ${CACHE_JAR} "* ]]; then
+        rm -rf "${FILE}"
+      fi
+    done
+  fi
+}
+
+# Sets CACHE_JAR to the name of the jar that a file in
+# DETECT_JAR_DOWNLOAD_DIR belongs to: the jar itself, its
+# unfinished download, lock, use markers and class data sharing
+# archives. Fails for any other file.
+cache_file_jar() {
+  local NAME=$1
+  CACHE_JAR=""
+  if [[ "${NAME}" != detect-* ]] && [[ "${NAME}" != synopsys-detect-* ]]; then
+    return 1
+  fi
+  if [[ "${NAME}" == *.jar* ]]; then
+    CACHE_JAR="${NAME%%.jar*}.jar"
+  elif [[ "${NAME}" == *.jsa* ]]; then
+    # Named for the jar and the Java that created it.
+    NAME=${NAME%%.jsa*}
+    [[ "${NAME##*-}" =~ ^[0-9a-f]+$ ]] || return 1
+    CACHE_JAR="${NAME%-*}.jar"
+  elif [[ "${NAME}" == *-exploded* ]]; then
+    # Extracted for DETECT_EXPLODED_JAR, or being extracted.
+    CACHE_JAR="${NAME%%-exploded*}.jar"
+  else
+    return 1
+  fi
+}
+
+# Succeeds when the process that wrote an in-use file is known to
+# be gone from this host; while that can't be told the jar stays
+# in use. The process behind a file from another host can not be
+# checked, so that file is stale once it is older than
+# DETECT_JAR_CACHE_MAX_AGE_DAYS. Arguments: file, its time.
+in_use_file_is_stale() {
+  local OWNER_PID="" OWNER_HOST="" OWNER_TIME=""
+  read -r OWNER_PID OWNER_HOST OWNER_TIME 2>/dev/null < "$1"
+  if [[ "${OWNER_HOST}" == "${HOSTNAME}" ]] && [[ "${OWNER_PID}" =~ ^[0-9]+$ ]]; then
+    process_is_gone "${OWNER_PID}"
+  else
+    [[ ${DETECT_JAR_CACHE_MAX_AGE_DAYS} -gt 0 ]] && [[ $((CURRENT_TIME - $2)) -gt $((DETECT_JAR_CACHE_MAX_AGE_DAYS * 86400)) ]]
+  fi
+}
+
+# Runs however the script ends: releases a download lock that is
+# still held, removes the in-use file and records the run in
+# DETECT_SCRIPT_METRICS_FILE.
+script_exit() {
+  local EXIT_CODE=$?
+  if [[ -n "${DOWNLOAD_LOCK}" ]]; then
+    release_download_lock
+  fi
+  if [[ -n "${JAR_IN_USE}" ]]; then
+    rm -f "${JAR_IN_USE}"
+  fi
+  if [[ -n "${DETECT_SCRIPT_METRICS_FILE}" ]]; then
+    end_phase
+    metrics_clock
+    printf '{"script":"sh","scriptVersion":"%s","startedAt":%s,"versionKey":"%s","jar":"%s","resolution":"%s","jarCache":"%s","bytesDownloaded":%s,"phases":{%s},"totalMillis":%s,"exitCode":%s}\n' \
+      "${SCRIPT_VERSION}" "${METRICS_START}" "${DETECT_VERSION_KEY//[\\\"]/}" "${DETECT_FILENAME//[\\\"]/}" "${METRICS_RESOLUTION}" "${METRICS_JAR_CACHE}" "${METRICS_BYTES_DOWNLOADED}" \
+      "${METRICS_PHASES}" "$((METRICS_CLOCK - METRICS_START))" "${EXIT_CODE}" >> "${DETECT_SCRIPT_METRICS_FILE}" 2>/dev/null
+  fi
+}
+
+# Sets METRICS_CLOCK to the milliseconds since the epoch, or to
+# the start of the current second where the shell can not tell.
+metrics_clock() {
+  if [[ -n "${EPOCHREALTIME}" ]]; then
+    local NOW=${EPOCHREALTIME/[.,]/}
+    METRICS_CLOCK=$((NOW / 1000))
+  else
+    current_time
+    METRICS_CLOCK=$((CURRENT_TIME * 1000))
+  fi
+}
+
+# Times a phase of the run; end_phase adds its milliseconds to
+# METRICS_PHASES.
+start_phase() {
+  PHASE_NAME=$1
+  metrics_clock
+  PHASE_START=${METRICS_CLOCK}
+}
+
+end_phase() {
+  if [[ -n "${PHASE_NAME}" ]]; then
+    metrics_clock
+    local MILLIS=$((METRICS_CLOCK - PHASE_START)) PREVIOUS
+    # A phase that is entered twice, like java, adds up.
+    if [[ "${METRICS_PHASES}" == *"\"${PHASE_NAME}\":"* ]]; then
+      PREVIOUS=${METRICS_PHASES#*\"${PHASE_NAME}\":}
+      PREVIOUS=${PREVIOUS%%,*}
+      METRICS_PHASES=${METRICS_PHASES/\"${PHASE_NAME}\":${PREVIOUS}/\"${PHASE_NAME}\":$((PREVIOUS + MILLIS))}
+    else
+      METRICS_PHASES+="${METRICS_PHASES:+,}\"${PHASE_NAME}\":${MILLIS}"
+    fi
+    PHASE_NAME=""
+  fi
+}
+
+# Sets CURRENT_TIME to the seconds since the epoch, without a
+# subprocess where the shell can do it itself.
+current_time() {
+  printf -v CURRENT_TIME '%(%s)T' -1 2>/dev/null || CURRENT_TIME=$(date +%s)
+}
+
+# Sets FILE_MARKER to the size and modification time of a file,
+# or to nothing when it does not exist.
+file_marker() {
+  FILE_MARKER=$(stat -L -c '%s %Y' "$1" 2>/dev/null || stat -L -f '%z %m' "$1" 2>/dev/null)
+}
+
+# Sets FILE_SIZE to the size of a file, or to 0 when it does
+# not exist.
+file_size() {
+  file_marker "$1"
+  FILE_SIZE=${FILE_MARKER%% *}
+  FILE_SIZE=${FILE_SIZE:-0}
+}
+
+# Sets FILE_SHA256 to the SHA-256 of a file, or to nothing when
+# neither sha256sum nor shasum is available.
+file_sha256() {
+  local SUM=""
+  if command -v sha256sum >/dev/null 2>&1; then
+    SUM=$(sha256sum "$1" 2>/dev/null)
+  elif command -v shasum >/dev/null 2>&1; then
+    SUM=$(shasum -a 256 "$1" 2>/dev/null)
+  fi
+  FILE_SHA256=${SUM%% *}
+}
+
+# The scripts for Detect 8 and 9 recorded the last downloaded jar
+# in synopsys-detect-last-downloaded-jar.txt. It is copied to
+# LOCAL_FILE once, so an upgraded script can still fall back to
+# that jar when the repository can't be reached.
+copy_legacy_local_file() {
+  local LEGACY_LOCAL_FILE="${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}synopsys-detect-last-downloaded-jar.txt"
+  if [[ ! -f "${LOCAL_FILE}" ]] && [[ -f "${LEGACY_LOCAL_FILE}" ]]; then
+    { cp "${LEGACY_LOCAL_FILE}" "${LOCAL_FILE}.$$" && mv -f "${LOCAL_FILE}.$$" "${LOCAL_FILE}"; } 2>/dev/null
+  fi
+}
+
+# Asks the repositories in DETECT_REPO_URL_LIST for the url of
+# DETECT_VERSION_KEY, hedging slow ones, and sets DETECT_SOURCE
+# from the first valid answer. The download is then taken from
+# the repository that answered.
+lookup_detect_source() {
+  local LOOKUP_PATH="/api/storage/bds-integrations-release/com/${DETECT_ORG_NAME}/integration/${DETECT_NAME_PREFIX}?properties=${DETECT_VERSION_KEY}"
+  local LOOKUP_DIR
+  LOOKUP_DIR=$(mktemp -d 2>/dev/null || mktemp -d -t detect-lookup) || return
+  local CURL_OPTS_LIST
+  eval "CURL_OPTS_LIST=(${DETECT_CURL_OPTS})"
+
+  local REPO_COUNT=${#DETECT_REPO_URL_LIST[@]}
+  local LOOKUP_START=${SECONDS}
+  local PIDS=() FINISHED=() LAUNCHED=0 RUNNING=0 HEDGE_PID="" WINNER=-1 INDEX
+  if [[ ${REPO_COUNT} -eq 1 ]]; then
+    # There is nothing to hedge with a single repository.
+    ask_repository 0 && WINNER=0
+    LAUNCHED=1
+    FINISHED[0]=1
+  fi
+  # wait -n (bash 4.3) wakes up as soon as a lookup or the hedge
+  # timer ends; older shells check ten times a second instead.
+  local WAIT_ANY=0
+  if [[ ${BASH_VERSINFO[0]} -gt 4 ]] || { [[ ${BASH_VERSINFO[0]} -eq 4 ]] && [[ ${BASH_VERSINFO[1]} -ge 3 ]]; }; then
+    WAIT_ANY=1
+  fi
+
+  while [[ ${WINNER} -lt 0 ]]; do
+    if [[ ${LAUNCHED} -lt ${REPO_COUNT} ]] && { [[ ${RUNNING} -eq 0 ]] || ! kill -0 "${HEDGE_PID}" 2>/dev/null; }; then
+      [[ ${LAUNCHED} -gt 0 ]] && echo "Also asking ${DETECT_REPO_URL_LIST[${LAUNCHED}]}${LOOKUP_PATH}"
+      ask_repository "${LAUNCHED}" &
+      PIDS[${LAUNCHED}]=$!
+      LAUNCHED=$((LAUNCHED + 1))
+      RUNNING=$((RUNNING + 1))
+      if [[ ${LAUNCHED} -lt ${REPO_COUNT} ]]; then
+        sleep "${DETECT_LOOKUP_HEDGE_DELAY}" &
+        HEDGE_PID=$!
+      fi
+    fi
+
+    # Nothing in this loop may run a command substitution: it would
+    # reap finished lookups before wait -n gets to see them.
+    for ((INDEX = 0; INDEX < LAUNCHED; INDEX++)); do
+      if [[ -z "${FINISHED[${INDEX}]}" ]] && ! kill -0 "${PIDS[${INDEX}]}" 2>/dev/null; then
+        FINISHED[${INDEX}]=1
+        RUNNING=$((RUNNING - 1))
+        if wait "${PIDS[${INDEX}]}"; then
+          WINNER=${INDEX}
+          break 2
+        fi
+        echo "No valid answer from ${DETECT_REPO_URL_LIST[${INDEX}]}"
+        # Don't wait out the hedge delay once a repository has failed.
+        [[ -n "${HEDGE_PID}" ]] && kill "${HEDGE_PID}" 2>/dev/null
+      fi
+    done
+
+    if [[ ${RUNNING} -eq 0 ]] && [[ ${LAUNCHED} -ge ${REPO_COUNT} ]]; then
+      break
+    fi
+    if [[ ${WAIT_ANY} -eq 1 ]]; then
+      wait -n
+    else
+      sleep 0.1
+    fi
+  done
+
+  for ((INDEX = 0; INDEX < LAUNCHED; INDEX++)); do
+    [[ -z "${FINISHED[${INDEX}]}" ]] && kill "${PIDS[${INDEX}]}" 2>/dev/null
+  done
+  [[ -n "${HEDGE_PID}" ]] && kill "${HEDGE_PID}" 2>/dev/null
+
+  if [[ ${WINNER} -ge 0 ]]; then
+    DETECT_SOURCE=$(extract_detect_source "${LOOKUP_DIR}/${WINNER}")
+    local WINNING_REPO_URL=${DETECT_REPO_URL_LIST[${WINNER}]}
+    local REPO_URL
+    for REPO_URL in "${DETECT_REPO_URL_LIST[@]}" https://repo.blackduck.com; do
+      if [[ "${DETECT_SOURCE}" == "${REPO_URL}/"* ]]; then
+        DETECT_SOURCE="${WINNING_REPO_URL}${DETECT_SOURCE#"${REPO_URL}"}"
+        break
+      fi
+    done
+  elif [[ $((SECONDS - LOOKUP_START)) -ge ${DETECT_LOOKUP_BUDGET} ]]; then
+    echo "No repository answered within ${DETECT_LOOKUP_BUDGET} seconds."
+  elif [[ ${REPO_COUNT} -eq 1 ]]; then
+    echo "No valid answer from ${DETECT_REPO_URL_LIST[0]}"
+  fi
+  rm -rf "${LOOKUP_DIR}"
+}
 
+# Asks the repository at the given index of DETECT_REPO_URL_LIST
+# for the lookup of lookup_detect_source, with whatever is left of
+# DETECT_LOOKUP_BUDGET, and succeeds only on a valid answer.
+ask_repository() {
+  local TIME_LEFT=$((DETECT_LOOKUP_BUDGET - SECONDS + LOOKUP_START))
+  [[ ${TIME_LEFT} -gt 0 ]] || return 1
+  curl "${CURL_OPTS_LIST[@]}" --silent --fail --max-time "${TIME_LEFT}" --header "X-Result-Detail: info" -o "${LOOKUP_DIR}/$1" "${DETECT_REPO_URL_LIST[$1]}${LOOKUP_PATH}" && [[ -n "$(extract_detect_source "${LOOKUP_DIR}/$1")" ]]
+}
+
+extract_detect_source() {
+  [[ -f "$1" ]] && grep "${DETECT_VERSION_KEY}" "$1" | sed 's/[^[]*[^"]*"\([^"]*\).*/\1/'
+}
+
+set_detect_java_path() {
   if [[ -n "${DETECT_JAVA_PATH}" ]]; then
     echo "Java Source: DETECT_JAVA_PATH=${DETECT_JAVA_PATH}"
   elif [[ -n "${JAVA_HOME}" ]]; then
@@ -219,15 +1228,304 @@ set_detect_java_path() {
 }
 
 run_detect() {
-  set_detect_java_path
+  start_phase java
+  if [[ -n "${JAVA_PROBE_PID}" ]]; then
+    wait "${JAVA_PROBE_PID}" 2>/dev/null
+  fi
+  configure_java_ergonomics
+  configure_launch
+  configure_cds
+  end_phase
 
-  JAVACMD="\"${DETECT_JAVA_PATH}\" ${DETECT_JAVA_OPTS} -jar \"${DETECT_DESTINATION}\""
+  JAVACMD="\"${DETECT_JAVA_PATH}\" ${JAVA_ERGONOMICS_OPTS} ${DETECT_JAVA_OPTS} ${CDS_OPTS} ${DETECT_LAUNCH_OPTS}"
   echo "running Detect: ${JAVACMD} ${LOGGABLE_SCRIPT_ARGS}"
 
+  start_phase detect
   eval "${JAVACMD} ${SCRIPT_ARGS}"
   RESULT=$?
+  finish_cds_archive
+  end_phase
   echo "Result code of ${RESULT}, exiting"
   exit ${RESULT}
 }
 
+# In download only mode, a short run of a new jar that only
+# prints its help creates the archive ahead of the first scan,
+# or the jar is extracted when DETECT_EXPLODED_JAR asks for it.
+create_cds_archive() {
+  start_phase java
+  set_detect_java_path
+  configure_java_ergonomics
+  configure_launch
+  configure_cds
+  end_phase
+  if [[ "${CDS_MODE}" == create ]]; then
+    echo "Creating a class data sharing archive at ${CDS_ARCHIVE}"
+    start_phase detect
+    # The archive is only used by a JVM started with the same options.
+    eval "\"${DETECT_JAVA_PATH}\" ${JAVA_ERGONOMICS_OPTS} ${DETECT_JAVA_OPTS} ${CDS_OPTS} ${DETECT_LAUNCH_OPTS} --help" >/dev/null 2>&1
+    finish_cds_archive
+    end_phase
+  fi
+}
+
+# Sets CDS_OPTS to run DETECT_DESTINATION with the archive kept
+# for it and DETECT_JAVA_PATH (CDS_MODE=use), or to create that
+# archive when the JVM exits (CDS_MODE=create). They stay empty
+# when the JVM can not share classes this way, which includes
+# Detect starting from a directory rather than a jar.
+configure_cds() {
+  CDS_MODE=""
+  CDS_OPTS=""
+  CDS_ARCHIVE=""
+  if [[ ${DETECT_CDS} -ne 1 ]] || [[ -n "${EXPLODED_DIR}" ]] || [[ "${DETECT_JAVA_OPTS}" == *-Xshare* ]] || [[ "${DETECT_JAVA_OPTS}" == *SharedArchiveFile* ]] || [[ "${DETECT_JAVA_OPTS}" == *ArchiveClassesAtExit* ]]; then
+    return
+  fi
+  if ! probe_java || [[ ${JAVA_MAJOR_VERSION} -lt 13 ]]; then
+    return
+  fi
+
+  CDS_ARCHIVE="${DETECT_DESTINATION%.jar}-${JAVA_ID}.jsa"
+  file_marker "${CDS_ARCHIVE}"
+  local ARCHIVE_MARKER=${FILE_MARKER}
+  file_marker "${DETECT_DESTINATION}"
+  # The JVM ignores an archive that does not match, but one older
+  # than the jar is replaced rather than ignored on every run.
+  if [[ -n "${ARCHIVE_MARKER}" ]] && [[ ${ARCHIVE_MARKER%% *} -gt 0 ]] && [[ ${ARCHIVE_MARKER##* } -ge ${FILE_MARKER##* } ]]; then
+    CDS_MODE=use
+    CDS_OPTS="-XX:SharedArchiveFile=\"${CDS_ARCHIVE}\" -Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off"
+  else
+    CDS_MODE=create
+    CDS_OPTS="-XX:ArchiveClassesAtExit=\"${CDS_ARCHIVE}.$$\" -Xlog:cds=off -Xlog:cds+dynamic=off"
+  fi
+}
+
+# Moves an archive created by this run into place, so concurrent
+# runs never load one that is still being written.
+finish_cds_archive() {
+  if [[ "${CDS_MODE}" == create ]]; then
+    if [[ -s "${CDS_ARCHIVE}.$$" ]]; then
+      mv -f "${CDS_ARCHIVE}.$$" "${CDS_ARCHIVE}"
+    else
+      rm -f "${CDS_ARCHIVE}.$$"
+    fi
+  fi
+}
+
+# Sets DETECT_LAUNCH_OPTS to start DETECT_DESTINATION from the
+# directory it is extracted to when DETECT_EXPLODED_JAR is 1,
+# setting EXPLODED_DIR to that directory, or with -jar when it
+# is not asked for or the directory can not be made.
+configure_launch() {
+  EXPLODED_DIR=""
+  DETECT_LAUNCH_OPTS="-jar \"${DETECT_DESTINATION}\""
+  if [[ ${DETECT_EXPLODED_JAR} -ne 1 ]]; then
+    return
+  fi
+  local DIR="${DETECT_DESTINATION%.jar}-exploded"
+  if ! read_exploded_marker "${DIR}"; then
+    explode_detect_jar "${DIR}" && read_exploded_marker "${DIR}" || return
+  fi
+  EXPLODED_DIR=${DIR}
+  DETECT_LAUNCH_OPTS="-cp \"${EXPLODED_DIR}\" ${EXPLODED_MAIN_CLASS}"
+}
+
+# Succeeds when a directory holds a complete extraction of
+# DETECT_DESTINATION as it is now, and sets EXPLODED_MAIN_CLASS.
+# Its marker names the size and time of the jar it came from,
+# the size of the directory in KB and the class to start.
+read_exploded_marker() {
+  local JAR_SIZE="" JAR_TIME="" EXPLODED_KB=""
+  EXPLODED_MAIN_CLASS=""
+  read -r JAR_SIZE JAR_TIME EXPLODED_KB EXPLODED_MAIN_CLASS 2>/dev/null < "$1${PATH_SEPARATOR}detect-exploded.txt" || return 1
+  file_marker "${DETECT_DESTINATION}"
+  [[ "${JAR_SIZE} ${JAR_TIME}" == "${FILE_MARKER}" ]] && [[ -n "${EXPLODED_MAIN_CLASS}" ]]
+}
+
+# Extracts DETECT_DESTINATION into a directory of this process,
+# which is marked and moved into place once it is complete, so
+# concurrent runs never start Detect from half of it. A stale
+# directory, of a jar since replaced, is removed first.
+explode_detect_jar() {
+  local DIR=$1 TEMP_DIR="$1.$$" LINE MAIN_CLASS="" EXPLODED_KB=""
+  if ! command -v unzip >/dev/null 2>&1; then
+    echo "unzip is not available, running Detect from the jar."
+    return 1
+  fi
+  echo "Extracting ${DETECT_DESTINATION} to ${DIR}"
+  rm -rf "${TEMP_DIR}"
+  if ! unzip -q -o "${DETECT_DESTINATION}" -d "${TEMP_DIR}" >/dev/null 2>&1; then
+    echo "Unable to extract the jar, running Detect from the jar."
+    rm -rf "${TEMP_DIR}"
+    return 1
+  fi
+
+  # A manifest wraps long values onto lines that start with a space.
+  while IFS= read -r LINE || [[ -n "${LINE}" ]]; do
+    LINE=${LINE%$'\r'}
+    if [[ "${LINE}" == Main-Class:* ]]; then
+      MAIN_CLASS=${LINE#Main-Class:}
+      MAIN_CLASS=${MAIN_CLASS# }
+    elif [[ -n "${MAIN_CLASS}" ]] && [[ "${LINE}" == " "* ]]; then
+      MAIN_CLASS+=${LINE# }
+    elif [[ -n "${MAIN_CLASS}" ]]; then
+      break
+    fi
+  done < "${TEMP_DIR}${PATH_SEPARATOR}META-INF${PATH_SEPARATOR}MANIFEST.MF"
+  if [[ -z "${MAIN_CLASS}" ]]; then
+    echo "The jar names no Main-Class, running Detect from the jar."
+    rm -rf "${TEMP_DIR}"
+    return 1
+  fi
+
+  EXPLODED_KB=$(du -sk "${TEMP_DIR}" 2>/dev/null)
+  EXPLODED_KB=${EXPLODED_KB%%[[:space:]]*}
+  file_marker "${DETECT_DESTINATION}"
+  echo "${FILE_MARKER} ${EXPLODED_KB:-0} ${MAIN_CLASS}" > "${TEMP_DIR}${PATH_SEPARATOR}detect-exploded.txt"
+  rm -rf "${DIR}"
+  mv "${TEMP_DIR}" "${DIR}" 2>/dev/null
+  # Should a concurrent run have moved its directory into place
+  # first, mv put this one inside it.
+  rm -rf "${TEMP_DIR}" "${DIR}${PATH_SEPARATOR}${TEMP_DIR##*[/\\]}"
+}
+
+# Finds the Java to run Detect with before Detect is resolved, so
+# a run without Java fails at once rather than after the lookup
+# and download. Its version is asked for in the background while
+# they go on, and run_detect waits for the answer probe_java then
+# reads from DETECT_JAR_DOWNLOAD_DIR.
+start_java_probe() {
+  JAVA_PROBE_PID=""
+  set_detect_java_path
+  if ! type -P "${DETECT_JAVA_PATH}" >/dev/null 2>&1; then
+    echo "Java is not available at ${DETECT_JAVA_PATH}, exiting."
+    exit 127
+  fi
+  if [[ ${DETECT_JAVA_ERGONOMICS} -eq 1 ]] || [[ ${DETECT_CDS} -eq 1 ]]; then
+    mkdir -p "${DETECT_JAR_DOWNLOAD_DIR}" 2>/dev/null
+    probe_java >/dev/null 2>&1 &
+    JAVA_PROBE_PID=$!
+  fi
+}
+
+# Sets JAVA_ID to identify the DETECT_JAVA_PATH executable by its
+# location, size and modification time, JAVA_MAJOR_VERSION to its
+# feature version and JAVA_CONTAINER_SUPPORT to 1 when it reads
+# the cgroup limits and takes MaxRAMPercentage (8u191 and 10 or
+# newer). They are remembered per JAVA_ID in
+# DETECT_JAR_DOWNLOAD_DIR, so each Java is only asked once.
+probe_java() {
+  if [[ -n "${JAVA_ID}" ]] && [[ "${JAVA_PROBED_PATH}" == "${DETECT_JAVA_PATH}" ]]; then
+    return 0
+  fi
+  JAVA_ID=""
+  JAVA_MAJOR_VERSION=0
+  JAVA_CONTAINER_SUPPORT=0
+  local JAVA_EXECUTABLE CHECKSUM
+  JAVA_EXECUTABLE=$(type -P "${DETECT_JAVA_PATH}") || return
+  file_marker "${JAVA_EXECUTABLE}"
+  if [[ -z "${FILE_MARKER}" ]]; then
+    return 1
+  fi
+  CHECKSUM=$(cksum <<< "${JAVA_EXECUTABLE} ${FILE_MARKER}")
+
+  local JAVA_PROBE_FILE="${DETECT_JAR_DOWNLOAD_DIR}${PATH_SEPARATOR}detect-java-${CHECKSUM%% *}.txt"
+  local NAME VALUE CACHED_VERSION="" CACHED_CONTAINER_SUPPORT=""
+  if [[ -f "${JAVA_PROBE_FILE}" ]]; then
+    while IFS='=' read -r NAME VALUE; do
+      if [[ "${NAME}" == version ]] && [[ "${VALUE}" =~ ^[0-9]+$ ]]; then
+        CACHED_VERSION=${VALUE}
+      elif [[ "${NAME}" == container_support ]] && [[ "${VALUE}" =~ ^[01]$ ]]; then
+        CACHED_CONTAINER_SUPPORT=${VALUE}
+      fi
+    done < "${JAVA_PROBE_FILE}"
+  fi
+
+  if [[ -n "${CACHED_VERSION}" ]] && [[ -n "${CACHED_CONTAINER_SUPPORT}" ]]; then
+    JAVA_MAJOR_VERSION=${CACHED_VERSION}
+    JAVA_CONTAINER_SUPPORT=${CACHED_CONTAINER_SUPPORT}
+  else
+    # The version is the first quoted value, e.g. "17.0.9" or "1.8.0_392".
+    VALUE=$("${JAVA_EXECUTABLE}" -version 2>&1) || return
+    VALUE=${VALUE#*version \"}
+    VALUE=${VALUE%%\"*}
+    local UPDATE=${VALUE#*_}
+    VALUE=${VALUE#1.}
+    VALUE=${VALUE%%[!0-9]*}
+    if [[ -z "${VALUE}" ]]; then
+      return 1
+    fi
+    JAVA_MAJOR_VERSION=${VALUE}
+    UPDATE=${UPDATE%%[!0-9]*}
+    if [[ ${JAVA_MAJOR_VERSION} -ge 10 ]] || { [[ ${JAVA_MAJOR_VERSION} -eq 8 ]] && [[ ${UPDATE:-0} -ge 191 ]]; }; then
+      JAVA_CONTAINER_SUPPORT=1
+    fi
+    { printf 'version=%s\ncontainer_support=%s\n' "${JAVA_MAJOR_VERSION}" "${JAVA_CONTAINER_SUPPORT}" > "${JAVA_PROBE_FILE}.$$" && mv -f "${JAVA_PROBE_FILE}.$$" "${JAVA_PROBE_FILE}"; } 2>/dev/null
+  fi
+  JAVA_ID=${CHECKSUM%% *}
+  JAVA_PROBED_PATH=${DETECT_JAVA_PATH}
+  return 0
+}
+
+# Sets JAVA_ERGONOMICS_OPTS to the heap, processor count and
+# garbage collector DETECT_JAVA_ERGONOMICS asks for, leaving out
+# what DETECT_JAVA_OPTS already sets.
+configure_java_ergonomics() {
+  JAVA_ERGONOMICS_OPTS=""
+  if [[ ${DETECT_JAVA_ERGONOMICS} -ne 1 ]] || ! probe_java; then
+    return
+  fi
+  read_cgroup_limits
+
+  # Without a memory limit, e.g. on a build agent running several
+  # scans at once, the heap is left to the JVM default.
+  if [[ ${CGROUP_MEMORY_LIMIT_MB} -gt 0 ]] && [[ "${DETECT_JAVA_OPTS}" != *-Xmx* ]] && [[ "${DETECT_JAVA_OPTS}" != *MaxHeapSize* ]] && [[ "${DETECT_JAVA_OPTS}" != *RAMPercentage* ]] && [[ "${DETECT_JAVA_OPTS}" != *MaxRAM=* ]]; then
+    if [[ ${JAVA_CONTAINER_SUPPORT} -eq 1 ]]; then
+      JAVA_ERGONOMICS_OPTS+=" -XX:MaxRAMPercentage=${DETECT_JAVA_RAM_PERCENTAGE}"
+    else
+      # An older Java sizes its heap from the memory of the machine.
+      JAVA_ERGONOMICS_OPTS+=" -Xmx$((CGROUP_MEMORY_LIMIT_MB * DETECT_JAVA_RAM_PERCENTAGE / 100))m"
+    fi
+  fi
+  if [[ ${JAVA_CONTAINER_SUPPORT} -eq 1 ]] && [[ ${CGROUP_CPU_LIMIT} -gt 0 ]] && [[ "${DETECT_JAVA_OPTS}" != *ActiveProcessorCount* ]]; then
+    JAVA_ERGONOMICS_OPTS+=" -XX:ActiveProcessorCount=${CGROUP_CPU_LIMIT}"
+  fi
+  # Only a collector of its own, e.g. -XX:+UseG1GC, overrides this;
+  # GC logging and tuning options don't.
+  local GC_SELECTION='-XX:[+-]Use[A-Za-z0-9]*GC'
+  if [[ ! "${DETECT_JAVA_OPTS}" =~ ${GC_SELECTION} ]]; then
+    if [[ ${CGROUP_CPU_LIMIT} -eq 1 ]] || { [[ ${CGROUP_MEMORY_LIMIT_MB} -gt 0 ]] && [[ ${CGROUP_MEMORY_LIMIT_MB} -lt 2048 ]]; }; then
+      JAVA_ERGONOMICS_OPTS+=" -XX:+UseSerialGC"
+    fi
+  fi
+}
+
+# Sets CGROUP_MEMORY_LIMIT_MB and CGROUP_CPU_LIMIT, the CPUs
+# rounded up, from the cgroup v2 or v1 limits of the script, or
+# to 0 when there is no limit.
+read_cgroup_limits() {
+  CGROUP_MEMORY_LIMIT_MB=0
+  CGROUP_CPU_LIMIT=0
+  local LIMIT QUOTA PERIOD
+  if [[ -r /sys/fs/cgroup/memory.max ]]; then
+    read -r LIMIT < /sys/fs/cgroup/memory.max
+  elif [[ -r /sys/fs/cgroup/memory/memory.limit_in_bytes ]]; then
+    read -r LIMIT < /sys/fs/cgroup/memory/memory.limit_in_bytes
+  fi
+  # cgroup v1 reports no limit as a number close to 2^63.
+  if [[ "${LIMIT}" =~ ^[0-9]{1,18}$ ]] && [[ ${LIMIT} -lt 4611686018427387904 ]]; then
+    CGROUP_MEMORY_LIMIT_MB=$((LIMIT / 1048576))
+  fi
+
+  if [[ -r /sys/fs/cgroup/cpu.max ]]; then
+    read -r QUOTA PERIOD < /sys/fs/cgroup/cpu.max
+  elif [[ -r /sys/fs/cgroup/cpu/cpu.cfs_quota_us ]] && [[ -r /sys/fs/cgroup/cpu/cpu.cfs_period_us ]]; then
+    read -r QUOTA < /sys/fs/cgroup/cpu/cpu.cfs_quota_us
+    read -r PERIOD < /sys/fs/cgroup/cpu/cpu.cfs_period_us
+  fi
+  if [[ "${QUOTA}" =~ ^[0-9]+$ ]] && [[ "${PERIOD}" =~ ^[0-9]+$ ]] && [[ ${QUOTA} -gt 0 ]] && [[ ${PERIOD} -gt 0 ]]; then
+    CGROUP_CPU_LIMIT=$(((QUOTA + PERIOD - 1) / PERIOD))
+  fi
+}
+
 run
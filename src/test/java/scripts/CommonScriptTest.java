@@ -1,5 +1,6 @@
 package scripts;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
@@ -12,32 +13,81 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-
-@Tag("integration")
+import org.junit.jupiter.api.io.TempDir;
+
+import com.blackduck.integration.detect.scripts.catalog.DetectJarChecksumResolver;
+import com.blackduck.integration.detect.scripts.catalog.DetectPropertyCatalogResolver;
+import com.blackduck.integration.detect.scripts.delta.JarDeltaWriter;
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.detect.scripts.scripts.ScriptBuilder;
+import com.blackduck.integration.detect.scripts.scripts.ScriptTarget;
+import com.blackduck.integration.detect.scripts.scripts.ScriptTargetRegistry;
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.SilentIntLogger;
+
+// Every test gets its own FakeArtifactory and download directory, so the tests run offline and in parallel (see junit-platform.properties).
 public abstract class CommonScriptTest {
     // TODO: Change this to 11 once the artifactory property DETECT_LATEST_11 exists
     protected static final int DETECT_LATEST_VERSION = 10;
 
     protected static final File WORKING_DIRECTORY = new File(System.getProperty("user.dir"));
     protected static final File TEST_OUTPUT_DIRECTORY = new File(WORKING_DIRECTORY, "build/tmp/scripts/");
+    protected static final long PROCESS_TIMEOUT_MINUTES = 2;
+
+    @TempDir
+    Path downloadDirectory;
+
+    protected FakeArtifactory fakeArtifactory;
+    // ScriptLatencyBenchmark runs the scripts hundreds of times and turns this off.
+    protected boolean logProcesses = true;
+
+    // Generates the script against a FakeArtifactory, so that not even the property catalog comes from the network.
+    protected static File generateScript(final File outputDirectory, final ScriptTarget scriptTarget) throws IOException, IntegrationException {
+        outputDirectory.mkdirs();
+        try (final FakeArtifactory catalogArtifactory = new FakeArtifactory()) {
+            final RepositoryMirrors repositoryMirrors = new RepositoryMirrors(Collections.singletonList(catalogArtifactory.getUrl()), 2000L, 10000L);
+            final DetectPropertyCatalogResolver propertyCatalogResolver = new DetectPropertyCatalogResolver(new SilentIntLogger(), repositoryMirrors, new File(outputDirectory, "cache"), 0L, false);
+            final DetectJarChecksumResolver jarChecksumResolver = new DetectJarChecksumResolver(new SilentIntLogger(), repositoryMirrors, new File(outputDirectory, "cache"), false);
+            final ScriptBuilder scriptBuilder = new ScriptBuilder(propertyCatalogResolver, jarChecksumResolver, ScriptTargetRegistry.defaults(), false);
+            final List<File> scriptFiles = new ArrayList<>();
+            scriptBuilder.generateScript(scriptFiles, outputDirectory, scriptTarget, "version-SNAPSHOT", DETECT_LATEST_VERSION);
+            assertEquals(1, scriptFiles.size());
+            return scriptFiles.get(0);
+        }
+    }
 
     public abstract Process executeScript(final Map<String, String> environment, final List<String> args, final boolean inheritIO) throws IOException, InterruptedException;
 
-    public abstract File getOutputDirectory();
-
     public abstract File getScriptFile();
 
+    @BeforeEach
+    void startFakeArtifactory() throws IOException {
+        fakeArtifactory = new FakeArtifactory();
+    }
+
+    @AfterEach
+    void stopFakeArtifactory() {
+        fakeArtifactory.close();
+    }
+
+    public File getOutputDirectory() {
+        return downloadDirectory.toFile();
+    }
+
     @Test
     void testBadSourceButLocalCopy() throws IOException, InterruptedException {
         final Map<String, String> environment = createEnvironment(true);
@@ -47,10 +97,25 @@ public abstract class CommonScriptTest {
         assertAnyJarExists();
 
         environment.put(EnvironmentVariables.DETECT_SOURCE.name(), "");
+        fakeArtifactory.failNext(503, Integer.MAX_VALUE);
         final Process badSourceProcess = executeScript(environment, new ArrayList<>(), true);
         assertNotExitCode(badSourceProcess, -1);
     }
 
+    @Test
+    void testLegacyLastDownloadedJarIsUsedWithoutARepository() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_VERSION_KEY.name(), "DETECT_LATEST_9");
+        Files.write(new File(getOutputDirectory(), "synopsys-detect-5.6.2.jar").toPath(), fakeArtifactory.getJar(FakeArtifactory.DETECT_5_JAR_PATH));
+        // Written by the scripts for Detect 8 and 9 before they were generated from the current template.
+        Files.write(new File(getOutputDirectory(), "synopsys-detect-last-downloaded-jar.txt").toPath(), "synopsys-detect-5.6.2.jar\n".getBytes(StandardCharsets.UTF_8));
+        fakeArtifactory.failNext(503, Integer.MAX_VALUE);
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+        assertEquals("synopsys-detect-5.6.2.jar", new String(Files.readAllBytes(new File(getOutputDirectory(), "detect-last-downloaded-jar.txt").toPath()), StandardCharsets.UTF_8).trim());
+    }
+
     @Test
     void testJarExists() throws IOException, InterruptedException {
         final Map<String, String> environment = createEnvironment(false);
@@ -62,7 +127,7 @@ public abstract class CommonScriptTest {
 
     @Test
     void testJarExistsOldEnvVar() throws IOException, InterruptedException {
-        final Map<String, String> environment = new HashMap<>();
+        final Map<String, String> environment = createRepositoryEnvironment();
         environment.put(EnvironmentVariables.DETECT_JAR_PATH.name(), getOutputDirectory().getAbsolutePath());
 
         final Process process = executeScript(environment, new ArrayList<>(), true);
@@ -79,6 +144,24 @@ public abstract class CommonScriptTest {
         assertAnyJarExists();
     }
 
+    @Test
+    void testStaleDownloadLockIsTakenOver() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        // Left by a process on another host that has not made progress for a day.
+        final File lock = new File(getOutputDirectory(), "detect-10.0.0.jar.lock");
+        assertTrue(lock.mkdirs());
+        final File owner = new File(lock, "owner");
+        Files.write(owner.toPath(), "1234 another-host 0\n".getBytes(StandardCharsets.UTF_8));
+        final long dayAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        assertTrue(owner.setLastModified(dayAgo));
+        assertTrue(lock.setLastModified(dayAgo));
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+        assertJarExists("10.0.0");
+        assertFalse(lock.exists());
+    }
+
     @Test
     void testDetectReleaseVersion() throws IOException, InterruptedException {
         final Map<String, String> environment = createEnvironment(true);
@@ -102,7 +185,7 @@ public abstract class CommonScriptTest {
     @Test
     void testDetectSource() throws IOException, InterruptedException {
         final Map<String, String> environment = createEnvironment(true);
-        environment.put(EnvironmentVariables.DETECT_SOURCE.name(), "https://repo.blackduck.com/bds-integrations-release/com/synopsys/integration/synopsys-detect/5.1.0/synopsys-detect-5.1.0.jar");
+        environment.put(EnvironmentVariables.DETECT_SOURCE.name(), fakeArtifactory.jarUrl("/bds-integrations-release/com/synopsys/integration/synopsys-detect/5.1.0/synopsys-detect-5.1.0.jar"));
 
         final Process process = executeScript(environment, new ArrayList<>(), true);
         assertExitCode(process, 0);
@@ -111,15 +194,170 @@ public abstract class CommonScriptTest {
 
     @Test
     void testDetectQASource() throws IOException, InterruptedException {
-        // This test requires the system running it to be on the internal network.
         final Map<String, String> environment = createEnvironment(true);
-        environment.put(EnvironmentVariables.DETECT_SOURCE.name(), "https://artifactory.internal.synopsys.com/artifactory/bds-integrations-test/com/synopsys/integration/synopsys-detect/6.3.0-SIGQA1/synopsys-detect-6.3.0-SIGQA1.jar");
+        environment.put(EnvironmentVariables.DETECT_SOURCE.name(), fakeArtifactory.jarUrl("/artifactory/bds-integrations-test/com/synopsys/integration/synopsys-detect/6.3.0-SIGQA1/synopsys-detect-6.3.0-SIGQA1.jar"));
 
         final Process process = executeScript(environment, new ArrayList<>(), true);
         assertExitCode(process, 0);
         assertJarExists("6.3.0-SIGQA1");
     }
 
+    @Test
+    void testFailedDownloadIsRetried() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_LATEST_RELEASE_VERSION.name(), "10.0.0");
+        fakeArtifactory.failNext(500, 2);
+
+        final Process failedProcess = executeScript(environment, new ArrayList<>(), true);
+        assertNotExitCode(failedProcess, 0);
+        assertFalse(new File(getOutputDirectory(), "detect-10.0.0.jar").exists(), "A failed download must not leave a jar behind.");
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+        assertJarExists("10.0.0");
+    }
+
+    @Test
+    void testDownloadInParts() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_DOWNLOAD_PARTS.name(), "4");
+        environment.put(EnvironmentVariables.DETECT_DOWNLOAD_PART_SIZE.name(), "16384");
+        fakeArtifactory.setLatency(50L);
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+
+        final byte[] downloaded = Files.readAllBytes(assertJarExists("10.0.0").toPath());
+        assertArrayEquals(fakeArtifactory.getJar(FakeArtifactory.DETECT_10_JAR_PATH), downloaded);
+        assertEquals(4, fakeArtifactory.getRequests("GET").stream().filter(request -> request.contains("Range: bytes=")).count(), "Expected the jar in 4 ranges.");
+    }
+
+    @Test
+    void testDownloadWithoutRanges() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_DOWNLOAD_PART_SIZE.name(), "16384");
+        fakeArtifactory.setAcceptsRanges(false);
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+
+        final byte[] downloaded = Files.readAllBytes(assertJarExists("10.0.0").toPath());
+        assertArrayEquals(fakeArtifactory.getJar(FakeArtifactory.DETECT_10_JAR_PATH), downloaded);
+    }
+
+    @Test
+    void testJarIsRebuiltFromDelta() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_DELTA_UPDATES.name(), "1");
+        final File previousJar = new File(getOutputDirectory(), "synopsys-detect-5.6.2.jar");
+        Files.write(previousJar.toPath(), fakeArtifactory.getJar(FakeArtifactory.DETECT_5_JAR_PATH));
+        Files.write(new File(getOutputDirectory(), "detect-last-downloaded-jar.txt").toPath(), "synopsys-detect-5.6.2.jar\n".getBytes(StandardCharsets.UTF_8));
+
+        final File newJar = new File(getOutputDirectory(), "deltas/detect-10.0.0.jar");
+        Files.createDirectories(newJar.getParentFile().toPath());
+        Files.write(newJar.toPath(), fakeArtifactory.getJar(FakeArtifactory.DETECT_10_JAR_PATH));
+        final File delta = new JarDeltaWriter().write(previousJar, newJar, newJar.getParentFile());
+        fakeArtifactory.setDelta(FakeArtifactory.DETECT_10_JAR_PATH.replace("detect-10.0.0.jar", delta.getName()), Files.readAllBytes(delta.toPath()));
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+
+        assertArrayEquals(fakeArtifactory.getJar(FakeArtifactory.DETECT_10_JAR_PATH), Files.readAllBytes(new File(getOutputDirectory(), "detect-10.0.0.jar").toPath()));
+        assertEquals(Collections.singletonList("GET " + FakeArtifactory.DETECT_10_JAR_PATH.replace("detect-10.0.0.jar", delta.getName())),
+            fakeArtifactory.getRequests("GET").stream().filter(request -> !request.contains("/api/storage/")).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testDeltaForAnotherJarIsNotInstalled() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_DELTA_UPDATES.name(), "1");
+        final File previousJar = new File(getOutputDirectory(), "synopsys-detect-5.6.2.jar");
+        Files.write(previousJar.toPath(), fakeArtifactory.getJar(FakeArtifactory.DETECT_5_JAR_PATH));
+        Files.write(new File(getOutputDirectory(), "detect-last-downloaded-jar.txt").toPath(), "synopsys-detect-5.6.2.jar\n".getBytes(StandardCharsets.UTF_8));
+
+        final File newJar = new File(getOutputDirectory(), "deltas/detect-10.0.0.jar");
+        Files.createDirectories(newJar.getParentFile().toPath());
+        Files.write(newJar.toPath(), fakeArtifactory.getJar(FakeArtifactory.DETECT_10_JAR_PATH));
+        final File delta = new JarDeltaWriter().write(previousJar, newJar, newJar.getParentFile());
+        fakeArtifactory.setDelta(FakeArtifactory.DETECT_10_JAR_PATH.replace("detect-10.0.0.jar", delta.getName()), Files.readAllBytes(delta.toPath()));
+        // The delta is consistent with itself, but the repository now publishes a different jar.
+        fakeArtifactory.setJarPaddingBytes(1024);
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+
+        assertArrayEquals(fakeArtifactory.getJar(FakeArtifactory.DETECT_10_JAR_PATH), Files.readAllBytes(new File(getOutputDirectory(), "detect-10.0.0.jar").toPath()));
+        assertTrue(fakeArtifactory.getRequests("GET").contains("GET " + FakeArtifactory.DETECT_10_JAR_PATH));
+    }
+
+    @Test
+    void testJarIsDownloadedWithoutDelta() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_DELTA_UPDATES.name(), "1");
+        Files.write(new File(getOutputDirectory(), "synopsys-detect-5.6.2.jar").toPath(), fakeArtifactory.getJar(FakeArtifactory.DETECT_5_JAR_PATH));
+        Files.write(new File(getOutputDirectory(), "detect-last-downloaded-jar.txt").toPath(), "synopsys-detect-5.6.2.jar\n".getBytes(StandardCharsets.UTF_8));
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+
+        assertArrayEquals(fakeArtifactory.getJar(FakeArtifactory.DETECT_10_JAR_PATH), Files.readAllBytes(assertJarExists("10.0.0").toPath()));
+        final List<String> getRequests = fakeArtifactory.getRequests("GET");
+        assertTrue(getRequests.contains("GET " + FakeArtifactory.DETECT_10_JAR_PATH + ".from-synopsys-detect-5.6.2.delta"));
+        assertTrue(getRequests.contains("GET " + FakeArtifactory.DETECT_10_JAR_PATH));
+    }
+
+    @Test
+    void testEmbeddedResolutionSkipsTheLookup() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_USE_EMBEDDED_RESOLUTION.name(), "1");
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+
+        assertArrayEquals(fakeArtifactory.getJar(FakeArtifactory.DETECT_10_JAR_PATH), Files.readAllBytes(assertJarExists("10.0.0").toPath()));
+        assertEquals(Collections.singletonList("GET " + FakeArtifactory.DETECT_10_JAR_PATH), fakeArtifactory.getRequests());
+    }
+
+    @Test
+    void testEmbeddedChecksumIsEnforced() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_USE_EMBEDDED_RESOLUTION.name(), "1");
+        // The repository now serves a different jar than the script was generated against.
+        fakeArtifactory.setJarPaddingBytes(1024);
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertNotExitCode(process, 0);
+        assertFalse(new File(getOutputDirectory(), "detect-10.0.0.jar").exists(), "A jar that does not match the embedded checksum must not be used.");
+    }
+
+    @Test
+    void testOldJarsAreEvicted() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_JAR_CACHE_MAX_AGE_DAYS.name(), "30");
+        final long hundredDaysAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(100);
+        for (final String name : new String[] { "detect-8.0.0.jar", "detect-8.0.0-1a2b3c4d.jsa", "other-tool.jar" }) {
+            final File file = new File(getOutputDirectory(), name);
+            Files.write(file.toPath(), new byte[] { 1 });
+            assertTrue(file.setLastModified(hundredDaysAgo));
+        }
+        final File explodedDirectory = new File(getOutputDirectory(), "detect-8.0.0-exploded");
+        assertTrue(new File(explodedDirectory, "META-INF").mkdirs());
+        Files.write(new File(explodedDirectory, "detect-exploded.txt").toPath(), "1 1 4 scripts.FakeDetect\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(explodedDirectory.setLastModified(hundredDaysAgo));
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+
+        assertJarExists("10.0.0");
+        assertFalse(new File(getOutputDirectory(), "detect-8.0.0.jar").exists());
+        assertFalse(new File(getOutputDirectory(), "detect-8.0.0-1a2b3c4d.jsa").exists());
+        assertFalse(explodedDirectory.exists());
+        assertTrue(new File(getOutputDirectory(), "other-tool.jar").exists());
+        assertTrue(new File(getOutputDirectory(), "detect-10.0.0.jar.used").exists());
+        final String[] inUseFiles = getOutputDirectory().list((directory, name) -> name.contains(".in-use-"));
+        assertEquals(0, inUseFiles == null ? 0 : inUseFiles.length);
+    }
+
     @Test
     void testJavaHome() throws IOException, InterruptedException {
         final Map<String, String> environment = createEnvironment(false);
@@ -145,6 +383,18 @@ public abstract class CommonScriptTest {
         assertTrue(output.contains("Java Source: DETECT_JAVA_PATH=test/java/home/java"));
     }
 
+    @Test
+    void testMissingJavaFailsBeforeDownload() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(false);
+        environment.put(EnvironmentVariables.DETECT_JAVA_PATH.name(), "test/java/home/java");
+
+        final Process process = executeScript(environment, new ArrayList<>(), false);
+        assertExitCode(process, 127);
+
+        final String[] jars = getOutputDirectory().list((directory, name) -> name.endsWith(".jar"));
+        assertEquals(0, jars == null ? 0 : jars.length, "Nothing should be downloaded for a run that has no Java.");
+    }
+
     @Test
     void testJavaPath() throws IOException, InterruptedException {
         final Map<String, String> environment = createEnvironment(false);
@@ -156,9 +406,59 @@ public abstract class CommonScriptTest {
         assertTrue(output.contains("Java Source: PATH"));
     }
 
+    @Test
+    void testJavaErgonomics() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(false);
+
+        final Process process = executeScript(environment, new ArrayList<>(), false);
+        assertExitCode(process, FakeDetect.EXIT_CODE);
+        final boolean heapSized = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8).contains(FakeDetect.JVM_OPTION + "-XX:MaxRAMPercentage=75");
+        assertEquals(hasCgroupMemoryLimit(), heapSized, "The heap should only be sized for a memory limit.");
+
+        environment.put(EnvironmentVariables.DETECT_JAVA_OPTS.name(), "-Xmx256m");
+        final Process overriddenProcess = executeScript(environment, new ArrayList<>(), false);
+        assertExitCode(overriddenProcess, FakeDetect.EXIT_CODE);
+        final String overriddenOutput = IOUtils.toString(overriddenProcess.getInputStream(), StandardCharsets.UTF_8);
+        assertTrue(overriddenOutput.contains(FakeDetect.JVM_OPTION + "-Xmx256m"));
+        assertFalse(overriddenOutput.contains("MaxRAMPercentage"), "DETECT_JAVA_OPTS must override the heap default.");
+    }
+
+    // As the scripts read it: cgroup v2 first, then v1, which reports no limit as a number close to 2^63.
+    private static boolean hasCgroupMemoryLimit() throws IOException {
+        File limitFile = new File("/sys/fs/cgroup/memory.max");
+        if (!limitFile.canRead()) {
+            limitFile = new File("/sys/fs/cgroup/memory/memory.limit_in_bytes");
+        }
+        if (!limitFile.canRead()) {
+            return false;
+        }
+        final String limit = StringUtils.trim(new String(Files.readAllBytes(limitFile.toPath()), StandardCharsets.UTF_8));
+        return limit.matches("[0-9]{1,18}") && Long.parseLong(limit) < 4611686018427387904L;
+    }
+
+    @Test
+    void testExplodedJar() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(false);
+        environment.put(EnvironmentVariables.DETECT_EXPLODED_JAR.name(), "1");
+        final File explodedDirectory = new File(getOutputDirectory(), "detect-10.0.0-exploded");
+        final File marker = new File(explodedDirectory, "detect-exploded.txt");
+
+        final Process process = executeScript(environment, new ArrayList<>(), false);
+        assertExitCode(process, FakeDetect.EXIT_CODE);
+        assertTrue(IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8).contains(FakeDetect.CLASS_PATH + explodedDirectory.getAbsolutePath()));
+        assertTrue(marker.isFile());
+
+        // An extraction that no longer matches its jar is replaced.
+        Files.write(marker.toPath(), "1 1 1 scripts.Missing\n".getBytes(StandardCharsets.UTF_8));
+        final Process staleProcess = executeScript(environment, new ArrayList<>(), false);
+        assertExitCode(staleProcess, FakeDetect.EXIT_CODE);
+        assertTrue(IOUtils.toString(staleProcess.getInputStream(), StandardCharsets.UTF_8).contains(FakeDetect.CLASS_PATH + explodedDirectory.getAbsolutePath()));
+        assertTrue(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).contains(FakeDetect.class.getName()));
+    }
+
     @Test
     void testSpacesInDownloadDir() throws IOException, InterruptedException {
-        final Map<String, String> environment = new HashMap<>();
+        final Map<String, String> environment = createRepositoryEnvironment();
         final File directoryWithSpaces = new File(getOutputDirectory(), "directory with spaces");
         directoryWithSpaces.mkdirs();
         environment.put(EnvironmentVariables.DETECT_JAR_DOWNLOAD_DIR.name(), directoryWithSpaces.getAbsolutePath());
@@ -196,8 +496,8 @@ public abstract class CommonScriptTest {
         assertJarExists(null);
     }
 
-    protected void assertJarExists(@Nullable final String detectVersion) throws IOException {
-        assertJarExists(getOutputDirectory(), detectVersion);
+    protected File assertJarExists(@Nullable final String detectVersion) throws IOException {
+        return assertJarExists(getOutputDirectory(), detectVersion);
     }
 
     protected File assertJarExists(final File searchDirectory, @Nullable final String detectVersion) throws IOException {
@@ -216,7 +516,7 @@ public abstract class CommonScriptTest {
     }
 
     protected Map<String, String> createEnvironment(final boolean downloadOnly) {
-        final Map<String, String> environment = new HashMap<>();
+        final Map<String, String> environment = createRepositoryEnvironment();
         environment.put(EnvironmentVariables.DETECT_JAR_DOWNLOAD_DIR.name(), getOutputDirectory().getAbsolutePath());
         if (downloadOnly) {
             environment.put(EnvironmentVariables.DETECT_DOWNLOAD_ONLY.name(), "1");
@@ -225,6 +525,12 @@ public abstract class CommonScriptTest {
         return environment;
     }
 
+    protected Map<String, String> createRepositoryEnvironment() {
+        final Map<String, String> environment = new HashMap<>();
+        environment.put(EnvironmentVariables.DETECT_BINARY_REPO_URLS.name(), fakeArtifactory.getUrl());
+        return environment;
+    }
+
     protected Process createProcess(final List<String> finalCommand, final Map<String, String> environment, final boolean inheritIO) throws IOException, InterruptedException {
         final ProcessBuilder processBuilder = new ProcessBuilder();
         processBuilder.command(finalCommand);
@@ -232,9 +538,11 @@ public abstract class CommonScriptTest {
         processBuilder.environment().put("PATH", System.getenv("PATH"));
         processBuilder.environment().putAll(environment);
 
-        System.out.println(String.format("Creating process for '%s' with the following environment.", finalCommand));
-        for (final Map.Entry<String, String> entry : processBuilder.environment().entrySet()) {
-            System.out.println(String.format("    %s=%s", entry.getKey(), entry.getValue()));
+        if (logProcesses) {
+            System.out.println(String.format("Creating process for '%s' with the following environment.", finalCommand));
+            for (final Map.Entry<String, String> entry : processBuilder.environment().entrySet()) {
+                System.out.println(String.format("    %s=%s", entry.getKey(), entry.getValue()));
+            }
         }
 
         if (inheritIO) {
@@ -245,8 +553,11 @@ public abstract class CommonScriptTest {
         // We could tell the process builder to inheritIO to log to console, but some tests may need data from the process output streams.
         final Process process = processBuilder.start();
 
-        final boolean processHitTimeout = !process.waitFor(10, TimeUnit.MINUTES);
-        assertFalse(processHitTimeout);
+        final boolean processHitTimeout = !process.waitFor(PROCESS_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        if (processHitTimeout) {
+            process.destroyForcibly();
+        }
+        assertFalse(processHitTimeout, String.format("The script did not finish within %d minutes.", PROCESS_TIMEOUT_MINUTES));
 
         return process;
     }
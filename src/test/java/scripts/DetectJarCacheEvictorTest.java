@@ -0,0 +1,111 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.blackduck.integration.detect.scripts.evict.DetectJarCacheEvictor;
+
+public class DetectJarCacheEvictorTest {
+    private static final long NOW = System.currentTimeMillis();
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Test
+    void testOldJarsAndTheirFilesAreRemoved(@TempDir final Path downloadDirectory) throws IOException {
+        createFile(downloadDirectory, "detect-8.0.0.jar", 100, 1);
+        createFile(downloadDirectory, "detect-8.0.0-1a2b3c4d.jsa", 100, 1);
+        createFile(downloadDirectory, "synopsys-detect-7.0.0.jar-temp", 40, 1);
+        createFile(downloadDirectory, "detect-resolution-DETECT_LATEST_8.txt", 40, 0);
+        createFile(downloadDirectory, "detect-10.0.0.jar", 2, 1);
+        createFile(downloadDirectory, "other-tool.jar", 100, 1);
+
+        final List<String> evicted = new DetectJarCacheEvictor(0L, 30L).evict(downloadDirectory.toFile(), NOW);
+
+        assertEquals(Arrays.asList("detect-8.0.0.jar", "synopsys-detect-7.0.0.jar"), evicted);
+        assertFalse(Files.exists(downloadDirectory.resolve("detect-8.0.0-1a2b3c4d.jsa")));
+        assertFalse(Files.exists(downloadDirectory.resolve("detect-resolution-DETECT_LATEST_8.txt")));
+        assertTrue(Files.exists(downloadDirectory.resolve("detect-10.0.0.jar")));
+        assertTrue(Files.exists(downloadDirectory.resolve("other-tool.jar")));
+    }
+
+    @Test
+    void testLeastRecentlyUsedJarsAreRemovedToFitTheSize(@TempDir final Path downloadDirectory) throws IOException {
+        createFile(downloadDirectory, "detect-9.0.0.jar", 30, 1);
+        createFile(downloadDirectory, "detect-9.1.0.jar", 20, 1);
+        createFile(downloadDirectory, "detect-9.2.0.jar", 10, 1);
+        // Using an old jar makes it recently used again.
+        createFile(downloadDirectory, "detect-9.0.0.jar.used", 0, 0);
+
+        final List<String> evicted = new DetectJarCacheEvictor(2L, 0L).evict(downloadDirectory.toFile(), NOW);
+
+        assertEquals(Collections.singletonList("detect-9.1.0.jar"), evicted);
+        assertTrue(Files.exists(downloadDirectory.resolve("detect-9.0.0.jar")));
+        assertTrue(Files.exists(downloadDirectory.resolve("detect-9.2.0.jar")));
+    }
+
+    @Test
+    void testJarsInUseAndTheLastDownloadedJarAreKept(@TempDir final Path downloadDirectory) throws IOException {
+        createFile(downloadDirectory, "detect-9.0.0.jar", 90, 1);
+        createFile(downloadDirectory, "detect-9.0.0.jar.in-use-1234", 0, 0);
+        createFile(downloadDirectory, "detect-9.1.0.jar", 80, 1);
+        createFile(downloadDirectory, "detect-9.1.0.jar.in-use-5678", 60, 0);
+        createFile(downloadDirectory, "detect-9.2.0.jar", 70, 1);
+        Files.write(downloadDirectory.resolve("detect-last-downloaded-jar.txt"), "C:\\Users\\agent\\detect-9.2.0.jar\n".getBytes(StandardCharsets.UTF_8));
+        createFile(downloadDirectory, "detect-9.3.0.jar", 50, 1);
+        Files.createDirectory(downloadDirectory.resolve("detect-9.3.0.jar.lock"));
+
+        final List<String> evicted = new DetectJarCacheEvictor(1L, 30L).evict(downloadDirectory.toFile(), NOW);
+
+        assertEquals(Collections.singletonList("detect-9.1.0.jar"), evicted);
+        assertFalse(Files.exists(downloadDirectory.resolve("detect-9.1.0.jar.in-use-5678")));
+        assertTrue(Files.exists(downloadDirectory.resolve("detect-9.0.0.jar")));
+        assertTrue(Files.exists(downloadDirectory.resolve("detect-9.2.0.jar")));
+        assertTrue(Files.exists(downloadDirectory.resolve("detect-9.3.0.jar")));
+    }
+
+    @Test
+    void testJarOfTheLegacyLastDownloadedFileIsKept(@TempDir final Path downloadDirectory) throws IOException {
+        createFile(downloadDirectory, "synopsys-detect-9.0.0.jar", 90, 1);
+        Files.write(downloadDirectory.resolve("synopsys-detect-last-downloaded-jar.txt"), "synopsys-detect-9.0.0.jar\n".getBytes(StandardCharsets.UTF_8));
+
+        final List<String> evicted = new DetectJarCacheEvictor(0L, 30L).evict(downloadDirectory.toFile(), NOW);
+
+        assertEquals(Collections.emptyList(), evicted);
+        assertTrue(Files.exists(downloadDirectory.resolve("synopsys-detect-9.0.0.jar")));
+    }
+
+    @Test
+    void testExtractedJarsCountWithTheSizeOfTheirMarker(@TempDir final Path downloadDirectory) throws IOException {
+        createFile(downloadDirectory, "detect-9.0.0.jar", 30, 1);
+        final Path explodedDirectory = Files.createDirectory(downloadDirectory.resolve("detect-9.0.0-exploded"));
+        Files.write(explodedDirectory.resolve("detect-exploded.txt"), "1048576 1 2048 org.springframework.boot.loader.launch.JarLauncher\n".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectory(explodedDirectory.resolve("BOOT-INF"));
+        Files.setLastModifiedTime(explodedDirectory, FileTime.fromMillis(NOW - TimeUnit.DAYS.toMillis(30)));
+        createFile(downloadDirectory, "detect-9.1.0.jar", 10, 1);
+
+        final List<String> evicted = new DetectJarCacheEvictor(2L, 0L).evict(downloadDirectory.toFile(), NOW);
+
+        assertEquals(Collections.singletonList("detect-9.0.0.jar"), evicted);
+        assertFalse(Files.exists(explodedDirectory));
+        assertTrue(Files.exists(downloadDirectory.resolve("detect-9.1.0.jar")));
+    }
+
+    private void createFile(final Path directory, final String name, final int daysOld, final int megabytes) throws IOException {
+        final Path file = directory.resolve(name);
+        Files.write(file, new byte[megabytes * MEGABYTE]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(NOW - TimeUnit.DAYS.toMillis(daysOld)));
+    }
+}
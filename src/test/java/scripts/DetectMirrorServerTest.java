@@ -0,0 +1,144 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.detect.scripts.serve.DetectMirrorServer;
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.sun.net.httpserver.HttpServer;
+
+public class DetectMirrorServerTest {
+    private static final String LOOKUP_PATH = "/api/storage/bds-integrations-release/com/blackduck/integration/detect?properties=DETECT_LATEST_10";
+    private static final String JAR_PATH = "/bds-integrations-release/com/blackduck/integration/detect/10.0.0/detect-10.0.0.jar";
+    private static final byte[] JAR_CONTENT = "not really a jar, but it has bytes".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path cacheDirectory;
+
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+    private HttpServer upstream;
+    private DetectMirrorServer detectMirrorServer;
+
+    @BeforeEach
+    void startServers() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        upstream.setExecutor(Executors.newCachedThreadPool());
+        final String upstreamUrl = "http://127.0.0.1:" + upstream.getAddress().getPort();
+        upstream.createContext("/", exchange -> {
+            upstreamRequests.incrementAndGet();
+            try {
+                Thread.sleep(300L);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final byte[] body;
+            if (exchange.getRequestURI().getPath().endsWith(".jar")) {
+                exchange.getResponseHeaders().set("X-Checksum-Sha256", DigestUtil.sha256Hex(JAR_CONTENT));
+                body = JAR_CONTENT;
+            } else {
+                body = String.format("{ \"properties\" : { \"DETECT_LATEST_10\" : [ \"%s%s\" ] } }", upstreamUrl, JAR_PATH).getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        upstream.start();
+
+        final RepositoryMirrors repositoryMirrors = new RepositoryMirrors(Collections.singletonList(upstreamUrl), 2000L, 10000L);
+        detectMirrorServer = new DetectMirrorServer(repositoryMirrors, cacheDirectory.toFile(), 60000L);
+        detectMirrorServer.start(0);
+    }
+
+    @AfterEach
+    void stopServers() {
+        detectMirrorServer.stop();
+        upstream.stop(0);
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneUpstreamRequest() throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(5);
+        try {
+            final List<Future<String>> lookups = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                lookups.add(executorService.submit(() -> new String(get(LOOKUP_PATH, null), StandardCharsets.UTF_8)));
+            }
+            for (final Future<String> lookup : lookups) {
+                assertTrue(lookup.get().contains(getServerUrl() + JAR_PATH), "The jar url should point at the mirror server.");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(1, upstreamRequests.get());
+    }
+
+    @Test
+    void testJarIsCachedAndServesRanges() throws IOException {
+        assertArrayEquals(JAR_CONTENT, get(JAR_PATH, null));
+        assertArrayEquals(Arrays.copyOfRange(JAR_CONTENT, 4, 10), get(JAR_PATH, "bytes=4-9"));
+        assertArrayEquals(Arrays.copyOfRange(JAR_CONTENT, JAR_CONTENT.length - 3, JAR_CONTENT.length), get(JAR_PATH, "bytes=-3"));
+        assertEquals(1, upstreamRequests.get());
+        assertTrue(new File(cacheDirectory.toFile(), JAR_PATH).isFile());
+    }
+
+    @Test
+    void testOnlyTheLookupsOfTheScriptsAreServed() throws IOException {
+        assertEquals(404, getResponseCode(LOOKUP_PATH + "&anything=1"));
+        assertEquals(404, getResponseCode("/api/storage/bds-integrations-release/com/example/other?properties=DETECT_LATEST"));
+        assertEquals(0, upstreamRequests.get());
+
+        assertEquals(200, getResponseCode("/api/storage/bds-integrations-release/com/blackduck/integration/detect"));
+        assertEquals(1, upstreamRequests.get());
+    }
+
+    private int getResponseCode(final String path) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(getServerUrl() + path).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private byte[] get(final String path, final String range) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(getServerUrl() + path).openConnection();
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+        assertEquals(range == null ? 200 : 206, connection.getResponseCode());
+        try (final InputStream inputStream = connection.getInputStream()) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+    private String getServerUrl() {
+        return "http://127.0.0.1:" + detectMirrorServer.getPort();
+    }
+}
@@ -0,0 +1,37 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.blackduck.integration.detect.scripts.catalog.DetectPropertyCatalogParser;
+import com.blackduck.integration.detect.scripts.catalog.DetectVersionProperty;
+
+public class DetectPropertyCatalogParserTest {
+    @Test
+    void testOnlyPropertyNamesAreMatched() throws IOException {
+        final String response = "{\n"
+                                    + "  \"properties\" : {\n"
+                                    + "    \"DETECT_LATEST\" : [ \"https://repo.blackduck.com/detect-10.1.0.jar\" ],\n"
+                                    + "    \"build.note\" : [ \"superseded DETECT_LATEST_7 value\" ],\n"
+                                    + "    \"DETECT_LATEST_10\" : [ \"https://repo.blackduck.com/detect-10.1.0.jar\", \"ignored\" ],\n"
+                                    + "    \"DETECT_LATEST_9\" : [ ]\n"
+                                    + "  },\n"
+                                    + "  \"uri\" : \"https://repo.blackduck.com/api/storage/DETECT_LATEST_8\"\n"
+                                    + "}";
+
+        final List<DetectVersionProperty> properties = new DetectPropertyCatalogParser().parse(new StringReader(response));
+
+        assertEquals(3, properties.size());
+        assertEquals("DETECT_LATEST", properties.get(0).getName());
+        assertEquals("DETECT_LATEST_10", properties.get(1).getName());
+        assertEquals("https://repo.blackduck.com/detect-10.1.0.jar", properties.get(1).getUrl());
+        assertEquals("DETECT_LATEST_9", properties.get(2).getName());
+        assertNull(properties.get(2).getUrl());
+    }
+}
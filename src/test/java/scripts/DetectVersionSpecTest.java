@@ -0,0 +1,52 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.blackduck.integration.detect.scripts.prefetch.DetectVersionSpec;
+
+public class DetectVersionSpecTest {
+    @Test
+    void testParseList() {
+        final List<DetectVersionSpec> versionSpecs = DetectVersionSpec.parseList("DETECT_LATEST_9, 10 10.2.1,10.2.*");
+
+        assertEquals(4, versionSpecs.size());
+        assertEquals(DetectVersionSpec.Kind.VERSION_KEY, versionSpecs.get(0).getKind());
+        assertEquals("DETECT_LATEST_9", versionSpecs.get(0).getValue());
+        assertEquals(DetectVersionSpec.Kind.VERSION_KEY, versionSpecs.get(1).getKind());
+        assertEquals("DETECT_LATEST_10", versionSpecs.get(1).getValue());
+        assertEquals(DetectVersionSpec.Kind.VERSION, versionSpecs.get(2).getKind());
+        assertEquals(DetectVersionSpec.Kind.VERSION_PATTERN, versionSpecs.get(3).getKind());
+        assertEquals(10, versionSpecs.get(3).getMajorVersion());
+    }
+
+    @Test
+    void testPatternOnlyMatchesReleases() {
+        final DetectVersionSpec versionSpec = DetectVersionSpec.parse("10.2.*");
+
+        assertTrue(versionSpec.matches("10.2.0"));
+        assertTrue(versionSpec.matches("10.2.11"));
+        assertFalse(versionSpec.matches("10.20.0"));
+        assertFalse(versionSpec.matches("10.2.0-SIGQA1"));
+    }
+
+    @Test
+    void testArtifactPath() {
+        assertEquals("com/synopsys/integration/synopsys-detect", DetectVersionSpec.parse("9.10.0").getArtifactPath());
+        assertEquals("synopsys-detect", DetectVersionSpec.parse("DETECT_LATEST_8").getArtifactName());
+        assertEquals("com/blackduck/integration/detect", DetectVersionSpec.parse("10").getArtifactPath());
+    }
+
+    @Test
+    void testInvalidSpecs() {
+        assertThrows(IllegalArgumentException.class, () -> DetectVersionSpec.parse("latest"));
+        assertThrows(IllegalArgumentException.class, () -> DetectVersionSpec.parse("10.*.1"));
+        assertThrows(IllegalArgumentException.class, () -> DetectVersionSpec.parseList(" , "));
+    }
+}
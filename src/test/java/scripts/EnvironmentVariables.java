@@ -10,5 +10,12 @@ public enum EnvironmentVariables {
     DETECT_CURL_OPTS,
     DETECT_DOWNLOAD_ONLY,
     DETECT_JAVA_PATH,
+    DETECT_BINARY_REPO_URLS,
+    DETECT_DOWNLOAD_PARTS,
+    DETECT_DOWNLOAD_PART_SIZE,
+    DETECT_JAR_CACHE_MAX_AGE_DAYS,
+    DETECT_DELTA_UPDATES,
+    DETECT_USE_EMBEDDED_RESOLUTION,
+    DETECT_EXPLODED_JAR,
     JAVA_HOME
 }
@@ -0,0 +1,279 @@
+package scripts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process stand-in for the Artifactory the scripts download Detect from. It answers the DETECT_LATEST property lookups, and the property
+ * catalog the scripts are generated from, serves any jar path as a small jar that runs FakeDetect and serves the deltas it is given, so the
+ * script tests need neither a network nor a real Detect. Latency, failures and Range support can be set per test, and every request is
+ * recorded for assertions.
+ */
+public class FakeArtifactory implements AutoCloseable {
+    public static final String DETECT_5_JAR_PATH = "/bds-integrations-release/com/synopsys/integration/synopsys-detect/5.6.2/synopsys-detect-5.6.2.jar";
+    public static final String DETECT_10_JAR_PATH = "/bds-integrations-release/com/blackduck/integration/detect/10.0.0/detect-10.0.0.jar";
+
+    private static final Pattern PROPERTY_LOOKUP = Pattern.compile("properties=([A-Za-z0-9_]+)");
+    private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final long JAR_TIME = 1704067200000L;
+
+    private final HttpServer httpServer;
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final Map<String, String> properties = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> jars = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> deltas = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private volatile int failureStatus = 500;
+    private volatile long latencyMillis = 0L;
+    private volatile boolean acceptsRanges = true;
+    private volatile int jarPaddingBytes = 64 * 1024;
+
+    public FakeArtifactory() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.setExecutor(executorService);
+        httpServer.createContext("/", this::handle);
+        httpServer.start();
+
+        properties.put("DETECT_LATEST_5", DETECT_5_JAR_PATH);
+        properties.put("DETECT_LATEST_" + CommonScriptTest.DETECT_LATEST_VERSION, DETECT_10_JAR_PATH);
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + httpServer.getAddress().getPort();
+    }
+
+    public String jarUrl(final String jarPath) {
+        return getUrl() + jarPath;
+    }
+
+    // Points a DETECT_LATEST property at a jar path.
+    public void setProperty(final String versionKey, final String jarPath) {
+        properties.put(versionKey, jarPath);
+    }
+
+    public void setLatency(final long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    // The next count requests, of any kind, are answered with the given status.
+    public void failNext(final int status, final int count) {
+        failureStatus = status;
+        failuresLeft.set(count);
+    }
+
+    public void setAcceptsRanges(final boolean acceptsRanges) {
+        this.acceptsRanges = acceptsRanges;
+    }
+
+    // Random bytes stored in each jar, so the jars are big enough to be downloaded in parts.
+    public void setJarPaddingBytes(final int jarPaddingBytes) {
+        this.jarPaddingBytes = jarPaddingBytes;
+        jars.clear();
+    }
+
+    // Publishes a delta, any other delta path is not found.
+    public void setDelta(final String deltaPath, final byte[] delta) {
+        deltas.put(deltaPath, delta);
+    }
+
+    public byte[] getJar(final String jarPath) throws IOException {
+        byte[] jar = jars.get(jarPath);
+        if (jar == null) {
+            jar = createJar(jarPath);
+            final byte[] existing = jars.putIfAbsent(jarPath, jar);
+            jar = existing == null ? jar : existing;
+        }
+        return jar;
+    }
+
+    // Each request as "METHOD path", followed by " Range: <value>" when one was asked for.
+    public List<String> getRequests() {
+        return Collections.unmodifiableList(new ArrayList<>(requests));
+    }
+
+    // Response body bytes sent so far, jars and lookups alike.
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public List<String> getRequests(final String method) {
+        return requests.stream()
+                   .filter(request -> request.startsWith(method + " "))
+                   .collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executorService.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath();
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            requests.add(method + " " + path + (range == null ? "" : " Range: " + range));
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            final boolean head = "HEAD".equals(method);
+            if (failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                send(exchange, failureStatus, "text/plain", "Failing as asked.".getBytes(StandardCharsets.UTF_8), head);
+            } else if (path.startsWith("/api/storage/")) {
+                serveProperty(exchange, head);
+            } else if ("properties".equals(exchange.getRequestURI().getRawQuery())) {
+                send(exchange, 200, "application/json", createPropertiesJson(properties, exchange).getBytes(StandardCharsets.UTF_8), head);
+            } else if (path.endsWith(".jar")) {
+                serveJar(exchange, path, head);
+            } else if (deltas.containsKey(path)) {
+                send(exchange, 200, "application/octet-stream", deltas.get(path), head);
+            } else {
+                send(exchange, 404, "text/plain", new byte[0], head);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void serveProperty(final HttpExchange exchange, final boolean head) throws IOException {
+        final Matcher matcher = PROPERTY_LOOKUP.matcher(StringUtils.defaultString(exchange.getRequestURI().getRawQuery()));
+        final String jarPath = matcher.find() ? properties.get(matcher.group(1)) : null;
+        if (jarPath == null) {
+            // Artifactory's answer for a property that is not set.
+            send(exchange, 404, "application/json", "{ \"errors\" : [ { \"status\" : 404, \"message\" : \"No properties could be found.\" } ] }".getBytes(StandardCharsets.UTF_8), head);
+            return;
+        }
+        final String content = createPropertiesJson(Collections.singletonMap(matcher.group(1), jarPath), exchange);
+        send(exchange, 200, "application/json", content.getBytes(StandardCharsets.UTF_8), head);
+    }
+
+    // Laid out like Artifactory does, one property per line, which is what the shell script relies on.
+    private String createPropertiesJson(final Map<String, String> jarPaths, final HttpExchange exchange) {
+        final String propertyLines = jarPaths.entrySet().stream()
+                                         .sorted(Map.Entry.comparingByKey())
+                                         .map(property -> String.format("    \"%s\" : [ \"%s\" ]", property.getKey(), jarUrl(property.getValue())))
+                                         .collect(Collectors.joining(String.format(",%n")));
+        return String.format("{%n  \"properties\" : {%n%s%n  },%n  \"uri\" : \"%s%s\"%n}", propertyLines, getUrl(), exchange.getRequestURI().getPath());
+    }
+
+    private void serveJar(final HttpExchange exchange, final String jarPath, final boolean head) throws IOException {
+        final byte[] jar = getJar(jarPath);
+        final Headers responseHeaders = exchange.getResponseHeaders();
+        responseHeaders.set("X-Checksum-Sha256", DigestUtil.sha256Hex(jar));
+        if (!acceptsRanges) {
+            send(exchange, 200, "application/java-archive", jar, head);
+            return;
+        }
+        responseHeaders.set("Accept-Ranges", "bytes");
+
+        int start = 0;
+        int end = jar.length - 1;
+        int statusCode = 200;
+        final Matcher rangeMatcher = BYTE_RANGE.matcher(StringUtils.defaultString(exchange.getRequestHeaders().getFirst("Range")).trim());
+        if (rangeMatcher.matches() && (!rangeMatcher.group(1).isEmpty() || !rangeMatcher.group(2).isEmpty())) {
+            if (rangeMatcher.group(1).isEmpty()) {
+                start = Math.max(0, jar.length - Integer.parseInt(rangeMatcher.group(2)));
+            } else {
+                start = Integer.parseInt(rangeMatcher.group(1));
+                if (!rangeMatcher.group(2).isEmpty()) {
+                    end = Math.min(end, Integer.parseInt(rangeMatcher.group(2)));
+                }
+            }
+            if (start >= jar.length || start > end) {
+                responseHeaders.set("Content-Range", "bytes */" + jar.length);
+                send(exchange, 416, "text/plain", new byte[0], head);
+                return;
+            }
+            responseHeaders.set("Content-Range", String.format("bytes %d-%d/%d", start, end, jar.length));
+            statusCode = 206;
+        }
+        final byte[] body = new byte[end - start + 1];
+        System.arraycopy(jar, start, body, 0, body.length);
+        send(exchange, statusCode, "application/java-archive", body, head);
+    }
+
+    private void send(final HttpExchange exchange, final int statusCode, final String contentType, final byte[] body, final boolean head) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (head || body.length == 0) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+        bytesSent.addAndGet(body.length);
+    }
+
+    private byte[] createJar(final String jarPath) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, FakeDetect.class.getName());
+
+        final String classEntry = FakeDetect.class.getName().replace('.', '/') + ".class";
+        final ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        // Entries are dated JAR_TIME, so every FakeArtifactory serves the same bytes for a path, as the checksums embedded in a script expect.
+        try (final JarOutputStream jarOutputStream = new JarOutputStream(jar); final InputStream classStream = FakeDetect.class.getResourceAsStream("/" + classEntry)) {
+            jarOutputStream.putNextEntry(createEntry(JarFile.MANIFEST_NAME));
+            manifest.write(jarOutputStream);
+            jarOutputStream.closeEntry();
+
+            jarOutputStream.putNextEntry(createEntry(classEntry));
+            IOUtils.copy(classStream, jarOutputStream);
+            jarOutputStream.closeEntry();
+
+            // Differs per path, so two versions never have the same checksum.
+            jarOutputStream.putNextEntry(createEntry("padding.bin"));
+            final byte[] padding = new byte[jarPaddingBytes];
+            new Random(jarPath.hashCode()).nextBytes(padding);
+            jarOutputStream.write(padding);
+            jarOutputStream.closeEntry();
+        }
+        return jar.toByteArray();
+    }
+
+    private JarEntry createEntry(final String name) {
+        final JarEntry jarEntry = new JarEntry(name);
+        jarEntry.setTime(JAR_TIME);
+        return jarEntry;
+    }
+}
@@ -0,0 +1,36 @@
+package scripts;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * The main class of the jars FakeArtifactory serves. Like Detect it prints the properties it was given and, lacking a Black Duck server to talk
+ * to, fails with 7. --help succeeds, which is what the scripts run to create a class data sharing archive. The first line it prints is when its
+ * JVM started, for ScriptLatencyBenchmark, followed by the options its JVM was started with and its class path.
+ */
+public class FakeDetect {
+    public static final int EXIT_CODE = 7;
+    public static final String STARTED_AT = "Fake Detect JVM started at ";
+    public static final String JVM_OPTION = "Fake Detect JVM option ";
+    public static final String CLASS_PATH = "Fake Detect class path ";
+
+    public static void main(final String[] args) {
+        System.out.println(STARTED_AT + ManagementFactory.getRuntimeMXBean().getStartTime());
+        for (final String jvmOption : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            System.out.println(JVM_OPTION + jvmOption);
+        }
+        System.out.println(CLASS_PATH + System.getProperty("java.class.path"));
+        for (final String arg : args) {
+            if ("--help".equals(arg)) {
+                System.out.println("Fake Detect, for testing the scripts.");
+                System.exit(0);
+            }
+        }
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (arg.startsWith("--") && separator > 0) {
+                System.out.println(String.format("%s = %s", arg.substring(2, separator), arg.substring(separator + 1)));
+            }
+        }
+        System.exit(EXIT_CODE);
+    }
+}
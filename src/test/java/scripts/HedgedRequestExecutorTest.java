@@ -0,0 +1,70 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+import com.blackduck.integration.detect.scripts.mirror.HedgedRequestExecutor;
+import com.blackduck.integration.detect.scripts.mirror.RepositoryMirrors;
+import com.blackduck.integration.exception.IntegrationException;
+import com.blackduck.integration.log.SilentIntLogger;
+
+// The timings asserted below leave a wide margin, and the tests don't run alongside each other, so a busy machine doesn't fail them.
+@Execution(ExecutionMode.SAME_THREAD)
+public class HedgedRequestExecutorTest {
+    private static final List<String> MIRRORS = Arrays.asList("https://slow.example.com", "https://fast.example.com");
+
+    @Test
+    void testSlowMirrorIsHedged() throws IntegrationException {
+        final List<String> discarded = new CopyOnWriteArrayList<>();
+        final HedgedRequestExecutor executor = new HedgedRequestExecutor(new SilentIntLogger(), new RepositoryMirrors(MIRRORS, 50L, 5000L));
+
+        final long start = System.currentTimeMillis();
+        final String answer = executor.execute(repositoryUrl -> {
+            if (repositoryUrl.contains("slow")) {
+                Thread.sleep(10000L);
+            }
+            return repositoryUrl;
+        }, discarded::add);
+
+        assertEquals("https://fast.example.com", answer);
+        assertTrue(System.currentTimeMillis() - start < 5000L, "The hedged request should have answered before the slow mirror.");
+    }
+
+    @Test
+    void testFailedMirrorFallsThroughWithoutWaiting() throws IntegrationException {
+        final HedgedRequestExecutor executor = new HedgedRequestExecutor(new SilentIntLogger(), new RepositoryMirrors(MIRRORS, 10000L, 5000L));
+
+        final long start = System.currentTimeMillis();
+        final String answer = executor.execute(repositoryUrl -> {
+            if (repositoryUrl.contains("slow")) {
+                throw new IOException("Connection refused");
+            }
+            return repositoryUrl;
+        }, ignored -> {});
+
+        assertEquals("https://fast.example.com", answer);
+        assertTrue(System.currentTimeMillis() - start < 5000L, "The next mirror should be asked as soon as the first one fails.");
+    }
+
+    @Test
+    void testBudgetIsEnforced() {
+        final HedgedRequestExecutor executor = new HedgedRequestExecutor(new SilentIntLogger(), new RepositoryMirrors(MIRRORS, 10L, 200L));
+
+        final long start = System.currentTimeMillis();
+        assertThrows(IntegrationException.class, () -> executor.execute(repositoryUrl -> {
+            Thread.sleep(5000L);
+            return repositoryUrl;
+        }, ignored -> {}));
+        assertTrue(System.currentTimeMillis() - start < 2000L, "The lookup should give up once the budget is spent.");
+    }
+}
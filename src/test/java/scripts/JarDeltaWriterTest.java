@@ -0,0 +1,126 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.blackduck.integration.detect.scripts.delta.JarDeltaWriter;
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+
+public class JarDeltaWriterTest {
+    private static final int LIBRARY_SIZE = 256 * 1024;
+
+    @Test
+    void testUnchangedLibrariesAreCopied(@TempDir final Path directory) throws IOException {
+        final Map<String, byte[]> sourceEntries = new LinkedHashMap<>();
+        sourceEntries.put("BOOT-INF/lib/common-1.0.jar", randomBytes(1));
+        sourceEntries.put("BOOT-INF/lib/parser-2.0.jar", randomBytes(2));
+        sourceEntries.put("BOOT-INF/lib/client-3.0.jar", randomBytes(3));
+        sourceEntries.put("BOOT-INF/classes/Detect.class", "version 10.0.0".getBytes(StandardCharsets.UTF_8));
+        final Map<String, byte[]> targetEntries = new LinkedHashMap<>(sourceEntries);
+        // An upgraded library, and one that is only renamed.
+        targetEntries.put("BOOT-INF/lib/client-3.0.jar", randomBytes(4));
+        targetEntries.remove("BOOT-INF/lib/parser-2.0.jar");
+        targetEntries.put("BOOT-INF/lib/parser-2.0.1.jar", sourceEntries.get("BOOT-INF/lib/parser-2.0.jar"));
+        targetEntries.put("BOOT-INF/classes/Detect.class", "version 10.0.1".getBytes(StandardCharsets.UTF_8));
+
+        final File sourceJar = writeJar(directory.resolve("detect-10.0.0.jar"), sourceEntries, 1000L);
+        final File targetJar = writeJar(directory.resolve("detect-10.0.1.jar"), targetEntries, 2000L);
+        final File delta = new JarDeltaWriter().write(sourceJar, targetJar, directory.resolve("deltas").toFile());
+
+        assertEquals("detect-10.0.1.jar.from-detect-10.0.0.delta", delta.getName());
+        assertArrayEquals(Files.readAllBytes(targetJar.toPath()), apply(sourceJar, delta));
+        // The upgraded library is carried, the other two are copied.
+        assertTrue(delta.length() < LIBRARY_SIZE + LIBRARY_SIZE / 8, "The delta is " + delta.length() + " bytes.");
+    }
+
+    @Test
+    void testDeltaNamesBothJars(@TempDir final Path directory) throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("BOOT-INF/lib/common-1.0.jar", randomBytes(1));
+        final File sourceJar = writeJar(directory.resolve("synopsys-detect-9.10.0.jar"), entries, 1000L);
+        final File targetJar = writeJar(directory.resolve("detect-10.0.0.jar"), entries, 1000L);
+
+        final File delta = new JarDeltaWriter().write(sourceJar, targetJar, directory.toFile());
+
+        final String[] header = readHeader(delta).split("\n");
+        assertEquals(String.format("source synopsys-detect-9.10.0.jar %d %s", sourceJar.length(), DigestUtil.sha256Hex(sourceJar.toPath())), header[1]);
+        assertEquals(String.format("target detect-10.0.0.jar %d %s", targetJar.length(), DigestUtil.sha256Hex(targetJar.toPath())), header[2]);
+        // The entry is copied with its local header, only the central directory is carried.
+        assertEquals(6, header.length);
+        assertTrue(header[3].startsWith("copy 0 "));
+        assertEquals(targetJar.length(), Long.parseLong(header[3].split(" ")[2]) + Long.parseLong(header[4].substring("data ".length())));
+        assertEquals("end", header[5]);
+    }
+
+    // Nested jars are stored, as Spring Boot does.
+    private File writeJar(final Path jar, final Map<String, byte[]> entries, final long time) throws IOException {
+        try (final ZipOutputStream zipOutputStream = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (final Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setTime(time);
+                if (entry.getKey().endsWith(".jar")) {
+                    final CRC32 crc = new CRC32();
+                    crc.update(entry.getValue());
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                zipOutputStream.putNextEntry(zipEntry);
+                zipOutputStream.write(entry.getValue());
+                zipOutputStream.closeEntry();
+            }
+        }
+        return jar.toFile();
+    }
+
+    private byte[] randomBytes(final long seed) {
+        final byte[] bytes = new byte[LIBRARY_SIZE];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private String readHeader(final File delta) throws IOException {
+        final byte[] bytes = Files.readAllBytes(delta.toPath());
+        final int headerLength = Integer.parseInt(new String(bytes, 0, 30, StandardCharsets.US_ASCII).trim().split(" ")[2]);
+        return new String(bytes, 0, headerLength, StandardCharsets.US_ASCII);
+    }
+
+    // What the scripts do.
+    private byte[] apply(final File sourceJar, final File delta) throws IOException {
+        final byte[] source = Files.readAllBytes(sourceJar.toPath());
+        final byte[] deltaBytes = Files.readAllBytes(delta.toPath());
+        final String header = readHeader(delta);
+        int dataOffset = header.length();
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (final OutputStream outputStream = target) {
+            for (final String line : header.split("\n")) {
+                final String[] fields = line.split(" ");
+                if ("copy".equals(fields[0])) {
+                    outputStream.write(source, Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+                } else if ("data".equals(fields[0])) {
+                    outputStream.write(deltaBytes, dataOffset, Integer.parseInt(fields[1]));
+                    dataOffset += Integer.parseInt(fields[1]);
+                }
+            }
+        }
+        return target.toByteArray();
+    }
+}
@@ -0,0 +1,131 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import com.blackduck.integration.detect.scripts.scripts.ScriptTarget;
+import com.blackduck.integration.exception.IntegrationException;
+
+// Runs the script with sh, which is dash or busybox on the systems it is meant for, rather than bash.
+public class PosixScriptTest extends CommonScriptTest {
+    // Its own folder, so that the other script tests running alongside do not delete it.
+    private static final File posixScriptDirectory = new File(TEST_OUTPUT_DIRECTORY, "posix");
+
+    private static File posixScriptDetect;
+
+    @BeforeAll
+    static void setUpBeforeAll() throws IOException, IntegrationException {
+        posixScriptDetect = generateScript(posixScriptDirectory, ScriptTarget.POSIX);
+    }
+
+    @AfterAll
+    static void tearDownAfterAll() throws IOException {
+        FileUtils.deleteDirectory(posixScriptDirectory);
+    }
+
+    @Override
+    public Process executeScript(final Map<String, String> environment, final List<String> args, final boolean inheritIO) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add("sh");
+        command.add(getScriptFile().getAbsolutePath());
+        command.addAll(args);
+
+        return createProcess(command, environment, inheritIO);
+    }
+
+    @Override
+    public File getScriptFile() {
+        return posixScriptDetect;
+    }
+
+    @Test
+    void testInnerSpaces() throws IOException, InterruptedException {
+        final boolean success = testEscapingSpaces("--detect.project.name=Black Duck Detect");
+        assertTrue(success);
+    }
+
+    // The POSIX script asks for the jar once, without a HEAD request, so a single failure is enough to fail a run.
+    @Override
+    @Test
+    void testFailedDownloadIsRetried() throws IOException, InterruptedException {
+        final Map<String, String> environment = createEnvironment(true);
+        environment.put(EnvironmentVariables.DETECT_LATEST_RELEASE_VERSION.name(), "10.0.0");
+        fakeArtifactory.failNext(500, 1);
+
+        final Process failedProcess = executeScript(environment, new ArrayList<>(), true);
+        assertNotExitCode(failedProcess, 0);
+        assertFalse(new File(getOutputDirectory(), "detect-10.0.0.jar").exists(), "A failed download must not leave a jar behind.");
+
+        final Process process = executeScript(environment, new ArrayList<>(), true);
+        assertExitCode(process, 0);
+        assertJarExists("10.0.0");
+    }
+
+    @Override
+    @Test
+    @Disabled
+    void testDownloadInParts() {
+        // The POSIX script downloads in a single stream.
+    }
+
+    @Override
+    @Test
+    @Disabled
+    void testStaleDownloadLockIsTakenOver() {
+        // The POSIX script does not lock downloads.
+    }
+
+    @Override
+    @Test
+    @Disabled
+    void testJarIsRebuiltFromDelta() {
+        // The POSIX script does not apply deltas.
+    }
+
+    @Override
+    @Test
+    @Disabled
+    void testDeltaForAnotherJarIsNotInstalled() {
+        // The POSIX script does not apply deltas.
+    }
+
+    @Override
+    @Test
+    @Disabled
+    void testJarIsDownloadedWithoutDelta() {
+        // The POSIX script does not apply deltas.
+    }
+
+    @Override
+    @Test
+    @Disabled
+    void testOldJarsAreEvicted() {
+        // The POSIX script does not evict jars.
+    }
+
+    @Override
+    @Test
+    @Disabled
+    void testJavaErgonomics() {
+        // The POSIX script leaves the heap, processors and garbage collector to the JVM.
+    }
+
+    @Override
+    @Test
+    @Disabled
+    void testExplodedJar() {
+        // The POSIX script always runs Detect from the jar.
+    }
+}
@@ -1,52 +1,51 @@
 package scripts;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.AfterAll;
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
-import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
-import com.blackduck.integration.detect.scripts.scripts.ScriptBuilder;
+import com.blackduck.integration.detect.scripts.scripts.ScriptTarget;
 import com.blackduck.integration.exception.IntegrationException;
 
-// TODO: Implement the download only capability in powershell then remove tests that have this message. If the script cannot download only, it will try to run detect, and get the wrong exit codes for the test.
+// Only run by the powershellTest task, which reports when pwsh is missing, see build.gradle.
+@Tag("powershell")
 public class PowershellScriptTest extends CommonScriptTest {
-    private static final File powershellScriptDataDirectory = new File(TEST_OUTPUT_DIRECTORY, "powershellScriptData");
+    // Its own folder, so that the shell tests running alongside do not delete it.
+    private static final File powershellScriptDirectory = new File(TEST_OUTPUT_DIRECTORY, "powershell");
 
     private static File powershellScriptDetect;
 
     @BeforeAll
-    static void setUpBeforeAll() throws IOException, IntegrationException {
-        TEST_OUTPUT_DIRECTORY.mkdirs();
-        powershellScriptDataDirectory.mkdirs();
-
-        final ScriptBuilder scriptBuilder = new ScriptBuilder();
-        final List<File> scriptFiles = new ArrayList<>();
-        scriptBuilder.generateScript(scriptFiles, TEST_OUTPUT_DIRECTORY, "detect-ps.ps1", "ps1", "version-SNAPSHOT", DETECT_LATEST_VERSION);
-        assertEquals(1, scriptFiles.size());
-
-        powershellScriptDetect = scriptFiles.get(0);
-    }
-
-    @AfterEach
-    void tearDown() throws IOException {
-        FileUtils.deleteDirectory(powershellScriptDataDirectory);
+    static void setUpBeforeAll() throws IOException, IntegrationException, InterruptedException {
+        assumeTrue(isPowershellAvailable(), "pwsh is needed to run the PowerShell script.");
+        powershellScriptDetect = generateScript(powershellScriptDirectory, ScriptTarget.POWERSHELL);
     }
 
     @AfterAll
     static void tearDownAfterAll() throws IOException {
-        FileUtils.deleteDirectory(TEST_OUTPUT_DIRECTORY);
+        FileUtils.deleteDirectory(powershellScriptDirectory);
+    }
+
+    static boolean isPowershellAvailable() throws InterruptedException {
+        try {
+            final Process process = new ProcessBuilder("pwsh", "-NoProfile", "-Command", "exit 0").start();
+            return process.waitFor(PROCESS_TIMEOUT_MINUTES, TimeUnit.MINUTES) && process.exitValue() == 0;
+        } catch (final IOException e) {
+            return false;
+        }
     }
 
     @Override
@@ -63,11 +62,6 @@ public class PowershellScriptTest extends CommonScriptTest {
         return createProcess(command, environment, inheritIO);
     }
 
-    @Override
-    public File getOutputDirectory() {
-        return powershellScriptDataDirectory;
-    }
-
     @Override
     public File getScriptFile() {
         return powershellScriptDetect;
@@ -84,11 +78,4 @@ public class PowershellScriptTest extends CommonScriptTest {
         final boolean success = testEscapingSpaces("--detect.project.name=\"Black Duck Detect\"");
         assertTrue(success);
     }
-
-    @Override
-    @Test
-    @Disabled
-    void testDownloadOnly() {
-        // TODO: Implement the download only capability in powershell then remove this test
-    }
 }
@@ -0,0 +1,78 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.blackduck.integration.detect.scripts.scripts.ScriptArtifact;
+import com.blackduck.integration.detect.scripts.scripts.ScriptDistributionWriter;
+import com.blackduck.integration.detect.scripts.scripts.ScriptTarget;
+import com.blackduck.integration.detect.scripts.util.DigestUtil;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class ScriptDistributionWriterTest {
+    @TempDir
+    Path outputDirectory;
+
+    @Test
+    void testVariantsAndManifestDescribeEveryScript() throws IOException {
+        final File shellScript = writeScript("detect10.sh", "#!/bin/bash\necho shell\n");
+        final File powershellScript = writeScript("detect10.ps1", "Write-Host powershell\n");
+        final List<ScriptArtifact> scriptArtifacts = Arrays.asList(new ScriptArtifact(ScriptTarget.POWERSHELL, 10, powershellScript), new ScriptArtifact(ScriptTarget.BASH, 10, shellScript));
+
+        final List<File> writtenFiles = new ScriptDistributionWriter().write(outputDirectory.toFile(), scriptArtifacts, "3.3.0");
+        assertEquals(3, writtenFiles.size());
+
+        final File gzipFile = new File(outputDirectory.toFile(), "detect10.sh.gz");
+        try (final InputStream inputStream = new GZIPInputStream(Files.newInputStream(gzipFile.toPath()))) {
+            assertArrayEquals(Files.readAllBytes(shellScript.toPath()), IOUtils.toByteArray(inputStream));
+        }
+
+        final JsonObject manifest = JsonParser.parseString(new String(Files.readAllBytes(new File(outputDirectory.toFile(), ScriptDistributionWriter.MANIFEST_FILE_NAME).toPath()), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals("3.3.0", manifest.get("version").getAsString());
+        final JsonArray scripts = manifest.getAsJsonArray("scripts");
+        assertEquals(2, scripts.size());
+        final JsonObject shellEntry = scripts.get(1).getAsJsonObject();
+        assertEquals("detect10.sh", shellEntry.get("name").getAsString());
+        assertEquals(shellScript.length(), shellEntry.get("size").getAsLong());
+        assertEquals("\"" + DigestUtil.sha256Hex(shellScript.toPath()) + "\"", shellEntry.get("etag").getAsString());
+        final JsonObject gzipEntry = shellEntry.getAsJsonArray("variants").get(0).getAsJsonObject();
+        assertEquals("gzip", gzipEntry.get("encoding").getAsString());
+        assertEquals(DigestUtil.sha256Hex(gzipFile.toPath()), gzipEntry.get("sha256").getAsString());
+    }
+
+    @Test
+    void testUnchangedScriptsAreNotRewritten() throws IOException {
+        final File shellScript = writeScript("detect10.sh", "#!/bin/bash\necho shell\n");
+        final List<ScriptArtifact> scriptArtifacts = Arrays.asList(new ScriptArtifact(ScriptTarget.BASH, 10, shellScript));
+        final ScriptDistributionWriter scriptDistributionWriter = new ScriptDistributionWriter();
+        scriptDistributionWriter.write(outputDirectory.toFile(), scriptArtifacts, "3.3.0");
+
+        assertTrue(scriptDistributionWriter.write(outputDirectory.toFile(), scriptArtifacts, "3.3.0").isEmpty());
+
+        writeScript("detect10.sh", "#!/bin/bash\necho changed\n");
+        assertEquals(2, scriptDistributionWriter.write(outputDirectory.toFile(), scriptArtifacts, "3.3.0").size());
+    }
+
+    private File writeScript(final String name, final String content) throws IOException {
+        final File script = new File(outputDirectory.toFile(), name);
+        Files.write(script.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return script;
+    }
+}
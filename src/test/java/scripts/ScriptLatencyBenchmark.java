@@ -0,0 +1,256 @@
+package scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackduck.integration.detect.scripts.metrics.ScriptMetricsSummary;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Runs the generated scripts through the same process machinery as the script tests, against a FakeArtifactory, and measures the time from
+ * starting a script to the start of the JVM it launches Detect in. Three scenarios are measured: a cold download folder for every run, a warm
+ * one reused by every run, and a number of runs started together on one empty folder. Usage: {@code <results.json> [iterations]
+ * [concurrency] [repository latency ms]}, see the scriptBenchmark task. DETECT_ variables set for the benchmark are passed on to the scripts,
+ * so settings such as DETECT_RESOLUTION_TTL or DETECT_CDS can be compared.
+ */
+public class ScriptLatencyBenchmark {
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private final int iterations;
+    private final int concurrency;
+    private final long repositoryLatencyMillis;
+    private final Map<String, String> scriptEnvironment = new HashMap<>();
+
+    public ScriptLatencyBenchmark(final int iterations, final int concurrency, final long repositoryLatencyMillis) {
+        this.iterations = iterations;
+        this.concurrency = concurrency;
+        this.repositoryLatencyMillis = repositoryLatencyMillis;
+        System.getenv().forEach((name, value) -> {
+            if (name.startsWith("DETECT_")) {
+                scriptEnvironment.put(name, value);
+            }
+        });
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: <results.json> [iterations] [concurrency] [repository latency ms]");
+            System.exit(1);
+        }
+        final File resultsFile = new File(args[0]);
+        final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        final int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CONCURRENCY;
+        final long repositoryLatencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 0L;
+        final ScriptLatencyBenchmark scriptLatencyBenchmark = new ScriptLatencyBenchmark(iterations, concurrency, repositoryLatencyMillis);
+
+        final List<ScenarioResult> scenarioResults = new ArrayList<>();
+        ShellScriptTest.setUpBeforeAll();
+        try {
+            scenarioResults.addAll(scriptLatencyBenchmark.run("sh", new ShellScriptTest()));
+        } finally {
+            ShellScriptTest.tearDownAfterAll();
+        }
+        PosixScriptTest.setUpBeforeAll();
+        try {
+            scenarioResults.addAll(scriptLatencyBenchmark.run("posix", new PosixScriptTest()));
+        } finally {
+            PosixScriptTest.tearDownAfterAll();
+        }
+        if (PowershellScriptTest.isPowershellAvailable()) {
+            PowershellScriptTest.setUpBeforeAll();
+            try {
+                scenarioResults.addAll(scriptLatencyBenchmark.run("ps1", new PowershellScriptTest()));
+            } finally {
+                PowershellScriptTest.tearDownAfterAll();
+            }
+        } else {
+            System.out.println("pwsh is not available, only the shell scripts were measured.");
+        }
+
+        System.out.print(toReport(scenarioResults));
+        FileUtils.writeStringToFile(resultsFile, new GsonBuilder().setPrettyPrinting().create().toJson(scenarioResults), StandardCharsets.UTF_8);
+        System.out.println("Results written to " + resultsFile.getAbsolutePath());
+    }
+
+    public List<ScenarioResult> run(final String script, final CommonScriptTest scriptTest) throws IOException, InterruptedException, ExecutionException {
+        scriptTest.logProcesses = false;
+        final List<ScenarioResult> scenarioResults = new ArrayList<>();
+        scenarioResults.add(runCold(script, scriptTest));
+        scenarioResults.add(runWarm(script, scriptTest));
+        scenarioResults.add(runContended(script, scriptTest));
+        return scenarioResults;
+    }
+
+    // Every run starts with an empty download folder, so it resolves, downloads and creates its class data sharing archive.
+    private ScenarioResult runCold(final String script, final CommonScriptTest scriptTest) throws IOException, InterruptedException {
+        try (final FakeArtifactory fakeArtifactory = startFakeArtifactory(scriptTest)) {
+            final List<Long> launchMillis = new ArrayList<>();
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                final Path downloadDirectory = Files.createTempDirectory("detect-benchmark-cold");
+                try {
+                    scriptTest.downloadDirectory = downloadDirectory;
+                    addLaunch(launchMillis, measureLaunch(scriptTest));
+                } finally {
+                    FileUtils.deleteDirectory(downloadDirectory.toFile());
+                }
+            }
+            return new ScenarioResult(script, "cold", iterations, launchMillis, fakeArtifactory.getBytesSent());
+        }
+    }
+
+    // One run fills the download folder before the measured runs reuse it.
+    private ScenarioResult runWarm(final String script, final CommonScriptTest scriptTest) throws IOException, InterruptedException {
+        try (final FakeArtifactory fakeArtifactory = startFakeArtifactory(scriptTest)) {
+            final Path downloadDirectory = Files.createTempDirectory("detect-benchmark-warm");
+            try {
+                scriptTest.downloadDirectory = downloadDirectory;
+                measureLaunch(scriptTest);
+                final long bytesBefore = fakeArtifactory.getBytesSent();
+
+                final List<Long> launchMillis = new ArrayList<>();
+                for (int iteration = 0; iteration < iterations; iteration++) {
+                    addLaunch(launchMillis, measureLaunch(scriptTest));
+                }
+                return new ScenarioResult(script, "warm", iterations, launchMillis, fakeArtifactory.getBytesSent() - bytesBefore);
+            } finally {
+                FileUtils.deleteDirectory(downloadDirectory.toFile());
+            }
+        }
+    }
+
+    // Concurrency runs start together on an empty download folder, one of them downloads while the others wait for it.
+    private ScenarioResult runContended(final String script, final CommonScriptTest scriptTest) throws IOException, InterruptedException, ExecutionException {
+        final ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+        try (final FakeArtifactory fakeArtifactory = startFakeArtifactory(scriptTest)) {
+            final List<Long> launchMillis = new ArrayList<>();
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                final Path downloadDirectory = Files.createTempDirectory("detect-benchmark-contended");
+                try {
+                    scriptTest.downloadDirectory = downloadDirectory;
+                    final List<Future<Long>> launches = new ArrayList<>();
+                    for (int run = 0; run < concurrency; run++) {
+                        launches.add(executorService.submit(() -> measureLaunch(scriptTest)));
+                    }
+                    for (final Future<Long> launch : launches) {
+                        addLaunch(launchMillis, launch.get());
+                    }
+                } finally {
+                    FileUtils.deleteDirectory(downloadDirectory.toFile());
+                }
+            }
+            return new ScenarioResult(script, String.format("contended x%d", concurrency), iterations * concurrency, launchMillis, fakeArtifactory.getBytesSent());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private FakeArtifactory startFakeArtifactory(final CommonScriptTest scriptTest) throws IOException {
+        final FakeArtifactory fakeArtifactory = new FakeArtifactory();
+        fakeArtifactory.setLatency(repositoryLatencyMillis);
+        scriptTest.fakeArtifactory = fakeArtifactory;
+        return fakeArtifactory;
+    }
+
+    // Returns null when the script did not get as far as launching Detect.
+    @Nullable
+    private Long measureLaunch(final CommonScriptTest scriptTest) throws IOException, InterruptedException {
+        final Map<String, String> environment = new HashMap<>(scriptEnvironment);
+        environment.putAll(scriptTest.createEnvironment(false));
+
+        final long startedAt = System.currentTimeMillis();
+        final Process process = scriptTest.executeScript(environment, new ArrayList<>(), false);
+        final String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+        for (final String line : output.split("\\R")) {
+            if (line.startsWith(FakeDetect.STARTED_AT)) {
+                return Long.parseLong(StringUtils.removeStart(line, FakeDetect.STARTED_AT).trim()) - startedAt;
+            }
+        }
+        return null;
+    }
+
+    private void addLaunch(final List<Long> launchMillis, @Nullable final Long launch) {
+        if (launch != null) {
+            launchMillis.add(launch);
+        }
+    }
+
+    private static String toReport(final List<ScenarioResult> scenarioResults) {
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format("Time from starting the script to the start of Detect's JVM:%n"));
+        report.append(String.format("%-6s %-16s %6s %6s %9s %9s %9s %9s %12s%n", "script", "scenario", "runs", "failed", "p50 ms", "p95 ms", "p99 ms", "max ms", "bytes"));
+        for (final ScenarioResult scenarioResult : scenarioResults) {
+            final ScriptMetricsSummary.DurationSummary launch = scenarioResult.getLaunchMillis();
+            if (launch == null) {
+                report.append(String.format("%-6s %-16s %6d %6d %9s %9s %9s %9s %12d%n", scenarioResult.getScript(), scenarioResult.getScenario(), scenarioResult.getRuns(), scenarioResult.getFailed(), "-", "-", "-", "-",
+                    scenarioResult.getBytesDownloaded()));
+            } else {
+                report.append(String.format("%-6s %-16s %6d %6d %9d %9d %9d %9d %12d%n", scenarioResult.getScript(), scenarioResult.getScenario(), scenarioResult.getRuns(), scenarioResult.getFailed(), launch.getP50(), launch.getP95(),
+                    launch.getP99(), launch.getMax(), scenarioResult.getBytesDownloaded()));
+            }
+        }
+        return report.toString();
+    }
+
+    public static class ScenarioResult {
+        private final String script;
+        private final String scenario;
+        private final int runs;
+        private final int failed;
+        @Nullable
+        private final ScriptMetricsSummary.DurationSummary launchMillis;
+        private final long bytesDownloaded;
+
+        public ScenarioResult(final String script, final String scenario, final int runs, final List<Long> launchMillis, final long bytesDownloaded) {
+            this.script = script;
+            this.scenario = scenario;
+            this.runs = runs;
+            this.failed = runs - launchMillis.size();
+            this.launchMillis = launchMillis.isEmpty() ? null : ScriptMetricsSummary.DurationSummary.of(Collections.unmodifiableList(launchMillis));
+            this.bytesDownloaded = bytesDownloaded;
+        }
+
+        public String getScript() {
+            return script;
+        }
+
+        public String getScenario() {
+            return scenario;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        @Nullable
+        public ScriptMetricsSummary.DurationSummary getLaunchMillis() {
+            return launchMillis;
+        }
+
+        public long getBytesDownloaded() {
+            return bytesDownloaded;
+        }
+    }
+}
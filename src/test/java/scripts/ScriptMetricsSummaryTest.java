@@ -0,0 +1,62 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.blackduck.integration.detect.scripts.metrics.ScriptMetricsReader;
+import com.blackduck.integration.detect.scripts.metrics.ScriptMetricsSummary;
+import com.blackduck.integration.detect.scripts.metrics.ScriptRunRecord;
+import com.blackduck.integration.log.SilentIntLogger;
+
+public class ScriptMetricsSummaryTest {
+    @Test
+    void testPercentilesUseNearestRank(@TempDir final Path metricsDirectory) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            lines.add(String.format("{\"script\":\"sh\",\"resolution\":\"cached\",\"jarCache\":\"hit\",\"phases\":{\"resolve\":%d},\"totalMillis\":%d,\"exitCode\":0}", i, i * 10));
+        }
+        Files.write(metricsDirectory.resolve("agent-1.jsonl"), lines, StandardCharsets.UTF_8);
+
+        final ScriptMetricsSummary summary = ScriptMetricsSummary.of(read(metricsDirectory.toFile()));
+
+        final ScriptMetricsSummary.DurationSummary resolve = summary.getDurations().get("resolve");
+        assertEquals(100, resolve.getCount());
+        assertEquals(50, resolve.getP50());
+        assertEquals(95, resolve.getP95());
+        assertEquals(99, resolve.getP99());
+        assertEquals(100, resolve.getMax());
+        assertEquals(990, summary.getDurations().get(ScriptMetricsSummary.TOTAL).getP99());
+    }
+
+    @Test
+    void testRecordsFromBothScriptsAreCounted(@TempDir final Path metricsDirectory) throws IOException {
+        final String shellRecord = "{\"script\":\"sh\",\"resolution\":\"lookup\",\"jarCache\":\"miss\",\"bytesDownloaded\":1000,\"phases\":{\"resolve\":200,\"download\":900},\"totalMillis\":1200,\"exitCode\":255}";
+        // PowerShell may start the file with a byte order mark, and a record can be cut short.
+        final String powershellRecord = "\uFEFF{\"script\":\"ps1\",\"resolution\":\"cached\",\"jarCache\":\"hit\",\"phases\":{\"resolve\":5,\"java\":40,\"detect\":9000},\"totalMillis\":9100,\"exitCode\":0}";
+        Files.write(metricsDirectory.resolve("metrics.jsonl"), (powershellRecord + "\n" + shellRecord + "\n{\"script\":\"sh\",\"pha\n").getBytes(StandardCharsets.UTF_8));
+
+        final ScriptMetricsSummary summary = ScriptMetricsSummary.of(read(metricsDirectory.resolve("metrics.jsonl").toFile()));
+
+        assertEquals(2, summary.getRuns());
+        assertEquals(1000L, summary.getBytesDownloaded());
+        assertEquals(Integer.valueOf(1), summary.getScripts().get("ps1"));
+        assertEquals(Integer.valueOf(1), summary.getJarCaches().get("miss"));
+        assertEquals(Integer.valueOf(1), summary.getExitCodes().get(255));
+        assertEquals("[resolve, download, java, detect, total]", summary.getDurations().keySet().toString());
+    }
+
+    private List<ScriptRunRecord> read(final File file) throws IOException {
+        return new ScriptMetricsReader(new SilentIntLogger()).read(Collections.singletonList(file));
+    }
+}
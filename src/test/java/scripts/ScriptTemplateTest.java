@@ -0,0 +1,65 @@
+package scripts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.blackduck.integration.detect.scripts.scripts.ScriptTemplate;
+import com.blackduck.integration.exception.IntegrationException;
+
+public class ScriptTemplateTest {
+    @Test
+    void testTokensRenderedInOnePass() throws IOException, IntegrationException {
+        final ScriptTemplate scriptTemplate = ScriptTemplate.compile("SCRIPT_VERSION=//SCRIPT_VERSION//\n# As of //BUILD_DATE//\nKEY=${DETECT_VERSION_KEY:-//DEFAULT_DETECT_VERSION_KEY//}\n");
+
+        final Map<String, String> tokenValues = new HashMap<>();
+        tokenValues.put("SCRIPT_VERSION", "3.3.0");
+        tokenValues.put("BUILD_DATE", "2024-01-02");
+        tokenValues.put("DEFAULT_DETECT_VERSION_KEY", "DETECT_LATEST_10");
+
+        assertEquals("SCRIPT_VERSION=3.3.0\n# As of 2024-01-02\nKEY=${DETECT_VERSION_KEY:-DETECT_LATEST_10}\n", render(scriptTemplate, tokenValues));
+    }
+
+    @Test
+    void testValuesAreWrittenLiterally() throws IOException, IntegrationException {
+        final ScriptTemplate scriptTemplate = ScriptTemplate.compile("VALUE=//SCRIPT_VERSION//");
+
+        final Map<String, String> tokenValues = new HashMap<>();
+        tokenValues.put("SCRIPT_VERSION", "$1\\2 //BUILD_DATE//");
+
+        assertEquals("VALUE=$1\\2 //BUILD_DATE//", render(scriptTemplate, tokenValues));
+    }
+
+    @Test
+    void testUrlsAreLeftAlone() throws IOException, IntegrationException {
+        final ScriptTemplate scriptTemplate = ScriptTemplate.compile("URL=https://repo.blackduck.com //not a token//");
+
+        assertEquals("URL=https://repo.blackduck.com //not a token//", render(scriptTemplate, new HashMap<>()));
+    }
+
+    @Test
+    void testUnresolvedTokensFailTheRender() {
+        final ScriptTemplate scriptTemplate = ScriptTemplate.compile("VERSION=//SCRIPT_VERSION// //UNKNOWN_TOKEN//");
+
+        final Map<String, String> tokenValues = new HashMap<>();
+        tokenValues.put("SCRIPT_VERSION", "3.3.0");
+
+        final StringWriter writer = new StringWriter();
+        final IntegrationException exception = assertThrows(IntegrationException.class, () -> scriptTemplate.render(tokenValues, writer));
+        assertTrue(exception.getMessage().contains("UNKNOWN_TOKEN"));
+        assertEquals("", writer.toString(), "Nothing should be written for a template that can't be rendered.");
+    }
+
+    private String render(final ScriptTemplate scriptTemplate, final Map<String, String> tokenValues) throws IOException, IntegrationException {
+        final StringWriter writer = new StringWriter();
+        scriptTemplate.render(tokenValues, writer);
+        return writer.toString();
+    }
+}
@@ -1,6 +1,5 @@
 package scripts;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
@@ -11,45 +10,26 @@ import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterAll;
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import com.blackduck.integration.detect.scripts.scripts.ScriptBuilder;
+import com.blackduck.integration.detect.scripts.scripts.ScriptTarget;
 import com.blackduck.integration.exception.IntegrationException;
 
 public class ShellScriptTest extends CommonScriptTest {
-    private static final File shellScriptDataDirectory = new File(TEST_OUTPUT_DIRECTORY, "shellScriptData");
+    // Its own folder, so that the PowerShell tests running alongside do not delete it.
+    private static final File shellScriptDirectory = new File(TEST_OUTPUT_DIRECTORY, "shell");
 
     private static File shellScriptDetect;
 
-
     @BeforeAll
     static void setUpBeforeAll() throws IOException, IntegrationException {
-        TEST_OUTPUT_DIRECTORY.mkdirs();
-
-        final ScriptBuilder scriptBuilder = new ScriptBuilder();
-        final List<File> scriptFiles = new ArrayList<>();
-        scriptBuilder.generateScript(scriptFiles, TEST_OUTPUT_DIRECTORY, "detect-sh.sh", "sh", "version-SNAPSHOT", DETECT_LATEST_VERSION);
-        assertEquals(1, scriptFiles.size());
-
-        shellScriptDetect = scriptFiles.get(0);
-    }
-
-    @BeforeEach
-    void setupBeforeEach() {
-        shellScriptDataDirectory.mkdirs();
-    }
-
-    @AfterEach
-    void tearDown() throws IOException {
-        FileUtils.deleteDirectory(shellScriptDataDirectory);
+        shellScriptDetect = generateScript(shellScriptDirectory, ScriptTarget.BASH);
     }
 
     @AfterAll
     static void tearDownAfterAll() throws IOException {
-        FileUtils.deleteDirectory(TEST_OUTPUT_DIRECTORY);
+        FileUtils.deleteDirectory(shellScriptDirectory);
     }
 
     @Override
@@ -61,11 +41,6 @@ public class ShellScriptTest extends CommonScriptTest {
         return createProcess(command, environment, inheritIO);
     }
 
-    @Override
-    public File getOutputDirectory() {
-        return shellScriptDataDirectory;
-    }
-
     @Override
     public File getScriptFile() {
         return shellScriptDetect;